@@ -7,6 +7,9 @@ import com.sdu.spark.network.client.TransportResponseHandler;
 import com.sdu.spark.network.protocol.MessageDecoder;
 import com.sdu.spark.network.protocol.MessageEncoder;
 import com.sdu.spark.network.server.*;
+import com.sdu.spark.network.utils.AllocatorMetrics;
+import com.sdu.spark.network.utils.NettyUtils;
+import com.sdu.spark.network.utils.TransportByteBufAllocator;
 import com.sdu.spark.network.utils.TransportConf;
 import com.sdu.spark.network.utils.TransportFrameDecoder;
 import io.netty.channel.Channel;
@@ -30,6 +33,10 @@ public class TransportContext {
     private final TransportConf conf;
     private final RpcHandler rpcHandler;
     private final boolean closeIdleConnections;
+    /**
+     * TransportServer及TransportClientFactory共用的内存分配器, 生命周期与TransportContext一致
+     * */
+    private final TransportByteBufAllocator allocator;
 
     /**
      * RpcMessage编码/解码
@@ -45,6 +52,7 @@ public class TransportContext {
         this.conf = conf;
         this.rpcHandler = rpcHandler;
         this.closeIdleConnections = closeIdleConnections;
+        this.allocator = NettyUtils.createByteBufAllocator(conf);
     }
 
     public TransportClientFactory createClientFactory() {
@@ -67,6 +75,14 @@ public class TransportContext {
         return conf;
     }
 
+    public TransportByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    public AllocatorMetrics allocatorMetrics() {
+        return NettyUtils.allocatorMetrics(conf.getModuleName(), allocator.pooled());
+    }
+
     public TransportChannelHandler initializePipeline(SocketChannel channel) {
         return initializePipeline(channel, rpcHandler);
     }
@@ -0,0 +1,66 @@
+package com.sdu.spark.network.client;
+
+import com.sdu.spark.network.utils.TransportFrameDecoder;
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * StreamResponse流数据处理: 流数据不属于Frame, 由{@link TransportFrameDecoder}直接交给{@link StreamInterceptor},
+ *
+ * 按接收到的ByteBuf回调{@link StreamCallback#onData(String, ByteBuffer)}, 不汇聚整个流
+ *
+ * @author hanhan.zhang
+ * */
+public class StreamInterceptor implements TransportFrameDecoder.Interceptor {
+
+    private final TransportResponseHandler handler;
+    private final String streamId;
+    private final long byteCount;
+    private final StreamCallback callback;
+    private long bytesRead;
+
+    public StreamInterceptor(TransportResponseHandler handler, String streamId, long byteCount,
+                             StreamCallback callback) {
+        this.handler = handler;
+        this.streamId = streamId;
+        this.byteCount = byteCount;
+        this.callback = callback;
+        this.bytesRead = 0;
+    }
+
+    @Override
+    public void exceptionCaught(Throwable cause) throws Exception {
+        handler.deactivateStream();
+        callback.onFailure(streamId, cause);
+    }
+
+    @Override
+    public void channelInactive() throws Exception {
+        handler.deactivateStream();
+        callback.onFailure(streamId, new ClosedChannelException());
+    }
+
+    @Override
+    public boolean handle(ByteBuf buf) throws Exception {
+        int toRead = (int) Math.min(buf.readableBytes(), byteCount - bytesRead);
+        ByteBuffer nioBuffer = buf.readSlice(toRead).nioBuffer();
+
+        int available = nioBuffer.remaining();
+        callback.onData(streamId, nioBuffer);
+        bytesRead += available;
+        if (bytesRead > byteCount) {
+            RuntimeException re = new IllegalStateException(String.format(
+                    "Read too many bytes? Expected %d, but read %d.", byteCount, bytesRead));
+            callback.onFailure(streamId, re);
+            handler.deactivateStream();
+            throw re;
+        } else if (bytesRead == byteCount) {
+            handler.deactivateStream();
+            callback.onComplete(streamId);
+        }
+
+        return bytesRead != byteCount;
+    }
+}
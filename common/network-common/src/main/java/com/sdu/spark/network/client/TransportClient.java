@@ -2,17 +2,21 @@ package com.sdu.spark.network.client;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.SettableFuture;
 import com.sdu.spark.network.buffer.NioManagerBuffer;
 import com.sdu.spark.network.protocol.*;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -32,6 +36,7 @@ public class TransportClient implements Closeable {
     private TransportResponseHandler responseHandler;
     private String clientId;
     private volatile boolean timeout;
+    private final List<Runnable> writabilityListeners = new CopyOnWriteArrayList<>();
 
     public TransportClient(Channel channel, TransportResponseHandler responseHandler) {
         this.channel = channel;
@@ -43,11 +48,72 @@ public class TransportClient implements Closeable {
         return !timeout && channel.isOpen() && channel.isActive();
     }
 
+    /**
+     * Channel发送缓冲区未超过高水位
+     * */
+    public boolean isWritable() {
+        return channel.isWritable();
+    }
+
+    /**
+     * 注册Channel可写状态变化回调(在EventLoop线程中调用, 回调不可阻塞)
+     * */
+    public void addWritabilityListener(Runnable listener) {
+        writabilityListeners.add(listener);
+    }
+
+    public void removeWritabilityListener(Runnable listener) {
+        writabilityListeners.remove(listener);
+    }
+
+    public void writabilityChanged() {
+        for (Runnable listener : writabilityListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                LOGGER.error("Exception from writability listener of {}", getRemoteAddress(channel), e);
+            }
+        }
+    }
+
+    /**
+     * 未完成请求数(Fetch、Rpc及Stream)
+     * */
+    public int numOutstandingRequests() {
+        return responseHandler.numOutstandingRequests();
+    }
+
+    /**
+     * 存在未完成请求且超过timeoutNs未发出请求也未收到响应
+     * */
+    public boolean isOverdue(long timeoutNs) {
+        return responseHandler.isOverdue(timeoutNs);
+    }
+
     /**
      * 发送单向消息
      * */
     public void send(ByteBuffer message) {
-        channel.writeAndFlush(new OneWayMessage(new NioManagerBuffer(message)));
+        send(message, true);
+    }
+
+    /**
+     * 发送单向消息, flush = false时消息仅写入Channel发送缓冲区, 由{@link #flush()}批量写出
+     * */
+    public void send(ByteBuffer message, boolean flush) {
+        OneWayMessage oneWayMessage = new OneWayMessage(new NioManagerBuffer(message));
+        if (flush) {
+            channel.writeAndFlush(oneWayMessage);
+        } else {
+            channel.write(oneWayMessage);
+        }
+    }
+
+    /**
+     * 写出Channel发送缓冲区中的消息
+     * */
+    public void flush() {
+        channel.flush();
     }
 
     public ByteBuffer sendRpcSync(ByteBuffer message, long timeoutMs) {
@@ -82,33 +148,41 @@ public class TransportClient implements Closeable {
      * 发送双向消息
      * */
     public long sendRpc(ByteBuffer message, RpcResponseCallback callback) {
+        return sendRpc(message, callback, true);
+    }
+
+    /**
+     * 发送双向消息, flush = false时消息仅写入Channel发送缓冲区, 由{@link #flush()}批量写出
+     * */
+    public long sendRpc(ByteBuffer message, RpcResponseCallback callback, boolean flush) {
         long startTime = System.currentTimeMillis();
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("Sending RPC to {}", getRemoteAddress(channel));
         }
         long requestId = Math.abs(UUID.randomUUID().getLeastSignificantBits());
         responseHandler.addRpcRequest(requestId, callback);
-        channel.writeAndFlush(new RpcRequest(requestId, new NioManagerBuffer(message)))
-                .addListener(future -> {
-                    if (future.isSuccess()) {
-                        long timeTaken = System.currentTimeMillis() - startTime;
-                        if (LOGGER.isTraceEnabled()) {
-                            LOGGER.trace("Sending request {} to {} took {} ms", requestId,
-                                    getRemoteAddress(channel), timeTaken);
-                        }
-                    } else {
-                        String errorMsg = String.format("Failed to send RPC %s to %s: %s", requestId,
-                                getRemoteAddress(channel), future.cause());
-                        LOGGER.error(errorMsg, future.cause());
-                        responseHandler.removeRpcRequest(requestId);
-                        channel.close();
-                        try {
-                            callback.onFailure(new IOException(errorMsg, future.cause()));
-                        } catch (Exception e) {
-                            LOGGER.error("Uncaught exception in RPC response callback handler!", e);
-                        }
-                    }
-                });
+        RpcRequest request = new RpcRequest(requestId, new NioManagerBuffer(message));
+        ChannelFuture writeFuture = flush ? channel.writeAndFlush(request) : channel.write(request);
+        writeFuture.addListener(future -> {
+            if (future.isSuccess()) {
+                long timeTaken = System.currentTimeMillis() - startTime;
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.trace("Sending request {} to {} took {} ms", requestId,
+                            getRemoteAddress(channel), timeTaken);
+                }
+            } else {
+                String errorMsg = String.format("Failed to send RPC %s to %s: %s", requestId,
+                        getRemoteAddress(channel), future.cause());
+                LOGGER.error(errorMsg, future.cause());
+                responseHandler.removeRpcRequest(requestId);
+                channel.close();
+                try {
+                    callback.onFailure(new IOException(errorMsg, future.cause()));
+                } catch (Exception e) {
+                    LOGGER.error("Uncaught exception in RPC response callback handler!", e);
+                }
+            }
+        });
         return requestId;
     }
 
@@ -176,6 +250,50 @@ public class TransportClient implements Closeable {
         });
     }
 
+    /**
+     * 批量请求同一Stream的多个数据块: 一个{@link BatchChunkFetchRequest}携带全部StreamChunkId, 响应按数据块逐个回调
+     * */
+    public void fetchChunks(
+            long streamId,
+            int[] chunkIndices,
+            ChunkReceivedCallback callback) {
+        long startTime = System.currentTimeMillis();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Sending batch fetch request of {} chunks to {}", chunkIndices.length,
+                    getRemoteAddress(channel));
+        }
+
+        List<StreamChunkId> streamChunkIds = Lists.newArrayListWithCapacity(chunkIndices.length);
+        for (int chunkIndex : chunkIndices) {
+            StreamChunkId streamChunkId = new StreamChunkId(streamId, chunkIndex);
+            responseHandler.addFetchRequest(streamChunkId, callback);
+            streamChunkIds.add(streamChunkId);
+        }
+
+        channel.writeAndFlush(new BatchChunkFetchRequest(streamChunkIds)).addListener(future -> {
+            if (future.isSuccess()) {
+                long timeTaken = System.currentTimeMillis() - startTime;
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.trace("Sending batch request of {} chunks to {} took {} ms", streamChunkIds.size(),
+                            getRemoteAddress(channel), timeTaken);
+                }
+            } else {
+                String errorMsg = String.format("Failed to send batch request of %d chunks to %s: %s",
+                        streamChunkIds.size(), getRemoteAddress(channel), future.cause());
+                LOGGER.error(errorMsg, future.cause());
+                streamChunkIds.forEach(responseHandler::removeFetchRequest);
+                channel.close();
+                for (StreamChunkId streamChunkId : streamChunkIds) {
+                    try {
+                        callback.onFailure(streamChunkId.chunkIndex, new IOException(errorMsg, future.cause()));
+                    } catch (Exception e) {
+                        LOGGER.error("Uncaught exception in RPC response callback handler!", e);
+                    }
+                }
+            }
+        });
+    }
+
     public void removeRpcRequest(long requestId) {
         responseHandler.removeRpcRequest(requestId);
     }
@@ -6,10 +6,12 @@ import com.sdu.spark.network.server.TransportChannelHandler;
 import com.sdu.spark.network.utils.IOModel;
 import com.sdu.spark.network.utils.JavaUtils;
 import com.sdu.spark.network.utils.NettyUtils;
+import com.sdu.spark.network.utils.TransportByteBufAllocator;
 import com.sdu.spark.network.utils.TransportConf;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
 import io.netty.channel.socket.SocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +23,8 @@ import java.net.SocketAddress;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -47,7 +51,16 @@ public class TransportClientFactory implements Closeable {
      * 多个客户端共用
      * */
     private EventLoopGroup workerGroup;
+    private final IOModel ioModel;
     private final Class<? extends Channel> socketChannelClass;
+    /**
+     * 模块共享的池化内存分配器
+     * */
+    private final TransportByteBufAllocator allocator;
+    /**
+     * 连接健康检查任务
+     * */
+    private ScheduledFuture<?> healthCheckTask;
 
 
 
@@ -73,31 +86,107 @@ public class TransportClientFactory implements Closeable {
         this.conf = context.getConf();
         this.clientBootstraps = clientBootstraps;
         this.connectionPool = new ConcurrentHashMap<>();
-        this.socketChannelClass = NettyUtils.getClientChannelClass(IOModel.convert(conf.ioModel()));
-        this.workerGroup = NettyUtils.createEventLoop(IOModel.convert(conf.ioModel()), conf.clientThreads(),
-                conf.getModuleName() + "-client");
+        this.ioModel = IOModel.convert(conf.ioModel()).resolve();
+        this.socketChannelClass = NettyUtils.getClientChannelClass(ioModel);
+        this.workerGroup = NettyUtils.createEventLoop(ioModel, conf.clientThreads(),
+                conf.getModuleName() + "-client", conf.epollBusyPoll());
+        this.allocator = context.getAllocator();
+
+        long healthCheckIntervalMs = conf.healthCheckIntervalMs();
+        if (healthCheckIntervalMs > 0) {
+            this.healthCheckTask = workerGroup.next().scheduleAtFixedRate(this::evictDeadClients,
+                    healthCheckIntervalMs, healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
      * 创建连接
      *
-     * 1: 先在连接池中取
+     * 1: 先在连接池中按未完成请求数选择连接
      *
-     * 2: 连接池中不存在, 则创建连接
+     * 2: 所选槽位无活跃连接, 则创建连接
      * */
     public TransportClient createClient(String remoteHost, int remotePort) throws IOException, InterruptedException {
+        ClientPool clientPool = getClientPool(remoteHost, remotePort);
+        int clientIndex = selectClient(clientPool);
+        TransportClient client = clientPool.clients[clientIndex];
+        if (client != null && client.isActive()) {
+            return client;
+        }
+        return createClient(clientPool, clientIndex, remoteHost, remotePort);
+    }
+
+    /**
+     * 预建连接: 填充连接池前numConnections个槽位(已有活跃连接的槽位跳过), 使连接建立及Bootstrap(如SASL)
+     *
+     * 不在首次请求的关键路径上, 返回预建后连接池中的活跃连接数
+     * */
+    public int warmUp(String remoteHost, int remotePort, int numConnections) throws IOException, InterruptedException {
+        ClientPool clientPool = getClientPool(remoteHost, remotePort);
+        int connections = Math.min(numConnections, clientPool.clients.length);
+        for (int i = 0; i < connections; ++i) {
+            TransportClient client = clientPool.clients[i];
+            if (client == null || !client.isActive()) {
+                createClient(clientPool, i, remoteHost, remotePort);
+            }
+        }
+        int active = 0;
+        for (TransportClient client : clientPool.clients) {
+            if (client != null && client.isActive()) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    private ClientPool getClientPool(String remoteHost, int remotePort) {
         final InetSocketAddress address = InetSocketAddress.createUnresolved(remoteHost, remotePort);
         ClientPool clientPool = connectionPool.get(address);
         if (clientPool == null) {
             connectionPool.putIfAbsent(address, new ClientPool(conf.numConnectionsPerPeer()));
             clientPool = connectionPool.get(address);
         }
-        int clientIndex = random.nextInt(conf.numConnectionsPerPeer());
-        TransportClient client = clientPool.clients[clientIndex];
-        if (client != null && client.isActive()) {
-            return client;
+        return clientPool;
+    }
+
+    /**
+     * 选择连接槽位(从随机位置开始遍历, 避免请求集中于同一连接):
+     *
+     * 1: 优先选择无未完成请求的活跃连接
+     *
+     * 2: 活跃连接均有未完成请求时, 若存在空槽位(无连接或连接失效)则新建连接
+     *
+     * 3: 否则选择未完成请求数最少的活跃连接
+     * */
+    private int selectClient(ClientPool clientPool) {
+        int size = clientPool.clients.length;
+        int start = random.nextInt(size);
+        int emptyIndex = -1;
+        int leastIndex = -1;
+        int leastOutstanding = Integer.MAX_VALUE;
+        for (int i = 0; i < size; ++i) {
+            int index = (start + i) % size;
+            TransportClient client = clientPool.clients[index];
+            if (client == null || !client.isActive()) {
+                if (emptyIndex == -1) {
+                    emptyIndex = index;
+                }
+                continue;
+            }
+            int outstanding = client.numOutstandingRequests();
+            if (outstanding == 0) {
+                return index;
+            }
+            if (outstanding < leastOutstanding) {
+                leastOutstanding = outstanding;
+                leastIndex = index;
+            }
         }
+        return emptyIndex != -1 ? emptyIndex : leastIndex;
+    }
 
+    private TransportClient createClient(ClientPool clientPool, int clientIndex, String remoteHost, int remotePort)
+            throws IOException, InterruptedException {
         final long preResolveHost = System.nanoTime();
         final InetSocketAddress resolvedAddress = new InetSocketAddress(remoteHost, remotePort);
         final long hostResolveTimeMs = (System.nanoTime() - preResolveHost) / 1000000;
@@ -108,7 +197,7 @@ public class TransportClientFactory implements Closeable {
         }
 
         synchronized (clientPool.locks[clientIndex]) {
-            client = clientPool.clients[clientIndex];
+            TransportClient client = clientPool.clients[clientIndex];
             if (client != null && client.isActive()) {
                 return client;
             }
@@ -117,6 +206,47 @@ public class TransportClientFactory implements Closeable {
         }
     }
 
+    /**
+     * 连接健康检查, 清除连接池中的失效连接, 避免请求选中失效连接, 返回清除的连接数:
+     *
+     * 1: 已关闭的连接
+     *
+     * 2: 存在未完成请求, 但超过io.connectionTimeout未发出请求也未收到响应的连接(对端无响应), 关闭连接使未完成请求失败
+     *
+     * 注意: 检查任务运行在EventLoop线程, 关闭无响应连接时不等待关闭完成
+     * */
+    public int evictDeadClients() {
+        long timeoutNs = TimeUnit.MILLISECONDS.toNanos(conf.connectionTimeoutMs());
+        int evicted = 0;
+        for (ClientPool clientPool : connectionPool.values()) {
+            for (int i = 0; i < clientPool.clients.length; ++i) {
+                synchronized (clientPool.locks[i]) {
+                    TransportClient client = clientPool.clients[i];
+                    if (client == null) {
+                        continue;
+                    }
+                    if (!client.isActive()) {
+                        clientPool.clients[i] = null;
+                        JavaUtils.closeQuietly(client);
+                        evicted++;
+                    } else if (client.isOverdue(timeoutNs)) {
+                        LOGGER.warn("Connection to {} has been quiet for {} ms while there are {} outstanding requests, " +
+                                "assuming connection is dead", NettyUtils.getRemoteAddress(client.getChannel()), conf.connectionTimeoutMs(),
+                                client.numOutstandingRequests());
+                        clientPool.clients[i] = null;
+                        client.timeOut();
+                        client.getChannel().close();
+                        evicted++;
+                    }
+                }
+            }
+        }
+        if (evicted > 0) {
+            LOGGER.debug("Evicted {} dead connections", evicted);
+        }
+        return evicted;
+    }
+
     /**
      * 不需要创建连接池
      * */
@@ -126,6 +256,24 @@ public class TransportClientFactory implements Closeable {
         return createClient(address);
     }
 
+    /**
+     * 设置Channel发送缓冲区高/低水位: Netty 4.0要求任意时刻low <= high, 需根据当前水位决定设置顺序
+     * */
+    private void configureWriteBufferWaterMark(ChannelConfig config) {
+        int high = conf.writeBufferHighWaterMark();
+        if (high <= 0) {
+            return;
+        }
+        int low = conf.writeBufferLowWaterMark();
+        if (low > config.getWriteBufferHighWaterMark()) {
+            config.setWriteBufferHighWaterMark(high);
+            config.setWriteBufferLowWaterMark(low);
+        } else {
+            config.setWriteBufferLowWaterMark(low);
+            config.setWriteBufferHighWaterMark(high);
+        }
+    }
+
     private TransportClient createClient(InetSocketAddress address) throws IOException, InterruptedException {
         LOGGER.debug("Creating new connection to {}", address);
 
@@ -134,8 +282,13 @@ public class TransportClientFactory implements Closeable {
                 .channel(socketChannelClass)
                 .option(ChannelOption.TCP_NODELAY, true)
                 .option(ChannelOption.SO_KEEPALIVE, true)
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 120)
-                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, conf.connectionTimeoutMs())
+                .option(ChannelOption.ALLOCATOR, allocator);
+        if (ioModel == IOModel.EPOLL) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE,
+                             conf.epollEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED)
+                     .option(EpollChannelOption.TCP_QUICKACK, conf.epollQuickAck());
+        }
 
         final AtomicReference<TransportClient> clientRef = new AtomicReference<>();
         final AtomicReference<Channel> channelRef = new AtomicReference<>();
@@ -143,6 +296,7 @@ public class TransportClientFactory implements Closeable {
         bootstrap.handler(new ChannelInitializer<SocketChannel>() {
             @Override
             public void initChannel(SocketChannel ch) {
+                configureWriteBufferWaterMark(ch.config());
                 TransportChannelHandler clientHandler = context.initializePipeline(ch);
                 clientRef.set(clientHandler.getClient());
                 channelRef.set(ch);
@@ -153,8 +307,9 @@ public class TransportClientFactory implements Closeable {
         long preConnect = System.nanoTime();
         ChannelFuture cf = bootstrap.connect(address);
 
-        if (!cf.await(1000L)) {
-            throw new IOException(String.format("Connecting to %s timed out (%s ms)", address, 1000));
+        if (!cf.await(conf.connectionTimeoutMs())) {
+            throw new IOException(String.format("Connecting to %s timed out (%s ms)", address,
+                    conf.connectionTimeoutMs()));
         } else if (cf.cause() != null) {
             throw new IOException(String.format("Failed to connect to %s", address), cf.cause());
         }
@@ -187,6 +342,10 @@ public class TransportClientFactory implements Closeable {
 
     @Override
     public void close() throws IOException {
+        if (healthCheckTask != null) {
+            healthCheckTask.cancel(false);
+            healthCheckTask = null;
+        }
         for (ClientPool clientPool : connectionPool.values()) {
             for (int i = 0; i < clientPool.clients.length; i++) {
                 TransportClient client = clientPool.clients[i];
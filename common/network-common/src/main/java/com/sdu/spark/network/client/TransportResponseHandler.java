@@ -5,6 +5,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 import com.sdu.spark.network.protocol.*;
 import com.sdu.spark.network.server.MessageHandler;
+import com.sdu.spark.network.utils.TransportFrameDecoder;
 import io.netty.channel.Channel;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -40,6 +41,8 @@ public class TransportResponseHandler extends MessageHandler<ResponseMessage> {
 
     /** Records the time (in system nanoseconds) that the last fetch or RPC request was sent. */
     private final AtomicLong timeOfLastRequestNs;
+    /** Records the time (in system nanoseconds) that the last response was received. */
+    private final AtomicLong timeOfLastResponseNs;
 
     public TransportResponseHandler(Channel channel) {
         this.channel = channel;
@@ -47,6 +50,7 @@ public class TransportResponseHandler extends MessageHandler<ResponseMessage> {
         this.outstandingFetches = Maps.newConcurrentMap();
         this.streamCallbacks = Queues.newLinkedBlockingDeque();
         this.timeOfLastRequestNs = new AtomicLong(0);
+        this.timeOfLastResponseNs = new AtomicLong(0);
     }
 
     public void addFetchRequest(StreamChunkId streamChunkId, ChunkReceivedCallback callback) {
@@ -79,6 +83,7 @@ public class TransportResponseHandler extends MessageHandler<ResponseMessage> {
 
     @Override
     public void handle(ResponseMessage message) throws Exception {
+        timeOfLastResponseNs.set(System.nanoTime());
         if (message instanceof ChunkFetchSuccess) {
             ChunkFetchSuccess resp = (ChunkFetchSuccess) message;
             ChunkReceivedCallback listener = outstandingFetches.get(resp.streamChunkId);
@@ -127,9 +132,45 @@ public class TransportResponseHandler extends MessageHandler<ResponseMessage> {
                 listener.onFailure(new RuntimeException(resp.errorString));
             }
         } else if (message instanceof StreamResponse) {
-            // TODO: 17/9/23  
+            StreamResponse resp = (StreamResponse) message;
+            Pair<String, StreamCallback> entry = streamCallbacks.poll();
+            if (entry != null) {
+                StreamCallback callback = entry.getValue();
+                if (resp.byteCount > 0) {
+                    // 流数据跟随在StreamResponse之后, 由TransportFrameDecoder直接交给StreamInterceptor
+                    StreamInterceptor interceptor = new StreamInterceptor(this, resp.streamId, resp.byteCount, callback);
+                    try {
+                        TransportFrameDecoder frameDecoder = (TransportFrameDecoder)
+                                channel.pipeline().get(TransportFrameDecoder.HANDLER_NAME);
+                        frameDecoder.setInterceptor(interceptor);
+                        streamActive = true;
+                    } catch (Exception e) {
+                        LOGGER.error("Error installing stream handler.", e);
+                        deactivateStream();
+                    }
+                } else {
+                    try {
+                        callback.onComplete(resp.streamId);
+                    } catch (Exception e) {
+                        LOGGER.warn("Error in stream handler onComplete().", e);
+                    }
+                }
+            } else {
+                LOGGER.error("Could not find callback for StreamResponse.");
+                channel.close();
+            }
         } else if (message instanceof StreamFailure) {
-            // TODO: 17/9/23  
+            StreamFailure resp = (StreamFailure) message;
+            Pair<String, StreamCallback> entry = streamCallbacks.poll();
+            if (entry != null) {
+                try {
+                    entry.getValue().onFailure(resp.streamId, new RuntimeException(resp.error));
+                } catch (IOException ioe) {
+                    LOGGER.warn("Error in stream failure handler.", ioe);
+                }
+            } else {
+                LOGGER.warn("Stream failure with unknown callback: {}", resp.error);
+            }
         }
     }
 
@@ -166,6 +207,17 @@ public class TransportResponseHandler extends MessageHandler<ResponseMessage> {
         return timeOfLastRequestNs.get();
     }
 
+    /**
+     * 存在未完成请求且超过timeoutNs未发出请求也未收到响应(Stream数据由TransportFrameDecoder拦截, 接收Stream时不视为超时)
+     * */
+    public boolean isOverdue(long timeoutNs) {
+        if (streamActive || numOutstandingRequests() == 0) {
+            return false;
+        }
+        long lastActivityNs = Math.max(timeOfLastRequestNs.get(), timeOfLastResponseNs.get());
+        return System.nanoTime() - lastActivityNs > timeoutNs;
+    }
+
     public int numOutstandingRequests() {
         return outstandingFetches.size() + outstandingRpcCalls.size() + streamCallbacks.size() +
                 (streamActive ? 1 : 0);
@@ -5,21 +5,62 @@ import com.sdu.spark.network.client.TransportClientBootstrap;
 import com.sdu.spark.network.sasl.SecretKeyHolder;
 import com.sdu.spark.network.utils.TransportConf;
 import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 
 /**
+ * Client端认证引导(连接建立后同步执行):
+ *
+ * 1: 发送{@link ClientChallenge}, 校验{@link ServerResponse}中的Server证明
+ *
+ * 2: 发送{@link ClientResponse}, 收到Server应答后认证完成
+ *
+ * 3: 开启通道加密时安装{@link TransportCipher}
+ *
  * @author hanhan.zhang
  * */
 public class AuthClientBootstrap implements TransportClientBootstrap {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuthClientBootstrap.class);
+
+    private final TransportConf conf;
+    private final String appId;
+    private final SecretKeyHolder secretKeyHolder;
+
     public AuthClientBootstrap(
             TransportConf conf,
             String appId,
             SecretKeyHolder secretKeyHolder) {
-
+        this.conf = conf;
+        this.appId = appId;
+        this.secretKeyHolder = secretKeyHolder;
     }
 
     @Override
     public void doBootstrap(TransportClient client, Channel channel) throws RuntimeException {
+        boolean encrypt = conf.encryptionEnabled();
+        byte[] nonce = AuthEngine.newNonce();
+        ClientChallenge challenge = new ClientChallenge(appId, nonce, encrypt);
+        ByteBuffer response = client.sendRpcSync(challenge.toByteBuffer(), conf.authRTTimeoutMs());
+
+        ServerResponse serverResponse = ServerResponse.decodeMessage(response);
+        AuthEngine engine = new AuthEngine(secretKeyHolder.getSecretKey(appId), nonce, serverResponse.nonce,
+                                           conf.cipherKeyLength());
+        if (!engine.verifyServerProof(serverResponse.proof)) {
+            throw new SecurityException("Server proof mismatch, secret keys differ.");
+        }
+        client.sendRpcSync(new ClientResponse(engine.clientProof()).toByteBuffer(), conf.authRTTimeoutMs());
 
+        if (encrypt) {
+            try {
+                engine.sessionCipher(true, conf.cipherRecordSize()).addToChannel(channel);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+            LOGGER.debug("Enabling encryption for channel {}", client);
+        }
     }
 }
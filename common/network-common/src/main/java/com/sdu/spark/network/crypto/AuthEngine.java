@@ -0,0 +1,93 @@
+package com.sdu.spark.network.crypto;
+
+import com.google.common.base.Preconditions;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * 双向认证及会话密钥派生:
+ *
+ * 1: master = HMAC-SHA256(secret, clientNonce + serverNonce), 双方随机数保证每个连接的会话密钥不同
+ *
+ * 2: Server证明 = HMAC(master, "server-proof"), Client证明 = HMAC(master, "client-proof"), 密钥不一致则证明校验失败
+ *
+ * 3: 每个方向(client->server, server->client)独立派生AES密钥及4字节IV前缀, 构建{@link TransportCipher}
+ *
+ * @author hanhan.zhang
+ * */
+public class AuthEngine {
+
+    static final int NONCE_LENGTH = 16;
+    static final int IV_PREFIX_LENGTH = 4;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] master;
+    private final int keyLength;
+
+    public AuthEngine(String secret, byte[] clientNonce, byte[] serverNonce, int keyLengthBits) {
+        Preconditions.checkNotNull(secret, "Secret key is not configured (spark.authenticate.secret)");
+        Preconditions.checkArgument(keyLengthBits == 128 || keyLengthBits == 192 || keyLengthBits == 256,
+                "Illegal AES key length: %s", keyLengthBits);
+        byte[] nonces = new byte[clientNonce.length + serverNonce.length];
+        System.arraycopy(clientNonce, 0, nonces, 0, clientNonce.length);
+        System.arraycopy(serverNonce, 0, nonces, clientNonce.length, serverNonce.length);
+        this.master = mac(secret.getBytes(StandardCharsets.UTF_8), nonces);
+        this.keyLength = keyLengthBits / 8;
+    }
+
+    public static byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    public byte[] serverProof() {
+        return derive("server-proof", master.length);
+    }
+
+    public byte[] clientProof() {
+        return derive("client-proof", master.length);
+    }
+
+    public boolean verifyServerProof(byte[] proof) {
+        return MessageDigest.isEqual(serverProof(), proof);
+    }
+
+    public boolean verifyClientProof(byte[] proof) {
+        return MessageDigest.isEqual(clientProof(), proof);
+    }
+
+    /**
+     * @param isClient Client端加密client->server方向数据, 解密server->client方向数据; Server端相反
+     * */
+    public TransportCipher sessionCipher(boolean isClient, int recordSize) {
+        byte[] c2sKey = derive("c2s-key", keyLength);
+        byte[] c2sIv = derive("c2s-iv", IV_PREFIX_LENGTH);
+        byte[] s2cKey = derive("s2c-key", keyLength);
+        byte[] s2cIv = derive("s2c-iv", IV_PREFIX_LENGTH);
+        return isClient ? new TransportCipher(c2sKey, c2sIv, s2cKey, s2cIv, recordSize)
+                        : new TransportCipher(s2cKey, s2cIv, c2sKey, c2sIv, recordSize);
+    }
+
+    private byte[] derive(String label, int length) {
+        return Arrays.copyOf(mac(master, label.getBytes(StandardCharsets.UTF_8)), length);
+    }
+
+    private static byte[] mac(byte[] key, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
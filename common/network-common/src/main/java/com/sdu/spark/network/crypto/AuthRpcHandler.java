@@ -0,0 +1,120 @@
+package com.sdu.spark.network.crypto;
+
+import com.sdu.spark.network.client.RpcResponseCallback;
+import com.sdu.spark.network.client.TransportClient;
+import com.sdu.spark.network.sasl.SecretKeyHolder;
+import com.sdu.spark.network.server.RpcHandler;
+import com.sdu.spark.network.server.StreamManager;
+import com.sdu.spark.network.utils.TransportConf;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Server端认证: 认证完成前只接受认证消息, 认证失败关闭连接; 认证完成后消息交给delegate处理
+ *
+ * 认证应答(明文)写出后安装{@link TransportCipher}, 后续数据均加密传输
+ *
+ * @author hanhan.zhang
+ * */
+public class AuthRpcHandler extends RpcHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuthRpcHandler.class);
+
+    private final TransportConf conf;
+    private final Channel channel;
+    /**
+     * 消息处理代理类
+     * */
+    private final RpcHandler delegate;
+    private final SecretKeyHolder secretKeyHolder;
+
+    /**
+     * 收到ClientChallenge后创建, 认证完成后置空
+     * */
+    private AuthEngine engine;
+    private boolean encrypt;
+    private boolean isComplete;
+
+    public AuthRpcHandler(TransportConf conf, Channel channel, RpcHandler delegate, SecretKeyHolder secretKeyHolder) {
+        this.conf = conf;
+        this.channel = channel;
+        this.delegate = delegate;
+        this.secretKeyHolder = secretKeyHolder;
+        this.isComplete = false;
+    }
+
+    @Override
+    public void receive(TransportClient client, ByteBuffer message, RpcResponseCallback callback) {
+        if (isComplete) {
+            delegate.receive(client, message, callback);
+            return;
+        }
+
+        try {
+            if (engine == null) {
+                ClientChallenge challenge = ClientChallenge.decodeMessage(message);
+                if (conf.encryptionEnabled() && !challenge.encrypt) {
+                    throw new SecurityException("Encryption is required but client does not enable it.");
+                }
+                client.setClientId(challenge.appId);
+                byte[] nonce = AuthEngine.newNonce();
+                engine = new AuthEngine(secretKeyHolder.getSecretKey(challenge.appId), challenge.nonce, nonce,
+                                        conf.cipherKeyLength());
+                encrypt = challenge.encrypt;
+                callback.onSuccess(new ServerResponse(nonce, engine.serverProof()).toByteBuffer());
+            } else {
+                ClientResponse response = ClientResponse.decodeMessage(message);
+                if (!engine.verifyClientProof(response.proof)) {
+                    throw new SecurityException("Client proof mismatch, secret keys differ.");
+                }
+                // 认证应答在EventLoop中同步编码写出(明文), 之后安装加密Handler
+                callback.onSuccess(ByteBuffer.allocate(0));
+                if (encrypt) {
+                    LOGGER.debug("Enabling encryption for channel {}", client);
+                    engine.sessionCipher(false, conf.cipherRecordSize()).addToChannel(channel);
+                }
+                engine = null;
+                isComplete = true;
+                LOGGER.debug("Authentication successful for channel {}", client);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Authentication failed for channel {}", client, e);
+            engine = null;
+            callback.onFailure(e);
+            channel.close();
+        }
+    }
+
+    @Override
+    public void receive(TransportClient client, ByteBuffer message) {
+        if (isComplete) {
+            delegate.receive(client, message);
+        } else {
+            LOGGER.warn("Drop one-way message from unauthenticated channel {}", client);
+            channel.close();
+        }
+    }
+
+    @Override
+    public StreamManager getStreamManager() {
+        return delegate.getStreamManager();
+    }
+
+    @Override
+    public void channelActive(TransportClient client) {
+        delegate.channelActive(client);
+    }
+
+    @Override
+    public void channelInactive(TransportClient client) {
+        delegate.channelInactive(client);
+    }
+
+    @Override
+    public void exceptionCaught(Throwable cause, TransportClient client) {
+        delegate.exceptionCaught(cause, client);
+    }
+}
@@ -7,6 +7,8 @@ import com.sdu.spark.network.utils.TransportConf;
 import io.netty.channel.Channel;
 
 /**
+ * Server端认证引导: 由{@link AuthRpcHandler}完成认证后再交给应用RpcHandler
+ *
  * @author hanhan.zhang
  * */
 public class AuthServerBootstrap implements TransportServerBootstrap {
@@ -21,6 +23,6 @@ public class AuthServerBootstrap implements TransportServerBootstrap {
 
     @Override
     public RpcHandler doBootstrap(Channel channel, RpcHandler handler) {
-        return null;
+        return new AuthRpcHandler(conf, channel, handler, secretKeyHolder);
     }
 }
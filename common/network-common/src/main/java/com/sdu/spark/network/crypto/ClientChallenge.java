@@ -0,0 +1,56 @@
+package com.sdu.spark.network.crypto;
+
+import com.sdu.spark.network.protocol.Encodable;
+import com.sdu.spark.network.protocol.Encoders;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 认证第一步: Client发送appId及随机数nonce, 同时告知Server本端是否开启通道加密
+ *
+ * @author hanhan.zhang
+ * */
+public class ClientChallenge implements Encodable {
+
+    private static final byte TAG_BYTE = (byte) 0xFA;
+
+    public final String appId;
+    public final byte[] nonce;
+    public final boolean encrypt;
+
+    public ClientChallenge(String appId, byte[] nonce, boolean encrypt) {
+        this.appId = appId;
+        this.nonce = nonce;
+        this.encrypt = encrypt;
+    }
+
+    @Override
+    public int encodedLength() {
+        return 1 + Encoders.Strings.encodedLength(appId) + Encoders.ByteArrays.encodedLength(nonce) + 1;
+    }
+
+    @Override
+    public void encode(ByteBuf buf) {
+        buf.writeByte(TAG_BYTE);
+        Encoders.Strings.encode(buf, appId);
+        Encoders.ByteArrays.encode(buf, nonce);
+        buf.writeBoolean(encrypt);
+    }
+
+    public ByteBuffer toByteBuffer() {
+        ByteBuf buf = Unpooled.buffer(encodedLength());
+        encode(buf);
+        return buf.nioBuffer();
+    }
+
+    public static ClientChallenge decodeMessage(ByteBuffer buffer) {
+        ByteBuf buf = Unpooled.wrappedBuffer(buffer);
+        if (buf.readByte() != TAG_BYTE) {
+            throw new IllegalArgumentException("Expected ClientChallenge, received something else"
+                    + " (maybe your client does not have authentication enabled?)");
+        }
+        return new ClientChallenge(Encoders.Strings.decode(buf), Encoders.ByteArrays.decode(buf), buf.readBoolean());
+    }
+}
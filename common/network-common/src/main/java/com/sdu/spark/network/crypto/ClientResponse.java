@@ -0,0 +1,49 @@
+package com.sdu.spark.network.crypto;
+
+import com.sdu.spark.network.protocol.Encodable;
+import com.sdu.spark.network.protocol.Encoders;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 认证第三步: Client返回Client证明, Server校验通过后应答空消息, 认证完成
+ *
+ * @author hanhan.zhang
+ * */
+public class ClientResponse implements Encodable {
+
+    private static final byte TAG_BYTE = (byte) 0xFC;
+
+    public final byte[] proof;
+
+    public ClientResponse(byte[] proof) {
+        this.proof = proof;
+    }
+
+    @Override
+    public int encodedLength() {
+        return 1 + Encoders.ByteArrays.encodedLength(proof);
+    }
+
+    @Override
+    public void encode(ByteBuf buf) {
+        buf.writeByte(TAG_BYTE);
+        Encoders.ByteArrays.encode(buf, proof);
+    }
+
+    public ByteBuffer toByteBuffer() {
+        ByteBuf buf = Unpooled.buffer(encodedLength());
+        encode(buf);
+        return buf.nioBuffer();
+    }
+
+    public static ClientResponse decodeMessage(ByteBuffer buffer) {
+        ByteBuf buf = Unpooled.wrappedBuffer(buffer);
+        if (buf.readByte() != TAG_BYTE) {
+            throw new IllegalArgumentException("Expected ClientResponse, received something else");
+        }
+        return new ClientResponse(Encoders.ByteArrays.decode(buf));
+    }
+}
@@ -0,0 +1,52 @@
+package com.sdu.spark.network.crypto;
+
+import com.sdu.spark.network.protocol.Encodable;
+import com.sdu.spark.network.protocol.Encoders;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 认证第二步: Server返回随机数nonce及Server证明(Client据此校验Server持有相同密钥)
+ *
+ * @author hanhan.zhang
+ * */
+public class ServerResponse implements Encodable {
+
+    private static final byte TAG_BYTE = (byte) 0xFB;
+
+    public final byte[] nonce;
+    public final byte[] proof;
+
+    public ServerResponse(byte[] nonce, byte[] proof) {
+        this.nonce = nonce;
+        this.proof = proof;
+    }
+
+    @Override
+    public int encodedLength() {
+        return 1 + Encoders.ByteArrays.encodedLength(nonce) + Encoders.ByteArrays.encodedLength(proof);
+    }
+
+    @Override
+    public void encode(ByteBuf buf) {
+        buf.writeByte(TAG_BYTE);
+        Encoders.ByteArrays.encode(buf, nonce);
+        Encoders.ByteArrays.encode(buf, proof);
+    }
+
+    public ByteBuffer toByteBuffer() {
+        ByteBuf buf = Unpooled.buffer(encodedLength());
+        encode(buf);
+        return buf.nioBuffer();
+    }
+
+    public static ServerResponse decodeMessage(ByteBuffer buffer) {
+        ByteBuf buf = Unpooled.wrappedBuffer(buffer);
+        if (buf.readByte() != TAG_BYTE) {
+            throw new IllegalArgumentException("Expected ServerResponse, received something else");
+        }
+        return new ServerResponse(Encoders.ByteArrays.decode(buf), Encoders.ByteArrays.decode(buf));
+    }
+}
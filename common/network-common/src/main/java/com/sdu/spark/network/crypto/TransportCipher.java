@@ -0,0 +1,353 @@
+package com.sdu.spark.network.crypto;
+
+import com.google.common.base.Preconditions;
+import com.sdu.spark.network.utils.TransportFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.*;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCountUtil;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+/**
+ * AES-GCM通道加密(认证加密, 无需额外MAC):
+ *
+ * 1: Cipher使用JCE默认Provider(SunJCE), HotSpot对AES/GHASH启用AES-NI/PCLMULQDQ指令intrinsic, 无需引入第三方加密库
+ *
+ * 2: 数据按Record加密, Record格式: CipherLength(4字节) + CipherText(明文 + 16字节GCM Tag), 每个Record明文不超过recordSize
+ *
+ * 3: GCM IV(12字节) = IV前缀(4字节, 会话派生) + Record序号(8字节), 双方按Record顺序递增, IV不在网络上传输
+ *
+ * 内存分配:
+ *
+ *  1: 加密结果直接写入Channel ByteBufAllocator(池化)分配的DirectBuffer, Socket写出时无需再拷贝
+ *
+ *  2: 出站消息({@link io.netty.channel.FileRegion}或ByteBuf)包装为{@link EncryptedMessage}, 在transferTo时按Record
+ *
+ *     流式加密, 文件数据按recordSize分块读入池化缓冲区, 不在内存中汇聚整个文件
+ *
+ * Note:
+ *
+ *  Cipher线程不安全, 加解密均在Channel所属EventLoop执行
+ *
+ * @author hanhan.zhang
+ * */
+public class TransportCipher {
+
+    public static final String ENCRYPTION_HANDLER_NAME = "transportEncryption";
+    public static final String DECRYPTION_HANDLER_NAME = "transportDecryption";
+
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final String KEY_ALGORITHM = "AES";
+    private static final int TAG_LENGTH = 16;
+    private static final int LENGTH_SIZE = 4;
+    /**
+     * 单个Record密文最大长度, 防止异常数据导致分配超大缓冲区
+     * */
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final SecretKeySpec encKey;
+    private final byte[] encIvPrefix;
+    private final SecretKeySpec decKey;
+    private final byte[] decIvPrefix;
+    private final int recordSize;
+
+    public TransportCipher(byte[] encKey, byte[] encIvPrefix, byte[] decKey, byte[] decIvPrefix, int recordSize) {
+        Preconditions.checkArgument(recordSize > 0 && recordSize + TAG_LENGTH <= MAX_RECORD_SIZE,
+                "Illegal record size: %s", recordSize);
+        this.encKey = new SecretKeySpec(encKey, KEY_ALGORITHM);
+        this.encIvPrefix = encIvPrefix;
+        this.decKey = new SecretKeySpec(decKey, KEY_ALGORITHM);
+        this.decIvPrefix = decIvPrefix;
+        this.recordSize = recordSize;
+    }
+
+    /**
+     * 加密Handler位于处理链头部(出站最后处理), 解密Handler位于{@link TransportFrameDecoder}之前
+     * */
+    public void addToChannel(Channel ch) throws GeneralSecurityException {
+        ch.pipeline()
+          .addFirst(ENCRYPTION_HANDLER_NAME, new EncryptionHandler(newCipher(), encIvPrefix, encKey, recordSize))
+          .addBefore(TransportFrameDecoder.HANDLER_NAME, DECRYPTION_HANDLER_NAME,
+                     new DecryptionHandler(newCipher(), decIvPrefix, decKey));
+    }
+
+    private static Cipher newCipher() throws GeneralSecurityException {
+        return Cipher.getInstance(CIPHER_ALGORITHM);
+    }
+
+    private static GCMParameterSpec nextIv(byte[] ivPrefix, long counter) {
+        byte[] iv = ByteBuffer.allocate(ivPrefix.length + 8).put(ivPrefix).putLong(counter).array();
+        return new GCMParameterSpec(TAG_LENGTH * 8, iv);
+    }
+
+    /**
+     * 加密后消息总长度
+     * */
+    static long encryptedLength(long plainLength, int recordSize) {
+        long records = (plainLength + recordSize - 1) / recordSize;
+        return plainLength + records * (LENGTH_SIZE + TAG_LENGTH);
+    }
+
+    static class EncryptionHandler extends ChannelOutboundHandlerAdapter {
+
+        private final Cipher cipher;
+        private final byte[] ivPrefix;
+        private final SecretKeySpec key;
+        private final int recordSize;
+        /**
+         * Record序号
+         * */
+        private long counter = 0;
+
+        EncryptionHandler(Cipher cipher, byte[] ivPrefix, SecretKeySpec key, int recordSize) {
+            this.cipher = cipher;
+            this.ivPrefix = ivPrefix;
+            this.key = key;
+            this.recordSize = recordSize;
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof ByteBuf || msg instanceof FileRegion) {
+                ctx.write(new EncryptedMessage(this, ctx.alloc(), msg), promise);
+            } else {
+                ctx.write(msg, promise);
+            }
+        }
+
+        /**
+         * 加密单个Record: 明文直接由nioBuffer读取, 密文写入池化DirectBuffer
+         * */
+        ByteBuf encryptRecord(ByteBufAllocator alloc, ByteBuffer plain) throws GeneralSecurityException {
+            int cipherLength = plain.remaining() + TAG_LENGTH;
+            ByteBuf record = alloc.directBuffer(LENGTH_SIZE + cipherLength);
+            try {
+                record.writeInt(cipherLength);
+                cipher.init(Cipher.ENCRYPT_MODE, key, nextIv(ivPrefix, counter++));
+                int written = cipher.doFinal(plain, record.nioBuffer(LENGTH_SIZE, cipherLength));
+                record.writerIndex(LENGTH_SIZE + written);
+                return record;
+            } catch (GeneralSecurityException | RuntimeException e) {
+                record.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 出站消息加密包装, 网络写出时按Record流式加密
+     * */
+    static class EncryptedMessage extends AbstractReferenceCounted implements FileRegion {
+
+        private final EncryptionHandler handler;
+        private final ByteBufAllocator alloc;
+        /**
+         * 原始消息: ByteBuf或FileRegion
+         * */
+        private final Object msg;
+        private final ByteBuf buf;
+        private final FileRegion region;
+        private final long count;
+        private long plainRemaining;
+        private long regionTransferred;
+
+        /**
+         * 当前待写出的密文Record
+         * */
+        private ByteBuf currentRecord;
+        /**
+         * FileRegion明文读取缓冲区
+         * */
+        private ByteBuf plainBuf;
+        private long transferred;
+
+        EncryptedMessage(EncryptionHandler handler, ByteBufAllocator alloc, Object msg) {
+            this.handler = handler;
+            this.alloc = alloc;
+            this.msg = msg;
+            this.buf = msg instanceof ByteBuf ? (ByteBuf) msg : null;
+            this.region = msg instanceof FileRegion ? (FileRegion) msg : null;
+            this.plainRemaining = buf != null ? buf.readableBytes() : region.count() - region.transfered();
+            this.regionTransferred = region != null ? region.transfered() : 0;
+            this.count = encryptedLength(plainRemaining, handler.recordSize);
+        }
+
+        @Override
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public long position() {
+            return 0;
+        }
+
+        @Override
+        public long transfered() {
+            return transferred;
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target, long position) throws IOException {
+            Preconditions.checkArgument(position == transferred, "Invalid position.");
+
+            long written = 0;
+            while (true) {
+                if (currentRecord == null || !currentRecord.isReadable()) {
+                    if (plainRemaining == 0) {
+                        break;
+                    }
+                    releaseRecord();
+                    currentRecord = nextRecord();
+                }
+                int n = target.write(currentRecord.nioBuffer());
+                currentRecord.skipBytes(n);
+                written += n;
+                if (currentRecord.isReadable()) {
+                    // Socket发送缓冲区已满
+                    break;
+                }
+            }
+            if (plainRemaining == 0 && currentRecord != null && !currentRecord.isReadable()) {
+                releaseRecord();
+            }
+            transferred += written;
+            return written;
+        }
+
+        private ByteBuf nextRecord() throws IOException {
+            int plainLength = (int) Math.min(handler.recordSize, plainRemaining);
+            ByteBuffer plain;
+            if (buf != null) {
+                plain = buf.nioBuffer(buf.readerIndex(), plainLength);
+                buf.skipBytes(plainLength);
+            } else {
+                if (plainBuf == null) {
+                    plainBuf = alloc.directBuffer(handler.recordSize);
+                }
+                plainBuf.clear();
+                ByteBufWritableChannel channel = new ByteBufWritableChannel(plainBuf, plainLength);
+                while (plainBuf.writerIndex() < plainLength) {
+                    long n = region.transferTo(channel, regionTransferred);
+                    if (n <= 0) {
+                        throw new IOException("FileRegion ended before all data was transferred.");
+                    }
+                    regionTransferred += n;
+                }
+                plain = plainBuf.nioBuffer(0, plainLength);
+            }
+            plainRemaining -= plainLength;
+
+            try {
+                return handler.encryptRecord(alloc, plain);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private void releaseRecord() {
+            if (currentRecord != null) {
+                currentRecord.release();
+                currentRecord = null;
+            }
+        }
+
+        @Override
+        protected void deallocate() {
+            releaseRecord();
+            if (plainBuf != null) {
+                plainBuf.release();
+                plainBuf = null;
+            }
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    /**
+     * 将FileRegion数据写入ByteBuf, 最多写入limit字节
+     * */
+    private static class ByteBufWritableChannel implements WritableByteChannel {
+
+        private final ByteBuf buf;
+        private final int limit;
+
+        ByteBufWritableChannel(ByteBuf buf, int limit) {
+            this.buf = buf;
+            this.limit = limit;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = Math.min(src.remaining(), limit - buf.writerIndex());
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + length);
+            buf.writeBytes(slice);
+            src.position(src.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+
+    /**
+     * 按Record解密, 明文写入池化DirectBuffer交给{@link TransportFrameDecoder}
+     * */
+    static class DecryptionHandler extends ByteToMessageDecoder {
+
+        private final Cipher cipher;
+        private final byte[] ivPrefix;
+        private final SecretKeySpec key;
+        private long counter = 0;
+
+        DecryptionHandler(Cipher cipher, byte[] ivPrefix, SecretKeySpec key) {
+            this.cipher = cipher;
+            this.ivPrefix = ivPrefix;
+            this.key = key;
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+            while (in.readableBytes() >= LENGTH_SIZE) {
+                int cipherLength = in.getInt(in.readerIndex());
+                if (cipherLength < TAG_LENGTH || cipherLength > MAX_RECORD_SIZE) {
+                    throw new IllegalStateException("Illegal encrypted record size: " + cipherLength);
+                }
+                if (in.readableBytes() < LENGTH_SIZE + cipherLength) {
+                    return;
+                }
+
+                int plainLength = cipherLength - TAG_LENGTH;
+                ByteBuf plain = ctx.alloc().directBuffer(Math.max(plainLength, 1));
+                try {
+                    cipher.init(Cipher.DECRYPT_MODE, key, nextIv(ivPrefix, counter++));
+                    int n = cipher.doFinal(in.nioBuffer(in.readerIndex() + LENGTH_SIZE, cipherLength),
+                                           plain.nioBuffer(0, plainLength));
+                    plain.writerIndex(n);
+                } catch (GeneralSecurityException | RuntimeException e) {
+                    plain.release();
+                    throw e;
+                }
+                in.skipBytes(LENGTH_SIZE + cipherLength);
+                out.add(plain);
+            }
+        }
+    }
+}
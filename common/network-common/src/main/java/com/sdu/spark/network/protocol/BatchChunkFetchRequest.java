@@ -0,0 +1,83 @@
+package com.sdu.spark.network.protocol;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+
+import java.util.List;
+
+/**
+ * 批量数据块请求: 一个Frame携带多个{@link StreamChunkId}, 服务端逐个以{@link ChunkFetchSuccess}/{@link ChunkFetchFailure}
+ *
+ * 响应(一次flush), 客户端仍按StreamChunkId匹配响应
+ *
+ * 编码格式: chunkNum(4字节) + StreamChunkId * chunkNum
+ *
+ * @author hanhan.zhang
+ * */
+public class BatchChunkFetchRequest extends AbstractMessage implements RequestMessage {
+
+    private static final int STREAM_CHUNK_ID_LENGTH = new StreamChunkId(0, 0).encodedLength();
+
+    public final List<StreamChunkId> streamChunkIds;
+
+    public BatchChunkFetchRequest(List<StreamChunkId> streamChunkIds) {
+        this.streamChunkIds = streamChunkIds;
+    }
+
+    @Override
+    public int encodedLength() {
+        int length = 4;
+        for (StreamChunkId streamChunkId : streamChunkIds) {
+            length += streamChunkId.encodedLength();
+        }
+        return length;
+    }
+
+    @Override
+    public void encode(ByteBuf buf) {
+        buf.writeInt(streamChunkIds.size());
+        for (StreamChunkId streamChunkId : streamChunkIds) {
+            streamChunkId.encode(buf);
+        }
+    }
+
+    public static BatchChunkFetchRequest decode(ByteBuf buf) {
+        int chunkNum = buf.readInt();
+        // 数据块数来自网络, 需校验后再分配列表
+        Preconditions.checkArgument(chunkNum >= 0 && (long) chunkNum * STREAM_CHUNK_ID_LENGTH <= buf.readableBytes(),
+                "Invalid chunk number %s (readable bytes = %s)", chunkNum, buf.readableBytes());
+        List<StreamChunkId> streamChunkIds = Lists.newArrayListWithCapacity(chunkNum);
+        for (int i = 0; i < chunkNum; ++i) {
+            streamChunkIds.add(StreamChunkId.decode(buf));
+        }
+        return new BatchChunkFetchRequest(streamChunkIds);
+    }
+
+    @Override
+    public Type type() {
+        return Type.BatchChunkFetchRequest;
+    }
+
+    @Override
+    public int hashCode() {
+        return streamChunkIds.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof BatchChunkFetchRequest) {
+            BatchChunkFetchRequest o = (BatchChunkFetchRequest) other;
+            return streamChunkIds.equals(o.streamChunkIds);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("streamChunkIds", streamChunkIds)
+                .toString();
+    }
+}
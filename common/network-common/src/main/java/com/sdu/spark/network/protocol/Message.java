@@ -24,7 +24,7 @@ public interface Message extends Encodable {
         ChunkFetchRequest(0), ChunkFetchSuccess(1), ChunkFetchFailure(2),
         RpcRequest(3), RpcResponse(4), RpcFailure(5),
         StreamRequest(6), StreamResponse(7), StreamFailure(8),
-        OneWayMessage(9), User(-1);
+        OneWayMessage(9), BatchChunkFetchRequest(10), User(-1);
 
         private final byte id;
 
@@ -46,14 +46,28 @@ public interface Message extends Encodable {
         public static Type decode(ByteBuf buf) {
             byte id = buf.readByte();
             switch (id) {
+                case 0:
+                    return ChunkFetchRequest;
+                case 1:
+                    return ChunkFetchSuccess;
+                case 2:
+                    return ChunkFetchFailure;
                 case 3:
                     return RpcRequest;
                 case 4:
                     return RpcResponse;
                 case 5:
                     return RpcFailure;
+                case 6:
+                    return StreamRequest;
+                case 7:
+                    return StreamResponse;
+                case 8:
+                    return StreamFailure;
                 case 9:
                     return OneWayMessage;
+                case 10:
+                    return BatchChunkFetchRequest;
                 default:
                     throw new IllegalArgumentException("Unknown message type: " + id);
             }
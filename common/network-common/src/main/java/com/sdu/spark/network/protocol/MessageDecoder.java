@@ -34,6 +34,14 @@ public class MessageDecoder extends MessageToMessageDecoder<ByteBuf> {
 
     private Message decode(Message.Type msgType, ByteBuf in) {
         switch (msgType) {
+            case ChunkFetchRequest:
+                return ChunkFetchRequest.decode(in);
+            case BatchChunkFetchRequest:
+                return BatchChunkFetchRequest.decode(in);
+            case ChunkFetchSuccess:
+                return ChunkFetchSuccess.decode(in);
+            case ChunkFetchFailure:
+                return ChunkFetchFailure.decode(in);
             case RpcRequest:
                 return RpcRequest.decode(in);
             case RpcResponse:
@@ -42,6 +50,12 @@ public class MessageDecoder extends MessageToMessageDecoder<ByteBuf> {
                 return RpcFailure.decode(in);
             case OneWayMessage:
                 return OneWayMessage.decode(in);
+            case StreamRequest:
+                return StreamRequest.decode(in);
+            case StreamResponse:
+                return StreamResponse.decode(in);
+            case StreamFailure:
+                return StreamFailure.decode(in);
             default:
                 throw new IllegalArgumentException("Unexpected message type: " + msgType);
         }
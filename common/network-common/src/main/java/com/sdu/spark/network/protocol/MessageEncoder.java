@@ -74,7 +74,7 @@ public class MessageEncoder extends MessageToMessageEncoder<Message> {
         if(body != null) {
             out.add(new MessageWithHeader(in.body(), header, body, bodyLength));
         } else {
-            out.add(body);
+            out.add(header);
         }
     }
 }
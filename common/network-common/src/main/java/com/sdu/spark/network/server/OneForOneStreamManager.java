@@ -81,7 +81,7 @@ public class OneForOneStreamManager implements StreamManager {
 
     @Override
     public void registerChannel(Channel channel, long streamId) {
-        if (!streams.containsKey(streamId)) {
+        if (streams.containsKey(streamId)) {
             streams.get(streamId).associatedChannel = channel;
         }
     }
@@ -22,8 +22,9 @@ import static com.sdu.spark.network.utils.NettyUtils.getRemoteAddress;
  *
  *  1: {@link RpcRequest}
  *
- *  2: {@link ChunkFetchRequest}
- *  
+ *  2: {@link ChunkFetchRequest}, {@link BatchChunkFetchRequest}
+ *
+ *
  *  3: {@link StreamRequest}
  *
  * @author hanhan.zhang
@@ -55,6 +56,8 @@ public class TransportRequestHandler extends MessageHandler<RequestMessage> {
     public void handle(RequestMessage message) throws Exception {
         if (message instanceof ChunkFetchRequest) {
             processFetchRequest((ChunkFetchRequest) message);
+        } else if (message instanceof BatchChunkFetchRequest) {
+            processBatchFetchRequest((BatchChunkFetchRequest) message);
         } else if (message instanceof RpcRequest) {
             processRpcRequest((RpcRequest) message);
         } else if (message instanceof OneWayMessage) {
@@ -90,30 +93,60 @@ public class TransportRequestHandler extends MessageHandler<RequestMessage> {
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("Received req from {} to fetch block {}", getRemoteAddress(channel), req.streamChunkId);
         }
+        if (exceedsMaxChunksBeingTransferred(1)) {
+            return;
+        }
+        respondChunk(req.streamChunkId, true);
+    }
+
+    /**
+     * 批量数据块请求: 逐个写出ChunkFetchSuccess/ChunkFetchFailure, 最后一次flush
+     * */
+    private void processBatchFetchRequest(BatchChunkFetchRequest req) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Received req from {} to fetch {} blocks", getRemoteAddress(channel),
+                    req.streamChunkIds.size());
+        }
+        if (exceedsMaxChunksBeingTransferred(req.streamChunkIds.size())) {
+            return;
+        }
+        for (StreamChunkId streamChunkId : req.streamChunkIds) {
+            respondChunk(streamChunkId, false);
+        }
+        channel.flush();
+    }
+
+    /**
+     * @param numChunks 本次请求数据块数(批量请求整批计入)
+     * */
+    private boolean exceedsMaxChunksBeingTransferred(int numChunks) {
         long chunksBeingTransferred = streamManager.chunksBeingTransferred();
-        if (chunksBeingTransferred >= maxChunksBeingTransferred) {
-            LOGGER.warn("The number of chunks being transferred {} is above {}, close the connection.",
-                    chunksBeingTransferred, maxChunksBeingTransferred);
+        if (chunksBeingTransferred + numChunks > maxChunksBeingTransferred) {
+            LOGGER.warn("The number of chunks being transferred {} plus {} requested is above {}, close the connection.",
+                    chunksBeingTransferred, numChunks, maxChunksBeingTransferred);
             channel.close();
-            return;
+            return true;
         }
+        return false;
+    }
+
+    private void respondChunk(StreamChunkId streamChunkId, boolean flush) {
         ManagedBuffer buf;
         try {
-            streamManager.checkAuthorization(reverseClient, req.streamChunkId.streamId);
-            streamManager.registerChannel(channel, req.streamChunkId.streamId);
-            buf = streamManager.getChunk(req.streamChunkId.streamId, req.streamChunkId.chunkIndex);
+            streamManager.checkAuthorization(reverseClient, streamChunkId.streamId);
+            streamManager.registerChannel(channel, streamChunkId.streamId);
+            buf = streamManager.getChunk(streamChunkId.streamId, streamChunkId.chunkIndex);
         } catch (Exception e) {
             LOGGER.error(String.format("Error opening block %s for request from %s",
-                    req.streamChunkId, getRemoteAddress(channel)), e);
-            respond(new ChunkFetchFailure(req.streamChunkId, Throwables.getStackTraceAsString(e)));
+                    streamChunkId, getRemoteAddress(channel)), e);
+            respond(new ChunkFetchFailure(streamChunkId, Throwables.getStackTraceAsString(e)), flush);
             return;
         }
 
-        streamManager.chunkBeingSent(req.streamChunkId.streamId);
-        respond(new ChunkFetchSuccess(req.streamChunkId, buf)).addListener(future -> {
-            streamManager.chunkSent(req.streamChunkId.streamId);
+        streamManager.chunkBeingSent(streamChunkId.streamId);
+        respond(new ChunkFetchSuccess(streamChunkId, buf), flush).addListener(future -> {
+            streamManager.chunkSent(streamChunkId.streamId);
         });
-
     }
 
     private void processRpcRequest(RpcRequest req) {
@@ -186,8 +219,13 @@ public class TransportRequestHandler extends MessageHandler<RequestMessage> {
      * 响应Rpc请求
      * */
     private ChannelFuture respond(Encodable result) {
+        return respond(result, true);
+    }
+
+    private ChannelFuture respond(Encodable result, boolean flush) {
         SocketAddress remoteAddress = channel.remoteAddress();
-        return channel.writeAndFlush(result).addListener(future -> {
+        ChannelFuture channelFuture = flush ? channel.writeAndFlush(result) : channel.write(result);
+        return channelFuture.addListener(future -> {
             if (future.isSuccess()) {
                 LOGGER.trace("Sent result {} to client {}", result, remoteAddress);
             } else {
@@ -6,13 +6,15 @@ import com.sdu.spark.network.TransportContext;
 import com.sdu.spark.network.utils.IOModel;
 import com.sdu.spark.network.utils.JavaUtils;
 import com.sdu.spark.network.utils.NettyUtils;
+import com.sdu.spark.network.utils.TransportByteBufAllocator;
 import com.sdu.spark.network.utils.TransportConf;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
 import io.netty.channel.socket.SocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +41,10 @@ public class TransportServer implements Closeable {
 
     private ServerBootstrap bootstrap;
     private ChannelFuture channelFuture;
+    /**
+     * SO_REUSEPORT时监听同一端口的其他Server Channel
+     * */
+    private List<ChannelFuture> reusePortFutures = Lists.newArrayList();
     private int port = -1;
 
     public TransportServer(TransportContext context, String hostToBind, int portToBind, RpcHandler appRpcHandler, List<TransportServerBootstrap> serverBootstraps) {
@@ -56,14 +62,16 @@ public class TransportServer implements Closeable {
     }
 
     private void init(String hostToBind, int portToBind) {
-        IOModel ioModel = IOModel.convert(conf.ioModel());
-        EventLoopGroup bossGroup =
-                NettyUtils.createEventLoop(ioModel, conf.serverThreads(), conf.getModuleName() + "-server");
+        IOModel ioModel = IOModel.convert(conf.ioModel()).resolve();
+        EventLoopGroup bossGroup = NettyUtils.createEventLoop(ioModel, conf.serverThreads(),
+                conf.getModuleName() + "-server", conf.epollBusyPoll());
         EventLoopGroup workerGroup = bossGroup;
+        TransportByteBufAllocator allocator = context.getAllocator();
 
         bootstrap = new ServerBootstrap().group(bossGroup, workerGroup)
                 .channel(NettyUtils.getServerChannelClass(ioModel))
-                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+                .option(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.ALLOCATOR, allocator);
 
         if (conf.backLog() > 0) {
             bootstrap.option(ChannelOption.SO_BACKLOG, conf.backLog());
@@ -77,6 +85,17 @@ public class TransportServer implements Closeable {
             bootstrap.childOption(ChannelOption.SO_SNDBUF, conf.sendBuf());
         }
 
+        boolean reusePort = ioModel == IOModel.EPOLL && conf.epollReusePort();
+        if (ioModel == IOModel.EPOLL) {
+            EpollMode epollMode = conf.epollEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode)
+                     .childOption(EpollChannelOption.EPOLL_MODE, epollMode)
+                     .childOption(EpollChannelOption.TCP_QUICKACK, conf.epollQuickAck());
+            if (reusePort) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+        }
+
         bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) throws Exception {
@@ -96,7 +115,26 @@ public class TransportServer implements Closeable {
         channelFuture.syncUninterruptibly();
 
         port = ((InetSocketAddress) channelFuture.channel().localAddress()).getPort();
-        LOGGER.debug("Shuffle server started on port: {}", port);
+
+        if (reusePort) {
+            // 其余Server Channel绑定同一端口, 由EventLoopGroup轮询分配到不同EventLoop
+            InetSocketAddress boundAddress = hostToBind == null ?
+                    new InetSocketAddress(port) : new InetSocketAddress(hostToBind, port);
+            for (int i = 1; i < conf.epollAcceptorThreads(); ++i) {
+                ChannelFuture future = bootstrap.bind(boundAddress);
+                future.syncUninterruptibly();
+                reusePortFutures.add(future);
+            }
+        }
+        LOGGER.debug("{} server started on port: {}, io mode: {}, acceptors: {}", conf.getModuleName(), port,
+                ioModel, reusePortFutures.size() + 1);
+    }
+
+    /**
+     * 监听端口的Server Channel数
+     * */
+    public int numAcceptors() {
+        return channelFuture == null ? 0 : reusePortFutures.size() + 1;
     }
 
     public int getPort() {
@@ -111,6 +149,10 @@ public class TransportServer implements Closeable {
             channelFuture.channel().close().awaitUninterruptibly(10, TimeUnit.SECONDS);
             channelFuture = null;
         }
+        for (ChannelFuture future : reusePortFutures) {
+            future.channel().close().awaitUninterruptibly(10, TimeUnit.SECONDS);
+        }
+        reusePortFutures.clear();
         if (bootstrap != null && bootstrap.group() != null) {
             bootstrap.group().shutdownGracefully();
         }
@@ -0,0 +1,47 @@
+package com.sdu.spark.network.utils;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * 模块池化内存分配统计快照
+ *
+ * @author hanhan.zhang
+ * */
+public class AllocatorMetrics {
+
+    public final String module;
+    // 堆内及堆外Arena数
+    public final int numHeapArenas;
+    public final int numDirectArenas;
+    // 线程本地缓存数
+    public final int numThreadLocalCaches;
+    // Arena已占用的堆内及堆外内存(按Chunk统计, 包含Huge分配)
+    public final long usedHeapMemory;
+    public final long usedDirectMemory;
+    // 未释放的ByteBuf数
+    public final long activeAllocations;
+
+    public AllocatorMetrics(String module, int numHeapArenas, int numDirectArenas, int numThreadLocalCaches,
+                            long usedHeapMemory, long usedDirectMemory, long activeAllocations) {
+        this.module = module;
+        this.numHeapArenas = numHeapArenas;
+        this.numDirectArenas = numDirectArenas;
+        this.numThreadLocalCaches = numThreadLocalCaches;
+        this.usedHeapMemory = usedHeapMemory;
+        this.usedDirectMemory = usedDirectMemory;
+        this.activeAllocations = activeAllocations;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("module", module)
+                          .add("numHeapArenas", numHeapArenas)
+                          .add("numDirectArenas", numDirectArenas)
+                          .add("numThreadLocalCaches", numThreadLocalCaches)
+                          .add("usedHeapMemory", usedHeapMemory)
+                          .add("usedDirectMemory", usedDirectMemory)
+                          .add("activeAllocations", activeAllocations)
+                          .toString();
+    }
+}
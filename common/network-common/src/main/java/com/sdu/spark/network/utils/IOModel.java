@@ -1,23 +1,50 @@
 package com.sdu.spark.network.utils;
 
 import com.google.common.base.Strings;
+import io.netty.channel.epoll.Epoll;
 
 /**
+ * 网络IO模型:
+ *
+ * 1: NIO: JDK Selector
+ *
+ * 2: EPOLL: Netty Native Epoll(仅Linux), 不可用时抛出异常
+ *
+ * 3: AUTO: Epoll可用时选择EPOLL, 否则选择NIO
+ *
  * @author hanhan.zhang
  * */
 public enum IOModel {
 
-    NIO, EPOLL;
+    NIO, EPOLL, AUTO;
 
+    /**
+     * 配置名不区分大小写, 未配置时为AUTO, 未知配置抛出IllegalArgumentException
+     * */
     public static IOModel convert(String name) {
         if (Strings.isNullOrEmpty(name)) {
-            return NIO;
+            return AUTO;
         }
         for (IOModel model : IOModel.values()) {
-            if (model.name().equals(name)) {
+            if (model.name().equalsIgnoreCase(name.trim())) {
                 return model;
             }
         }
-        return NIO;
+        throw new IllegalArgumentException("Unknown io mode: " + name);
+    }
+
+    /**
+     * 确定实际使用的IO模型(NIO或EPOLL)
+     * */
+    public IOModel resolve() {
+        switch (this) {
+            case AUTO:
+                return Epoll.isAvailable() ? EPOLL : NIO;
+            case EPOLL:
+                Epoll.ensureAvailability();
+                return EPOLL;
+            default:
+                return this;
+        }
     }
 }
@@ -1,7 +1,10 @@
 package com.sdu.spark.network.utils;
 
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SelectStrategyFactory;
 import io.netty.channel.ServerChannel;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerSocketChannel;
@@ -12,6 +15,7 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.net.InetAddress;
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 
 
@@ -20,6 +24,11 @@ import java.util.concurrent.ThreadFactory;
  * */
 public class NettyUtils {
 
+    /**
+     * 忙轮询: 始终以非阻塞方式(epoll_wait超时为0)检查就绪事件
+     * */
+    private static final SelectStrategyFactory BUSY_POLL_STRATEGY = () -> (selectSupplier, hasTasks) -> selectSupplier.get();
+
     public static String getIpV4() {
         try {
             return InetAddress.getLocalHost().getHostAddress();
@@ -40,12 +49,22 @@ public class NettyUtils {
     }
 
     public static EventLoopGroup createEventLoop(IOModel mode, int numThreads, String threadPrefix) {
+        return createEventLoop(mode, numThreads, threadPrefix, false);
+    }
+
+    /**
+     * @param busyPoll EPOLL模型下EventLoop不阻塞于epoll_wait(NIO模型忽略)
+     * */
+    public static EventLoopGroup createEventLoop(IOModel mode, int numThreads, String threadPrefix, boolean busyPoll) {
         ThreadFactory threadFactory = createThreadFactory(threadPrefix);
 
-        switch (mode) {
+        switch (mode.resolve()) {
             case NIO:
                 return new NioEventLoopGroup(numThreads, threadFactory);
             case EPOLL:
+                if (busyPoll) {
+                    return new EpollEventLoopGroup(numThreads, threadFactory, BUSY_POLL_STRATEGY);
+                }
                 return new EpollEventLoopGroup(numThreads, threadFactory);
             default:
                 throw new IllegalArgumentException("Unknown io mode: " + mode);
@@ -53,7 +72,7 @@ public class NettyUtils {
     }
 
     public static Class<? extends ServerChannel> getServerChannelClass(IOModel mode) {
-        switch (mode) {
+        switch (mode.resolve()) {
             case NIO:
                 return NioServerSocketChannel.class;
             case EPOLL:
@@ -64,7 +83,7 @@ public class NettyUtils {
     }
 
     public static Class<? extends Channel> getClientChannelClass(IOModel mode) {
-        switch (mode) {
+        switch (mode.resolve()) {
             case NIO:
                 return NioSocketChannel.class;
             case EPOLL:
@@ -74,4 +93,70 @@ public class NettyUtils {
         }
     }
 
+    /**
+     * 创建池化内存分配器:
+     *
+     * 1: Arena数(堆内及堆外)取numArenas, 默认Arena数为2 * CPU核数, 而每个Arena至少占用一个Chunk(16MB)
+     *
+     * 2: allowDirectBufs = false时不创建堆外Arena
+     * */
+    public static PooledByteBufAllocator createPooledByteBufAllocator(boolean allowDirectBufs,
+                                                                      int numArenas,
+                                                                      int tinyCacheSize,
+                                                                      int smallCacheSize,
+                                                                      int normalCacheSize) {
+        if (numArenas <= 0) {
+            numArenas = Runtime.getRuntime().availableProcessors();
+        }
+        boolean preferDirect = allowDirectBufs && PooledByteBufAllocator.defaultNumDirectArena() > 0;
+        return new PooledByteBufAllocator(preferDirect,
+                                          Math.min(PooledByteBufAllocator.defaultNumHeapArena(), numArenas),
+                                          preferDirect ? Math.min(PooledByteBufAllocator.defaultNumDirectArena(), numArenas) : 0,
+                                          PooledByteBufAllocator.defaultPageSize(),
+                                          PooledByteBufAllocator.defaultMaxOrder(),
+                                          tinyCacheSize,
+                                          smallCacheSize,
+                                          normalCacheSize);
+    }
+
+    /**
+     * 按{@link TransportConf}创建内存分配器, 由{@link com.sdu.spark.network.TransportContext}持有,
+     *
+     * 同一TransportContext创建的TransportServer及TransportClientFactory共用Arena
+     * */
+    public static TransportByteBufAllocator createByteBufAllocator(TransportConf conf) {
+        PooledByteBufAllocator pooled = createPooledByteBufAllocator(conf.preferDirectBufs(),
+                                                                     conf.allocatorArenas(),
+                                                                     conf.allocatorTinyCacheSize(),
+                                                                     conf.allocatorSmallCacheSize(),
+                                                                     conf.allocatorNormalCacheSize());
+        return new TransportByteBufAllocator(pooled, conf.allocatorCacheForAllThreads());
+    }
+
+    public static AllocatorMetrics allocatorMetrics(String module, PooledByteBufAllocator allocator) {
+        return new AllocatorMetrics(module,
+                                    allocator.numHeapArenas(),
+                                    allocator.numDirectArenas(),
+                                    allocator.numThreadLocalCaches(),
+                                    activeBytes(allocator.heapArenas()),
+                                    activeBytes(allocator.directArenas()),
+                                    activeAllocations(allocator.heapArenas()) + activeAllocations(allocator.directArenas()));
+    }
+
+    private static long activeBytes(List<PoolArenaMetric> arenas) {
+        long bytes = 0;
+        for (PoolArenaMetric arena : arenas) {
+            bytes += arena.numActiveBytes();
+        }
+        return bytes;
+    }
+
+    private static long activeAllocations(List<PoolArenaMetric> arenas) {
+        long allocations = 0;
+        for (PoolArenaMetric arena : arenas) {
+            allocations += arena.numActiveAllocations();
+        }
+        return allocations;
+    }
+
 }
@@ -0,0 +1,67 @@
+package com.sdu.spark.network.utils;
+
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.concurrent.FastThreadLocalThread;
+
+/**
+ * 模块内存分配器:
+ *
+ * 1: EventLoop线程(FastThreadLocalThread)从{@link PooledByteBufAllocator}分配, 使用线程本地缓存
+ *
+ * 2: cacheForAllThreads = false时, 非EventLoop线程不使用池化内存(不绑定Arena, 不创建线程本地缓存), 避免业务线程
+ *
+ *    的线程本地缓存长期占用内存
+ *
+ * Note:
+ *
+ *  Netty 4.0.43的useCacheForAllThreads = false在非FastThreadLocalThread创建空缓存时抛出IllegalArgumentException,
+ *
+ *  因此在分配器外层按线程类型区分
+ *
+ * @author hanhan.zhang
+ * */
+public class TransportByteBufAllocator extends AbstractByteBufAllocator {
+
+    private final PooledByteBufAllocator pooled;
+    private final UnpooledByteBufAllocator unpooled;
+    private final boolean cacheForAllThreads;
+
+    public TransportByteBufAllocator(PooledByteBufAllocator pooled, boolean cacheForAllThreads) {
+        super(pooled.isDirectBufferPooled());
+        this.pooled = pooled;
+        this.unpooled = new UnpooledByteBufAllocator(pooled.isDirectBufferPooled());
+        this.cacheForAllThreads = cacheForAllThreads;
+    }
+
+    private boolean usePool() {
+        return cacheForAllThreads || Thread.currentThread() instanceof FastThreadLocalThread;
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        return usePool() ? pooled.heapBuffer(initialCapacity, maxCapacity)
+                         : unpooled.heapBuffer(initialCapacity, maxCapacity);
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        return usePool() ? pooled.directBuffer(initialCapacity, maxCapacity)
+                         : unpooled.directBuffer(initialCapacity, maxCapacity);
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return pooled.isDirectBufferPooled();
+    }
+
+    public PooledByteBufAllocator pooled() {
+        return pooled;
+    }
+
+    public boolean cacheForAllThreads() {
+        return cacheForAllThreads;
+    }
+}
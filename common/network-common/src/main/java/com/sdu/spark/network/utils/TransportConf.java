@@ -2,6 +2,7 @@ package com.sdu.spark.network.utils;
 
 import com.google.common.collect.Maps;
 import com.google.common.primitives.Ints;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.apache.commons.lang3.math.NumberUtils;
 
 import java.util.Map;
@@ -13,7 +14,7 @@ import static com.sdu.spark.network.utils.JavaUtils.timeStringAsSec;
  * */
 public class TransportConf {
     /**
-     * IO模型[NIO, EPOLL]
+     * IO模型[NIO, EPOLL, AUTO]
      * */
     public static final String SPARK_NETWORK_IO_MODE_KEY = "io.model";
     /**
@@ -49,6 +50,70 @@ public class TransportConf {
      * */
     public static final String SPARK_NETWORK_IO_RETRYWAIT_KEY = "io.retryWait";
     public static final String SPARK_NETWORK_IO_LAZYFD_KEY = "io.lazyFD";
+    /**
+     * 是否优先分配堆外内存
+     * */
+    public static final String SPARK_NETWORK_IO_PREFER_DIRECT_BUFS_KEY = "io.preferDirectBufs";
+    /**
+     * 池化内存Arena数(默认取模块IO线程数)
+     * */
+    public static final String SPARK_NETWORK_IO_ALLOCATOR_ARENAS_KEY = "io.allocator.numArenas";
+    /**
+     * 线程本地缓存大小(tiny/small/normal)
+     * */
+    public static final String SPARK_NETWORK_IO_ALLOCATOR_TINY_CACHE_KEY = "io.allocator.tinyCacheSize";
+    public static final String SPARK_NETWORK_IO_ALLOCATOR_SMALL_CACHE_KEY = "io.allocator.smallCacheSize";
+    public static final String SPARK_NETWORK_IO_ALLOCATOR_NORMAL_CACHE_KEY = "io.allocator.normalCacheSize";
+    /**
+     * 非EventLoop线程是否使用线程本地缓存
+     * */
+    public static final String SPARK_NETWORK_IO_ALLOCATOR_CACHE_ALL_THREADS_KEY = "io.allocator.cacheForAllThreads";
+
+    /**
+     * 连接池健康检查间隔(0表示不检查)
+     * */
+    public static final String SPARK_NETWORK_IO_HEALTH_CHECK_INTERVAL_KEY = "io.healthCheckInterval";
+    /**
+     * 每个远端预建连接数(0表示不预建)
+     * */
+    public static final String SPARK_NETWORK_IO_WARM_UP_CONNECTIONS_KEY = "io.warmUpConnections";
+    /**
+     * 单个{@link com.sdu.spark.network.protocol.BatchChunkFetchRequest}携带的最大数据块数, 不大于1时逐块请求
+     * */
+    public static final String SPARK_NETWORK_IO_MAX_CHUNKS_PER_FETCH_KEY = "io.maxChunksPerFetch";
+    /**
+     * 客户端Channel发送缓冲区(ChannelOutboundBuffer)高水位字节数, 超过时Channel不可写, 低于高水位一半时恢复可写(0表示使用Netty默认值)
+     * */
+    public static final String SPARK_NETWORK_IO_WRITE_BUFFER_HIGH_WATER_MARK_KEY = "io.writeBufferHighWaterMark";
+    /**
+     * Epoll参数(仅IO模型为EPOLL时生效):
+     *
+     * 1: quickAck: TCP_QUICKACK, 立即回复ACK
+     *
+     * 2: reusePort: SO_REUSEPORT, Server由acceptorThreads个Channel监听同一端口, 内核在多个EventLoop间分发连接
+     *
+     * 3: edgeTriggered: 边缘触发(否则水平触发)
+     *
+     * 4: busyPoll: EventLoop不阻塞于epoll_wait, 以CPU换取唤醒延迟
+     * */
+    public static final String SPARK_NETWORK_IO_EPOLL_QUICK_ACK_KEY = "io.epoll.quickAck";
+    public static final String SPARK_NETWORK_IO_EPOLL_REUSE_PORT_KEY = "io.epoll.reusePort";
+    public static final String SPARK_NETWORK_IO_EPOLL_ACCEPTOR_THREADS_KEY = "io.epoll.acceptorThreads";
+    public static final String SPARK_NETWORK_IO_EPOLL_EDGE_TRIGGERED_KEY = "io.epoll.edgeTriggered";
+    public static final String SPARK_NETWORK_IO_EPOLL_BUSY_POLL_KEY = "io.epoll.busyPoll";
+    /**
+     * 通道加密参数(全局配置, 不区分模块):
+     *
+     * 1: enabled: 认证完成后开启AES-GCM通道加密
+     *
+     * 2: keyLength: AES密钥长度(128/192/256)
+     *
+     * 3: recordSize: 单个加密Record最大明文长度
+     * */
+    public static final String SPARK_NETWORK_CRYPTO_ENABLED_KEY = "spark.network.crypto.enabled";
+    public static final String SPARK_NETWORK_CRYPTO_KEY_LENGTH_KEY = "spark.network.crypto.keyLength";
+    public static final String SPARK_NETWORK_CRYPTO_RECORD_SIZE_KEY = "spark.network.crypto.recordSize";
+    public static final String SPARK_NETWORK_AUTH_RPC_TIMEOUT_KEY = "spark.network.auth.rpcTimeout";
 
     private String module;
 
@@ -59,12 +124,19 @@ public class TransportConf {
         this.conf = conf;
     }
 
+    /**
+     * 网络配置按模块区分: spark.{module}.{suffix}, 如: spark.rpc.io.serverThreads
+     * */
+    private String getConfKey(String suffix) {
+        return "spark." + module + "." + suffix;
+    }
+
     public String ioModel() {
-        return conf.get(SPARK_NETWORK_IO_MODE_KEY, "nio");
+        return conf.get(getConfKey(SPARK_NETWORK_IO_MODE_KEY), "auto");
     }
 
     public int serverThreads() {
-        return conf.getInt(SPARK_NETWORK_IO_SERVER_THREADS_KEY, 1);
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_SERVER_THREADS_KEY), 1);
     }
 
     public String getModuleName() {
@@ -72,23 +144,23 @@ public class TransportConf {
     }
 
     public int backLog() {
-        return conf.getInt(SPARK_NETWORK_IO_BACKLOG_KEY, 50);
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_BACKLOG_KEY), 50);
     }
 
     public int sendBuf() {
-        return conf.getInt(SPARK_NETWORK_IO_SEND_BUFFER_KEY, -1);
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_SEND_BUFFER_KEY), -1);
     }
 
     public int receiveBuf() {
-        return conf.getInt(SPARK_NETWORK_IO_RECEIVE_BUFFER_KEY, -1);
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_RECEIVE_BUFFER_KEY), -1);
     }
 
     public int numConnectionsPerPeer() {
-        return conf.getInt(SPARK_NETWORK_IO_NUM_CONNECTIONS_PER_PEER_KEY, 10);
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_NUM_CONNECTIONS_PER_PEER_KEY), 10);
     }
 
     public int clientThreads() {
-        return conf.getInt(SPARK_NETWORK_IO_CLIENT_THREADS_KEY, 10);
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_CLIENT_THREADS_KEY), 10);
     }
 
     public boolean saslServerAlwaysEncrypt() {
@@ -96,11 +168,11 @@ public class TransportConf {
     }
 
     public int maxIORetries() {
-        return conf.getInt(SPARK_NETWORK_IO_MAXRETRIES_KEY, 3);
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_MAXRETRIES_KEY), 3);
     }
 
     public int ioRetryWaitTimeMs() {
-        return (int) timeStringAsSec(conf.get(SPARK_NETWORK_IO_RETRYWAIT_KEY, "5s")) * 1000;
+        return (int) timeStringAsSec(conf.get(getConfKey(SPARK_NETWORK_IO_RETRYWAIT_KEY), "5s")) * 1000;
     }
 
     public int memoryMapBytes() {
@@ -109,7 +181,7 @@ public class TransportConf {
     }
 
     public boolean lazyFileDescriptor() {
-        return conf.getBoolean(SPARK_NETWORK_IO_LAZYFD_KEY, true);
+        return conf.getBoolean(getConfKey(SPARK_NETWORK_IO_LAZYFD_KEY), true);
     }
 
     /**
@@ -124,9 +196,104 @@ public class TransportConf {
         return NumberUtils.toLong(maxChunksBeingTransferred, Long.MAX_VALUE);
     }
 
+    public long healthCheckIntervalMs() {
+        return timeStringAsSec(conf.get(getConfKey(SPARK_NETWORK_IO_HEALTH_CHECK_INTERVAL_KEY), "30s")) * 1000;
+    }
+
+    public int warmUpConnections() {
+        return Math.min(conf.getInt(getConfKey(SPARK_NETWORK_IO_WARM_UP_CONNECTIONS_KEY), 0), numConnectionsPerPeer());
+    }
+
+    public int maxChunksPerFetch() {
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_MAX_CHUNKS_PER_FETCH_KEY), 512);
+    }
+
+    /**
+     * 默认取Outbox待发送字节数上限(spark.{module}.netty.outbox.maxPendingBytes), 信箱与Channel发送缓冲区使用同一上限
+     * */
+    public int writeBufferHighWaterMark() {
+        String defaultHighWaterMark = conf.get(getConfKey("netty.outbox.maxPendingBytes"), "0");
+        return Ints.checkedCast(JavaUtils.byteStringAsBytes(
+                conf.get(getConfKey(SPARK_NETWORK_IO_WRITE_BUFFER_HIGH_WATER_MARK_KEY), defaultHighWaterMark)));
+    }
+
+    public int writeBufferLowWaterMark() {
+        return writeBufferHighWaterMark() / 2;
+    }
+
     public int connectionTimeoutMs() {
         long defaultNetworkTimeoutS = timeStringAsSec(conf.get("spark.network.timeout", "120s"));
-        long defaultTimeoutMs = timeStringAsSec(conf.get("io.connectionTimeout", defaultNetworkTimeoutS + "s")) * 1000;
+        long defaultTimeoutMs = timeStringAsSec(conf.get(getConfKey("io.connectionTimeout"), defaultNetworkTimeoutS + "s")) * 1000;
         return (int) defaultTimeoutMs;
     }
+
+    public boolean preferDirectBufs() {
+        return conf.getBoolean(getConfKey(SPARK_NETWORK_IO_PREFER_DIRECT_BUFS_KEY), true);
+    }
+
+    /**
+     * 每个IO线程绑定一个Arena(线程本地缓存), Arena数超过IO线程数只会浪费内存(每个Arena至少占用一个Chunk)
+     * */
+    public int allocatorArenas() {
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_ALLOCATOR_ARENAS_KEY), Math.max(serverThreads(), clientThreads()));
+    }
+
+    public int allocatorTinyCacheSize() {
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_ALLOCATOR_TINY_CACHE_KEY),
+                           PooledByteBufAllocator.defaultTinyCacheSize());
+    }
+
+    public int allocatorSmallCacheSize() {
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_ALLOCATOR_SMALL_CACHE_KEY),
+                           PooledByteBufAllocator.defaultSmallCacheSize());
+    }
+
+    public int allocatorNormalCacheSize() {
+        return conf.getInt(getConfKey(SPARK_NETWORK_IO_ALLOCATOR_NORMAL_CACHE_KEY),
+                           PooledByteBufAllocator.defaultNormalCacheSize());
+    }
+
+    public boolean allocatorCacheForAllThreads() {
+        return conf.getBoolean(getConfKey(SPARK_NETWORK_IO_ALLOCATOR_CACHE_ALL_THREADS_KEY), false);
+    }
+
+    public boolean epollQuickAck() {
+        return conf.getBoolean(getConfKey(SPARK_NETWORK_IO_EPOLL_QUICK_ACK_KEY), false);
+    }
+
+    public boolean epollReusePort() {
+        return conf.getBoolean(getConfKey(SPARK_NETWORK_IO_EPOLL_REUSE_PORT_KEY), false);
+    }
+
+    /**
+     * 监听同一端口的Server Channel数(需开启reusePort), 不超过serverThreads
+     * */
+    public int epollAcceptorThreads() {
+        int acceptorThreads = conf.getInt(getConfKey(SPARK_NETWORK_IO_EPOLL_ACCEPTOR_THREADS_KEY), 1);
+        return Math.max(1, Math.min(acceptorThreads, serverThreads()));
+    }
+
+    public boolean epollEdgeTriggered() {
+        return conf.getBoolean(getConfKey(SPARK_NETWORK_IO_EPOLL_EDGE_TRIGGERED_KEY), true);
+    }
+
+    public boolean epollBusyPoll() {
+        return conf.getBoolean(getConfKey(SPARK_NETWORK_IO_EPOLL_BUSY_POLL_KEY), false);
+    }
+
+    public boolean encryptionEnabled() {
+        return conf.getBoolean(SPARK_NETWORK_CRYPTO_ENABLED_KEY, false);
+    }
+
+    public int cipherKeyLength() {
+        return conf.getInt(SPARK_NETWORK_CRYPTO_KEY_LENGTH_KEY, 128);
+    }
+
+    public int cipherRecordSize() {
+        return Ints.checkedCast(JavaUtils.byteStringAsBytes(conf.get(SPARK_NETWORK_CRYPTO_RECORD_SIZE_KEY, "64k")));
+    }
+
+    public int authRTTimeoutMs() {
+        return (int) timeStringAsSec(conf.get(SPARK_NETWORK_AUTH_RPC_TIMEOUT_KEY, "30s")) * 1000;
+    }
 }
@@ -1,13 +1,10 @@
 package com.sdu.spark.network.utils;
 
+import com.google.common.base.Preconditions;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.CompositeByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 
-import java.util.LinkedList;
-
 /**
  * Netty消息解码:
  *
@@ -17,6 +14,18 @@ import java.util.LinkedList;
  *
  * 3: 读取ByteBuf交给{@link com.sdu.spark.network.protocol.MessageDecoder}处理
  *
+ * 内存分配:
+ *
+ *  1: Frame完整位于接收的ByteBuf时, 直接切片(零拷贝, 增加引用计数)交给下游
+ *
+ *  2: Frame跨越多个ByteBuf时, 由Channel的ByteBufAllocator(池化)分配FrameBody大小的缓冲区汇聚数据, 汇聚完成后
+ *
+ *     该缓冲区即为Frame(无CompositeByteBuf)
+ *
+ *  3: 跨ByteBuf的FrameLength按字节累加, 不分配缓冲区
+ *
+ *  4: 安装{@link Interceptor}后, 后续数据(如StreamResponse的流数据)直接交给Interceptor处理, 不汇聚为Frame
+ *
  * Note:
  *
  *  线程不安全, Netty处理链对每个SocketChannel需重建(也就是说，每个SocketChannel有自己的TransportFrameDecoder, 这是由于
@@ -39,123 +48,145 @@ public class TransportFrameDecoder extends ChannelInboundHandlerAdapter {
     private static final int MAX_FRAME_SIZE = Integer.MAX_VALUE;
     private static final int UNKNOWN_FRAME_SIZE = -1;
 
-    private final LinkedList<ByteBuf> buffers = new LinkedList<>();
     /**
-     * 读取FrameLength
+     * 跨ByteBuf读取FrameLength: 已读取字节数及已读取部分
      * */
-    private final ByteBuf frameLenBuf = Unpooled.buffer(LENGTH_SIZE, LENGTH_SIZE);
-
-    /**
-     * 记录FrameBody总大小
-     * */
-    private long totalSize = 0;
+    private int frameLengthBytes = 0;
+    private long partialFrameLength = 0;
     /**
      * 记录下一个FrameBody的大小
      * */
     private long nextFrameSize = UNKNOWN_FRAME_SIZE;
+    /**
+     * 跨ByteBuf的FrameBody汇聚缓冲区, 容量为nextFrameSize
+     * */
+    private ByteBuf frameBuf;
     private volatile Interceptor interceptor;
 
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        ByteBuf buf = (ByteBuf) msg;
-        buffers.add(buf);
-
-        totalSize += buf.readableBytes();
-
-        // 循环读取数据
-        while (!buffers.isEmpty()) {
-            if (interceptor != null) {
-
-            } else {
-                ByteBuf frame = decodeNext();
+        ByteBuf in = (ByteBuf) msg;
+        try {
+            // 循环读取数据
+            while (in.isReadable()) {
+                if (interceptor != null) {
+                    if (feedInterceptor(in)) {
+                        // Interceptor仍需数据, 当前ByteBuf已全部消费
+                        assert !in.isReadable();
+                        break;
+                    }
+                    continue;
+                }
+                ByteBuf frame = decodeNext(ctx, in);
                 if (frame == null) {
                     break;
                 }
                 ctx.fireChannelRead(frame);
             }
+        } finally {
+            // 下游持有的切片已增加引用计数
+            in.release();
         }
     }
 
     /**
-     * 读取FrameBody
+     * 读取FrameBody, 数据不足时返回null(in已全部消费)
      * */
-    private ByteBuf decodeNext() throws Exception {
-        long frameSize = decodeFrameSize();
-        if (frameSize == UNKNOWN_FRAME_SIZE || totalSize < frameSize) {
-            // FrameBody已读取结束
+    private ByteBuf decodeNext(ChannelHandlerContext ctx, ByteBuf in) {
+        if (nextFrameSize == UNKNOWN_FRAME_SIZE && !decodeFrameSize(in)) {
             return null;
         }
 
-        // 重置
-        nextFrameSize = UNKNOWN_FRAME_SIZE;
-
-        int remaining = (int) frameSize;
-        if (buffers.getFirst().readableBytes() >= remaining) {
-            return nextBufferForFrame(remaining);
+        int frameSize = (int) nextFrameSize;
+        if (frameBuf == null && in.readableBytes() >= frameSize) {
+            // Frame完整位于当前ByteBuf, 零拷贝切片
+            nextFrameSize = UNKNOWN_FRAME_SIZE;
+            return in.readSlice(frameSize).retain();
         }
 
-        // Otherwise, create a composite buffer.
-        CompositeByteBuf frame = buffers.getFirst().alloc().compositeBuffer(Integer.MAX_VALUE);
-        while (remaining > 0) {
-            ByteBuf next = nextBufferForFrame(remaining);
-            remaining -= next.readableBytes();
-            frame.addComponent(next).writerIndex(frame.writerIndex() + next.readableBytes());
+        if (frameBuf == null) {
+            frameBuf = ctx.alloc().buffer(frameSize, frameSize);
         }
-        assert remaining == 0;
+        frameBuf.writeBytes(in, Math.min(in.readableBytes(), frameBuf.writableBytes()));
+        if (frameBuf.isWritable()) {
+            return null;
+        }
+
+        ByteBuf frame = frameBuf;
+        frameBuf = null;
+        nextFrameSize = UNKNOWN_FRAME_SIZE;
         return frame;
     }
 
-    private ByteBuf nextBufferForFrame(int byteToRead) {
-        ByteBuf buf = buffers.getFirst();
-        if (buf.readableBytes() > byteToRead) {
-            ByteBuf frame = buf.readSlice(byteToRead);
-            totalSize -= byteToRead;
-            return frame;
+    private boolean decodeFrameSize(ByteBuf in) {
+        // 发送的数据包: FrameLength(8字节) + FrameBody
+        if (frameLengthBytes == 0 && in.readableBytes() >= LENGTH_SIZE) {
+            setNextFrameSize(in.readLong());
+            return true;
         }
 
-        ByteBuf frame = buf;
-        totalSize -= frame.readableBytes();
-        buffers.removeFirst();
-        return frame;
+        // FrameLength跨越多个ByteBuf
+        while (frameLengthBytes < LENGTH_SIZE && in.isReadable()) {
+            partialFrameLength = (partialFrameLength << 8) | (in.readByte() & 0xFF);
+            frameLengthBytes++;
+        }
+        if (frameLengthBytes < LENGTH_SIZE) {
+            return false;
+        }
+        setNextFrameSize(partialFrameLength);
+        partialFrameLength = 0;
+        frameLengthBytes = 0;
+        return true;
     }
 
+    private void setNextFrameSize(long frameLength) {
+        long frameSize = frameLength - LENGTH_SIZE;
+        Preconditions.checkArgument(frameSize > 0 && frameSize < MAX_FRAME_SIZE,
+                "Illegal frame size: %s", frameSize);
+        nextFrameSize = frameSize;
+    }
 
-
-    private long decodeFrameSize() {
-        // 发送的数据包: FrameLength(8字节) + FrameBody, 故totalSize至少为8字节
-        if (nextFrameSize != UNKNOWN_FRAME_SIZE || totalSize < LENGTH_SIZE) {
-            return nextFrameSize;
+    private boolean feedInterceptor(ByteBuf buf) throws Exception {
+        if (interceptor != null && !interceptor.handle(buf)) {
+            interceptor = null;
         }
+        return interceptor != null;
+    }
 
-        ByteBuf first = buffers.getFirst();
-        if (first.readableBytes() >= LENGTH_SIZE) {
-            // 读取FrameBody
-            nextFrameSize = first.readLong() - LENGTH_SIZE;
-            totalSize -= LENGTH_SIZE;
-            if (!first.isReadable()) {
-                // 若ByteBuf没有可读取的数据, 则删除ByteBuf并释放
-                buffers.removeFirst().release();
-            }
-            return nextFrameSize;
+    public void setInterceptor(Interceptor interceptor) {
+        Preconditions.checkState(this.interceptor == null, "Already have an interceptor.");
+        this.interceptor = interceptor;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        releaseFrameBuf();
+        if (interceptor != null) {
+            interceptor.channelInactive();
         }
+        super.channelInactive(ctx);
+    }
 
-        /**
-         * FrameLenBuf读取FrameLength
-         * */
-        while (frameLenBuf.readableBytes() < LENGTH_SIZE) {
-            ByteBuf next = buffers.getFirst();
-            int toRead = Math.min(next.readableBytes(), LENGTH_SIZE - frameLenBuf.readableBytes());
-            frameLenBuf.writeBytes(next, toRead);
-            if (!next.isReadable()) {
-                buffers.removeFirst().readableBytes();
-            }
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        if (interceptor != null) {
+            interceptor.exceptionCaught(cause);
         }
+        super.exceptionCaught(ctx, cause);
+    }
 
-        nextFrameSize = frameLenBuf.readableBytes() - LENGTH_SIZE;
-        totalSize -= nextFrameSize;
-        frameLenBuf.clear();
-        return nextFrameSize;
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        releaseFrameBuf();
+        super.handlerRemoved(ctx);
+    }
+
+    private void releaseFrameBuf() {
+        if (frameBuf != null) {
+            frameBuf.release();
+            frameBuf = null;
+        }
     }
 
     public interface Interceptor {
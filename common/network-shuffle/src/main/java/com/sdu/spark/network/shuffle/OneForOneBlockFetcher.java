@@ -77,13 +77,13 @@ public class OneForOneBlockFetcher {
                 try {
                     streamHandle = (StreamHandle) BlockTransferMessage.Decoder.fromByteBuffer(response);
                     LOGGER.trace("Successfully opened blocks {}, preparing to fetch chunks.", streamHandle);
-                    // 逐个请求
-                    for (int i = 0; i < streamHandle.numChunks; ++i) {
-                        if (tempShuffleFileManager != null) {
+                    if (tempShuffleFileManager != null) {
+                        // 逐个请求
+                        for (int i = 0; i < streamHandle.numChunks; ++i) {
                             client.stream(genStreamChunkId(streamHandle.streamId, i), new DownloadCallback(i));
-                        } else {
-                            client.fetchChunk(streamHandle.streamId, i, new ChunkCallback());
                         }
+                    } else {
+                        fetchChunks(streamHandle.streamId, streamHandle.numChunks);
                     }
                 } catch (Exception e) {
                     LOGGER.error("Failed while starting block fetches after success", e);
@@ -99,6 +99,26 @@ public class OneForOneBlockFetcher {
         });
     }
 
+    /**
+     * 数据块按maxChunksPerFetch分批请求, 每批一次网络往返
+     * */
+    private void fetchChunks(long streamId, int numChunks) {
+        int maxChunksPerFetch = transportConf.maxChunksPerFetch();
+        if (maxChunksPerFetch <= 1) {
+            for (int i = 0; i < numChunks; ++i) {
+                client.fetchChunk(streamId, i, chunkCallback);
+            }
+            return;
+        }
+        for (int start = 0; start < numChunks; start += maxChunksPerFetch) {
+            int[] chunkIndices = new int[Math.min(maxChunksPerFetch, numChunks - start)];
+            for (int i = 0; i < chunkIndices.length; ++i) {
+                chunkIndices[i] = start + i;
+            }
+            client.fetchChunks(streamId, chunkIndices, chunkCallback);
+        }
+    }
+
     private void failRemainingBlocks(String[] failedBlockIds, Throwable e) {
         for (String blockId : failedBlockIds) {
             try {
@@ -11,10 +11,14 @@ public class GetMapOutputMessage implements Serializable {
 
     public int shuffleId;
 
+    // Reduce端已持有的MapStatus版本号(-1表示未持有)
+    public long knownVersion;
+
     public RpcCallContext context;
 
-    public GetMapOutputMessage(int shuffleId, RpcCallContext context) {
+    public GetMapOutputMessage(int shuffleId, long knownVersion, RpcCallContext context) {
         this.shuffleId = shuffleId;
+        this.knownVersion = knownVersion;
         this.context = context;
     }
 
@@ -7,6 +7,8 @@ import com.sdu.spark.broadcast.BroadcastManager;
 import com.sdu.spark.rpc.RpcEndpointRef;
 import com.sdu.spark.rpc.SparkConf;
 import com.sdu.spark.scheduler.MapStatus;
+import com.sdu.spark.scheduler.MapStatusCodec;
+import com.sdu.spark.scheduler.MapStatusCodec.MapStatusUpdate;
 import com.sdu.spark.shuffle.FetchFailedException.MetadataFetchFailedException;
 import com.sdu.spark.storage.BlockId;
 import com.sdu.spark.storage.BlockId.ShuffleBlockId;
@@ -33,6 +35,7 @@ public abstract class MapOutputTracker {
     public static final String ENDPOINT_NAME = "MapOutputTracker";
     public static final int DIRECT = 0;
     public static final int BROADCAST = 1;
+    public static final int DELTA = 2;
 
     /**
      * Driver: MapOutputTrackerMasterEndPoint节点引用
@@ -76,30 +79,39 @@ public abstract class MapOutputTracker {
      * */
     public abstract Multimap<BlockManagerId, Tuple2<BlockId, Long>> getMapSizesByExecutorId(int shuffleId, int startPartition, int endPartition);
 
+    /**
+     * 分区范围[startPartition, endPartition]内非空数据块大小(按Executor分组的并列数组, 见{@link MapSizesByExecutor})
+     * */
+    public MapSizesByExecutor getMapSizesByRange(int shuffleId, int startPartition, int endPartition) {
+        return getMapSizesByRange(shuffleId, 0, Integer.MAX_VALUE, startPartition, endPartition);
+    }
+
+    /**
+     * 只读取MapTask[startMapIndex, endMapIndex)在分区范围[startPartition, endPartition]内的非空数据块
+     * */
+    public abstract MapSizesByExecutor getMapSizesByRange(int shuffleId, int startMapIndex, int endMapIndex,
+                                                          int startPartition, int endPartition);
+
     public abstract void unregisterShuffle(int shuffleId);
 
     public abstract void stop();
 
-    // Serialize an array of map combiner locations into an efficient byte format so that we can send
-    // it to reduce tasks. We do this by compressing the serialized bytes using GZIP. They will
-    // generally be pretty compressible because many map outputs will be on the same hostname.
-    public static Pair<byte[], Broadcast<byte[]>> serializeMapStatuses(MapStatus[] statuses, BroadcastManager broadcastManager,
+    /**
+     * 全量序列化MapStatus(列式编码{@link MapStatusCodec}后GZIP压缩), 超过minBroadcastSize时以广播变量发送:
+     *
+     *  DIRECT: [DIRECT][gzip(version + MapStatus列式编码)]
+     *
+     *  BROADCAST: [BROADCAST][gzip(Broadcast<DIRECT字节数组>)]
+     * */
+    public static Pair<byte[], Broadcast<byte[]>> serializeMapStatuses(MapStatus[] statuses, long version,
+                                                                       BroadcastManager broadcastManager,
                                                                        boolean isLocal, int minBroadcastSize) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        out.write(DIRECT);
-        ObjectOutputStream objOut = new ObjectOutputStream(new GZIPOutputStream(out));
-        synchronized (statuses) {
-            objOut.writeObject(statuses);
-        }
-        objOut.close();
-
-        byte[] arr = out.toByteArray();
+        byte[] arr = encodeMapStatuses(DIRECT, statuses, null, version);
         if (arr.length >= minBroadcastSize) {
             // Use broadcast instead.
             // Important arr(0) is the tag == DIRECT, ignore that while deserializing !
             Broadcast<byte[]> bcast = broadcastManager.newBroadcast(arr, isLocal);
-            // toByteArray creates copy, so we can reuse out
-            out.reset();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
             out.write(BROADCAST);
             ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(out));
             oos.writeObject(bcast);
@@ -112,6 +124,28 @@ public abstract class MapOutputTracker {
         return ImmutablePair.of(arr, null);
     }
 
+    /**
+     * 增量序列化mapIds(升序)对应的MapStatus: [DELTA][gzip(version + MapStatus列式编码)]
+     * */
+    public static byte[] serializeMapStatusDelta(MapStatus[] statuses, int[] mapIds, long version) throws IOException {
+        return encodeMapStatuses(DELTA, statuses, mapIds, version);
+    }
+
+    private static byte[] encodeMapStatuses(int type, MapStatus[] statuses, int[] mapIds, long version) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(type);
+        DataOutputStream dataOut = new DataOutputStream(new GZIPOutputStream(out));
+        MapStatusCodec.encode(statuses, mapIds, version, dataOut);
+        dataOut.close();
+        return out.toByteArray();
+    }
+
+    private static MapStatusUpdate decodeMapStatuses(byte[] arr, int off, int len) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(arr, off, len)))) {
+            return MapStatusCodec.decode(in);
+        }
+    }
+
     private static Object deserializeObject(byte[] arr, int off, int len) throws IOException, ClassNotFoundException {
         ObjectInputStream objIn = null;
         try {
@@ -124,21 +158,24 @@ public abstract class MapOutputTracker {
         }
     }
 
-    public static MapStatus[] deserializeMapStatuses(byte[] bytes) {
+    @SuppressWarnings("unchecked")
+    public static MapStatusUpdate deserializeMapStatuses(byte[] bytes) {
         assert (bytes.length > 0);
         int type = bytes[0];
         try {
             switch (type) {
                 case DIRECT:
-                    return (MapStatus[]) deserializeObject(bytes, 1, bytes.length - 1);
+                case DELTA:
+                    return decodeMapStatuses(bytes, 1, bytes.length - 1);
                 case BROADCAST:
                     Broadcast<byte[]> broadcast = (Broadcast<byte[]>) deserializeObject(bytes, 1, bytes.length -1);
                     byte[] broadcastValue = broadcast.value();
-                    return (MapStatus[]) deserializeObject(broadcastValue, 1, broadcastValue.length -1);
+                    return decodeMapStatuses(broadcastValue, 1, broadcastValue.length -1);
                 default:
                     throw new UnsupportedOperationException("Unsupported map status type : " + type);
             }
         } catch (Exception e) {
+            LOGGER.error("Failed to deserialize map statuses", e);
             return null;
         }
     }
@@ -8,6 +8,8 @@ import com.sdu.spark.broadcast.BroadcastManager;
 import com.sdu.spark.rpc.RpcCallContext;
 import com.sdu.spark.rpc.SparkConf;
 import com.sdu.spark.scheduler.MapStatus;
+import com.sdu.spark.scheduler.ShufflePartitionCoalescer;
+import com.sdu.spark.scheduler.ShufflePartitionCoalescer.ShufflePartitionSpec;
 import com.sdu.spark.serializer.Serializer;
 import com.sdu.spark.storage.BlockId;
 import com.sdu.spark.storage.BlockManagerId;
@@ -31,7 +33,7 @@ import static com.sdu.spark.utils.RpcUtils.maxMessageSizeBytes;
  *
  *  1: {@link #shuffleStatuses} 维护ShuffleMapStage状态
  *
- *  2: {@link #mapOutputRequests}
+ *  2: {@link #mapOutputRequests} Reduce端MapStatus请求由线程池处理, Reduce端已持有旧版本时只返回变更部分
  *
  * @author hanhan.zhang
  * */
@@ -57,12 +59,14 @@ public class MapOutputTrackerMaster extends MapOutputTracker {
     private double REDUCER_PREF_LOCS_FRACTION = 0.2;
 
     private ConcurrentMap<Integer, ShuffleStatus> shuffleStatuses;
+    // 每个Shuffle保留的MapStatus变更记录数
+    private int maxChangeLogSize;
 
     private long maxRpcMessageSize;
 
     private LinkedBlockingQueue<GetMapOutputMessage> mapOutputRequests;
     // 标识退出消息处理线程
-    private static final GetMapOutputMessage PoisonPill = new GetMapOutputMessage(-99, null);
+    private static final GetMapOutputMessage PoisonPill = new GetMapOutputMessage(-99, -1L, null);
     private ThreadPoolExecutor threadpool;
 
     public MapOutputTrackerMaster(SparkConf conf, BroadcastManager broadcastManager, boolean isLocal) {
@@ -72,6 +76,7 @@ public class MapOutputTrackerMaster extends MapOutputTracker {
 
         this.shuffleLocalityEnabled = conf.getBoolean("spark.shuffle.reduceLocality.enabled", true);
         this.shuffleStatuses = Maps.newConcurrentMap();
+        this.maxChangeLogSize = conf.getInt("spark.shuffle.mapOutput.maxChangeLogSize", 1000);
 
         this.minSizeForBroadcast = conf.getSizeAsBytes("spark.shuffle.mapOutput.minSizeForBroadcast", "512K");
         this.maxRpcMessageSize = maxMessageSizeBytes(conf);
@@ -96,7 +101,7 @@ public class MapOutputTrackerMaster extends MapOutputTracker {
     }
 
     public void registerShuffle(int shuffleId, int numMaps) {
-        if (shuffleStatuses.putIfAbsent(shuffleId, new ShuffleStatus(numMaps)) == null) {
+        if (shuffleStatuses.putIfAbsent(shuffleId, new ShuffleStatus(numMaps, maxChangeLogSize)) != null) {
             throw new IllegalArgumentException("Shuffle ID " + shuffleId + " registered twice");
         }
     }
@@ -126,6 +131,19 @@ public class MapOutputTrackerMaster extends MapOutputTracker {
                 MapOutputTracker.convertMapStatuses(shuffleId, startPartition, endPartition, mapStatuses));
     }
 
+    @Override
+    public MapSizesByExecutor getMapSizesByRange(int shuffleId, int startMapIndex, int endMapIndex,
+                                                 int startPartition, int endPartition) {
+        LOGGER.debug("Fetching output sizes for shuffle {}, maps [{}, {}), partitions {}-{}", shuffleId,
+                     startMapIndex, endMapIndex, startPartition, endPartition);
+        ShuffleStatus status = shuffleStatuses.get(shuffleId);
+        if (status == null) {
+            return MapSizesByExecutor.empty(shuffleId);
+        }
+        return status.withMapStatuses(mapStatuses ->
+                MapSizesByExecutor.create(shuffleId, startMapIndex, endMapIndex, startPartition, endPartition, mapStatuses));
+    }
+
     public void unregisterMapOutput(int shuffleId, int mapId, BlockManagerId bmAddress) throws SparkException {
         ShuffleStatus status = shuffleStatuses.get(shuffleId);
         if (status == null) {
@@ -179,17 +197,56 @@ public class MapOutputTrackerMaster extends MapOutputTracker {
             throw new RuntimeException("shuffleId " + dep.shuffleId() + " not exist");
         }
 
+        return status.withMapStatuses(mapStatuses -> statistics(dep, mapStatuses));
+    }
+
+    private static MapOutputStatistics statistics(ShuffleDependency<?, ?, ?> dep, MapStatus[] mapStatuses) {
+        long[] totalSizes = new long[dep.partitioner.numPartitions()];
+        for (MapStatus mapStatus : mapStatuses) {
+            if (mapStatus == null) {
+                continue;
+            }
+            for (int reduceId = 0; reduceId < totalSizes.length; ++reduceId) {
+                totalSizes[reduceId] += mapStatus.getSizeForBlock(reduceId);
+            }
+        }
+        return new MapOutputStatistics(dep.shuffleId(), totalSizes);
+    }
+
+    /**
+     * 根据Shuffle输出统计规划Reduce端读取范围(合并相邻小分区, 拆分倾斜分区), 结果记录在ShuffleStatus中直至MapStatus变更
+     *
+     * @return 规划所用的Shuffle输出统计(与规划结果基于同一组MapStatus), 调用方无需再次调用{@link #getStatistics(ShuffleDependency)}
+     * */
+    public MapOutputStatistics coalescePartitions(ShuffleDependency<?, ?, ?> dep,
+                                                  ShufflePartitionCoalescer coalescer) {
+        ShuffleStatus status = shuffleStatuses.get(dep.shuffleId());
+        if (status == null) {
+            throw new RuntimeException("shuffleId " + dep.shuffleId() + " not exist");
+        }
+
         return status.withMapStatuses(mapStatuses -> {
-            long[] totalSizes = new long[dep.partitioner.numPartitions()];
-            for (int j = 0; j < mapStatuses.length; ++j) {
-                for (int i = 0; i < totalSizes.length; ++i) {
-                    totalSizes[i] += mapStatuses[i].getSizeForBlock(j);
+            MapOutputStatistics statistics = statistics(dep, mapStatuses);
+            List<ShufflePartitionSpec> specs = coalescer.coalesce(statistics, mapStatuses.length, reduceId -> {
+                long[] mapSizes = new long[mapStatuses.length];
+                for (int mapId = 0; mapId < mapStatuses.length; ++mapId) {
+                    mapSizes[mapId] = mapStatuses[mapId] == null ? 0L : mapStatuses[mapId].getSizeForBlock(reduceId);
                 }
-            }
-            return new MapOutputStatistics(dep.shuffleId(), totalSizes);
+                return mapSizes;
+            });
+            status.setPartitionSpecs(specs);
+            return statistics;
         });
     }
 
+    /**
+     * @return 最近一次规划的Reduce端读取范围, 未规划或MapStatus已变更时返回null
+     * */
+    public List<ShufflePartitionSpec> getPartitionSpecs(int shuffleId) {
+        ShuffleStatus status = shuffleStatuses.get(shuffleId);
+        return status == null ? null : status.partitionSpecs();
+    }
+
     /**
      * 计算Shuffle依赖的Block的地址
      * */
@@ -278,20 +335,27 @@ public class MapOutputTrackerMaster extends MapOutputTracker {
         @Override
         public void run() {
             try {
-                GetMapOutputMessage message = mapOutputRequests.take();
-                if (message.equals(PoisonPill)) {
-                    // Put PoisonPill back so that other MessageLoops can see it.
-                    mapOutputRequests.offer(PoisonPill);
-                    return;
-                }
+                while (true) {
+                    GetMapOutputMessage message = mapOutputRequests.take();
+                    if (message.equals(PoisonPill)) {
+                        // Put PoisonPill back so that other MessageLoops can see it.
+                        mapOutputRequests.offer(PoisonPill);
+                        return;
+                    }
 
-                RpcCallContext context = message.context;
-                int shuffleId = message.shuffleId;
-                String hostPort = context.senderAddress().hostPort();
-                LOGGER.debug("Handling request to send map combiner locations for shuffle {} to {} ", shuffleId, hostPort);
-                ShuffleStatus shuffleStatus = shuffleStatuses.get(shuffleId);
-                context.reply(
-                        shuffleStatus.serializedMapStatus(broadcastManager, isLocal, (int) minSizeForBroadcast));
+                    RpcCallContext context = message.context;
+                    int shuffleId = message.shuffleId;
+                    String hostPort = context.senderAddress().hostPort();
+                    LOGGER.debug("Handling request to send map combiner locations for shuffle {} (known version {}) to {} ",
+                                 shuffleId, message.knownVersion, hostPort);
+                    ShuffleStatus shuffleStatus = shuffleStatuses.get(shuffleId);
+                    if (shuffleStatus == null) {
+                        context.sendFailure(new SparkException("Shuffle " + shuffleId + " is not registered"));
+                        continue;
+                    }
+                    context.reply(shuffleStatus.serializedMapStatus(broadcastManager, isLocal,
+                                                                    (int) minSizeForBroadcast, message.knownVersion));
+                }
             } catch (InterruptedException e) {
                 // exit
             }
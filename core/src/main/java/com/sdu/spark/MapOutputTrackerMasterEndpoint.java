@@ -32,7 +32,7 @@ public class MapOutputTrackerMasterEndpoint extends RpcEndpoint {
             GetMapOutputStatuses statuses = (GetMapOutputStatuses) msg;
             String hostPort = context.senderAddress().hostPort();
             LOGGER.info("Asked to send map combiner locations for shuffle {} to {}", statuses.shuffleId, hostPort);
-            tracker.post(new GetMapOutputMessage(statuses.shuffleId, context));
+            tracker.post(new GetMapOutputMessage(statuses.shuffleId, statuses.knownVersion, context));
         } else if (msg instanceof StopMapOutputTracker) {
             LOGGER.info("MapOutputTrackerMasterEndpoint stopped!");
             context.reply(true);
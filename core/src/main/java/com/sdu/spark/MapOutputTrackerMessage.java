@@ -8,10 +8,13 @@ import java.io.Serializable;
 public interface MapOutputTrackerMessage extends Serializable {
 
     class GetMapOutputStatuses implements MapOutputTrackerMessage {
-        int shuffleId;
+        public int shuffleId;
+        // 已持有的MapStatus版本号(-1表示未持有), Driver据此返回增量
+        public long knownVersion;
 
-        public GetMapOutputStatuses(int shuffleId) {
+        public GetMapOutputStatuses(int shuffleId, long knownVersion) {
             this.shuffleId = shuffleId;
+            this.knownVersion = knownVersion;
         }
     }
 
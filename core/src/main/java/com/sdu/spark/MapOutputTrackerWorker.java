@@ -6,20 +6,24 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.sdu.spark.rpc.SparkConf;
 import com.sdu.spark.scheduler.MapStatus;
+import com.sdu.spark.scheduler.MapStatusCodec.MapStatusUpdate;
 import com.sdu.spark.shuffle.FetchFailedException;
 import com.sdu.spark.storage.BlockId;
 import com.sdu.spark.storage.BlockManagerId;
 import com.sdu.spark.utils.scala.Tuple2;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
+ * {@link MapOutputTrackerWorker}缓存Shuffle的MapStatus:
+ *
+ * 1: 缓存记录MapStatus版本号及拉取时的epoch
+ *
+ * 2: epoch更新(Map输出丢失)后不清空缓存, 下次使用时携带已持有版本号向Driver请求, Driver只返回变更的MapStatus
+ *
  * @author hanhan.zhang
  * */
 public class MapOutputTrackerWorker extends MapOutputTracker {
@@ -27,7 +31,7 @@ public class MapOutputTrackerWorker extends MapOutputTracker {
     private static final Logger LOGGER = LoggerFactory.getLogger(MapOutputTrackerWorker.class);
 
     // 记录ShuffleId的对应Shuffle结果输出, key = shuffleId, value = Shuffle输出集合
-    private Map<Integer, MapStatus[]> mapStatuses = Maps.newConcurrentMap();
+    private Map<Integer, CachedMapStatuses> mapStatuses;
 
     // 记录正在请求ShuffleId对应Shuffle的输出集合(保证线程安全)
     private Set<Integer> fetching;
@@ -42,9 +46,8 @@ public class MapOutputTrackerWorker extends MapOutputTracker {
     public void updateEpoch(long newEpoch) {
         synchronized (epochLock) {
             if (newEpoch > epoch) {
-                LOGGER.info("Updating epoch to " + newEpoch + " and clearing cache");
+                LOGGER.info("Updating epoch to {}, cached map outputs will be revalidated", newEpoch);
                 epoch = newEpoch;
-                mapStatuses.clear();
             }
         }
     }
@@ -60,6 +63,16 @@ public class MapOutputTrackerWorker extends MapOutputTracker {
         return convertMapStatuses(shuffleId, startPartition, endPartition, statuses);
     }
 
+    @Override
+    public MapSizesByExecutor getMapSizesByRange(int shuffleId, int startMapIndex, int endMapIndex,
+                                                 int startPartition, int endPartition) {
+        MapStatus[] statuses = getStatus(shuffleId);
+        if (statuses == null) {
+            return MapSizesByExecutor.empty(shuffleId);
+        }
+        return MapSizesByExecutor.create(shuffleId, startMapIndex, endMapIndex, startPartition, endPartition, statuses);
+    }
+
     @Override
     public void unregisterShuffle(int shuffleId) {
         mapStatuses.remove(shuffleId);
@@ -71,56 +84,74 @@ public class MapOutputTrackerWorker extends MapOutputTracker {
     }
 
     private MapStatus[] getStatus(int shuffleId) {
-        MapStatus[] statuses = mapStatuses.get(shuffleId);
-        if (statuses == null) {
-            LOGGER.info("Don't have map outputs for shuffle {}, fetching them", shuffleId);
-            long startTime = System.currentTimeMillis();
-            MapStatus[] fetchedStatuses;
-
-            // shuffleId对应的Shuffle结果输出空, 则向MapOutputTrackerMaster请求ShuffleId对应的结果输出
-            // step1: 判断shuffleId是否已被其他线程请求
-            synchronized (fetching) {
-                if (fetching.contains(shuffleId)) {
-                    try {
-                        wait();
-                    } catch (InterruptedException e) {
-
-                    }
-                }
+        long currentEpoch;
+        synchronized (epochLock) {
+            currentEpoch = epoch;
+        }
 
-                fetchedStatuses = mapStatuses.get(shuffleId);
-                if (fetchedStatuses == null) {
-                    fetching.add(shuffleId);
-                }
-            }
+        CachedMapStatuses cached = mapStatuses.get(shuffleId);
+        if (cached != null && cached.epoch >= currentEpoch) {
+            return cached.statuses;
+        }
 
-            // step2: 向MapOutputTrackerMaster请求ShuffleId对应的结果输出
-            if (fetchedStatuses == null) {
-                LOGGER.info("Doing the fetch; tracker endpoint = {}", trackerEndpoint);
+        long startTime = System.currentTimeMillis();
+        // step1: 判断shuffleId是否已被其他线程请求
+        synchronized (fetching) {
+            while (fetching.contains(shuffleId)) {
                 try {
-                    byte[] fetchedBytes = (byte[]) askTracker(new MapOutputTrackerMessage.GetMapOutputStatuses(shuffleId));
-                    fetchedStatuses = MapOutputTracker.deserializeMapStatuses(fetchedBytes);
-                    LOGGER.info("Got the combiner locations");
-                    mapStatuses.put(shuffleId, fetchedStatuses);
-                } catch (SparkException e) {
-                    // ignore
-                } finally {
-                    synchronized (fetching) {
-                        fetching.remove(shuffleId);
-                        fetching.notifyAll();
-                    }
+                    fetching.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FetchFailedException.MetadataFetchFailedException(shuffleId, -1,
+                            "Interrupted while fetching map outputs for shuffle " + shuffleId);
                 }
             }
+            cached = mapStatuses.get(shuffleId);
+            if (cached != null && cached.epoch >= currentEpoch) {
+                return cached.statuses;
+            }
+            fetching.add(shuffleId);
+        }
 
-            LOGGER.debug("Fetching map combiner statuses for shuffle {} took {} ms", shuffleId, System.currentTimeMillis() - startTime);
-
-            if (fetchedStatuses != null) {
-                return fetchedStatuses;
+        // step2: 向MapOutputTrackerMaster请求ShuffleId对应的结果输出(已持有旧版本时只拉取变更部分)
+        long knownVersion = cached == null ? -1L : cached.version;
+        LOGGER.info("Doing the fetch for shuffle {} (known version {}); tracker endpoint = {}",
+                    shuffleId, knownVersion, trackerEndpoint);
+        try {
+            byte[] fetchedBytes = (byte[]) askTracker(new MapOutputTrackerMessage.GetMapOutputStatuses(shuffleId, knownVersion));
+            MapStatusUpdate update = MapOutputTracker.deserializeMapStatuses(fetchedBytes);
+            if (update != null) {
+                MapStatus[] statuses = update.isFull() ? update.statuses : update.applyTo(cached.statuses);
+                mapStatuses.put(shuffleId, new CachedMapStatuses(statuses, update.version, currentEpoch));
+                LOGGER.info("Got the combiner locations for shuffle {} ({}, version {}) in {} ms", shuffleId,
+                            update.isFull() ? "full" : update.mapIds.length + " changed",
+                            update.version, System.currentTimeMillis() - startTime);
+                return statuses;
+            }
+        } catch (SparkException e) {
+            // ignore
+        } finally {
+            synchronized (fetching) {
+                fetching.remove(shuffleId);
+                fetching.notifyAll();
             }
+        }
+
+        LOGGER.error("Missing all combiner locations for shuffle {}", shuffleId);
+        throw new FetchFailedException.MetadataFetchFailedException(shuffleId, -1, "Missing all combiner locations for shuffle " + shuffleId);
+    }
 
-            LOGGER.error("Missing all combiner locations for shuffle {}", shuffleId);
-            throw new FetchFailedException.MetadataFetchFailedException(shuffleId, -1, "Missing all combiner locations for shuffle " + shuffleId);
+    private static class CachedMapStatuses {
+        final MapStatus[] statuses;
+        // Driver端MapStatus版本号
+        final long version;
+        // 拉取时Executor持有的epoch, 小于当前epoch时需向Driver校验
+        final long epoch;
+
+        CachedMapStatuses(MapStatus[] statuses, long version, long epoch) {
+            this.statuses = statuses;
+            this.version = version;
+            this.epoch = epoch;
         }
-        return statuses;
     }
 }
@@ -0,0 +1,189 @@
+package com.sdu.spark;
+
+import com.google.common.collect.Maps;
+import com.sdu.spark.scheduler.MapStatus;
+import com.sdu.spark.shuffle.FetchFailedException.MetadataFetchFailedException;
+import com.sdu.spark.storage.BlockId.ShuffleBlockId;
+import com.sdu.spark.storage.BlockManagerId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * {@link MapSizesByExecutor}Reduce端读取分区范围内的Shuffle数据块大小(按Executor分组):
+ *
+ * 1: 数据块以并列数组(mapIds/reduceIds/sizes)存储, 同一Executor的数据块连续存放, 区间为[blockStart(loc), blockEnd(loc))
+ *
+ * 2: 只保留非空数据块, ShuffleBlockId在{@link #blockId(int)}调用时创建
+ *
+ * 3: 可只读取部分MapTask[startMapIndex, endMapIndex)输出(倾斜分区拆分读取)
+ *
+ * 相比Multimap<BlockManagerId, Tuple2<BlockId, Long>>, 不再为每个(mapId, reduceId)创建ShuffleBlockId及Long对象
+ *
+ * @author hanhan.zhang
+ * */
+public class MapSizesByExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MapSizesByExecutor.class);
+
+    public final int shuffleId;
+
+    private final BlockManagerId[] locations;
+    // locations[loc]数据块区间: [offsets[loc], offsets[loc + 1])
+    private final int[] offsets;
+    private final int[] mapIds;
+    private final int[] reduceIds;
+    private final long[] sizes;
+    // 分区范围内数据块总数(包含空数据块)
+    private final long totalBlocks;
+
+    private MapSizesByExecutor(int shuffleId, BlockManagerId[] locations, int[] offsets, int[] mapIds,
+                               int[] reduceIds, long[] sizes, long totalBlocks) {
+        this.shuffleId = shuffleId;
+        this.locations = locations;
+        this.offsets = offsets;
+        this.mapIds = mapIds;
+        this.reduceIds = reduceIds;
+        this.sizes = sizes;
+        this.totalBlocks = totalBlocks;
+    }
+
+    public static MapSizesByExecutor empty(int shuffleId) {
+        return new MapSizesByExecutor(shuffleId, new BlockManagerId[0], new int[] {0}, new int[0],
+                                      new int[0], new long[0], 0L);
+    }
+
+    public static MapSizesByExecutor create(int shuffleId, int startPartition, int endPartition, MapStatus[] statuses) {
+        return create(shuffleId, 0, Integer.MAX_VALUE, startPartition, endPartition, statuses);
+    }
+
+    /**
+     * 两次遍历: 第一次读取MapStatus, 按MapTask顺序暂存非空数据块并统计每个Executor非空数据块数, 第二次将暂存的数据块
+     *
+     * 按Executor区间重排(每个(mapId, reduceId)只调用一次getSizeForBlock)
+     *
+     * @param startMapIndex 起始MapTask(包含)
+     * @param endMapIndex 结束MapTask(不包含, 超过MapTask数时取MapTask数)
+     * @param startPartition 起始分区(包含)
+     * @param endPartition 结束分区(包含)
+     * */
+    public static MapSizesByExecutor create(int shuffleId, int startMapIndex, int endMapIndex,
+                                            int startPartition, int endPartition, MapStatus[] statuses) {
+        assert (statuses != null);
+        int startMap = Math.max(0, startMapIndex);
+        int endMap = Math.min(statuses.length, endMapIndex);
+        Map<BlockManagerId, Integer> locationIndex = Maps.newLinkedHashMap();
+        int[] mapLocations = new int[statuses.length];
+        // Executor数不超过MapTask数
+        int[] counts = new int[statuses.length + 1];
+        // 按MapTask顺序暂存的非空数据块
+        int capacity = 16;
+        int[] pendingMapIds = new int[capacity];
+        int[] pendingReduceIds = new int[capacity];
+        long[] pendingSizes = new long[capacity];
+        int numBlocks = 0;
+        for (int i = startMap; i < endMap; ++i) {
+            MapStatus status = statuses[i];
+            if (status == null) {
+                String errorMessage = String.format("Missing an combiner location for shuffle %d", shuffleId);
+                LOGGER.error(errorMessage);
+                throw new MetadataFetchFailedException(shuffleId, startPartition, errorMessage);
+            }
+            Integer loc = locationIndex.putIfAbsent(status.location(), locationIndex.size());
+            mapLocations[i] = loc == null ? locationIndex.size() - 1 : loc;
+            for (int part = startPartition; part <= endPartition; ++part) {
+                long size = status.getSizeForBlock(part);
+                if (size != 0) {
+                    if (numBlocks == capacity) {
+                        capacity <<= 1;
+                        pendingMapIds = Arrays.copyOf(pendingMapIds, capacity);
+                        pendingReduceIds = Arrays.copyOf(pendingReduceIds, capacity);
+                        pendingSizes = Arrays.copyOf(pendingSizes, capacity);
+                    }
+                    pendingMapIds[numBlocks] = i;
+                    pendingReduceIds[numBlocks] = part;
+                    pendingSizes[numBlocks] = size;
+                    numBlocks++;
+                    counts[mapLocations[i] + 1]++;
+                }
+            }
+        }
+
+        // 剔除无非空数据块的Executor, remap[原下标] = 新下标
+        int[] remap = new int[locationIndex.size()];
+        int numLocations = 0;
+        for (int loc = 0; loc < remap.length; ++loc) {
+            remap[loc] = counts[loc + 1] > 0 ? numLocations++ : -1;
+        }
+        BlockManagerId[] locations = new BlockManagerId[numLocations];
+        int[] offsets = new int[numLocations + 1];
+        int loc = 0;
+        for (BlockManagerId location : locationIndex.keySet()) {
+            if (remap[loc] >= 0) {
+                locations[remap[loc]] = location;
+                offsets[remap[loc] + 1] = offsets[remap[loc]] + counts[loc + 1];
+            }
+            loc++;
+        }
+
+        int[] mapIds = new int[numBlocks];
+        int[] reduceIds = new int[numBlocks];
+        long[] sizes = new long[numBlocks];
+        int[] positions = new int[numLocations];
+        System.arraycopy(offsets, 0, positions, 0, numLocations);
+        for (int k = 0; k < numBlocks; ++k) {
+            int pos = positions[remap[mapLocations[pendingMapIds[k]]]]++;
+            mapIds[pos] = pendingMapIds[k];
+            reduceIds[pos] = pendingReduceIds[k];
+            sizes[pos] = pendingSizes[k];
+        }
+
+        long totalBlocks = (long) Math.max(0, endMap - startMap) * Math.max(0, endPartition - startPartition + 1);
+        return new MapSizesByExecutor(shuffleId, locations, offsets, mapIds, reduceIds, sizes, totalBlocks);
+    }
+
+    public int numLocations() {
+        return locations.length;
+    }
+
+    public BlockManagerId location(int loc) {
+        return locations[loc];
+    }
+
+    public int blockStart(int loc) {
+        return offsets[loc];
+    }
+
+    public int blockEnd(int loc) {
+        return offsets[loc + 1];
+    }
+
+    /**
+     * 非空数据块数
+     * */
+    public int numBlocks() {
+        return sizes.length;
+    }
+
+    public long totalBlocks() {
+        return totalBlocks;
+    }
+
+    public int mapId(int index) {
+        return mapIds[index];
+    }
+
+    public int reduceId(int index) {
+        return reduceIds[index];
+    }
+
+    public long size(int index) {
+        return sizes[index];
+    }
+
+    public ShuffleBlockId blockId(int index) {
+        return new ShuffleBlockId(shuffleId, mapIds[index], reduceIds[index]);
+    }
+}
@@ -25,6 +25,7 @@ public class SecurityManager implements SecretKeyHolder {
     public SecurityManager(SparkConf conf, byte[] ioEncryptionKey) {
         this.conf = conf;
         this.ioEncryptionKey = ioEncryptionKey;
+        this.secretKey = conf.get("spark.authenticate.secret", null);
     }
 
     public boolean isAuthenticationEnabled() {
@@ -1,18 +1,30 @@
 package com.sdu.spark;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.sdu.spark.broadcast.Broadcast;
 import com.sdu.spark.broadcast.BroadcastManager;
 import com.sdu.spark.scheduler.MapStatus;
+import com.sdu.spark.scheduler.ShufflePartitionCoalescer.ShufflePartitionSpec;
 import com.sdu.spark.storage.BlockManagerId;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * {@link MapOutputTrackerMaster}辅助类, 记录ShuffleMapStage运行状态(每个ShuffleMapStage对应一个ShuffleStatus)
  *
+ * 1: MapStatus每次增删版本号加1, 并在变更日志中记录变更的mapId(最多保留maxChangeLogSize条)
+ *
+ * 2: Reduce端携带已知版本号请求MapStatus, 已知版本仍在变更日志范围内时只返回变更的MapStatus, 否则返回全量
+ *
+ * 3: 全量及增量(按已知版本号)序列化结果缓存, MapStatus变更后失效
+ *
  * @author hanhan.zhang 
  * */
 public class ShuffleStatus {
@@ -27,10 +39,28 @@ public class ShuffleStatus {
 
     private Broadcast<byte[]> cachedSerializedBroadcast;
 
+    // 增量序列化信息[key = 已知版本号, value = 已知版本至当前版本的增量]
+    private final Map<Long, byte[]> cachedSerializedDeltas = Maps.newHashMap();
+
     private int numAvailableOutputs;
 
+    // MapStatus集合版本号
+    private long version = 0L;
+    // 变更日志: 版本(changeLogStartVersion, version]依次变更的mapId
+    private final ArrayDeque<Integer> changeLog = new ArrayDeque<>();
+    private long changeLogStartVersion = 0L;
+    private final int maxChangeLogSize;
+
+    // Reduce端读取范围(MapStatus变更后失效)
+    private List<ShufflePartitionSpec> partitionSpecs;
+
     public ShuffleStatus(int numPartitions) {
+        this(numPartitions, 1000);
+    }
+
+    public ShuffleStatus(int numPartitions, int maxChangeLogSize) {
         this.numPartitions = numPartitions;
+        this.maxChangeLogSize = maxChangeLogSize;
 
         this.mapStatuses = new MapStatus[this.numPartitions];
         this.numAvailableOutputs = 0;
@@ -39,17 +69,32 @@ public class ShuffleStatus {
     public synchronized void addMapOutput(int mapId, MapStatus status) {
         if (mapStatuses[mapId] == null) {
             numAvailableOutputs++;
-            invalidateSerializedMapOutputStatusCache();
         }
         mapStatuses[mapId] = status;
+        recordChange(mapId);
     }
 
     public synchronized void removeMapOutput(int mapId, BlockManagerId blockManagerId) {
         if (mapStatuses[mapId] != null && mapStatuses[mapId].location().equals(blockManagerId)) {
             mapStatuses[mapId] = null;
             numAvailableOutputs--;
-            invalidateSerializedMapOutputStatusCache();
+            recordChange(mapId);
+        }
+    }
+
+    private void recordChange(int mapId) {
+        version++;
+        partitionSpecs = null;
+        changeLog.addLast(mapId);
+        if (changeLog.size() > maxChangeLogSize) {
+            changeLog.removeFirst();
+            changeLogStartVersion++;
         }
+        invalidateSerializedMapOutputStatusCache();
+    }
+
+    public synchronized long version() {
+        return version;
     }
 
     public synchronized void removeOutputsOnHost(String host) {
@@ -65,7 +110,7 @@ public class ShuffleStatus {
             if (mapStatuses[i] != null && removeFilter.filter(mapStatuses[i].location())) {
                 mapStatuses[i] = null;
                 --numAvailableOutputs;
-                invalidateSerializedMapOutputStatusCache();
+                recordChange(i);
             }
         }
     }
@@ -91,12 +136,23 @@ public class ShuffleStatus {
     /**
      * {@link #mapStatuses}序列化, 发送到Reduce端
      *
+     * @param knownVersion Reduce端已持有的版本号(-1表示未持有)
      * */
     public synchronized byte[] serializedMapStatus(BroadcastManager broadcastManager,
-                                                   boolean isLocal, int minBroadcastSize) {
+                                                   boolean isLocal, int minBroadcastSize, long knownVersion) {
         try {
+            byte[] cachedDelta = cachedSerializedDeltas.get(knownVersion);
+            if (cachedDelta != null) {
+                return cachedDelta;
+            }
+            int[] changedMapIds = changedMapIdsSince(knownVersion);
+            if (changedMapIds != null) {
+                byte[] delta = MapOutputTracker.serializeMapStatusDelta(mapStatuses, changedMapIds, version);
+                cachedSerializedDeltas.put(knownVersion, delta);
+                return delta;
+            }
             if (cachedSerializedMapStatus == null) {
-                Pair<byte[], Broadcast<byte[]>> serResult = MapOutputTracker.serializeMapStatuses(mapStatuses, broadcastManager, isLocal, minBroadcastSize);
+                Pair<byte[], Broadcast<byte[]>> serResult = MapOutputTracker.serializeMapStatuses(mapStatuses, version, broadcastManager, isLocal, minBroadcastSize);
                 cachedSerializedMapStatus = serResult.getLeft();
                 cachedSerializedBroadcast = serResult.getRight();
             }
@@ -106,6 +162,27 @@ public class ShuffleStatus {
         return cachedSerializedMapStatus;
     }
 
+    /**
+     * knownVersion之后变更的mapId(升序), knownVersion超出变更日志范围或变更过多(增量不小于全量)时返回null
+     * */
+    private int[] changedMapIdsSince(long knownVersion) {
+        if (knownVersion < changeLogStartVersion || knownVersion > version) {
+            return null;
+        }
+        BitSet changed = new BitSet(numPartitions);
+        Iterator<Integer> iterator = changeLog.iterator();
+        for (long v = changeLogStartVersion; iterator.hasNext(); ++v) {
+            int mapId = iterator.next();
+            if (v >= knownVersion) {
+                changed.set(mapId);
+            }
+        }
+        if (changed.cardinality() * 2 > numPartitions) {
+            return null;
+        }
+        return changed.stream().toArray();
+    }
+
     // Used in testing.
     public synchronized boolean hasCachedSerializedBroadcast() {
         return cachedSerializedBroadcast != null;
@@ -119,6 +196,15 @@ public class ShuffleStatus {
             cachedSerializedBroadcast = null;
         }
         cachedSerializedMapStatus = null;
+        cachedSerializedDeltas.clear();
+    }
+
+    public synchronized void setPartitionSpecs(List<ShufflePartitionSpec> partitionSpecs) {
+        this.partitionSpecs = partitionSpecs;
+    }
+
+    public synchronized List<ShufflePartitionSpec> partitionSpecs() {
+        return partitionSpecs;
     }
 
     public synchronized <T> T withMapStatuses(ShuffleStatusMap<T> shuffleStatusMap) {
@@ -1,5 +1,6 @@
 package com.sdu.spark;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import com.sdu.spark.broadcast.Broadcast;
 import com.sdu.spark.rdd.RDD;
@@ -17,6 +18,7 @@ import org.slf4j.LoggerFactory;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -115,11 +117,35 @@ public class SparkContext {
 
     public Map<String, String> executorEnvs = Maps.newHashMap();
 
+    /**
+     * Job本地属性(如FAIR调度池spark.scheduler.pool), 子线程继承父线程属性
+     * */
+    private InheritableThreadLocal<Properties> localProperties = new InheritableThreadLocal<Properties>() {
+        @Override
+        protected Properties childValue(Properties parent) {
+            return new Properties(parent);
+        }
+
+        @Override
+        protected Properties initialValue() {
+            return new Properties();
+        }
+    };
+
     public SparkContext(SparkConf conf) {
         this.conf = conf;
         init();
     }
 
+    /**
+     * 不启动调度组件, 仅供单元测试使用
+     * */
+    @VisibleForTesting
+    protected SparkContext(SparkConf conf, SparkEnv env) {
+        this.conf = conf;
+        this.env = env;
+    }
+
     private void init() {
         // SparkContext启动时间
         this.startTime = System.currentTimeMillis();
@@ -168,6 +194,8 @@ public class SparkContext {
         applicationId = taskScheduler.applicationId();
         applicationAttemptId = taskScheduler.applicationAttemptId();
 
+        // 启动事件总线(启动前投递的事件暂存后按序分发)
+        listenerBus.start();
     }
 
     public String appName() {
@@ -240,8 +268,35 @@ public class SparkContext {
 
     }
 
+    /**
+     * 优先使用当前线程本地属性设置的CallSite, 未设置时返回空CallSite
+     * */
     public CallSite getCallSite() {
-        throw new UnsupportedOperationException("");
+        String shortForm = getLocalProperty(CallSite.SHORT_FORM);
+        String longForm = getLocalProperty(CallSite.LONG_FORM);
+        if (shortForm != null && longForm != null) {
+            return new CallSite(shortForm, longForm);
+        }
+        return CallSite.empty;
+    }
+
+    /**
+     * 设置当前线程提交Job的本地属性, value为null时删除
+     * */
+    public void setLocalProperty(String key, String value) {
+        if (value == null) {
+            localProperties.get().remove(key);
+        } else {
+            localProperties.get().setProperty(key, value);
+        }
+    }
+
+    public String getLocalProperty(String key) {
+        return localProperties.get().getProperty(key);
+    }
+
+    public Properties getLocalProperties() {
+        return localProperties.get();
     }
 
     public int newShuffleId() {
@@ -253,8 +308,10 @@ public class SparkContext {
     }
     
     public <T> Broadcast<T> broadcast(T value) {
-        // TODO: 待实现
-        throw new UnsupportedOperationException("");
+        assertNotStopped();
+        Broadcast<T> bc = env.broadcastManager.newBroadcast(value, isLocalMaster(conf));
+        LOGGER.info("Created broadcast {}", bc.id);
+        return bc;
     }
 
     private void assertNotStopped() {
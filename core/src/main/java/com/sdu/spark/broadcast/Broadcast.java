@@ -1,20 +1,61 @@
 package com.sdu.spark.broadcast;
 
+import com.sdu.spark.SparkException;
+
 import java.io.Serializable;
 
 /**
+ * 广播变量: 序列化时仅包含广播标识, 广播值由{@link #getValue()}在使用端按需获取
+ *
  * @author hanhan.zhang
  * */
-public class Broadcast<T> implements Serializable {
+public abstract class Broadcast<T> implements Serializable {
+
+    public final long id;
+
+    // 广播变量是否可用(destroy后不可用)
+    private volatile boolean isValid = true;
 
     public Broadcast(long id) {
+        this.id = id;
     }
 
+    public T value() {
+        assertValid();
+        return getValue();
+    }
+
+    /**
+     * 删除Executor端缓存的广播数据, 再次使用时重新从Driver获取
+     * */
+    public void unpersist(boolean blocking) {
+        assertValid();
+        doUnpersist(blocking);
+    }
+
+    /**
+     * 删除Driver及Executor端的广播数据, 之后不可再使用
+     * */
     public void destroy(boolean blocking) {
+        assertValid();
+        isValid = false;
+        doDestroy(blocking);
+    }
+
+    protected abstract T getValue();
 
+    protected abstract void doUnpersist(boolean blocking);
+
+    protected abstract void doDestroy(boolean blocking);
+
+    private void assertValid() {
+        if (!isValid) {
+            throw new SparkException(String.format("Attempted to use %s after it was destroyed", toString()));
+        }
     }
 
-    public T value() {
-        throw new UnsupportedOperationException("");
+    @Override
+    public String toString() {
+        return "Broadcast(" + id + ")";
     }
 }
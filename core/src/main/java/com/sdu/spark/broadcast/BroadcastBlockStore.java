@@ -0,0 +1,72 @@
+package com.sdu.spark.broadcast;
+
+import com.sdu.spark.storage.BlockData;
+import com.sdu.spark.storage.BlockId.BroadcastBlockId;
+import com.sdu.spark.storage.BlockManager;
+import com.sdu.spark.storage.StorageLevel;
+import com.sdu.spark.utils.ChunkedByteBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link TorrentBroadcast}数据块读写, 默认由本地BlockManager实现(见{@link #fromBlockManager(BlockManager)})
+ *
+ * @author hanhan.zhang
+ * */
+interface BroadcastBlockStore {
+
+    /**
+     * 数据块存入本地并汇报BlockManagerMaster(其他Executor可由此拉取)
+     * */
+    boolean putBytes(BroadcastBlockId pieceId, ByteBuffer block);
+
+    /**
+     * 读取本地数据块, 不存在返回null
+     * */
+    ByteBuffer getLocalBytes(BroadcastBlockId pieceId);
+
+    /**
+     * 拉取远端数据块, 均失败返回null
+     * */
+    ByteBuffer getRemoteBytes(BroadcastBlockId pieceId) throws IOException;
+
+    /**
+     * 删除Executor端(removeFromDriver = true时包含Driver端)的广播数据块
+     * */
+    void removeBroadcast(long id, boolean removeFromDriver, boolean blocking);
+
+    static BroadcastBlockStore fromBlockManager(BlockManager blockManager) {
+        return new BroadcastBlockStore() {
+            @Override
+            public boolean putBytes(BroadcastBlockId pieceId, ByteBuffer block) {
+                return blockManager.putBytes(pieceId, new ChunkedByteBuffer(block.duplicate()),
+                                             StorageLevel.MEMORY_AND_DISK_SER, true);
+            }
+
+            @Override
+            public ByteBuffer getLocalBytes(BroadcastBlockId pieceId) {
+                BlockData localBlock = blockManager.getLocalBytes(pieceId);
+                if (localBlock == null) {
+                    return null;
+                }
+                try {
+                    return localBlock.toByteBuffer();
+                } finally {
+                    blockManager.releaseLock(pieceId, -1);
+                }
+            }
+
+            @Override
+            public ByteBuffer getRemoteBytes(BroadcastBlockId pieceId) throws IOException {
+                ChunkedByteBuffer remoteBlock = blockManager.getRemoteBytes(pieceId);
+                return remoteBlock == null ? null : remoteBlock.toByteBuffer();
+            }
+
+            @Override
+            public void removeBroadcast(long id, boolean removeFromDriver, boolean blocking) {
+                blockManager.master.removeBroadcast(id, removeFromDriver, blocking);
+            }
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package com.sdu.spark.broadcast;
 
+import com.sdu.spark.SecurityManager;
 import com.sdu.spark.rpc.SparkConf;
 
 /**
@@ -1,9 +1,16 @@
 package com.sdu.spark.broadcast;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.Striped;
 import com.sdu.spark.SecurityManager;
+import com.sdu.spark.SparkEnv;
 import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.storage.BlockId.BroadcastBlockId;
 
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 /**
  * @author hanhan.zhang
@@ -18,18 +25,58 @@ public class BroadcastManager {
 
     private AtomicLong nextBroadcastId = new AtomicLong(0);
 
+    /**
+     * 反序列化后的广播值(弱引用), 同一进程内使用同一广播变量的Task(如同一Stage的Task)共享
+     * */
+    final Map<BroadcastBlockId, Object> cachedValues = new MapMaker().weakValues().makeMap();
+
+    /**
+     * 广播值读取锁(按广播标识分段): 同一广播变量只读取一次, 不同广播变量并行读取
+     * */
+    private final Striped<Lock> broadcastLocks = Striped.lazyWeakLock(1024);
+
+    // 数据块读写(默认使用SparkEnv的BlockManager, BlockManager在BroadcastManager之后创建)
+    private volatile BroadcastBlockStore blockStore;
+
     public BroadcastManager(boolean isDriver, SparkConf conf, SecurityManager securityManager) {
         this.isDriver = isDriver;
         this.conf = conf;
         this.securityManager = securityManager;
+        initialize();
+    }
+
+    @VisibleForTesting
+    BroadcastManager(boolean isDriver, SparkConf conf, BroadcastBlockStore blockStore) {
+        this(isDriver, conf, (SecurityManager) null);
+        this.blockStore = blockStore;
+    }
+
+    private void initialize() {
+        broadcastFactory = new TorrentBroadcastFactory();
+        broadcastFactory.initialize(isDriver, conf, securityManager);
     }
 
     public <T> Broadcast<T> newBroadcast(T value, boolean isLocal) {
         return broadcastFactory.newBroadcast(value, isLocal, nextBroadcastId.getAndIncrement());
     }
 
-    public void stop() {
+    public void unbroadcast(long id, boolean removeFromDriver, boolean blocking) {
+        cachedValues.remove(new BroadcastBlockId(id, null));
+        broadcastFactory.unbroadcast(id, removeFromDriver, blocking);
+    }
 
+    Lock broadcastLock(BroadcastBlockId broadcastId) {
+        return broadcastLocks.get(broadcastId);
+    }
+
+    BroadcastBlockStore blockStore() {
+        if (blockStore == null) {
+            blockStore = BroadcastBlockStore.fromBlockManager(SparkEnv.env.blockManager);
+        }
+        return blockStore;
     }
-}
 
+    public void stop() {
+        broadcastFactory.stop();
+    }
+}
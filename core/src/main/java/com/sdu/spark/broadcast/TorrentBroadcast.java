@@ -0,0 +1,220 @@
+package com.sdu.spark.broadcast;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.SparkEnv;
+import com.sdu.spark.SparkException;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.serializer.SerializerInstance;
+import com.sdu.spark.storage.BlockId.BroadcastBlockId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.Adler32;
+
+/**
+ * BitTorrent式广播:
+ *
+ * 1: Driver端将广播值序列化后按spark.broadcast.blockSize(默认4m)切分数据块, 以BroadcastBlockId(id, "piece" + i)
+ *
+ *    存入BlockManager并汇报BlockManagerMaster
+ *
+ * 2: Executor首次读取广播值时随机顺序拉取数据块(本地已有则直接读取), 拉取的数据块存入本地BlockManager并汇报,
+ *
+ *    其他Executor可由此拉取, 避免Driver成为网络瓶颈
+ *
+ * 3: 反序列化后的广播值缓存在{@link BroadcastManager}, 同一Executor上使用该广播变量的Task只拉取一次(按广播标识加锁)
+ *
+ * Note:
+ *
+ *   广播变量序列化时仅包含广播标识、数据块数及校验和
+ *
+ * @author hanhan.zhang
+ * */
+public class TorrentBroadcast<T> extends Broadcast<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TorrentBroadcast.class);
+
+    private final BroadcastBlockId broadcastId;
+    private final int numBlocks;
+    // 数据块Adler32校验和(spark.broadcast.checksum = false时为null)
+    private final int[] checksums;
+
+    // Driver端持有广播值, Executor端首次调用value()时读取
+    private transient volatile T _value;
+
+    public TorrentBroadcast(T obj, long id) {
+        super(id);
+        this.broadcastId = new BroadcastBlockId(id, null);
+        SparkConf conf = SparkEnv.env.conf;
+        int blockSize = (int) conf.getSizeAsKb("spark.broadcast.blockSize", "4m") * 1024;
+        boolean checksumEnabled = conf.getBoolean("spark.broadcast.checksum", true);
+        ByteBuffer[] blocks = blockifyObject(obj, blockSize, SparkEnv.env.serializer.newInstance());
+        this.numBlocks = blocks.length;
+        this.checksums = checksumEnabled ? new int[numBlocks] : null;
+        writeBlocks(blocks);
+        this._value = obj;
+    }
+
+    @Override
+    protected T getValue() {
+        T value = _value;
+        if (value == null) {
+            value = readBroadcastBlock();
+            _value = value;
+        }
+        return value;
+    }
+
+    @Override
+    protected void doUnpersist(boolean blocking) {
+        unpersist(id, false, blocking);
+    }
+
+    @Override
+    protected void doDestroy(boolean blocking) {
+        SparkEnv.env.broadcastManager.unbroadcast(id, true, blocking);
+    }
+
+    /**
+     * 数据块存入Driver端BlockManager并汇报BlockManagerMaster
+     * */
+    private void writeBlocks(ByteBuffer[] blocks) {
+        BroadcastBlockStore blockStore = SparkEnv.env.broadcastManager.blockStore();
+        for (int i = 0; i < blocks.length; ++i) {
+            if (checksums != null) {
+                checksums[i] = calcChecksum(blocks[i]);
+            }
+            BroadcastBlockId pieceId = new BroadcastBlockId(id, "piece" + i);
+            if (!blockStore.putBytes(pieceId, blocks[i])) {
+                throw new SparkException("Failed to store " + pieceId + " of " + broadcastId + " in local BlockManager");
+            }
+        }
+    }
+
+    /**
+     * 只持有当前广播变量的锁: 拉取大广播变量时不阻塞其他广播变量读取
+     * */
+    @SuppressWarnings("unchecked")
+    private T readBroadcastBlock() {
+        BroadcastManager broadcastManager = SparkEnv.env.broadcastManager;
+        Lock lock = broadcastManager.broadcastLock(broadcastId);
+        lock.lock();
+        try {
+            Object cached = broadcastManager.cachedValues.get(broadcastId);
+            if (cached != null) {
+                return (T) cached;
+            }
+            LOGGER.info("Started reading broadcast variable {}", id);
+            long startTimeMs = System.currentTimeMillis();
+            ByteBuffer[] blocks = readBlocks(broadcastManager.blockStore());
+            LOGGER.info("Reading broadcast variable {} took {} ms", id, System.currentTimeMillis() - startTimeMs);
+            T obj = unBlockifyObject(blocks, SparkEnv.env.serializer.newInstance());
+            broadcastManager.cachedValues.put(broadcastId, obj);
+            return obj;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 随机顺序读取数据块, 优先读取本地数据块, 远端拉取的数据块存入本地BlockManager供其他Executor拉取
+     * */
+    private ByteBuffer[] readBlocks(BroadcastBlockStore blockStore) {
+        ByteBuffer[] blocks = new ByteBuffer[numBlocks];
+        List<Integer> pieceIds = Lists.newArrayListWithCapacity(numBlocks);
+        for (int i = 0; i < numBlocks; ++i) {
+            pieceIds.add(i);
+        }
+        Collections.shuffle(pieceIds);
+
+        try {
+            for (int pid : pieceIds) {
+                BroadcastBlockId pieceId = new BroadcastBlockId(id, "piece" + pid);
+                LOGGER.debug("Reading piece {} of {}", pieceId, broadcastId);
+                ByteBuffer localBlock = blockStore.getLocalBytes(pieceId);
+                if (localBlock != null) {
+                    blocks[pid] = localBlock;
+                    continue;
+                }
+
+                ByteBuffer block = blockStore.getRemoteBytes(pieceId);
+                if (block == null) {
+                    throw new SparkException("Failed to get " + pieceId + " of " + broadcastId);
+                }
+                if (checksums != null && calcChecksum(block) != checksums[pid]) {
+                    throw new SparkException(String.format("corrupt remote block %s of %s: %d != %d", pieceId,
+                                                           broadcastId, calcChecksum(block), checksums[pid]));
+                }
+                if (!blockStore.putBytes(pieceId, block)) {
+                    throw new SparkException("Failed to store " + pieceId + " of " + broadcastId + " in local BlockManager");
+                }
+                blocks[pid] = block;
+            }
+        } catch (IOException e) {
+            throw new SparkException("Failed to read " + broadcastId, e);
+        }
+        return blocks;
+    }
+
+    private static int calcChecksum(ByteBuffer block) {
+        Adler32 adler = new Adler32();
+        adler.update(block.duplicate());
+        return (int) adler.getValue();
+    }
+
+    /**
+     * 序列化后按blockSize切分, 数据块共享序列化结果的内存
+     * */
+    static <T> ByteBuffer[] blockifyObject(T obj, int blockSize, SerializerInstance serializer) {
+        ByteBuffer bytes;
+        try {
+            bytes = serializer.serialize(obj);
+        } catch (IOException e) {
+            throw new SparkException("Failed to serialize broadcast value", e);
+        }
+        int numBlocks = Math.max(1, (bytes.remaining() + blockSize - 1) / blockSize);
+        ByteBuffer[] blocks = new ByteBuffer[numBlocks];
+        for (int i = 0; i < numBlocks; ++i) {
+            ByteBuffer block = bytes.duplicate();
+            block.position(bytes.position() + i * blockSize);
+            block.limit(Math.min(bytes.limit(), block.position() + blockSize));
+            blocks[i] = block.slice();
+        }
+        return blocks;
+    }
+
+    static <T> T unBlockifyObject(ByteBuffer[] blocks, SerializerInstance serializer) {
+        int size = 0;
+        for (ByteBuffer block : blocks) {
+            size += block.remaining();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        for (ByteBuffer block : blocks) {
+            bytes.put(block.duplicate());
+        }
+        bytes.flip();
+        try {
+            return serializer.deserialize(bytes, Thread.currentThread().getContextClassLoader());
+        } catch (IOException e) {
+            throw new SparkException("Failed to deserialize broadcast value", e);
+        }
+    }
+
+    /**
+     * 删除Executor端(removeFromDriver = true时包含Driver端)的广播数据块
+     * */
+    static void unpersist(long id, boolean removeFromDriver, boolean blocking) {
+        LOGGER.debug("Unpersisting TorrentBroadcast {}", id);
+        SparkEnv.env.broadcastManager.blockStore().removeBroadcast(id, removeFromDriver, blocking);
+    }
+
+    @Override
+    public String toString() {
+        return "TorrentBroadcast(" + id + ")";
+    }
+}
@@ -10,6 +10,7 @@ import com.sdu.spark.scheduler.TaskState;
 import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.*;
 import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.Shutdown;
 import com.sdu.spark.serializer.SerializerInstance;
+import com.sdu.spark.utils.SerializableBuffer;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
@@ -22,6 +23,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.sdu.spark.utils.RpcUtils.maxMessageSizeBytes;
 import static java.lang.String.format;
 
 /**
@@ -57,6 +59,8 @@ import static java.lang.String.format;
  *                         |
  *                         +---> CoarseGrainedSchedulerBackend.StatusUpdate()
  *
+ *       Note: spark.executor.statusUpdate.batchInterval(默认5ms)内的状态更新合并为StatusUpdates消息发送, 0表示不合并
+ *
  * @author hanhan.zhang
  * */
 public class CoarseGrainedExecutorBackend extends ThreadSafeRpcEndpoint implements ExecutorBackend {
@@ -75,6 +79,9 @@ public class CoarseGrainedExecutorBackend extends ThreadSafeRpcEndpoint implemen
     private volatile RpcEndpointRef driver;
     private SerializerInstance ser;
 
+    // Task状态更新合并窗口(ms), 窗口内首个状态更新触发定时发送
+    private final StatusUpdateBatcher statusUpdateBatcher;
+
     public CoarseGrainedExecutorBackend(RpcEnv rpcEnv,
                                         String driverUrl,
                                         String executorId,
@@ -90,6 +97,11 @@ public class CoarseGrainedExecutorBackend extends ThreadSafeRpcEndpoint implemen
         this.userClassPath = userClassPath;
         this.env = env;
         this.ser = this.env.closureSerializer.newInstance();
+        this.statusUpdateBatcher = new StatusUpdateBatcher(
+                executorId,
+                env.conf.getTimeAsMs("spark.executor.statusUpdate.batchInterval", "5ms"),
+                maxMessageSizeBytes(env.conf),
+                msg -> driver.send(msg));
     }
 
     @Override
@@ -134,6 +146,17 @@ public class CoarseGrainedExecutorBackend extends ThreadSafeRpcEndpoint implemen
                 LOGGER.info("Got assigned task {}", taskDesc.taskId);
                 executor.launchTask(this, taskDesc);
             }
+        } else if (msg instanceof LaunchTasks) {
+            if (executor == null) {
+                exitExecutor(1, "Received LaunchTasks command but executor was null", null);
+            } else {
+                LaunchTasks tasks = (LaunchTasks) msg;
+                for (SerializableBuffer taskData : tasks.taskData) {
+                    TaskDescription taskDesc = TaskDescription.decode(taskData.buffer);
+                    LOGGER.info("Got assigned task {}", taskDesc.taskId);
+                    executor.launchTask(this, taskDesc);
+                }
+            }
         } else if (msg instanceof KillTask) {
             if (executor == null) {
                 exitExecutor(1, "Received KillTask command but executor was null", null);
@@ -147,6 +170,7 @@ public class CoarseGrainedExecutorBackend extends ThreadSafeRpcEndpoint implemen
             self().send(new Shutdown());
         } else if (msg instanceof Shutdown) {
             stopping.set(true);
+            statusUpdateBatcher.flush();
             new Thread("CoarseGrainedExecutorBackend-stop-executor") {
                 @Override
                 public void run() {
@@ -178,7 +202,12 @@ public class CoarseGrainedExecutorBackend extends ThreadSafeRpcEndpoint implemen
             LOGGER.info("Drop {} because has not yet connected to driver", msg);
             return;
         }
-        driver.send(msg);
+        statusUpdateBatcher.add(msg);
+    }
+
+    @Override
+    public void onStop() {
+        statusUpdateBatcher.stop();
     }
 
     private void exitExecutor(int code, String reason, Throwable throwable) {
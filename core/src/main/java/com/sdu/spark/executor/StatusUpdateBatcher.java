@@ -0,0 +1,125 @@
+package com.sdu.spark.executor;
+
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.StatusUpdate;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.StatusUpdates;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.sdu.spark.utils.ThreadUtils.newDaemonSingleThreadScheduledExecutor;
+
+/**
+ * Executor状态更新合并发送:
+ *
+ *  1: batchIntervalMs内的状态更新合并为{@link StatusUpdates}, 单条消息累计数据不超过maxMessageSize
+ *
+ *  2: 合并窗口内只有一条状态更新时发送{@link StatusUpdate}
+ *
+ *  3: batchIntervalMs <= 0或{@link #stop()}后状态更新直接发送
+ *
+ * @author hanhan.zhang
+ * */
+class StatusUpdateBatcher {
+
+    private final String executorId;
+    private final long batchIntervalMs;
+    private final int maxMessageSize;
+    private final Consumer<CoarseGrainedClusterMessage> sender;
+    private final ScheduledExecutorService flusher;
+
+    @GuardedBy("this")
+    private List<StatusUpdate> pendingUpdates = new ArrayList<>();
+    @GuardedBy("this")
+    private boolean stopped = false;
+
+    StatusUpdateBatcher(String executorId,
+                        long batchIntervalMs,
+                        int maxMessageSize,
+                        Consumer<CoarseGrainedClusterMessage> sender) {
+        this.executorId = executorId;
+        this.batchIntervalMs = batchIntervalMs;
+        this.maxMessageSize = maxMessageSize;
+        this.sender = sender;
+        this.flusher = batchIntervalMs > 0 ? newDaemonSingleThreadScheduledExecutor("executor-status-update-flusher")
+                                           : null;
+    }
+
+    void add(StatusUpdate update) {
+        boolean sendDirectly;
+        boolean scheduleFlush = false;
+        synchronized (this) {
+            sendDirectly = flusher == null || stopped;
+            if (!sendDirectly) {
+                scheduleFlush = pendingUpdates.isEmpty();
+                pendingUpdates.add(update);
+            }
+        }
+        if (sendDirectly) {
+            sender.accept(update);
+            return;
+        }
+        if (scheduleFlush) {
+            try {
+                flusher.schedule(this::flush, batchIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // stop()与add()并发时flusher已关闭
+                flush();
+            }
+        }
+    }
+
+    /**
+     * 发送合并窗口内的状态更新
+     * */
+    void flush() {
+        List<StatusUpdate> updates;
+        synchronized (this) {
+            if (pendingUpdates.isEmpty()) {
+                return;
+            }
+            updates = pendingUpdates;
+            pendingUpdates = new ArrayList<>();
+        }
+
+        List<StatusUpdate> batch = new ArrayList<>(updates.size());
+        long batchSize = 0;
+        for (StatusUpdate update : updates) {
+            int size = update.data.buffer == null ? 0 : update.data.buffer.remaining();
+            if (!batch.isEmpty() && batchSize + size >= maxMessageSize) {
+                send(batch);
+                batch = new ArrayList<>();
+                batchSize = 0;
+            }
+            batch.add(update);
+            batchSize += size;
+        }
+        send(batch);
+    }
+
+    /**
+     * 发送未完成合并的状态更新并关闭flusher, 此后状态更新直接发送
+     * */
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+        }
+        flush();
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+    }
+
+    private void send(List<StatusUpdate> batch) {
+        if (batch.size() == 1) {
+            sender.accept(batch.get(0));
+        } else {
+            sender.accept(new StatusUpdates(executorId, batch));
+        }
+    }
+}
@@ -77,7 +77,7 @@ public class UnifiedMemoryManager extends MemoryManager {
             case OFF_HEAP:
                 storagePool = offHeapStorageMemoryPool;
                 executionPool = offHeapExecutionMemoryPool;
-                maxMemory = maxOnHeapStorageMemory();
+                maxMemory = maxOffHeapStorageMemory();
                 break;
             case ON_HEAP:
                 storagePool = onHeapStorageMemoryPool;
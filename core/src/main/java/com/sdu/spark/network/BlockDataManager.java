@@ -2,8 +2,11 @@ package com.sdu.spark.network;
 
 import com.sdu.spark.network.buffer.ManagedBuffer;
 import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockManagerId;
 import com.sdu.spark.storage.StorageLevel;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author hanhan.zhang
  * */
@@ -23,6 +26,14 @@ public interface BlockDataManager {
      */
     boolean putBlockData(BlockId blockId, ManagedBuffer data, StorageLevel level);
 
+    /**
+     * Put the block locally and forward it along the replication pipeline `downstream`.
+     *
+     * Returns the block managers (including this one) which stored the block.
+     */
+    CompletableFuture<BlockManagerId[]> putBlockDataAndForward(BlockId blockId, ManagedBuffer data,
+                                                               StorageLevel level, BlockManagerId[] downstream);
+
     /**
      * Release locks acquired by [[putBlockData()]] and [[getBlockData()]].
      */
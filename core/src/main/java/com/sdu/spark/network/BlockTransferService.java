@@ -5,11 +5,13 @@ import com.sdu.spark.network.buffer.NioManagerBuffer;
 import com.sdu.spark.network.shuffle.BlockFetchingListener;
 import com.sdu.spark.network.shuffle.ShuffleClient;
 import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockManagerId;
 import com.sdu.spark.storage.StorageLevel;
 import org.apache.commons.lang3.ArrayUtils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -42,6 +44,28 @@ public abstract class BlockTransferService implements ShuffleClient {
     public abstract Future<Boolean> uploadBlock(String hostname, int port, String execId, BlockId blockId,
                                              ManagedBuffer blockData, StorageLevel level);
 
+    /**
+     * Upload a single block to the head of a replication pipeline: each node stores the block and
+     * forwards it to the next node of `downstream`. The future returns the nodes which stored the block.
+     */
+    public abstract CompletableFuture<BlockManagerId[]> uploadBlockPipeline(String hostname, int port, String execId,
+                                                                            BlockId blockId, ManagedBuffer blockData,
+                                                                            StorageLevel level, BlockManagerId[] downstream);
+
+
+    /**
+     * 预建到远端BlockTransferService的连接, 默认不预建
+     */
+    public void warmUp(String host, int port) {
+
+    }
+
+    /**
+     * 每个远端预建的连接数(0表示不预建)
+     * */
+    public int warmUpConnections() {
+        return 0;
+    }
 
     public ManagedBuffer fetchBlockSync(String host, int port, String execId, String blockId) {
         AtomicReference<ManagedBuffer> buf = new AtomicReference<>();
@@ -15,6 +15,7 @@ import com.sdu.spark.network.shuffle.protocol.StreamHandle;
 import com.sdu.spark.network.shuffle.protocol.UploadBlock;
 import com.sdu.spark.serializer.Serializer;
 import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.ReplicationPipeline;
 import com.sdu.spark.storage.StorageLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,11 +58,28 @@ public class NettyBlockRpcServer extends RpcHandler {
         } else if (msg instanceof UploadBlock) {
             try {
                 UploadBlock uploadBlock = (UploadBlock) msg;
-                StorageLevel level = serializer.newInstance().deserialize(ByteBuffer.wrap(uploadBlock.metadata));
+                Object metadata = serializer.newInstance().deserialize(ByteBuffer.wrap(uploadBlock.metadata));
                 BlockId blockId = BlockId.apply(uploadBlock.blockId);
                 NioManagerBuffer buf = new NioManagerBuffer(ByteBuffer.wrap(uploadBlock.blockData));
-                blockManager.putBlockData(blockId, buf, level);
-                callback.onSuccess(ByteBuffer.allocate(0));
+                if (metadata instanceof ReplicationPipeline) {
+                    // 流水线复制: 存储并转发给下游节点, 下游完成后再响应(不阻塞IO线程)
+                    ReplicationPipeline pipeline = (ReplicationPipeline) metadata;
+                    blockManager.putBlockDataAndForward(blockId, buf, pipeline.level, pipeline.downstream)
+                                .whenComplete((stored, cause) -> {
+                                    if (cause != null) {
+                                        callback.onFailure(cause);
+                                        return;
+                                    }
+                                    try {
+                                        callback.onSuccess(serializer.newInstance().serialize(stored));
+                                    } catch (IOException e) {
+                                        callback.onFailure(e);
+                                    }
+                                });
+                } else {
+                    blockManager.putBlockData(blockId, buf, (StorageLevel) metadata);
+                    callback.onSuccess(ByteBuffer.allocate(0));
+                }
             } catch (IOException e) {
                 callback.onFailure(e);
             }
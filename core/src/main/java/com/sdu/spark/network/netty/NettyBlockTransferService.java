@@ -26,12 +26,16 @@ import com.sdu.spark.rpc.SparkConf;
 import com.sdu.spark.serializer.JavaSerializer;
 import com.sdu.spark.serializer.Serializer;
 import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockManagerId;
+import com.sdu.spark.storage.ReplicationPipeline;
 import com.sdu.spark.storage.StorageLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
 
 /**
@@ -129,6 +133,28 @@ public class NettyBlockTransferService extends BlockTransferService {
         }
     }
 
+    /**
+     * 预建spark.shuffle.io.warmUpConnections个连接(含SASL等Bootstrap)
+     * */
+    @Override
+    public void warmUp(String host, int port) {
+        int connections = warmUpConnections();
+        if (connections <= 0 || clientFactory == null) {
+            return;
+        }
+        try {
+            int active = clientFactory.warmUp(host, port, connections);
+            LOGGER.debug("Warmed up connections to {}:{}, {} active", host, port, active);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to warm up connections to {}:{}", host, port, e);
+        }
+    }
+
+    @Override
+    public int warmUpConnections() {
+        return transportConf.warmUpConnections();
+    }
+
     @Override
     public Future<Boolean> uploadBlock(String hostname, int port, String execId, BlockId blockId, ManagedBuffer blockData, StorageLevel level) {
         try {
@@ -146,6 +172,32 @@ public class NettyBlockTransferService extends BlockTransferService {
         }
     }
 
+    @Override
+    public CompletableFuture<BlockManagerId[]> uploadBlockPipeline(String hostname, int port, String execId, BlockId blockId,
+                                                                   ManagedBuffer blockData, StorageLevel level,
+                                                                   BlockManagerId[] downstream) {
+        try {
+            TransportClient client = clientFactory.createClient(hostname, port);
+            // 元数据为ReplicationPipeline, 接收节点据此存储并转发给下游节点
+            byte[] metadata = JavaUtils.bufferToArray(serializer.newInstance().serialize(
+                    new ReplicationPipeline(level, downstream)));
+            byte[] blockDataBytes = JavaUtils.bufferToArray(blockData.nioByteBuffer());
+
+            NettyBlockUploadCallback uploadCallback = new NettyBlockUploadCallback();
+            client.sendRpc(new UploadBlock(appId, execId, blockId.toString(), metadata, blockDataBytes).toByteBuffer(), uploadCallback);
+
+            return uploadCallback.getResponse().thenApply(response -> {
+                try {
+                    return serializer.newInstance().<BlockManagerId[]>deserialize(response);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 
     @Override
     public void close() {
@@ -10,55 +10,27 @@ import java.util.concurrent.*;
  * */
 public class NettyBlockUploadCallback implements RpcResponseCallback {
 
-
-    private boolean result = false;
-    private Throwable error;
-    private boolean cancelled = false;
-    private CountDownLatch countDownLatch = new CountDownLatch(1);
+    private CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
 
     @Override
     public void onSuccess(ByteBuffer response) {
-        result = true;
+        // 回调结束后response会被释放, 需拷贝
+        ByteBuffer copy = ByteBuffer.allocate(response.remaining());
+        copy.put(response);
+        copy.flip();
+        this.response.complete(copy);
     }
 
     @Override
     public void onFailure(Throwable e) {
-        this.error = e;
+        response.completeExceptionally(e);
     }
 
     public Future<Boolean> getResponseFuture() {
-        return new Future<Boolean>() {
-            @Override
-            public boolean cancel(boolean mayInterruptIfRunning) {
-                if (countDownLatch.getCount() > 1) {
-                    cancelled = true;
-                    countDownLatch.countDown();
-                    return true;
-                }
-                return false;
-            }
-
-            @Override
-            public boolean isCancelled() {
-                return cancelled;
-            }
-
-            @Override
-            public boolean isDone() {
-                return countDownLatch.getCount() == 0;
-            }
-
-            @Override
-            public Boolean get() throws InterruptedException, ExecutionException {
-                countDownLatch.await();
-                return result;
-            }
+        return response.thenApply(r -> true);
+    }
 
-            @Override
-            public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-                countDownLatch.await(timeout, unit);
-                return result;
-            }
-        };
+    public CompletableFuture<ByteBuffer> getResponse() {
+        return response;
     }
 }
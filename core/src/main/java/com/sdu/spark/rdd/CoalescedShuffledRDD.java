@@ -0,0 +1,68 @@
+package com.sdu.spark.rdd;
+
+import com.sdu.spark.Partition;
+import com.sdu.spark.ShuffleDependency;
+import com.sdu.spark.SparkEnv;
+import com.sdu.spark.TaskContext;
+import com.sdu.spark.scheduler.ShufflePartitionCoalescer.ShufflePartitionSpec;
+import com.sdu.spark.utils.scala.Product2;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link CoalescedShuffledRDD}按自适应执行规划的读取范围({@link ShufflePartitionSpec})读取Shuffle数据:
+ *
+ *  1: 每个读取范围对应一个分区, 读取Reduce分区[startPartition, endPartition]
+ *
+ *  2: 倾斜分区拆分后的读取范围只读取MapTask[startMapIndex, endMapIndex)的输出
+ *
+ * @author hanhan.zhang
+ * */
+public class CoalescedShuffledRDD<K, C> extends RDD<Product2<K, C>> {
+
+    private final ShuffleDependency<K, ?, C> dependency;
+    private final List<ShufflePartitionSpec> partitionSpecs;
+
+    public CoalescedShuffledRDD(ShuffleDependency<K, ?, C> dependency, List<ShufflePartitionSpec> partitionSpecs) {
+        super(dependency.rdd().context(), Collections.singletonList(dependency));
+        this.dependency = dependency;
+        this.partitionSpecs = partitionSpecs;
+    }
+
+    @Override
+    protected Partition[] getPartitions() {
+        Partition[] partitions = new Partition[partitionSpecs.size()];
+        for (int i = 0; i < partitions.length; ++i) {
+            partitions[i] = new CoalescedShuffledPartition(i, partitionSpecs.get(i));
+        }
+        return partitions;
+    }
+
+    @Override
+    public Iterator<Product2<K, C>> compute(Partition split, TaskContext context) {
+        ShufflePartitionSpec spec = ((CoalescedShuffledPartition) split).spec;
+        return SparkEnv.env.shuffleManager.<K, C>getReader(dependency.shuffleHandle(),
+                                                           spec.startMapIndex,
+                                                           spec.endMapIndex,
+                                                           spec.startPartition,
+                                                           spec.endPartition,
+                                                           context).read();
+    }
+
+    public static class CoalescedShuffledPartition extends Partition {
+        private final int index;
+        public final ShufflePartitionSpec spec;
+
+        CoalescedShuffledPartition(int index, ShufflePartitionSpec spec) {
+            this.index = index;
+            this.spec = spec;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.sdu.spark.rdd;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.sdu.spark.*;
 import com.sdu.spark.storage.BlockId.RDDBlockId;
 import com.sdu.spark.storage.BlockResult;
@@ -8,9 +10,7 @@ import com.sdu.spark.utils.CallSite;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.Serializable;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 /**
  * @author hanhan.zhang
@@ -22,6 +22,7 @@ public abstract class RDD<T> implements Serializable {
 
     public int id;
 
+    private transient LinkedList<Dependency<?>> dependencies;
     private transient Partition[] partitions;
     public CallSite creationSite;
     public StorageLevel storageLevel = StorageLevel.NONE;
@@ -45,7 +46,7 @@ public abstract class RDD<T> implements Serializable {
 
     @SuppressWarnings("unchecked")
     protected <U> RDD<U> firstParent() {
-        return (RDD<U>) dependencies().poll().rdd();
+        return (RDD<U>) dependencies().getFirst().rdd();
     }
 
     @SuppressWarnings("unchecked")
@@ -75,21 +76,57 @@ public abstract class RDD<T> implements Serializable {
         return sc;
     }
 
+    /**
+     * RDD依赖(首次调用时由{@link #getDependencies()}计算并缓存)
+     * */
     public final LinkedList<Dependency<?>> dependencies() {
-        // TODO: 待实现
-        throw new UnsupportedOperationException("");
+        if (dependencies == null) {
+            List<Dependency<?>> deps = getDependencies();
+            dependencies = deps == null ? new LinkedList<>() : new LinkedList<>(deps);
+        }
+        return dependencies;
     }
 
-    public Partition[] partitions() {
-        throw new UnsupportedOperationException("");
+    /**
+     * RDD分区(首次调用时由{@link #getPartitions()}计算并缓存)
+     * */
+    public final Partition[] partitions() {
+        if (partitions == null) {
+            partitions = getPartitions();
+        }
+        return partitions;
     }
 
-    public String[] preferredLocations(Partition split) {
-        throw new UnsupportedOperationException("");
+    public final String[] preferredLocations(Partition split) {
+        return getPreferredLocations(split);
     }
 
+    /**
+     * 窄依赖祖先RDD(不包含当前RDD)
+     * */
     public List<RDD> getNarrowAncestors() {
-        throw new UnsupportedOperationException("");
+        Set<RDD<?>> ancestors = Sets.newLinkedHashSet();
+        Deque<RDD<?>> waitingForVisit = new ArrayDeque<>();
+        waitingForVisit.push(this);
+        while (!waitingForVisit.isEmpty()) {
+            RDD<?> rdd = waitingForVisit.pop();
+            for (Dependency<?> dep : rdd.dependencies()) {
+                if (dep instanceof NarrowDependency && dep.rdd() != this && ancestors.add(dep.rdd())) {
+                    waitingForVisit.push(dep.rdd());
+                }
+            }
+        }
+        return Lists.newArrayList(ancestors);
+    }
+
+    protected List<Dependency<?>> getDependencies() {
+        return deps;
+    }
+
+    protected abstract Partition[] getPartitions();
+
+    protected String[] getPreferredLocations(Partition split) {
+        return new String[0];
     }
 
     private boolean isCheckpointedAndMaterialized() {
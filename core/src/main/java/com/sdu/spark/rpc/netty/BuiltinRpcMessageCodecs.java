@@ -0,0 +1,454 @@
+package com.sdu.spark.rpc.netty;
+
+import com.sdu.spark.MapOutputTrackerMessage;
+import com.sdu.spark.deploy.DeployMessage;
+import com.sdu.spark.deploy.ExecutorState;
+import com.sdu.spark.executor.Heartbeat;
+import com.sdu.spark.executor.HeartbeatResponse;
+import com.sdu.spark.scheduler.TaskState;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage;
+import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockManagerId;
+import com.sdu.spark.storage.BlockManagerMessages;
+import com.sdu.spark.storage.StorageLevel;
+import com.sdu.spark.utils.SerializableBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.sdu.spark.rpc.netty.RpcMessageCodec.empty;
+import static com.sdu.spark.rpc.netty.RpcMessageCodec.of;
+
+/**
+ * 内置Rpc消息编解码注册, 注册ID划分:
+ *
+ *  1: [1, 9]: 通用响应消息
+ *
+ *  2: [10, 39]: {@link CoarseGrainedClusterMessage}及Executor心跳
+ *
+ *  3: [40, 79]: {@link BlockManagerMessages}
+ *
+ *  4: [80, 119]: {@link DeployMessage}
+ *
+ *  5: [120, 127]: {@link MapOutputTrackerMessage}
+ *
+ * Note:
+ *
+ *  1': 注册ID参与网络传输, 已分配的ID不可修改, 新增消息只能使用未分配的ID
+ *
+ *  2': 含自定义类型字段(如ExecutorLossReason, ApplicationDescription, MatchingBlockFilter)的消息未注册, 使用Java序列化
+ *
+ *  3': 枚举字段按显式编码表写入, 编码表只可追加(不依赖枚举声明顺序)
+ *
+ * @author hanhan.zhang
+ * */
+class BuiltinRpcMessageCodecs {
+
+    private static final TaskState[] TASK_STATE_IDS = {
+            TaskState.LAUNCHING, TaskState.RUNNING, TaskState.FINISHED, TaskState.FAILED, TaskState.KILLED, TaskState.LOST
+    };
+    private static final ExecutorState[] EXECUTOR_STATE_IDS = {
+            ExecutorState.LAUNCHING, ExecutorState.RUNNING, ExecutorState.KILLED, ExecutorState.FAILED,
+            ExecutorState.LOST, ExecutorState.EXITED
+    };
+
+    private BuiltinRpcMessageCodecs() {}
+
+    static void registerAll(RpcCodec codec) {
+        codec.registerBuiltin(1, Boolean.class, of((msg, out) -> out.writeBoolean(msg), RpcCodecInput::readBoolean));
+
+        registerClusterMessages(codec);
+        registerBlockManagerMessages(codec);
+        registerDeployMessages(codec);
+        registerMapOutputTrackerMessages(codec);
+    }
+
+    private static void registerClusterMessages(RpcCodec codec) {
+        codec.registerBuiltin(10, CoarseGrainedClusterMessage.RegisteredExecutor.class,
+                empty(CoarseGrainedClusterMessage.RegisteredExecutor::new));
+        codec.registerBuiltin(11, CoarseGrainedClusterMessage.RegisterExecutorFailed.class,
+                of((msg, out) -> out.writeString(msg.message),
+                   in -> new CoarseGrainedClusterMessage.RegisterExecutorFailed(in.readString())));
+        codec.registerBuiltin(12, CoarseGrainedClusterMessage.LaunchTask.class,
+                of((msg, out) -> out.writeByteBuffer(msg.taskData.buffer),
+                   in -> new CoarseGrainedClusterMessage.LaunchTask(new SerializableBuffer(in.readByteBuffer()))));
+        codec.registerBuiltin(13, CoarseGrainedClusterMessage.RetrieveSparkAppConfig.class,
+                empty(CoarseGrainedClusterMessage.RetrieveSparkAppConfig::new));
+        codec.registerBuiltin(14, CoarseGrainedClusterMessage.StopExecutor.class,
+                empty(CoarseGrainedClusterMessage.StopExecutor::new));
+        codec.registerBuiltin(15, CoarseGrainedClusterMessage.Shutdown.class,
+                empty(CoarseGrainedClusterMessage.Shutdown::new));
+        codec.registerBuiltin(16, CoarseGrainedClusterMessage.StopDriver.class,
+                empty(CoarseGrainedClusterMessage.StopDriver::new));
+        codec.registerBuiltin(17, CoarseGrainedClusterMessage.ReviveOffers.class,
+                empty(CoarseGrainedClusterMessage.ReviveOffers::new));
+        codec.registerBuiltin(18, CoarseGrainedClusterMessage.StatusUpdate.class,
+                of((msg, out) -> {
+                    out.writeString(msg.executorId);
+                    out.writeLong(msg.taskId);
+                    out.writeEnum(msg.state, TASK_STATE_IDS);
+                    out.writeByteBuffer(msg.data == null ? null : msg.data.buffer);
+                }, in -> new CoarseGrainedClusterMessage.StatusUpdate(in.readString(), in.readLong(),
+                                                                      in.readEnum(TASK_STATE_IDS), in.readByteBuffer())));
+        codec.registerBuiltin(19, CoarseGrainedClusterMessage.RegisterExecutor.class,
+                of((msg, out) -> {
+                    out.writeString(msg.executorId);
+                    out.writeEndpointRef(msg.executorRef);
+                    out.writeString(msg.hostname);
+                    out.writeInt(msg.cores);
+                    writeStringMap(out, msg.logUrls);
+                }, in -> new CoarseGrainedClusterMessage.RegisterExecutor(in.readString(), in.readEndpointRef(),
+                                                                          in.readString(), in.readInt(), readStringMap(in))));
+        codec.registerBuiltin(20, CoarseGrainedClusterMessage.KillExecutorsOnHost.class,
+                of((msg, out) -> out.writeString(msg.host),
+                   in -> new CoarseGrainedClusterMessage.KillExecutorsOnHost(in.readString())));
+        codec.registerBuiltin(21, CoarseGrainedClusterMessage.StopExecutors.class,
+                empty(CoarseGrainedClusterMessage.StopExecutors::new));
+        codec.registerBuiltin(22, CoarseGrainedClusterMessage.KillTask.class,
+                of((msg, out) -> {
+                    out.writeLong(msg.taskId);
+                    out.writeString(msg.executorId);
+                    out.writeBoolean(msg.interruptThread);
+                    out.writeString(msg.reason);
+                }, in -> new CoarseGrainedClusterMessage.KillTask(in.readLong(), in.readString(),
+                                                                  in.readBoolean(), in.readString())));
+        codec.registerBuiltin(23, CoarseGrainedClusterMessage.RemoveWorker.class,
+                of((msg, out) -> {
+                    out.writeString(msg.workerId);
+                    out.writeString(msg.host);
+                    out.writeString(msg.message);
+                }, in -> new CoarseGrainedClusterMessage.RemoveWorker(in.readString(), in.readString(), in.readString())));
+        codec.registerBuiltin(24, CoarseGrainedClusterMessage.LaunchTasks.class,
+                of((msg, out) -> {
+                    out.writeVarInt(msg.taskData.size());
+                    for (SerializableBuffer taskData : msg.taskData) {
+                        out.writeByteBuffer(taskData.buffer);
+                    }
+                }, in -> {
+                    int size = in.readVarInt();
+                    List<SerializableBuffer> taskData = new ArrayList<>(size);
+                    for (int i = 0; i < size; ++i) {
+                        taskData.add(new SerializableBuffer(in.readByteBuffer()));
+                    }
+                    return new CoarseGrainedClusterMessage.LaunchTasks(taskData);
+                }));
+        // Executor标识只写入一次
+        codec.registerBuiltin(25, CoarseGrainedClusterMessage.StatusUpdates.class,
+                of((msg, out) -> {
+                    out.writeString(msg.executorId);
+                    out.writeVarInt(msg.updates.size());
+                    for (CoarseGrainedClusterMessage.StatusUpdate update : msg.updates) {
+                        out.writeLong(update.taskId);
+                        out.writeEnum(update.state, TASK_STATE_IDS);
+                        out.writeByteBuffer(update.data == null ? null : update.data.buffer);
+                    }
+                }, in -> {
+                    String executorId = in.readString();
+                    int size = in.readVarInt();
+                    List<CoarseGrainedClusterMessage.StatusUpdate> updates = new ArrayList<>(size);
+                    for (int i = 0; i < size; ++i) {
+                        updates.add(new CoarseGrainedClusterMessage.StatusUpdate(executorId, in.readLong(),
+                                                                                 in.readEnum(TASK_STATE_IDS),
+                                                                                 in.readByteBuffer()));
+                    }
+                    return new CoarseGrainedClusterMessage.StatusUpdates(executorId, updates);
+                }));
+        codec.registerBuiltin(26, Heartbeat.class,
+                of((msg, out) -> {
+                    out.writeString(msg.executorId);
+                    out.writeBlockManagerId(msg.blockManagerId);
+                }, in -> new Heartbeat(in.readString(), in.readBlockManagerId())));
+        codec.registerBuiltin(27, HeartbeatResponse.class,
+                of((msg, out) -> out.writeBoolean(msg.registerBlockManager),
+                   in -> new HeartbeatResponse(in.readBoolean())));
+    }
+
+    private static void registerBlockManagerMessages(RpcCodec codec) {
+        codec.registerBuiltin(40, BlockManagerMessages.RemoveBlock.class,
+                of((msg, out) -> out.writeBlockId(msg.blockId),
+                   in -> new BlockManagerMessages.RemoveBlock(in.readBlockId())));
+        codec.registerBuiltin(41, BlockManagerMessages.ReplicateBlock.class,
+                of((msg, out) -> {
+                    out.writeBlockId(msg.blockId);
+                    writeBlockManagerIds(out, msg.replicas);
+                    out.writeInt(msg.maxReplicas);
+                }, in -> new BlockManagerMessages.ReplicateBlock(in.readBlockId(), readBlockManagerIds(in), in.readInt())));
+        codec.registerBuiltin(42, BlockManagerMessages.RemoveRdd.class,
+                of((msg, out) -> out.writeInt(msg.rddId),
+                   in -> new BlockManagerMessages.RemoveRdd(in.readInt())));
+        codec.registerBuiltin(43, BlockManagerMessages.RemoveShuffle.class,
+                of((msg, out) -> out.writeInt(msg.shuffleId),
+                   in -> new BlockManagerMessages.RemoveShuffle(in.readInt())));
+        codec.registerBuiltin(44, BlockManagerMessages.RemoveBroadcast.class,
+                of((msg, out) -> {
+                    out.writeLong(msg.broadcastId);
+                    out.writeBoolean(msg.removeFromDriver);
+                }, in -> new BlockManagerMessages.RemoveBroadcast(in.readLong(), in.readBoolean())));
+        codec.registerBuiltin(45, BlockManagerMessages.TriggerThreadDump.class,
+                empty(BlockManagerMessages.TriggerThreadDump::new));
+        codec.registerBuiltin(46, BlockManagerMessages.RegisterBlockManager.class,
+                of((msg, out) -> {
+                    out.writeBlockManagerId(msg.blockManagerId);
+                    out.writeLong(msg.maxOnHeapMemSize);
+                    out.writeLong(msg.maxOffHeapMemSize);
+                    out.writeEndpointRef(msg.sender);
+                }, in -> new BlockManagerMessages.RegisterBlockManager(in.readBlockManagerId(), in.readLong(),
+                                                                       in.readLong(), in.readEndpointRef())));
+        codec.registerBuiltin(47, BlockManagerMessages.UpdateBlockInfo.class,
+                of((msg, out) -> {
+                    out.writeBlockManagerId(msg.blockManagerId);
+                    out.writeBlockId(msg.blockId);
+                    out.writeStorageLevel(msg.storageLevel);
+                    out.writeLong(msg.memSize);
+                    out.writeLong(msg.diskSize);
+                }, in -> new BlockManagerMessages.UpdateBlockInfo(in.readBlockManagerId(), in.readBlockId(),
+                                                                  in.readStorageLevel(), in.readLong(), in.readLong())));
+        codec.registerBuiltin(48, BlockManagerMessages.UpdateBlockInfos.class,
+                of((msg, out) -> {
+                    out.writeBlockManagerId(msg.blockManagerId);
+                    out.writeVarInt(msg.size());
+                    for (int i = 0; i < msg.size(); ++i) {
+                        out.writeBlockId(msg.blockIds[i]);
+                        out.writeStorageLevel(msg.storageLevels[i]);
+                        out.writeLong(msg.memSizes[i]);
+                        out.writeLong(msg.diskSizes[i]);
+                    }
+                }, in -> {
+                    BlockManagerId blockManagerId = in.readBlockManagerId();
+                    int size = in.readVarInt();
+                    BlockId[] blockIds = new BlockId[size];
+                    StorageLevel[] storageLevels = new StorageLevel[size];
+                    long[] memSizes = new long[size];
+                    long[] diskSizes = new long[size];
+                    for (int i = 0; i < size; ++i) {
+                        blockIds[i] = in.readBlockId();
+                        storageLevels[i] = in.readStorageLevel();
+                        memSizes[i] = in.readLong();
+                        diskSizes[i] = in.readLong();
+                    }
+                    return new BlockManagerMessages.UpdateBlockInfos(blockManagerId, blockIds, storageLevels,
+                                                                     memSizes, diskSizes);
+                }));
+        codec.registerBuiltin(49, BlockManagerMessages.GetLocations.class,
+                of((msg, out) -> out.writeBlockId(msg.blockId),
+                   in -> new BlockManagerMessages.GetLocations(in.readBlockId())));
+        codec.registerBuiltin(50, BlockManagerMessages.GetLocationsMultipleBlockIds.class,
+                of((msg, out) -> {
+                    out.writeVarInt(msg.blockIds.length);
+                    for (BlockId blockId : msg.blockIds) {
+                        out.writeBlockId(blockId);
+                    }
+                }, in -> {
+                    BlockId[] blockIds = new BlockId[in.readVarInt()];
+                    for (int i = 0; i < blockIds.length; ++i) {
+                        blockIds[i] = in.readBlockId();
+                    }
+                    return new BlockManagerMessages.GetLocationsMultipleBlockIds(blockIds);
+                }));
+        codec.registerBuiltin(51, BlockManagerMessages.GetPeers.class,
+                of((msg, out) -> out.writeBlockManagerId(msg.blockManagerId),
+                   in -> new BlockManagerMessages.GetPeers(in.readBlockManagerId())));
+        codec.registerBuiltin(52, BlockManagerMessages.GetExecutorEndpointRef.class,
+                of((msg, out) -> out.writeString(msg.execId),
+                   in -> new BlockManagerMessages.GetExecutorEndpointRef(in.readString())));
+        codec.registerBuiltin(53, BlockManagerMessages.RemoveExecutor.class,
+                of((msg, out) -> out.writeString(msg.execId),
+                   in -> new BlockManagerMessages.RemoveExecutor(in.readString())));
+        codec.registerBuiltin(54, BlockManagerMessages.StopBlockManagerMaster.class,
+                empty(BlockManagerMessages.StopBlockManagerMaster::new));
+        codec.registerBuiltin(55, BlockManagerMessages.GetMemoryStatus.class,
+                empty(BlockManagerMessages.GetMemoryStatus::new));
+        codec.registerBuiltin(56, BlockManagerMessages.GetStorageStatus.class,
+                empty(BlockManagerMessages.GetStorageStatus::new));
+        codec.registerBuiltin(57, BlockManagerMessages.GetBlockStatus.class,
+                of((msg, out) -> {
+                    out.writeBlockId(msg.blockId);
+                    out.writeBoolean(msg.askSlave);
+                }, in -> new BlockManagerMessages.GetBlockStatus(in.readBlockId(), in.readBoolean())));
+        codec.registerBuiltin(58, BlockManagerMessages.BlockManagerHeartbeat.class,
+                of((msg, out) -> out.writeBlockManagerId(msg.blockManagerId),
+                   in -> new BlockManagerMessages.BlockManagerHeartbeat(in.readBlockManagerId())));
+        codec.registerBuiltin(59, BlockManagerMessages.HasCachedBlocks.class,
+                of((msg, out) -> out.writeString(msg.executorId),
+                   in -> new BlockManagerMessages.HasCachedBlocks(in.readString())));
+    }
+
+    private static void registerDeployMessages(RpcCodec codec) {
+        codec.registerBuiltin(80, DeployMessage.Heartbeat.class,
+                of((msg, out) -> {
+                    out.writeString(msg.workerId);
+                    out.writeEndpointRef(msg.worker);
+                }, in -> new DeployMessage.Heartbeat(in.readString(), in.readEndpointRef())));
+        codec.registerBuiltin(81, DeployMessage.SendHeartbeat.class,
+                empty(DeployMessage.SendHeartbeat::new));
+        codec.registerBuiltin(82, DeployMessage.RegisterWorker.class,
+                of((msg, out) -> {
+                    out.writeString(msg.workerId);
+                    out.writeString(msg.host);
+                    out.writeInt(msg.port);
+                    out.writeInt(msg.cores);
+                    out.writeLong(msg.memory);
+                    out.writeEndpointRef(msg.worker);
+                }, in -> new DeployMessage.RegisterWorker(in.readString(), in.readString(), in.readInt(),
+                                                          in.readInt(), in.readLong(), in.readEndpointRef())));
+        codec.registerBuiltin(83, DeployMessage.RegisteredWorker.class,
+                of((msg, out) -> out.writeEndpointRef(msg.master),
+                   in -> new DeployMessage.RegisteredWorker(in.readEndpointRef())));
+        codec.registerBuiltin(84, DeployMessage.RegisterWorkerFailed.class,
+                of((msg, out) -> out.writeString(msg.message),
+                   in -> new DeployMessage.RegisterWorkerFailed(in.readString())));
+        codec.registerBuiltin(85, DeployMessage.ReconnectWorker.class,
+                of((msg, out) -> out.writeEndpointRef(msg.master),
+                   in -> new DeployMessage.ReconnectWorker(in.readEndpointRef())));
+        codec.registerBuiltin(86, DeployMessage.ExecutorStateChanged.class,
+                of((msg, out) -> {
+                    out.writeInt(msg.executorId);
+                    out.writeString(msg.appId);
+                    out.writeEnum(msg.state, EXECUTOR_STATE_IDS);
+                    out.writeString(msg.message);
+                    out.writeInt(msg.exitStatus);
+                }, in -> new DeployMessage.ExecutorStateChanged(in.readInt(), in.readString(),
+                                                                in.readEnum(EXECUTOR_STATE_IDS),
+                                                                in.readString(), in.readInt())));
+        codec.registerBuiltin(87, DeployMessage.RequestDriverStatus.class,
+                of((msg, out) -> out.writeString(msg.driverId),
+                   in -> new DeployMessage.RequestDriverStatus(in.readString())));
+        codec.registerBuiltin(88, DeployMessage.KillExecutor.class,
+                of((msg, out) -> {
+                    out.writeString(msg.appId);
+                    out.writeInt(msg.execId);
+                }, in -> new DeployMessage.KillExecutor(in.readString(), in.readInt())));
+        codec.registerBuiltin(89, DeployMessage.RegisteredApplication.class,
+                of((msg, out) -> {
+                    out.writeString(msg.appId);
+                    out.writeEndpointRef(msg.master);
+                }, in -> new DeployMessage.RegisteredApplication(in.readString(), in.readEndpointRef())));
+        codec.registerBuiltin(90, DeployMessage.UnregisterApplication.class,
+                of((msg, out) -> out.writeString(msg.appId),
+                   in -> new DeployMessage.UnregisterApplication(in.readString())));
+        codec.registerBuiltin(91, DeployMessage.ApplicationRemoved.class,
+                of((msg, out) -> out.writeString(msg.message),
+                   in -> new DeployMessage.ApplicationRemoved(in.readString())));
+        codec.registerBuiltin(92, DeployMessage.StopAppClient.class,
+                empty(DeployMessage.StopAppClient::new));
+        codec.registerBuiltin(93, DeployMessage.RequestExecutors.class,
+                of((msg, out) -> {
+                    out.writeString(msg.appId);
+                    out.writeInt(msg.requestedTotal);
+                }, in -> new DeployMessage.RequestExecutors(in.readString(), in.readInt())));
+        codec.registerBuiltin(94, DeployMessage.ExecutorAdded.class,
+                of((msg, out) -> {
+                    out.writeInt(msg.execId);
+                    out.writeString(msg.workerId);
+                    out.writeString(msg.host);
+                    out.writeInt(msg.cores);
+                    out.writeInt(msg.memory);
+                }, in -> new DeployMessage.ExecutorAdded(in.readInt(), in.readString(), in.readString(),
+                                                         in.readInt(), in.readInt())));
+        codec.registerBuiltin(95, DeployMessage.ExecutorUpdated.class,
+                of((msg, out) -> {
+                    out.writeInt(msg.id);
+                    out.writeEnum(msg.state, EXECUTOR_STATE_IDS);
+                    out.writeString(msg.message);
+                    out.writeInt(msg.exitStatus);
+                    out.writeBoolean(msg.workerLost);
+                }, in -> new DeployMessage.ExecutorUpdated(in.readInt(), in.readEnum(EXECUTOR_STATE_IDS),
+                                                           in.readString(), in.readInt(), in.readBoolean())));
+        codec.registerBuiltin(96, DeployMessage.KillExecutors.class,
+                of((msg, out) -> {
+                    out.writeString(msg.appId);
+                    writeStringList(out, msg.executorIds);
+                }, in -> new DeployMessage.KillExecutors(in.readString(), readStringList(in))));
+        codec.registerBuiltin(97, DeployMessage.WorkerRemoved.class,
+                of((msg, out) -> {
+                    out.writeString(msg.id);
+                    out.writeString(msg.host);
+                    out.writeString(msg.message);
+                }, in -> new DeployMessage.WorkerRemoved(in.readString(), in.readString(), in.readString())));
+        codec.registerBuiltin(98, DeployMessage.MasterChanged.class,
+                of((msg, out) -> {
+                    out.writeEndpointRef(msg.master);
+                    out.writeString(msg.masterWebUiUrl);
+                }, in -> new DeployMessage.MasterChanged(in.readEndpointRef(), in.readString())));
+        codec.registerBuiltin(99, DeployMessage.MasterChangeAcknowledged.class,
+                of((msg, out) -> out.writeString(msg.appId),
+                   in -> new DeployMessage.MasterChangeAcknowledged(in.readString())));
+    }
+
+    private static void registerMapOutputTrackerMessages(RpcCodec codec) {
+        codec.registerBuiltin(120, MapOutputTrackerMessage.GetMapOutputStatuses.class,
+                of((msg, out) -> {
+                    out.writeInt(msg.shuffleId);
+                    out.writeLong(msg.knownVersion);
+                }, in -> new MapOutputTrackerMessage.GetMapOutputStatuses(in.readInt(), in.readLong())));
+        codec.registerBuiltin(121, MapOutputTrackerMessage.StopMapOutputTracker.class,
+                empty(MapOutputTrackerMessage.StopMapOutputTracker::new));
+    }
+
+    private static void writeBlockManagerIds(RpcCodecOutput out, BlockManagerId[] ids) throws IOException {
+        out.writeVarInt(ids == null ? 0 : ids.length + 1);
+        if (ids != null) {
+            for (BlockManagerId id : ids) {
+                out.writeBlockManagerId(id);
+            }
+        }
+    }
+
+    private static BlockManagerId[] readBlockManagerIds(RpcCodecInput in) throws IOException {
+        int length = in.readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        BlockManagerId[] ids = new BlockManagerId[length - 1];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = in.readBlockManagerId();
+        }
+        return ids;
+    }
+
+    private static void writeStringList(RpcCodecOutput out, List<String> values) throws IOException {
+        out.writeVarInt(values == null ? 0 : values.size() + 1);
+        if (values != null) {
+            for (String value : values) {
+                out.writeString(value);
+            }
+        }
+    }
+
+    private static List<String> readStringList(RpcCodecInput in) throws IOException {
+        int size = in.readVarInt();
+        if (size == 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size - 1);
+        for (int i = 0; i < size - 1; ++i) {
+            values.add(in.readString());
+        }
+        return values;
+    }
+
+    private static void writeStringMap(RpcCodecOutput out, Map<String, String> values) throws IOException {
+        out.writeVarInt(values == null ? 0 : values.size() + 1);
+        if (values != null) {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                out.writeString(entry.getKey());
+                out.writeString(entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, String> readStringMap(RpcCodecInput in) throws IOException {
+        int size = in.readVarInt();
+        if (size == 0) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>(size * 2);
+        for (int i = 0; i < size - 1; ++i) {
+            values.put(in.readString(), in.readString());
+        }
+        return values;
+    }
+}
@@ -6,7 +6,6 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.sdu.spark.SparkException;
 import com.sdu.spark.network.client.RpcResponseCallback;
 import com.sdu.spark.rpc.*;
-import com.sdu.spark.utils.ThreadUtils;
 import com.sdu.spark.rpc.netty.IndexMessage.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,12 +42,10 @@ public class Dispatcher {
             this.name = name;
             this.endPoint = endPoint;
             this.endPointRef = endPointRef;
-            this.index = new Index(this.endPoint, this.endPointRef);
+            this.index = new Index(this.endPoint, this.endPointRef, inboxBatchSize);
         }
     }
 
-    private EndPointData PoisonPill = new EndPointData(null, null, null);
-
     private NettyRpcEnv nettyRpcEnv;
 
     /*****************************Spark Point-To-Point映射*******************************/
@@ -56,32 +53,12 @@ public class Dispatcher {
     private Map<String, EndPointData> endPoints = Maps.newConcurrentMap();
     /**key = RpcEndpoint, value = RpcEndpointRef*/
     private Map<RpcEndpoint, RpcEndpointRef> endPointRefs = Maps.newConcurrentMap();
-    /**Track the receivers whose inboxes may contain messages(线程池访问, 需确保线程安全)*/
-    private LinkedBlockingQueue<EndPointData> receivers = new LinkedBlockingQueue<>();
-
-    private Boolean stopped = false;
-
-    /**Rpc Message分发线程池*/
-    private ThreadPoolExecutor threadpool;
-
-    private class MessageLoop implements Runnable {
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    EndPointData data = receivers.take();
-                    if (data == PoisonPill) {
-                        // Put PoisonPill back so that other MessageLoops can see it.
-                        receivers.offer(PoisonPill);
-                        return;
-                    }
-                    data.index.process(Dispatcher.this);
-                } catch (Exception e) {
-                    LOGGER.error("thread = {} occur exception", Thread.currentThread().getName(), e);
-                }
-            }
-        }
-    }
+    private volatile boolean stopped = false;
+    /**信箱每次调度最多处理的消息数*/
+    private int inboxBatchSize;
+
+    /**Rpc Message分发(调度有待处理消息的信箱)*/
+    private DispatcherExecutor executor;
 
     /**
      * @param numUsableCores Number of CPU cores allocated to the process, for sizing the thread threadpool.
@@ -89,16 +66,13 @@ public class Dispatcher {
      * */
     public Dispatcher(NettyRpcEnv nettyRpcEnv, int numUsableCores) {
         this.nettyRpcEnv = nettyRpcEnv;
+        this.inboxBatchSize = nettyRpcEnv.conf.getInt("spark.rpc.netty.dispatcher.inboxBatchSize", 64);
 
         int availableCores = numUsableCores > 0 ? numUsableCores
                                                 : Runtime.getRuntime().availableProcessors();
         int numThreads = nettyRpcEnv.conf.getInt("spark.rpc.netty.dispatcher.numThreads",
                                                  Math.max(availableCores, 2));
-        threadpool = ThreadUtils.newDaemonFixedThreadPool(numThreads, "dispatcher-event-loop-%d");
-        // 启动消息处理任务
-        for (int i = 0; i < numThreads; ++i) {
-            threadpool.execute(new MessageLoop());
-        }
+        executor = DispatcherExecutor.create(this, nettyRpcEnv.conf, numThreads);
     }
 
 
@@ -116,16 +90,15 @@ public class Dispatcher {
             }
             EndPointData data = endPoints.get(name);
             endPointRefs.put(data.endPoint, data.endPointRef);
-            receivers.offer(data);
+            executor.schedule(data.index);
         }
         return endPointRef;
     }
 
     public void unregisterRpcEndpoint(String name) {
         EndPointData data = endPoints.remove(name);
-        if (data != null) {
-            data.index.stop();
-            receivers.offer(data);
+        if (data != null && data.index.stop()) {
+            executor.schedule(data.index);
         }
     }
 
@@ -146,17 +119,13 @@ public class Dispatcher {
         endPointRefs.remove(endPoint);
     }
 
-    /** 本地消息*/
-    public Object postLocalMessage(RequestMessage req) {
-        try {
-            CompletableFuture<Object> p = new CompletableFuture<>();
-            LocalNettyRpcCallContext callContext = new LocalNettyRpcCallContext(req.senderAddress, p);
-            RpcMessage rpcMessage = new RpcMessage(req.senderAddress, req.content, callContext);
-            postMessage(req.receiver.name(), rpcMessage, null);
-            return p.get();
-        } catch (Exception e) {
-            throw new SparkException("Got local message result failure", e);
-        }
+    /** 本地消息(不阻塞调用线程, RpcEndpoint响应时完成)*/
+    public CompletableFuture<Object> postLocalMessage(RequestMessage req) {
+        CompletableFuture<Object> p = new CompletableFuture<>();
+        LocalNettyRpcCallContext callContext = new LocalNettyRpcCallContext(req.senderAddress, p);
+        RpcMessage rpcMessage = new RpcMessage(req.senderAddress, req.content, callContext);
+        postMessage(req.receiver.name(), rpcMessage, p::completeExceptionally);
+        return p;
     }
 
     /**网络消息[单向]*/
@@ -196,17 +165,15 @@ public class Dispatcher {
     }
 
     private void postMessage(String endPointName, IndexMessage message, ThrowableCallback callback) {
+        // 无全局锁: RpcEndpoint注销后投递的消息由Index丢弃, Rpc请求以失败应答
         Exception error = null;
-        synchronized (this) {
-            EndPointData data = endPoints.get(endPointName);
-            if (stopped) {
-                error = new RpcEnvStoppedException();
-            } else if (data == null) {
-                error = new SparkException(String.format("Could not find %s", endPointName));
-            } else {
-                data.index.post(message);
-                receivers.offer(data);
-            }
+        EndPointData data = endPoints.get(endPointName);
+        if (stopped) {
+            error = new RpcEnvStoppedException();
+        } else if (data == null) {
+            error = new SparkException(String.format("Could not find %s", endPointName));
+        } else if (data.index.post(message)) {
+            executor.schedule(data.index);
         }
         if (error != null) {
             callback.callbackIfStopped(error);
@@ -215,7 +182,7 @@ public class Dispatcher {
 
     public void awaitTermination() {
         try {
-            threadpool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+            executor.awaitTermination();
         } catch (InterruptedException e) {
             // ignore
         }
@@ -236,8 +203,7 @@ public class Dispatcher {
         }
         // 删除已注册的Rpc节点
         endPoints.keySet().forEach(this::unregisterRpcEndpoint);
-        receivers.offer(PoisonPill);
-        threadpool.shutdown();
+        executor.stop();
     }
 
     private interface ThrowableCallback {
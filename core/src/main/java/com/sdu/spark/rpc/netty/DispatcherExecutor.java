@@ -0,0 +1,244 @@
+package com.sdu.spark.rpc.netty;
+
+import com.sdu.spark.rpc.SparkConf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.sdu.spark.utils.ThreadUtils.newDaemonFixedThreadPool;
+
+/**
+ * {@link DispatcherExecutor}负责调度有待处理消息的信箱{@link Index}, 由'spark.rpc.netty.dispatcher.mode'选择:
+ *
+ *  1: fixed(默认): 固定线程池, 每个线程循环从共享队列获取信箱处理
+ *
+ *  2: forkjoin: asyncMode的ForkJoinPool, 信箱在工作线程中重新调度时进入该线程的本地队列(同一线程继续处理该RpcEndpoint),
+ *
+ *     空闲线程窃取其他线程的信箱
+ *
+ *  3: virtual: JDK 21+每次调度信箱启动一个虚拟线程, RpcEndpoint在receiveAndReply中阻塞只挂起该虚拟线程,
+ *
+ *     不占用其他RpcEndpoint的分发线程(JDK不支持时退化为forkjoin)
+ *
+ * Note: 信箱在调度队列中至多一次且同一时刻只被一个线程处理(见{@link Index}), 各模式均保证ThreadSafeRpcEndpoint消息顺序处理
+ *
+ * @author hanhan.zhang
+ * */
+public abstract class DispatcherExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DispatcherExecutor.class);
+
+    /**当前线程是否正在处理信箱消息(见{@link Outbox}背压)*/
+    private static final ThreadLocal<Boolean> PROCESSING = ThreadLocal.withInitial(() -> false);
+
+    protected final Dispatcher dispatcher;
+
+    protected DispatcherExecutor(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * 调度信箱处理消息
+     * */
+    public abstract void schedule(Index index);
+
+    public abstract void stop();
+
+    public abstract void awaitTermination() throws InterruptedException;
+
+    protected void processSafely(Index index) {
+        if (processInDispatcherThread(index)) {
+            schedule(index);
+        }
+    }
+
+    /**
+     * 处理信箱消息, 处理期间当前线程标记为分发线程
+     *
+     * @return true表示信箱仍有消息
+     * */
+    protected boolean processInDispatcherThread(Index index) {
+        PROCESSING.set(true);
+        try {
+            return index.process(dispatcher);
+        } catch (Exception e) {
+            LOGGER.error("thread = {} occur exception", Thread.currentThread().getName(), e);
+            return false;
+        } finally {
+            PROCESSING.set(false);
+        }
+    }
+
+    /**
+     * 当前线程是否为分发线程(正在处理RpcEndpoint消息)
+     * */
+    public static boolean inDispatcherThread() {
+        return PROCESSING.get();
+    }
+
+    public static DispatcherExecutor create(Dispatcher dispatcher, SparkConf conf, int numThreads) {
+        String mode = conf.get("spark.rpc.netty.dispatcher.mode", "fixed");
+        switch (mode) {
+            case "fixed":
+                return new FixedThreadPoolExecutor(dispatcher, numThreads);
+            case "forkjoin":
+                return new ForkJoinExecutor(dispatcher, numThreads);
+            case "virtual":
+                ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+                if (virtualThreadExecutor == null) {
+                    LOGGER.warn("Virtual threads require JDK 21+, fallback to forkjoin dispatcher");
+                    return new ForkJoinExecutor(dispatcher, numThreads);
+                }
+                return new VirtualThreadExecutor(dispatcher, virtualThreadExecutor);
+            default:
+                throw new IllegalArgumentException("Unknown dispatcher mode: " + mode);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 固定线程池, 线程阻塞获取待处理信箱
+     * */
+    private static class FixedThreadPoolExecutor extends DispatcherExecutor {
+
+        private final Index poisonPill = new Index(null, null);
+        /**Track the receivers whose inboxes may contain messages*/
+        private final LinkedBlockingQueue<Index> receivers = new LinkedBlockingQueue<>();
+        private final ThreadPoolExecutor threadpool;
+
+        FixedThreadPoolExecutor(Dispatcher dispatcher, int numThreads) {
+            super(dispatcher);
+            this.threadpool = newDaemonFixedThreadPool(numThreads, "dispatcher-event-loop-%d");
+            // 启动消息处理任务
+            for (int i = 0; i < numThreads; ++i) {
+                threadpool.execute(new MessageLoop());
+            }
+        }
+
+        private class MessageLoop implements Runnable {
+            @Override
+            public void run() {
+                while (true) {
+                    Index index;
+                    try {
+                        index = receivers.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (index == poisonPill) {
+                        // Put PoisonPill back so that other MessageLoops can see it.
+                        receivers.offer(poisonPill);
+                        return;
+                    }
+                    processSafely(index);
+                }
+            }
+        }
+
+        @Override
+        public void schedule(Index index) {
+            receivers.offer(index);
+        }
+
+        @Override
+        public void stop() {
+            receivers.offer(poisonPill);
+            threadpool.shutdown();
+        }
+
+        @Override
+        public void awaitTermination() throws InterruptedException {
+            threadpool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * asyncMode ForkJoinPool: 工作线程内调度的信箱fork到本线程队列(亲和), 空闲线程窃取
+     * */
+    private static class ForkJoinExecutor extends DispatcherExecutor {
+
+        private final ForkJoinPool pool;
+
+        ForkJoinExecutor(Dispatcher dispatcher, int numThreads) {
+            super(dispatcher);
+            AtomicInteger threadId = new AtomicInteger(0);
+            ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("dispatcher-fork-join-" + threadId.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+            this.pool = new ForkJoinPool(numThreads, factory, null, true);
+        }
+
+        @Override
+        public void schedule(Index index) {
+            ForkJoinTask<?> task = ForkJoinTask.adapt(() -> processSafely(index));
+            Thread current = Thread.currentThread();
+            if (current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) current).getPool() == pool) {
+                task.fork();
+            } else {
+                try {
+                    pool.execute(task);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("Dispatcher stopped, drop inbox schedule");
+                }
+            }
+        }
+
+        @Override
+        public void stop() {
+            pool.shutdown();
+        }
+
+        @Override
+        public void awaitTermination() throws InterruptedException {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 每次调度信箱启动一个虚拟线程, 信箱有消息时在同一虚拟线程中持续处理
+     * */
+    static class VirtualThreadExecutor extends DispatcherExecutor {
+
+        private final ExecutorService executor;
+
+        VirtualThreadExecutor(Dispatcher dispatcher, ExecutorService executor) {
+            super(dispatcher);
+            this.executor = executor;
+        }
+
+        @Override
+        public void schedule(Index index) {
+            try {
+                executor.execute(() -> {
+                    while (processInDispatcherThread(index)) {
+                        // 信箱仍有消息, 由当前虚拟线程继续处理
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Dispatcher stopped, drop inbox schedule");
+            }
+        }
+
+        @Override
+        public void stop() {
+            executor.shutdown();
+        }
+
+        @Override
+        public void awaitTermination() throws InterruptedException {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        }
+    }
+}
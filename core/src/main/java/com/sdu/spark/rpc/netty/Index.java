@@ -1,19 +1,35 @@
 package com.sdu.spark.rpc.netty;
 
 
+import com.google.common.collect.Lists;
+import com.sdu.spark.SparkException;
 import com.sdu.spark.rpc.RpcEndpoint;
 import com.sdu.spark.rpc.RpcEndpointRef;
 import com.sdu.spark.rpc.ThreadSafeRpcEndpoint;
+import com.sdu.spark.utils.colleciton.MpscLinkedQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.sdu.spark.rpc.netty.IndexMessage.*;
 
 /**
  * 接收信箱
  *
+ *  1: 消息队列为无锁MPSC队列, 投递消息(生产者)无锁
+ *
+ *  2: scheduled标识信箱是否已在Dispatcher待处理队列中, 保证非并发信箱在待处理队列中至多一次
+ *
+ *  3: 每次process至多处理maxBatchSize条消息, 剩余消息重新调度, 避免单个RpcEndpoint长期占用分发线程
+ *
+ *  4: 非ThreadSafeRpcEndpoint启动后允许多线程并发处理, ThreadSafeRpcEndpoint同一时刻只有一个线程处理
+ *
+ *  5: 消费端(活跃线程数、取消息)与stop()共用信箱锁, 保证处理OnStop时只有一个活跃线程; 投递与stop()不互斥,
+ *
+ *     stop()后仍可能有消息排在OnStop之后, 这些消息在OnStop处理后丢弃, 未应答的Rpc请求以失败应答
+ *
  * @author hanhan.zhang
  * */
 public class Index {
@@ -25,50 +41,83 @@ public class Index {
     /**消息接收方*/
     private RpcEndpointRef endPointRef;
     /**消息信箱*/
-    private LinkedList<IndexMessage> messageBox = new LinkedList<>();
-    private boolean enableConcurrent = false;
+    private MpscLinkedQueue<IndexMessage> messageBox = new MpscLinkedQueue<>();
+    private int maxBatchSize;
+    private volatile boolean enableConcurrent = false;
+    // 由信箱锁保护
     private int numActiveThreads = 0;
+    private AtomicBoolean scheduled = new AtomicBoolean(true);
 
-    private boolean stopped = false;
+    private volatile boolean stopped = false;
+    // OnStop已处理, 之后的消息均丢弃
+    private volatile boolean terminated = false;
 
     public Index(RpcEndpoint endPoint, RpcEndpointRef endPointRef) {
+        this(endPoint, endPointRef, 64);
+    }
+
+    public Index(RpcEndpoint endPoint, RpcEndpointRef endPointRef, int maxBatchSize) {
         this.endPoint = endPoint;
         this.endPointRef = endPointRef;
-        /**投递启动消息, EndPoint调用OnStart方法*/
-        messageBox.add(new OnStart());
+        this.maxBatchSize = maxBatchSize;
+        /**投递启动消息, EndPoint调用OnStart方法(scheduled初始为true, 由Dispatcher注册时调度)*/
+        messageBox.offer(new OnStart());
     }
 
     /**
      * 投递消息
+     *
+     * @return true表示需将信箱加入Dispatcher待处理队列
      * */
-    public synchronized void post(IndexMessage message) {
+    public boolean post(IndexMessage message) {
         if (stopped) {
             onDrop(message);
-        } else {
-            messageBox.add(message);
+            return false;
+        }
+        messageBox.offer(message);
+        if (terminated) {
+            // 与stop()并发时消息可能排在OnStop之后, OnStop已处理则由投递线程丢弃
+            drainTerminated(false);
+            return false;
         }
+        return schedule();
+    }
+
+    private boolean schedule() {
+        return enableConcurrent || scheduled.compareAndSet(false, true);
     }
 
     /**
      * 处理消息
+     *
+     * @return true表示信箱仍有消息, 需重新加入Dispatcher待处理队列
      * */
-    public void process(Dispatcher dispatcher) {
-        IndexMessage message;
+    public boolean process(Dispatcher dispatcher) {
+        // 信箱已出待处理队列
+        scheduled.set(false);
         synchronized (this) {
-            // 当已有线程访问时, 退出
-            if (!enableConcurrent && numActiveThreads != 0) {
-                return;
-            }
-            message = messageBox.poll();
-            if (message != null) {
-                numActiveThreads += 1;
+            if (enableConcurrent) {
+                numActiveThreads++;
+            } else if (numActiveThreads == 0) {
+                numActiveThreads = 1;
             } else {
-                return;
+                // 已有线程访问, 由其处理剩余消息
+                return false;
             }
         }
 
         // 处理消息
-        while (true) {
+        int processed = 0;
+        while (processed < maxBatchSize) {
+            IndexMessage message = poll();
+            if (message == null) {
+                break;
+            }
+            processed++;
+            if (terminated) {
+                onDrop(message);
+                continue;
+            }
             safelyCall(endPoint, message, (msg) -> {
                 if (msg instanceof OnStart) {                           // 信箱启动
                     endPoint.onStart();
@@ -81,15 +130,10 @@ public class Index {
                         }
                     }
                 } else if (msg instanceof OnStop) {                     // 信箱关闭
-                    int activeThreads = 0;
-                    synchronized (this) {
-                        activeThreads = numActiveThreads;
-                    }
-                    assert activeThreads == 1 :
-                            String.format("There should be only a single active thread but found %d threads.", activeThreads);
+                    // OnStop之后投递的消息由后续循环丢弃
+                    terminated = true;
                     dispatcher.removeRpcEndPointRef(endPoint);
                     endPoint.onStop();
-                    assert isEmpty() : "OnStop should be the last message";
                 } else if (msg instanceof RpcMessage) {                 // 向远端发送消息
                     RpcMessage rpcMessage = (RpcMessage) msg;
                     endPoint.receiveAndReply(rpcMessage.content, rpcMessage.context);
@@ -105,35 +149,68 @@ public class Index {
                     endPoint.onNetworkError(connectionError.cause, connectionError.address);
                 }
             });
-            synchronized (this) {
-                // 被当前线程访问, numActiveThreads至少等于1
-                if (!enableConcurrent && numActiveThreads != 1) {
-                    numActiveThreads -=1;
-                    return;
-                }
-                message = messageBox.poll();
-                if (message == null) {
-                    numActiveThreads -=1;
-                    return;
+        }
+
+        drainTerminated(true);
+        // 先减少活跃线程数再检查信箱, 与post()的"先入队再调度"配合保证消息不会遗漏
+        return !isEmpty() && schedule();
+    }
+
+    /**
+     * 并发信箱可能有多个消费者, 消费端互斥(非并发信箱无竞争), 生产端无锁
+     *
+     * @return null表示信箱为空或非并发状态下有其他活跃线程(由其处理剩余消息, 保证OnStop只由唯一活跃线程处理)
+     * */
+    private synchronized IndexMessage poll() {
+        if (!enableConcurrent && numActiveThreads != 1) {
+            return null;
+        }
+        return messageBox.poll();
+    }
+
+    /**
+     * 减少活跃线程数与丢弃OnStop之后的消息在信箱锁内完成, 保证排在OnStop之后的消息由处理线程或投递线程丢弃
+     *
+     * @param exitProcess true表示处理线程退出
+     * */
+    private void drainTerminated(boolean exitProcess) {
+        List<IndexMessage> dropped = Lists.newLinkedList();
+        synchronized (this) {
+            if (exitProcess) {
+                numActiveThreads--;
+            }
+            if (terminated && numActiveThreads == 0) {
+                IndexMessage message;
+                while ((message = messageBox.poll()) != null) {
+                    dropped.add(message);
                 }
             }
-
         }
+        dropped.forEach(this::onDrop);
     }
 
     private void onDrop(IndexMessage message) {
         LOGGER.warn("Drop {} because {} is stopped", message, endPointRef);
+        if (message instanceof RpcMessage) {
+            ((RpcMessage) message).context.sendFailure(
+                    new SparkException(String.format("Could not process message because %s is stopped", endPointRef)));
+        }
     }
 
-    public synchronized void stop() {
+    /**
+     * @return true表示需将信箱加入Dispatcher待处理队列
+     * */
+    public synchronized boolean stop() {
         if (!stopped) {
             enableConcurrent = false;
             stopped = true;
-            messageBox.add(new OnStop());
+            messageBox.offer(new OnStop());
+            return scheduled.compareAndSet(false, true);
         }
+        return false;
     }
 
-    private synchronized boolean isEmpty() {
+    private boolean isEmpty() {
        return messageBox.isEmpty();
     }
 
@@ -21,4 +21,9 @@ public class LocalNettyRpcCallContext extends NettyRpcCallContext {
     public void send(Object message) {
         p.complete(message);
     }
+
+    @Override
+    public void sendFailure(Throwable cause) {
+        p.completeExceptionally(cause);
+    }
 }
@@ -18,9 +18,4 @@ public abstract class NettyRpcCallContext extends RpcCallContext {
     public void reply(Object response) {
         send(response);
     }
-
-    @Override
-    public void sendFailure(Throwable cause) {
-//        send(new RpcFailure());
-    }
 }
@@ -15,13 +15,13 @@ import com.sdu.spark.network.crypto.AuthServerBootstrap;
 import com.sdu.spark.network.netty.SparkTransportConf;
 import com.sdu.spark.network.server.TransportServer;
 import com.sdu.spark.network.server.TransportServerBootstrap;
+import com.sdu.spark.network.utils.AllocatorMetrics;
 import com.sdu.spark.network.utils.TransportConf;
 import com.sdu.spark.rpc.*;
 import com.sdu.spark.rpc.netty.OutboxMessage.CheckExistence;
 import com.sdu.spark.rpc.netty.OutboxMessage.OneWayOutboxMessage;
 import com.sdu.spark.rpc.netty.OutboxMessage.RpcOutboxMessage;
 import com.sdu.spark.serializer.JavaSerializerInstance;
-import com.sdu.spark.serializer.SerializationStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,15 +81,13 @@ public class NettyRpcEnv extends RpcEnv {
     // 接收消息路由
     private Dispatcher dispatcher;
     private NettyStreamManager streamManager;
-    // 消息分发线程
-    private ThreadPoolExecutor deliverMessageExecutor;
 
 
     /**********************************Spark RpcEnv数据传输************************************/
     // Spark权限管理模块
     private SecurityManager securityManager;
-    // 数据序列化
-    private JavaSerializerInstance javaSerializerInstance;
+    // 消息序列化(已注册消息紧凑编码, 其他消息Java序列化)
+    private RpcCodec rpcCodec;
     // RpcEnv网络数据监听
     private TransportServer server;
     private TransportConf transportConf;
@@ -110,11 +108,10 @@ public class NettyRpcEnv extends RpcEnv {
         super(conf);
         this.host = host;
         this.securityManager = securityManager;
-        this.javaSerializerInstance = serializerInstance;
+        this.rpcCodec = new RpcCodec(conf, serializerInstance);
         this.dispatcher = new Dispatcher(this, numUsableCores);
         this.streamManager = new NettyStreamManager(this);
         this.clientConnectionExecutor = newDaemonCachedThreadPool("netty-rpc-connect-%d", conf.getInt("spark.rpc.connect.threads", 64), 60);
-        this.deliverMessageExecutor = newDaemonCachedThreadPool("rpc-deliver-message-%d", conf.getInt("spark.rpc.deliver.message.threads", 64), 60);
         this.transportConf = SparkTransportConf.fromSparkConf(conf, "rpc", conf.getInt("spark.rpc.io.threads", 0));
         this.transportContext = new TransportContext(transportConf, new NettyRpcHandler(streamManager, this.dispatcher, this));
         this.clientFactory = this.transportContext.createClientFactory(createClientBootstraps());
@@ -165,8 +162,7 @@ public class NettyRpcEnv extends RpcEnv {
     public CompletableFuture<?> ask(RequestMessage message) {
         if (message.receiver.address().equals(address())) {
             // 发送本地消息
-            return CompletableFuture.runAsync(() -> dispatcher.postLocalMessage(message),
-                                              deliverMessageExecutor);
+            return dispatcher.postLocalMessage(message);
         } else {
             // 发送网络消息
             CompletableFuture<Object> p = new CompletableFuture<>();
@@ -224,6 +220,22 @@ public class NettyRpcEnv extends RpcEnv {
         }
     }
 
+    /**
+     * 各远端地址发送信箱统计
+     * */
+    public Map<RpcAddress, OutboxMetrics> outboxMetrics() {
+        Map<RpcAddress, OutboxMetrics> metrics = Maps.newHashMap();
+        outboxes.forEach((address, outbox) -> metrics.put(address, outbox.metrics()));
+        return metrics;
+    }
+
+    /**
+     * Rpc模块内存分配统计
+     * */
+    public AllocatorMetrics allocatorMetrics() {
+        return transportContext.allocatorMetrics();
+    }
+
     /*********************************Spark RpcEnv Server************************************/
     public void startServer(String host, int port) {
         List<TransportServerBootstrap> bootstraps;
@@ -248,18 +260,18 @@ public class NettyRpcEnv extends RpcEnv {
 
     /***********************************Spark网络数据序列化***************************************/
     public ByteBuffer serialize(Object content) throws IOException {
-        return javaSerializerInstance.serialize(content);
+        return rpcCodec.serialize(content);
     }
 
-    public SerializationStream serializeStream(OutputStream out) throws IOException {
-        return javaSerializerInstance.serializeStream(out);
+    public void serialize(Object content, OutputStream out) throws IOException {
+        rpcCodec.serialize(content, out);
     }
 
     public <T> T deserialize(TransportClient client, ByteBuffer buf) throws IOException {
         NettyRpcEnv.currentClient = client;
         return deserialize(() -> {
             try {
-                return javaSerializerInstance.deserialize(buf);
+                return rpcCodec.deserialize(buf, this, client);
             } catch (IOException e) {
                 LOGGER.error("deserialize buf failure", e);
                 throw new SparkException(e);
@@ -4,14 +4,43 @@ package com.sdu.spark.rpc.netty;
 import com.sdu.spark.SparkException;
 import com.sdu.spark.network.client.TransportClient;
 import com.sdu.spark.rpc.RpcAddress;
+import com.sdu.spark.rpc.SparkConf;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * RpcMessage发送信箱
  *
+ *  1: 写合并: 发送线程每次从信箱取出至多'spark.rpc.netty.outbox.batchSize'条消息写入Channel, 整批消息一次flush,
+ *
+ *     高扇出时减少系统调用次数
+ *
+ *  2: 背压: 'spark.rpc.netty.outbox.maxPendingBytes' > 0时限制待发送字节数, 超过上限时:
+ *
+ *     1': 'spark.rpc.netty.outbox.blockOnFull = false'(默认): 拒绝消息, 回调{@link OutboxMessage#onFailure(Throwable)}
+ *
+ *     2': 'spark.rpc.netty.outbox.blockOnFull = true': 阻塞发送线程直至字节数低于上限, 超过
+ *
+ *         'spark.rpc.netty.outbox.blockTimeout'仍未释放则拒绝消息; 分发线程(RpcEndpoint中发送消息)从不阻塞,
+ *
+ *         直接拒绝消息, 避免阻塞其他RpcEndpoint的消息处理
+ *
+ *     信箱为空时总是接受消息, 避免单条超过上限的消息永远无法发送
+ *
+ *  3: Channel可写性: 客户端Channel发送缓冲区高水位取同一上限('spark.rpc.io.writeBufferHighWaterMark'可覆盖),
+ *
+ *     Channel不可写时停止从信箱取出消息(消息留在信箱中计入待发送字节数), Channel恢复可写时继续发送
+ *
+ *  4: 统计: {@link #metrics()}返回待发送消息数/字节数等信息
+ *
+ * Note: 待发送字节数仅统计信箱中的消息, 交给Netty的消息由Channel高水位限制, 连接上积压字节数不超过两倍上限
+ *
  * @author hanhan.zhang
  * */
 public class Outbox {
@@ -33,35 +62,94 @@ public class Outbox {
     /**If there is any thread draining the message queue*/
     private boolean draining = false;
 
+    private final Runnable writabilityListener = this::onWritabilityChanged;
+
+    private final int batchSize;
+    private final long maxPendingBytes;
+    private final boolean blockOnFull;
+    private final long blockTimeoutMs;
+
+    /**信箱中待发送消息字节数(由this同步)*/
+    private long pendingBytes = 0;
+    private long peakPendingBytes = 0;
+    private long rejectedMessages = 0;
+    private long unwritablePauses = 0;
+    /**仅发送线程(draining = true)更新*/
+    private volatile long sentMessages = 0;
+    private volatile long flushes = 0;
+
     public Outbox(NettyRpcEnv nettyEnv, RpcAddress address) {
         this.nettyEnv = nettyEnv;
         this.address = address;
+
+        SparkConf conf = nettyEnv.conf;
+        this.batchSize = Math.max(1, conf.getInt("spark.rpc.netty.outbox.batchSize", 32));
+        this.maxPendingBytes = conf.getSizeAsBytes("spark.rpc.netty.outbox.maxPendingBytes", "0");
+        this.blockOnFull = conf.getBoolean("spark.rpc.netty.outbox.blockOnFull", false);
+        this.blockTimeoutMs = conf.getTimeAsMs("spark.rpc.netty.outbox.blockTimeout", "10s");
     }
 
     public void send(OutboxMessage message) {
-        boolean dropped;
+        long size = message.size();
+        Throwable failure = null;
         synchronized (this) {
+            if (blockOnFull && !stopped && exceedsPendingBytes(size) && !DispatcherExecutor.inDispatcherThread()) {
+                awaitPendingBytes(size);
+            }
             if (stopped) {
-                dropped = true;
+                failure = new IllegalStateException("Message is dropped because Outbox is stopped");
+            } else if (exceedsPendingBytes(size)) {
+                rejectedMessages++;
+                failure = new SparkException(String.format("Message is dropped because pending bytes to %s " +
+                        "exceed %d bytes (pending = %d, message = %d)", address, maxPendingBytes, pendingBytes, size));
             } else {
                 messages.add(message);
-                dropped = false;
+                pendingBytes += size;
+                peakPendingBytes = Math.max(peakPendingBytes, pendingBytes);
             }
         }
-        if (dropped) {
-            message.onFailure(new IllegalStateException("Message is dropped because Outbox is stopped"));
+        if (failure != null) {
+            message.onFailure(failure);
         } else {
             drainOutbox();
         }
     }
 
+    public synchronized OutboxMetrics metrics() {
+        return new OutboxMetrics(address, messages.size(), pendingBytes, peakPendingBytes,
+                                 sentMessages, flushes, rejectedMessages, unwritablePauses);
+    }
+
+    private boolean exceedsPendingBytes(long size) {
+        return maxPendingBytes > 0 && !messages.isEmpty() && pendingBytes + size > maxPendingBytes;
+    }
+
+    /**
+     * 调用方持有this锁
+     * */
+    private void awaitPendingBytes(long size) {
+        long deadline = System.currentTimeMillis() + blockTimeoutMs;
+        while (!stopped && exceedsPendingBytes(size)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
     /**
      * Drain the message queue. If there is other draining thread, just exit. If the connection has
      * not been established, launch a task in the `nettyEnv.clientConnectionExecutor` to setup the
      * connection.
      */
     private void drainOutbox() {
-        OutboxMessage message;
+        List<OutboxMessage> batch;
         synchronized (this) {
             if (stopped) {
                 return;
@@ -82,8 +170,13 @@ public class Outbox {
                 return;
             }
 
-            message = messages.poll();
-            if (message == null) {
+            if (!client.isWritable()) {
+                // Channel发送缓冲区超过高水位, 由writabilityListener在Channel恢复可写时继续发送
+                return;
+            }
+
+            batch = pollBatch();
+            if (batch.isEmpty()) {
                 return;
             }
             draining = true;
@@ -96,7 +189,7 @@ public class Outbox {
                 _client = this.client;
             }
             if (_client != null) {
-                message.sendWith(_client);
+                sendBatch(_client, batch);
             } else {
                 assert stopped;
             }
@@ -105,14 +198,82 @@ public class Outbox {
                 if (stopped) {
                     return;
                 }
-                message = messages.poll();
-                if (message == null) {
+                if (_client != null && !_client.isWritable()) {
+                    unwritablePauses++;
+                    draining = false;
+                    break;
+                }
+                batch = pollBatch();
+                if (batch.isEmpty()) {
                     draining = false;
                     return;
                 }
             }
         }
 
+        // 停止发送前Channel可能已恢复可写(writabilityListener发现draining = true后退出), 需再次检查
+        TransportClient _client;
+        synchronized (this) {
+            _client = this.client;
+        }
+        if (_client != null && _client.isWritable()) {
+            drainOutbox();
+        }
+    }
+
+    /**
+     * Channel恢复可写时在EventLoop线程中回调, 发送交给连接线程池执行
+     * */
+    private void onWritabilityChanged() {
+        TransportClient _client;
+        synchronized (this) {
+            _client = this.client;
+        }
+        if (_client == null || !_client.isWritable()) {
+            return;
+        }
+        try {
+            nettyEnv.clientConnectionExecutor.execute(this::drainOutbox);
+        } catch (RejectedExecutionException e) {
+            // NettyRpcEnv已关闭
+        }
+    }
+
+    /**
+     * 调用方持有this锁, 取出至多batchSize条消息并释放待发送字节数
+     * */
+    private List<OutboxMessage> pollBatch() {
+        if (messages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<OutboxMessage> batch = new ArrayList<>(Math.min(batchSize, messages.size()));
+        while (batch.size() < batchSize && !messages.isEmpty()) {
+            OutboxMessage message = messages.poll();
+            pendingBytes -= message.size();
+            batch.add(message);
+        }
+        if (blockOnFull) {
+            notifyAll();
+        }
+        return batch;
+    }
+
+    private void sendBatch(TransportClient client, List<OutboxMessage> batch) {
+        int written = 0;
+        for (OutboxMessage message : batch) {
+            try {
+                message.sendWith(client, false);
+                written++;
+            } catch (Exception e) {
+                message.onFailure(e);
+            }
+        }
+        if (written > 0) {
+            // 整批消息一次flush
+            client.flush();
+            sentMessages += written;
+            flushes++;
+        }
     }
 
     private void launchConnectTask() {
@@ -121,6 +282,7 @@ public class Outbox {
                TransportClient client = nettyEnv.createClient(address);
                synchronized (this) {
                    this.client = client;
+                   client.addWritabilityListener(writabilityListener);
                    if (stopped) {
                        closeClient();
                    }
@@ -156,16 +318,15 @@ public class Outbox {
 
         // 停止向address发送Rpc消息, 并通知
         nettyEnv.removeOutbox(address);
-        OutboxMessage message = messages.poll();
-        while (message != null) {
+        for (OutboxMessage message : clearMessages()) {
             message.onFailure(e);
-            message = messages.poll();
         }
-
-        assert messages.isEmpty();
     }
 
     private void closeClient() {
+        if (client != null) {
+            client.removeWritabilityListener(writabilityListener);
+        }
         client = null;
     }
 
@@ -183,11 +344,18 @@ public class Outbox {
 
         // We always check `stopped` before updating messages, so here we can make sure no thread will
         // update messages and it's safe to just drain the queue.
-        OutboxMessage message = messages.poll();
-        while (message != null) {
+        for (OutboxMessage message : clearMessages()) {
             message.onFailure(new SparkException("Message is dropped because Outbox is stopped"));
-            message = messages.poll();
         }
     }
 
+    private synchronized List<OutboxMessage> clearMessages() {
+        List<OutboxMessage> pending = new ArrayList<>(messages);
+        messages.clear();
+        pendingBytes = 0;
+        // 唤醒阻塞的发送线程
+        notifyAll();
+        return pending;
+    }
+
 }
@@ -14,10 +14,24 @@ import java.nio.ByteBuffer;
  * */
 public interface OutboxMessage extends Serializable {
 
-    void sendWith(TransportClient client);
+    default void sendWith(TransportClient client) {
+        sendWith(client, true);
+    }
+
+    /**
+     * flush = false时消息仅写入Channel发送缓冲区, 由{@link Outbox}批量发送后统一flush
+     * */
+    void sendWith(TransportClient client, boolean flush);
 
     void onFailure(Throwable e);
 
+    /**
+     * 消息字节数({@link Outbox}待发送字节数统计)
+     * */
+    default long size() {
+        return 0;
+    }
+
     /**单向网络消息*/
     class OneWayOutboxMessage implements OutboxMessage {
 
@@ -30,8 +44,13 @@ public interface OutboxMessage extends Serializable {
         }
 
         @Override
-        public void sendWith(TransportClient client) {
-            client.send(content);
+        public void sendWith(TransportClient client, boolean flush) {
+            client.send(content, flush);
+        }
+
+        @Override
+        public long size() {
+            return content.remaining();
         }
 
         @Override
@@ -56,7 +75,7 @@ public interface OutboxMessage extends Serializable {
         }
 
         @Override
-        public void sendWith(TransportClient client) {
+        public void sendWith(TransportClient client, boolean flush) {
 
         }
 
@@ -88,9 +107,14 @@ public interface OutboxMessage extends Serializable {
         }
 
         @Override
-        public void sendWith(TransportClient client) {
+        public void sendWith(TransportClient client, boolean flush) {
             this.client = client;
-            requestId = this.client.sendRpc(content, this);
+            requestId = this.client.sendRpc(content, this, flush);
+        }
+
+        @Override
+        public long size() {
+            return content.remaining();
         }
 
         @Override
@@ -0,0 +1,52 @@
+package com.sdu.spark.rpc.netty;
+
+import com.google.common.base.MoreObjects;
+import com.sdu.spark.rpc.RpcAddress;
+
+/**
+ * {@link Outbox}发送统计快照
+ *
+ * @author hanhan.zhang
+ * */
+public class OutboxMetrics {
+
+    public final RpcAddress address;
+    // 待发送消息数及字节数
+    public final int pendingMessages;
+    public final long pendingBytes;
+    // 待发送字节数峰值
+    public final long peakPendingBytes;
+    // 已交给Netty发送的消息数及flush次数
+    public final long sentMessages;
+    public final long flushes;
+    // 因待发送字节数超过上限被拒绝的消息数
+    public final long rejectedMessages;
+    // 因Channel不可写暂停发送次数
+    public final long unwritablePauses;
+
+    public OutboxMetrics(RpcAddress address, int pendingMessages, long pendingBytes, long peakPendingBytes,
+                         long sentMessages, long flushes, long rejectedMessages, long unwritablePauses) {
+        this.address = address;
+        this.pendingMessages = pendingMessages;
+        this.pendingBytes = pendingBytes;
+        this.peakPendingBytes = peakPendingBytes;
+        this.sentMessages = sentMessages;
+        this.flushes = flushes;
+        this.rejectedMessages = rejectedMessages;
+        this.unwritablePauses = unwritablePauses;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("address", address)
+                          .add("pendingMessages", pendingMessages)
+                          .add("pendingBytes", pendingBytes)
+                          .add("peakPendingBytes", peakPendingBytes)
+                          .add("sentMessages", sentMessages)
+                          .add("flushes", flushes)
+                          .add("rejectedMessages", rejectedMessages)
+                          .add("unwritablePauses", unwritablePauses)
+                          .toString();
+    }
+}
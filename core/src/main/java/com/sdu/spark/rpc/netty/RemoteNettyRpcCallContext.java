@@ -29,4 +29,9 @@ public class RemoteNettyRpcCallContext extends NettyRpcCallContext {
             callback.onFailure(e);
         }
     }
+
+    @Override
+    public void sendFailure(Throwable cause) {
+        callback.onFailure(cause);
+    }
 }
@@ -4,7 +4,6 @@ import com.sdu.spark.network.client.TransportClient;
 import com.sdu.spark.rpc.RpcAddress;
 import com.sdu.spark.rpc.RpcEndpoint;
 import com.sdu.spark.rpc.RpcEndpointAddress;
-import com.sdu.spark.serializer.SerializationStream;
 import com.sdu.spark.utils.ByteBufferInputStream;
 import com.sdu.spark.utils.ByteBufferOutputStream;
 import org.slf4j.Logger;
@@ -49,7 +48,7 @@ public class RequestMessage {
      *  1: 发送方地址
      *  2: 接收方地址
      *  3: 接收方{@link RpcEndpoint}名字
-     *  4: 发送内容
+     *  4: 发送内容(见{@link RpcCodec})
      * */
     public ByteBuffer serialize(NettyRpcEnv rpcEnv) {
         ByteBufferOutputStream bos = new ByteBufferOutputStream();
@@ -60,13 +59,9 @@ public class RequestMessage {
             out.writeUTF(receiver.name());
 
             // 发送消息体
-            SerializationStream s = rpcEnv.serializeStream(out);
-            try {
-                s.writeObject(content);
-                return bos.toByteBuffer();
-            } finally {
-                s.close();
-            }
+            rpcEnv.serialize(content, out);
+            out.flush();
+            return bos.toByteBuffer();
         } catch (IOException e) {
             LOGGER.error("serialize request message error", e);
             throw new IllegalStateException("serialize request message error", e);
@@ -97,8 +92,7 @@ public class RequestMessage {
 
             return new RequestMessage(senderAddress, endPointRef, rpcEnv.deserialize(client, buffer));
         } catch (Exception e) {
-            // ignore
-            throw new IllegalStateException("deserialize error");
+            throw new IllegalStateException("deserialize error", e);
         } finally {
             close(input);
         }
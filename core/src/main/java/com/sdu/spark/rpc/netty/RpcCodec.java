@@ -0,0 +1,140 @@
+package com.sdu.spark.rpc.netty;
+
+import com.sdu.spark.SparkException;
+import com.sdu.spark.network.client.TransportClient;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.serializer.JavaSerializerInstance;
+import com.sdu.spark.serializer.SerializationStream;
+import com.sdu.spark.utils.ByteBufferInputStream;
+import com.sdu.spark.utils.ByteBufferOutputStream;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.sdu.spark.utils.Utils.classForName;
+
+/**
+ * {@link RpcCodec}负责Rpc消息体编解码, 格式: [1字节注册ID][消息体]
+ *
+ *  1: 注册ID > 0: 消息类型已注册{@link RpcMessageCodec}, 消息体为字段二进制编码
+ *
+ *  2: 注册ID = 0: 未注册的消息类型(或'spark.rpc.codec.compact = false'), 消息体为Java序列化数据
+ *
+ * 注册ID划分:
+ *
+ *  1: [1, 127]: 内置消息(见{@link BuiltinRpcMessageCodecs})
+ *
+ *  2: [128, 255]: 用户经{@link RpcCodecRegistrator}注册
+ *
+ * Note: 注册表在构造完成后只读, 编解码线程安全; 通信双方需使用相同的注册配置
+ *
+ * @author hanhan.zhang
+ * */
+public class RpcCodec {
+
+    public static final int JAVA_SERIALIZATION_ID = 0;
+    public static final int MAX_BUILTIN_ID = 127;
+    public static final int MAX_ID = 255;
+
+    private final JavaSerializerInstance javaSerializerInstance;
+    private final boolean compact;
+
+    private final Map<Class<?>, Integer> classToId = new HashMap<>();
+    private final RpcMessageCodec<?>[] codecs = new RpcMessageCodec<?>[MAX_ID + 1];
+
+    public RpcCodec(SparkConf conf, JavaSerializerInstance javaSerializerInstance) {
+        this.javaSerializerInstance = javaSerializerInstance;
+        this.compact = conf.getBoolean("spark.rpc.codec.compact", true);
+
+        BuiltinRpcMessageCodecs.registerAll(this);
+        String registrators = conf.get("spark.rpc.codec.registrators", "");
+        for (String className : StringUtils.split(registrators, ',')) {
+            try {
+                RpcCodecRegistrator registrator = (RpcCodecRegistrator) classForName(className.trim()).newInstance();
+                registrator.registerCodecs(this);
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new SparkException("Failed to create rpc codec registrator " + className, e);
+            }
+        }
+    }
+
+    /**
+     * 用户消息注册, 注册ID范围[128, 255]
+     * */
+    public <T> void register(int id, Class<T> messageClass, RpcMessageCodec<T> codec) {
+        if (id <= MAX_BUILTIN_ID || id > MAX_ID) {
+            throw new IllegalArgumentException(String.format("Rpc codec id %d out of range [%d, %d]",
+                                                             id, MAX_BUILTIN_ID + 1, MAX_ID));
+        }
+        doRegister(id, messageClass, codec);
+    }
+
+    /**
+     * 内置消息注册, 注册ID范围[1, 127]
+     * */
+    <T> void registerBuiltin(int id, Class<T> messageClass, RpcMessageCodec<T> codec) {
+        if (id <= JAVA_SERIALIZATION_ID || id > MAX_BUILTIN_ID) {
+            throw new IllegalArgumentException(String.format("Builtin rpc codec id %d out of range [1, %d]",
+                                                             id, MAX_BUILTIN_ID));
+        }
+        doRegister(id, messageClass, codec);
+    }
+
+    private <T> void doRegister(int id, Class<T> messageClass, RpcMessageCodec<T> codec) {
+        if (codecs[id] != null) {
+            throw new IllegalArgumentException(String.format("Rpc codec id %d already registered", id));
+        }
+        if (classToId.containsKey(messageClass)) {
+            throw new IllegalArgumentException(String.format("Rpc message %s already registered", messageClass.getName()));
+        }
+        codecs[id] = codec;
+        classToId.put(messageClass, id);
+    }
+
+    public boolean isRegistered(Class<?> messageClass) {
+        return classToId.containsKey(messageClass);
+    }
+
+    public ByteBuffer serialize(Object message) throws IOException {
+        ByteBufferOutputStream bos = new ByteBufferOutputStream();
+        serialize(message, bos);
+        return bos.toByteBuffer();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void serialize(Object message, OutputStream out) throws IOException {
+        Integer id = compact && message != null ? classToId.get(message.getClass()) : null;
+        if (id != null) {
+            out.write(id);
+            RpcCodecOutput codecOutput = new RpcCodecOutput(out);
+            ((RpcMessageCodec<Object>) codecs[id]).encode(message, codecOutput);
+            codecOutput.flush();
+            return;
+        }
+        out.write(JAVA_SERIALIZATION_ID);
+        SerializationStream s = javaSerializerInstance.serializeStream(out);
+        s.writeObject(message);
+        s.flush();
+    }
+
+    /**
+     * 反序列化buffer剩余数据, Java序列化消息中的RpcEndpointRef依赖{@link NettyRpcEnv#currentEnv}
+     * */
+    public <T> T deserialize(ByteBuffer buffer, NettyRpcEnv rpcEnv, TransportClient client) throws IOException {
+        int id = buffer.get() & 0xFF;
+        if (id == JAVA_SERIALIZATION_ID) {
+            return javaSerializerInstance.deserialize(buffer);
+        }
+        RpcMessageCodec<?> codec = codecs[id];
+        if (codec == null) {
+            throw new IOException("Unknown rpc codec id " + id);
+        }
+        @SuppressWarnings("unchecked")
+        T message = (T) codec.decode(new RpcCodecInput(new ByteBufferInputStream(buffer), rpcEnv, client));
+        return message;
+    }
+}
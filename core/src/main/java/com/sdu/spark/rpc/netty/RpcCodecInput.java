@@ -0,0 +1,129 @@
+package com.sdu.spark.rpc.netty;
+
+import com.sdu.spark.network.client.TransportClient;
+import com.sdu.spark.rpc.RpcAddress;
+import com.sdu.spark.rpc.RpcEndpointAddress;
+import com.sdu.spark.rpc.RpcEndpointRef;
+import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockManagerId;
+import com.sdu.spark.storage.StorageLevel;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link RpcMessageCodec}解码输入, 与{@link RpcCodecOutput}编码格式对应
+ *
+ * Note: 解码的{@link RpcEndpointRef}与Java反序列化行为一致, 归属于当前{@link NettyRpcEnv}并复用接收消息的客户端
+ *
+ * @author hanhan.zhang
+ * */
+public class RpcCodecInput extends DataInputStream {
+
+    private final NettyRpcEnv rpcEnv;
+    private final TransportClient client;
+
+    public RpcCodecInput(InputStream in, NettyRpcEnv rpcEnv, TransportClient client) {
+        super(in);
+        this.rpcEnv = rpcEnv;
+        this.client = client;
+    }
+
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public ByteBuffer readByteBuffer() throws IOException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * @param ids 枚举编码表(与{@link RpcCodecOutput#writeEnum(Enum, Enum[])}相同)
+     * */
+    public <E extends Enum<E>> E readEnum(E[] ids) throws IOException {
+        int id = readVarInt();
+        if (id == 0) {
+            return null;
+        }
+        if (id > ids.length) {
+            throw new IOException(String.format("Unknown %s codec id %d", ids.getClass().getComponentType().getSimpleName(), id));
+        }
+        return ids[id - 1];
+    }
+
+    public RpcAddress readRpcAddress() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        String host = readString();
+        int port = readInt();
+        return new RpcAddress(host, port);
+    }
+
+    public RpcEndpointRef readEndpointRef() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        String name = readString();
+        RpcAddress address = readRpcAddress();
+        NettyRpcEndpointRef ref = new NettyRpcEndpointRef(new RpcEndpointAddress(name, address), rpcEnv);
+        ref.client = client;
+        return ref;
+    }
+
+    public BlockId readBlockId() throws IOException {
+        String name = readString();
+        return name == null ? null : BlockId.apply(name);
+    }
+
+    public BlockManagerId readBlockManagerId() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        String executorId = readString();
+        String host = readString();
+        int port = readInt();
+        String topologyInfo = readString();
+        return BlockManagerId.apply(executorId, host, port, topologyInfo);
+    }
+
+    public StorageLevel readStorageLevel() throws IOException {
+        int flags = readVarInt();
+        if (flags == 0) {
+            return null;
+        }
+        int replication = readVarInt();
+        return StorageLevel.apply((flags & RpcCodecOutput.STORAGE_LEVEL_USE_DISK) != 0,
+                                  (flags & RpcCodecOutput.STORAGE_LEVEL_USE_MEMORY) != 0,
+                                  (flags & RpcCodecOutput.STORAGE_LEVEL_USE_OFF_HEAP) != 0,
+                                  (flags & RpcCodecOutput.STORAGE_LEVEL_DESERIALIZED) != 0,
+                                  replication);
+    }
+}
@@ -0,0 +1,137 @@
+package com.sdu.spark.rpc.netty;
+
+import com.sdu.spark.rpc.RpcAddress;
+import com.sdu.spark.rpc.RpcEndpointRef;
+import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockManagerId;
+import com.sdu.spark.storage.StorageLevel;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link RpcMessageCodec}编码输出, 在DataOutputStream基础上提供Rpc消息常用字段的紧凑编码:
+ *
+ *  1: 长度使用变长整数(varint)
+ *
+ *  2: 可空字段以前缀标记null(String长度+1, 0表示null)
+ *
+ *  3: {@link RpcEndpointRef}仅写入名字及地址, 解码时关联当前{@link NettyRpcEnv}
+ *
+ * @author hanhan.zhang
+ * */
+public class RpcCodecOutput extends DataOutputStream {
+
+    static final int STORAGE_LEVEL_VALID = 1;
+    static final int STORAGE_LEVEL_USE_DISK = 1 << 1;
+    static final int STORAGE_LEVEL_USE_MEMORY = 1 << 2;
+    static final int STORAGE_LEVEL_USE_OFF_HEAP = 1 << 3;
+    static final int STORAGE_LEVEL_DESERIALIZED = 1 << 4;
+
+    public RpcCodecOutput(OutputStream out) {
+        super(out);
+    }
+
+    public void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        write(value);
+    }
+
+    public void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        write(bytes);
+    }
+
+    public void writeByteBuffer(ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            writeVarInt(0);
+            return;
+        }
+        ByteBuffer data = buffer.duplicate();
+        writeVarInt(data.remaining() + 1);
+        if (data.hasArray()) {
+            write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            write(bytes);
+        }
+    }
+
+    /**
+     * 枚举按显式编码表写入(编码ID = 表下标 + 1, 0表示null), 不依赖枚举声明顺序
+     *
+     * @param ids 枚举编码表, 只可追加
+     * */
+    public <E extends Enum<E>> void writeEnum(E value, E[] ids) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        for (int i = 0; i < ids.length; ++i) {
+            if (ids[i] == value) {
+                writeVarInt(i + 1);
+                return;
+            }
+        }
+        throw new IOException(String.format("%s has no codec id", value));
+    }
+
+    public void writeRpcAddress(RpcAddress address) throws IOException {
+        writeBoolean(address != null);
+        if (address != null) {
+            writeString(address.host);
+            writeInt(address.port);
+        }
+    }
+
+    public void writeEndpointRef(RpcEndpointRef ref) throws IOException {
+        writeBoolean(ref != null);
+        if (ref != null) {
+            writeString(ref.name());
+            writeRpcAddress(ref.address());
+        }
+    }
+
+    public void writeBlockId(BlockId blockId) throws IOException {
+        writeString(blockId == null ? null : blockId.name());
+    }
+
+    public void writeBlockManagerId(BlockManagerId blockManagerId) throws IOException {
+        writeBoolean(blockManagerId != null);
+        if (blockManagerId != null) {
+            writeString(blockManagerId.executorId);
+            writeString(blockManagerId.host);
+            writeInt(blockManagerId.port);
+            writeString(blockManagerId.topologyInfo);
+        }
+    }
+
+    /**
+     * StorageLevel按存储标识位及副本数写入: [flags + 1][replication], flags = 0表示null
+     * */
+    public void writeStorageLevel(StorageLevel level) throws IOException {
+        if (level == null) {
+            writeVarInt(0);
+            return;
+        }
+        int flags = STORAGE_LEVEL_VALID;
+        flags |= level.useDisk ? STORAGE_LEVEL_USE_DISK : 0;
+        flags |= level.useMemory ? STORAGE_LEVEL_USE_MEMORY : 0;
+        flags |= level.useOffHeap ? STORAGE_LEVEL_USE_OFF_HEAP : 0;
+        flags |= level.deserialized ? STORAGE_LEVEL_DESERIALIZED : 0;
+        writeVarInt(flags);
+        writeVarInt(level.replication);
+    }
+}
@@ -0,0 +1,14 @@
+package com.sdu.spark.rpc.netty;
+
+/**
+ * 用户自定义Rpc消息编解码注册, 由'spark.rpc.codec.registrators'(逗号分隔类名)配置, 注册ID范围[128, 255]
+ *
+ * Note: 需提供无参构造函数, 且通信双方注册一致
+ *
+ * @author hanhan.zhang
+ * */
+public interface RpcCodecRegistrator {
+
+    void registerCodecs(RpcCodec codec);
+
+}
@@ -0,0 +1,47 @@
+package com.sdu.spark.rpc.netty;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Rpc消息编解码SPI, 经{@link RpcCodec#register(int, Class, RpcMessageCodec)}注册后,
+ *
+ * 消息以1字节注册ID + 字段二进制编码传输, 避免Java序列化写入类描述信息
+ *
+ * @author hanhan.zhang
+ * */
+public interface RpcMessageCodec<T> {
+
+    void encode(T message, RpcCodecOutput out) throws IOException;
+
+    T decode(RpcCodecInput in) throws IOException;
+
+    interface Encoder<T> {
+        void encode(T message, RpcCodecOutput out) throws IOException;
+    }
+
+    interface Decoder<T> {
+        T decode(RpcCodecInput in) throws IOException;
+    }
+
+    static <T> RpcMessageCodec<T> of(Encoder<T> encoder, Decoder<T> decoder) {
+        return new RpcMessageCodec<T>() {
+            @Override
+            public void encode(T message, RpcCodecOutput out) throws IOException {
+                encoder.encode(message, out);
+            }
+
+            @Override
+            public T decode(RpcCodecInput in) throws IOException {
+                return decoder.decode(in);
+            }
+        };
+    }
+
+    /**
+     * 无字段消息: 仅传输注册ID
+     * */
+    static <T> RpcMessageCodec<T> empty(Supplier<T> factory) {
+        return of((message, out) -> {}, in -> factory.get());
+    }
+}
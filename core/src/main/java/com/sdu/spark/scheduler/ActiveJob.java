@@ -16,6 +16,7 @@ public class ActiveJob {
 
     public int numPartitions = 0;
     public boolean[] finished;
+    public int numFinished = 0;
 
     /**
      * @param jobId A unique ID for this job.
@@ -0,0 +1,198 @@
+package com.sdu.spark.scheduler;
+
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.utils.colleciton.MpscRingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link AsyncEventQueue}监听器分组事件队列:
+ *
+ * 1: 每个队列持有独立的有界无锁环形队列及事件分发线程, 队列间互不影响(如EventLog监听器写盘阻塞只导致eventLog队列丢弃事件)
+ *
+ * 2: 队列满时丢弃事件并计数, 丢弃日志每分钟至多输出一次
+ *
+ * 3: 分发线程无事件时park, 生产者发现分发线程等待时unpark
+ *
+ * 4: 监控指标: 丢弃事件数、已处理事件数、事件处理总耗时(所有监听器)
+ *
+ * 队列容量: spark.scheduler.listenerbus.eventqueue.${name}.capacity, 未配置时取spark.scheduler.listenerbus.eventqueue.capacity
+ *
+ * @author hanhan.zhang
+ * */
+public class AsyncEventQueue implements SparkListenerBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncEventQueue.class);
+
+    private static final long DROPPED_EVENTS_REPORT_INTERVAL_MS = 60 * 1000L;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    public final String name;
+
+    private final List<SparkListenerInterface> listeners = new CopyOnWriteArrayList<>();
+    private final MpscRingBuffer<SparkListenerEvent> eventQueue;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    // 分发线程是否等待新事件
+    private volatile boolean waiting = false;
+    private final Thread dispatchThread;
+
+    /********************************监控指标*********************************/
+    private final AtomicLong droppedEvents = new AtomicLong(0L);
+    private final AtomicLong processedEvents = new AtomicLong(0L);
+    private final AtomicLong processingTimeNanos = new AtomicLong(0L);
+    // 上次输出丢弃日志时的丢弃事件数及时间
+    private long lastReportedDroppedEvents = 0L;
+    private volatile long lastReportTimestamp = 0L;
+
+    public AsyncEventQueue(String name, SparkConf conf) {
+        this.name = name;
+        int capacity = conf.getInt("spark.scheduler.listenerbus.eventqueue." + name + ".capacity",
+                                   conf.getInt("spark.scheduler.listenerbus.eventqueue.capacity", 1024));
+        this.eventQueue = new MpscRingBuffer<>(capacity);
+        this.dispatchThread = new Thread(this::dispatch, "spark-listener-group-" + name);
+        this.dispatchThread.setDaemon(true);
+    }
+
+    public void addListener(SparkListenerInterface listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SparkListenerInterface listener) {
+        listeners.remove(listener);
+    }
+
+    public List<SparkListenerInterface> listeners() {
+        return listeners;
+    }
+
+    public void start() {
+        if (stopped.get()) {
+            throw new IllegalStateException(name + " event queue already stopped");
+        }
+        if (started.compareAndSet(false, true)) {
+            dispatchThread.start();
+        }
+    }
+
+    /**
+     * 停止接收事件, 等待分发线程处理完已入队事件
+     *
+     * Note: 监听器在分发线程中调用时(如移除自身)不等待, 分发线程处理完已入队事件后退出
+     * */
+    public void stop() {
+        if (!started.get()) {
+            throw new IllegalStateException("Attempted to stop " + name + " event queue that has not yet started!");
+        }
+        if (stopped.compareAndSet(false, true)) {
+            if (Thread.currentThread() == dispatchThread) {
+                return;
+            }
+            LockSupport.unpark(dispatchThread);
+            try {
+                dispatchThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void post(SparkListenerEvent event) {
+        if (stopped.get()) {
+            return;
+        }
+
+        if (eventQueue.offer(event)) {
+            if (waiting) {
+                LockSupport.unpark(dispatchThread);
+            }
+            return;
+        }
+
+        long dropped = droppedEvents.incrementAndGet();
+        if (dropped == 1) {
+            LOGGER.error("Dropping event from queue {}. This likely means one of the listeners is too slow and " +
+                         "cannot keep up with the rate at which tasks are being started by the scheduler.", name);
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastReportTimestamp >= DROPPED_EVENTS_REPORT_INTERVAL_MS) {
+            synchronized (this) {
+                if (now - lastReportTimestamp >= DROPPED_EVENTS_REPORT_INTERVAL_MS) {
+                    long droppedSinceLastReport = dropped - lastReportedDroppedEvents;
+                    if (lastReportTimestamp > 0) {
+                        LOGGER.warn("Dropped {} events from {} since {}", droppedSinceLastReport, name,
+                                    new Date(lastReportTimestamp));
+                    }
+                    lastReportedDroppedEvents = dropped;
+                    lastReportTimestamp = now;
+                }
+            }
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            SparkListenerEvent event = eventQueue.poll();
+            if (event == null) {
+                if (stopped.get() && eventQueue.isEmpty()) {
+                    return;
+                }
+                waiting = true;
+                // 设置waiting后再次检查, 避免与生产者unpark竞争丢失唤醒
+                if (eventQueue.isEmpty() && !stopped.get()) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                waiting = false;
+                continue;
+            }
+
+            long startTime = System.nanoTime();
+            postToAll(event);
+            processingTimeNanos.addAndGet(System.nanoTime() - startTime);
+            processedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * 单个监听器异常不影响同一队列其他监听器
+     * */
+    @Override
+    public void postToAll(SparkListenerEvent event) {
+        for (SparkListenerInterface listener : listeners) {
+            try {
+                doPostEvent(listener, event);
+            } catch (Throwable t) {
+                LOGGER.error("Listener {} threw an exception", listener.getClass().getSimpleName(), t);
+            }
+        }
+    }
+
+    public long droppedEvents() {
+        return droppedEvents.get();
+    }
+
+    public long processedEvents() {
+        return processedEvents.get();
+    }
+
+    public long processingTimeNanos() {
+        return processingTimeNanos.get();
+    }
+
+    public int size() {
+        return eventQueue.size();
+    }
+
+    public int capacity() {
+        return eventQueue.capacity();
+    }
+}
@@ -7,13 +7,15 @@ import com.sdu.spark.*;
 import com.sdu.spark.broadcast.Broadcast;
 import com.sdu.spark.executor.ExecutorExitCode.ExecutorLossReason;
 import com.sdu.spark.executor.ExecutorExitCode.SlaveLost;
+import com.sdu.spark.rdd.CoalescedShuffledRDD;
 import com.sdu.spark.rdd.RDD;
 import com.sdu.spark.scheduler.DAGSchedulerEvent.*;
 import com.sdu.spark.scheduler.JobResult.JobFailed;
+import com.sdu.spark.scheduler.JobResult.JobSucceeded;
+import com.sdu.spark.scheduler.TaskEndReason.Success;
 import com.sdu.spark.scheduler.SparkListenerEvent.*;
 import com.sdu.spark.scheduler.action.JobAction;
 import com.sdu.spark.scheduler.action.ResultHandler;
-import com.sdu.spark.serializer.SerializerInstance;
 import com.sdu.spark.storage.BlockId;
 import com.sdu.spark.storage.BlockId.RDDBlockId;
 import com.sdu.spark.storage.BlockManagerId;
@@ -24,6 +26,7 @@ import com.sdu.spark.utils.CallSite;
 import com.sdu.spark.utils.Clock;
 import com.sdu.spark.utils.Clock.SystemClock;
 import com.sdu.spark.utils.EventLoop;
+import com.sdu.spark.utils.ThreadUtils;
 import com.sdu.spark.utils.scala.Tuple2;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.ArrayUtils;
@@ -32,6 +35,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.NotSerializableException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -41,6 +45,7 @@ import static com.sdu.spark.network.utils.JavaUtils.bufferToArray;
 import static com.sdu.spark.utils.Utils.exceptionString;
 import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 import static org.apache.commons.lang3.StringUtils.endsWith;
+import static org.apache.commons.lang3.StringUtils.isEmpty;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
 /**
@@ -70,13 +75,39 @@ import static org.apache.commons.lang3.StringUtils.isNotEmpty;
  *
  *        维护ShuffleId与parent rdd的分区数映射关系
  *
- *    3':
+ *    3': 等待Stage记录未完成父Stage数, 父Stage完成(最后一个ShuffleMapTask结束或无待计算分区)时仅遍历等待其完成的
  *
- * 2: {@link #cancelJob(int, String)}终止作业及Job关联的Stage信息
+ *        子Stage({@link #waitingChildren}), 未完成父Stage数减为0的子Stage直接提交, 代价为O(子Stage数), 无需重新遍历RDD血缘
+ *
+ *    4': Stage闭包(RDD + ShuffleDependency/JobAction)在Task序列化线程池中序列化并广播, 完成后投递TaskBinarySerialized
+ *
+ *        事件由EventLoop创建并提交TaskSet, 大闭包序列化不阻塞EventLoop
+ *
+ *    5': 每个Stage Attempt只序列化一次闭包, Task仅持有广播句柄, Executor按需拉取并缓存广播值, 闭包不随每个
+ *
+ *        TaskDescription重复发送
+ *
+ *    6': 开启自适应执行(spark.shuffle.adaptive.enabled)时, Map Stage作业的ShuffleMapStage输出可用后根据MapOutputStatistics规划
+ *
+ *        Reduce端读取范围: 合并相邻小分区, 按MapTask范围拆分倾斜分区(见{@link ShufflePartitionCoalescer})
+ *
+ * 2: {@link #submitMapStage(ShuffleDependency, ResultHandler, CallSite, Properties)}只计算ShuffleMapStage, 作业结果为
+ *
+ *    {@link MapOutputStatistics}, 调用方根据规划的读取范围({@link MapOutputTrackerMaster#getPartitionSpecs(int)})构建
+ *
+ *    Reduce端RDD(见{@link CoalescedShuffledRDD})
+ *
+ * 3: {@link #cancelJob(int, String)}终止作业及Job关联的Stage信息
+ *
+ * 4: {@link #taskEnded(Task, TaskEndReason, Object, TaskInfo)}Task运行结束, 记录ShuffleMapTask输出及ResultTask结果
  *
  * Note:
  *
- *  DAGScheduler只运行在Driver端
+ *  1': DAGScheduler只运行在Driver端
+ *
+ *  2': Stage、Job状态及RDD血缘只在EventLoop线程中读写, 外部调用均投递DAGSchedulerEvent; Task序列化线程池只序列化
+ *
+ *      EventLoop线程中构建的Stage闭包, 结果以TaskBinarySerialized事件交回EventLoop
  *
  * @author hanhan.zhang
  * */
@@ -86,7 +117,6 @@ public class DAGScheduler {
     private static final Logger LOGGER = LoggerFactory.getLogger(DAGScheduler.class);
 
     private SparkContext sc;
-    private SerializerInstance closureSerializer;
     private TaskScheduler taskScheduler;
     private LiveListenerBus listenerBus;
     private OutputCommitCoordinator outputCommitCoordinator;
@@ -107,6 +137,10 @@ public class DAGScheduler {
     private Map<Integer, Set<Integer>> jobIdToStageIds = Maps.newHashMap();
     private Map<Integer, ActiveJob> jobIdToActiveJob = Maps.newHashMap();
     private Set<ActiveJob> activeJobs = Sets.newHashSet();
+    // 等待Stage未完成的父Stage数
+    private Map<Stage, Integer> numMissingParents = Maps.newHashMap();
+    // key = 父Stage, value = 等待父Stage完成的子Stage
+    private Map<Stage, Set<Stage>> waitingChildren = Maps.newHashMap();
     // key = rdd标识, value = [分区][当前分区任务运行位置](即: 行表示分区, 列表示任务运行位置)
     private final Map<Integer, TaskLocation[][]> cacheLocs = Maps.newHashMap();
 
@@ -120,6 +154,10 @@ public class DAGScheduler {
 
     // DAGEvent消息处理
     private DAGSchedulerEventProcessLoop eventProcessLoop;
+    // Stage闭包序列化线程池
+    private ExecutorService taskBinarySerializer;
+    // Reduce端读取范围规划(未开启自适应执行时为null)
+    private ShufflePartitionCoalescer partitionCoalescer;
 
     public DAGScheduler(SparkContext sc, TaskScheduler taskScheduler) {
         this(sc, taskScheduler, sc.listenerBus, (MapOutputTrackerMaster) sc.env.mapOutputTracker, sc.env.blockManager.master, sc.env);
@@ -149,8 +187,13 @@ public class DAGScheduler {
         this.blockManagerMaster = blockManagerMaster;
         this.env = env;
         this.outputCommitCoordinator = this.env.outputCommitCoordinator;
-        this.closureSerializer = this.env.closureSerializer.newInstance();
         this.clock = clock;
+        this.taskBinarySerializer = ThreadUtils.newDaemonFixedThreadPool(
+                this.env.conf.getInt("spark.scheduler.taskBinarySerializer.threads", 4),
+                "dag-scheduler-task-serializer");
+        if (this.env.conf.getBoolean("spark.shuffle.adaptive.enabled", false)) {
+            this.partitionCoalescer = new ShufflePartitionCoalescer(this.env.conf);
+        }
         // 初始化
         this.eventProcessLoop = new DAGSchedulerEventProcessLoop(this);
         this.eventProcessLoop.start();
@@ -213,7 +256,7 @@ public class DAGScheduler {
         }
     }
 
-    private <T, U> JobWaiter<U> submitJob(RDD<T> rdd,
+    public <T, U> JobWaiter<U> submitJob(RDD<T> rdd,
                                           JobAction<T, U> jobAction,
                                           List<Integer> partitions,
                                           CallSite callSite,
@@ -248,6 +291,28 @@ public class DAGScheduler {
         return waiter;
     }
 
+    /**
+     * 提交ShuffleMapStage(不提交下游Stage), Map输出可用后以{@link MapOutputStatistics}结束作业
+     * */
+    public JobWaiter<MapOutputStatistics> submitMapStage(ShuffleDependency<?, ?, ?> dependency,
+                                                         ResultHandler<MapOutputStatistics> resultHandler,
+                                                         CallSite callSite,
+                                                         Properties properties) {
+        if (dependency.rdd().partitions().length == 0) {
+            throw new SparkException("Can't run submitMapStage on RDD with 0 partitions");
+        }
+
+        // 作业只有一个结果: MapOutputStatistics
+        int jobId = nextJobId.getAndIncrement();
+        JobWaiter<MapOutputStatistics> waiter = new JobWaiter<>(this, jobId, 1, resultHandler);
+        eventProcessLoop.post(new MapStageSubmitted(jobId,
+                                                    dependency,
+                                                    callSite,
+                                                    waiter,
+                                                    new Properties(properties)));
+        return waiter;
+    }
+
     private <T, U> void handleJobSubmitted(int jobId,
                                            RDD<T> finalRDD,
                                            JobAction<T, U> jobAction,
@@ -289,33 +354,106 @@ public class DAGScheduler {
         submitStage(finalStage);
     }
 
+    private void handleMapStageSubmitted(int jobId,
+                                         ShuffleDependency<?, ?, ?> dependency,
+                                         CallSite callSite,
+                                         JobListener listener,
+                                         Properties properties) {
+        ShuffleMapStage finalStage;
+        try {
+            finalStage = getOrCreateShuffleMapStage(dependency, jobId);
+            // ShuffleMapStage可能已由其他作业创建
+            updateJobIdStageIdMaps(jobId, finalStage);
+        } catch (Exception e) {
+            LOGGER.warn("Creating new stage failed due to exception - job: {}", jobId, e);
+            listener.jobFailed(e);
+            return;
+        }
+
+        ActiveJob job = new ActiveJob(jobId, finalStage, callSite, listener, properties);
+        clearCacheLocs();
+        LOGGER.info("Got map stage job {} ({}) with {} output partitions", jobId,
+                                                                          callSite.shortForm,
+                                                                          dependency.rdd().partitions().length);
+        LOGGER.info("Final stage: {}({})", finalStage, finalStage.name);
+        LOGGER.info("Parents of final stage: {}", finalStage.parents);
+        LOGGER.info("Missing parents: {}", getMissingParentStages(finalStage));
+
+        long jobSubmissionTime = clock.getTimeMillis();
+        jobIdToActiveJob.put(jobId, job);
+        activeJobs.add(job);
+        finalStage.addActiveJob(job);
+        List<StageInfo> stageInfos = jobIdToStageIds.get(jobId).stream()
+                                                    .map(id -> stageIdToStage.get(id).latestInfo())
+                                                    .collect(Collectors.toList());
+        listenerBus.post(new SparkListenerJobStart(job.jobId(),
+                                                   jobSubmissionTime,
+                                                   stageInfos,
+                                                   properties));
+        submitStage(finalStage);
+    }
+
     private void clearCacheLocs() {
         synchronized (cacheLocs) {
             cacheLocs.clear();
         }
     }
 
+    /**
+     * 提交Stage, 存在未完成父Stage时先提交父Stage并记录等待关系
+     *
+     * Note:
+     *
+     *   显式栈代替递归, 深度血缘(数千Stage)不会StackOverflowError
+     * */
     private void submitStage(Stage stage) {
-        int jobId = activeJobForStage(stage);
-        if (jobId != -1) {
-            LOGGER.debug("submitStage({})", stage);
-            if (!waitingStages.contains(stage) && !runningStages.contains(stage) && !failedStages.contains(stage)) {
-                List<Stage> missing = getMissingParentStages(stage);
-                // TODO: 按照划分来说应该按照升序
-                Collections.sort(missing, (s1, s2) -> s1.id - s2.id);
-
-                if (CollectionUtils.isEmpty(missing)) {
-                    submitMissingTasks(stage, jobId);
-                } else {
-                    missing.forEach(this::submitStage);
-                    waitingStages.add(stage);
+        Deque<Stage> toSubmit = new ArrayDeque<>();
+        toSubmit.push(stage);
+        while (!toSubmit.isEmpty()) {
+            Stage current = toSubmit.pop();
+            int jobId = activeJobForStage(current);
+            if (jobId == -1) {
+                abortStage(current, "No active job for stage " + current.id, null);
+                continue;
+            }
+            LOGGER.debug("submitStage({})", current);
+            if (waitingStages.contains(current) || runningStages.contains(current) || failedStages.contains(current)) {
+                continue;
+            }
+
+            // 父Stage均可用时无需遍历RDD血缘
+            List<Stage> missing = allParentsAvailable(current) ? Collections.emptyList()
+                                                               : getMissingParentStages(current);
+            if (missing.isEmpty()) {
+                if (submitMissingTasks(current, jobId)) {
+                    // Stage无待计算分区, 直接提交等待其完成的子Stage
+                    if (current instanceof ShuffleMapStage) {
+                        shuffleMapStageAvailable((ShuffleMapStage) current);
+                    }
+                    readyChildStages(current).forEach(toSubmit::push);
+                }
+            } else {
+                waitingStages.add(current);
+                numMissingParents.put(current, missing.size());
+                // 逆序入栈, id小的父Stage先提交
+                missing.sort((s1, s2) -> s2.id - s1.id);
+                for (Stage parent : missing) {
+                    waitingChildren.computeIfAbsent(parent, p -> Sets.newHashSet()).add(current);
+                    toSubmit.push(parent);
                 }
             }
-        } else {
-            abortStage(stage, "No active job for stage " + stage.id, null);
         }
     }
 
+    private static boolean allParentsAvailable(Stage stage) {
+        for (Stage parent : stage.parents) {
+            if (!((ShuffleMapStage) parent).isAvailable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void abortStage(Stage failedStage, String reason, Throwable exception) {
         if (!stageIdToStage.containsKey(failedStage.id)) {
             // Skip all the actions if the stage has been removed.
@@ -369,7 +507,14 @@ public class DAGScheduler {
         return visitedRdds.contains(target.rdd);
     }
 
-    private void submitMissingTasks(Stage stage, int jobId) {
+    /**
+     * 提交Stage待计算分区: 计算Task运行位置后将Stage闭包交由Task序列化线程池序列化并广播,
+     *
+     * 序列化完成后由{@link #handleTaskBinarySerialized(TaskBinarySerialized)}创建并提交TaskSet
+     *
+     * @return Stage无待计算分区(已完成)时返回true
+     * */
+    private boolean submitMissingTasks(Stage stage, int jobId) {
         LOGGER.debug("submitMissingTasks({})", stage);
 
         // First figure out the indexes of partition ids to compute.
@@ -407,11 +552,11 @@ public class DAGScheduler {
             listenerBus.post(new SparkListenerEvent.SparkListenerStageSubmitted(stage.latestInfo(), properties));
             abortStage(stage, "Task creation failed: " + exceptionString(e), e);
             runningStages.remove(stage);
-            return;
+            return false;
         }
         TaskLocation[][] taskLocations = new TaskLocation[partitionsToCompute.size()][];
-        for (int partition : partitionsToCompute) {
-            taskLocations[partition] = taskIdToLocations.get(partition);
+        for (int i = 0; i < partitionsToCompute.size(); ++i) {
+            taskLocations[i] = taskIdToLocations.get(partitionsToCompute.get(i));
         }
         stage.makeNewStageAttempt(partitionsToCompute.size(), taskLocations);
 
@@ -423,38 +568,86 @@ public class DAGScheduler {
         }
         listenerBus.post(new SparkListenerStageSubmitted(stage.latestInfo(), properties));
 
-        // TODO: Maybe we can keep the taskBinary in Stage to avoid serializing it multiple times.
-        // Broadcasted binary for the task, used to dispatch tasks to executors. Note that we broadcast
-        // the serialized copy of the RDD and for each task we will deserialize it, which means each
-        // task gets a different copy of the RDD. This provides stronger isolation between tasks that
-        // might modify state of objects referenced in their closures. This is necessary in Hadoop
-        // where the JobConf/Configuration object is not thread-safe.
-        Broadcast<byte[]> taskBinary = null;
-        try {
-            // For ShuffleMapTask, serialize and broadcast (rdd, shuffleDep).
-            // For ResultTask, serialize and broadcast (rdd, func).
-            byte[] taskBinaryBytes = null;
+        if (partitionsToCompute.isEmpty()) {
+            // Because we posted SparkListenerStageSubmitted earlier, we should mark
+            // the stage as completed here in case there are no tasks to run
+            markStageAsFinished(stage, "");
+
+            String debugString = "";
             if (stage instanceof ShuffleMapStage) {
-                ShuffleMapStage mapStage = (ShuffleMapStage) stage;
-                taskBinaryBytes = bufferToArray(closureSerializer.serialize(new Tuple2<>(stage.rdd,
-                                                                                         mapStage.shuffleDep)));
+                debugString = String.format("Stage %s is actually done; (available: %s, partitions: %d)", stage,
+                                            ((ShuffleMapStage) stage).isAvailable(), stage.numPartitions);
             } else if (stage instanceof ResultStage) {
-                ResultStage resultStage = (ResultStage) stage;
-                taskBinaryBytes = bufferToArray(closureSerializer.serialize(new Tuple2<>(stage.rdd,
-                                                                                         resultStage.func)));
+                debugString = String.format("Stage %s is actually done; (partitions: %d)", stage, stage.numPartitions);
+            }
+            LOGGER.debug(debugString);
+            return true;
+        }
+
+        // For ShuffleMapTask, serialize (rdd, shuffleDep).
+        // For ResultTask, serialize (rdd, func).
+        Object closure = null;
+        if (stage instanceof ShuffleMapStage) {
+            closure = new Tuple2<>(stage.rdd, ((ShuffleMapStage) stage).shuffleDep);
+        } else if (stage instanceof ResultStage) {
+            closure = new Tuple2<>(stage.rdd, ((ResultStage) stage).func);
+        }
+        final Object taskClosure = closure;
+        int stageAttemptId = stage.latestInfo().attemptId;
+        taskBinarySerializer.execute(() -> {
+            // Broadcasted binary for the task, used to dispatch tasks to executors. Note that we broadcast
+            // the serialized copy of the RDD and for each task we will deserialize it, which means each
+            // task gets a different copy of the RDD. This provides stronger isolation between tasks that
+            // might modify state of objects referenced in their closures. This is necessary in Hadoop
+            // where the JobConf/Configuration object is not thread-safe.
+            Broadcast<byte[]> taskBinary = null;
+            Throwable exception = null;
+            try {
+                // SerializerInstance非线程安全, 每次序列化创建新实例
+                byte[] taskBinaryBytes = bufferToArray(env.closureSerializer.newInstance().serialize(taskClosure));
+                taskBinary = sc.broadcast(taskBinaryBytes);
+            } catch (Throwable e) {
+                exception = e;
+            }
+            eventProcessLoop.post(new TaskBinarySerialized(stage, stageAttemptId, jobId, partitionsToCompute,
+                                                           taskIdToLocations, properties, taskBinary, exception));
+        });
+        return false;
+    }
+
+    /**
+     * Stage闭包序列化完成: 创建并提交TaskSet(Stage已结束或已重新提交时忽略)
+     * */
+    private void handleTaskBinarySerialized(TaskBinarySerialized event) {
+        Stage stage = event.stage;
+        if (!runningStages.contains(stage) || stage.latestInfo().attemptId != event.stageAttemptId) {
+            LOGGER.info("Ignoring serialized task binary of {} (attempt {}) because the stage attempt is no longer " +
+                        "running", stage, event.stageAttemptId);
+            if (event.taskBinary != null) {
+                try {
+                    event.taskBinary.destroy(false);
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to destroy stale task binary {}", event.taskBinary, e);
+                }
             }
-            // TODO: 待实现broadcast
-            taskBinary = sc.broadcast(taskBinaryBytes);
-        } catch (NotSerializableException e) {
-            abortStage(stage, "Task not serializable: " + e.toString(), e);
-            runningStages.remove(stage);
             return;
-        } catch (Throwable e) {
-            abortStage(stage, "Task serialization failed: " + e + "\n" + exceptionString(e), e);
+        }
+        if (event.exception != null) {
+            if (event.exception instanceof NotSerializableException) {
+                abortStage(stage, "Task not serializable: " + event.exception.toString(), event.exception);
+            } else {
+                abortStage(stage, "Task serialization failed: " + event.exception + "\n" +
+                                  exceptionString(event.exception), event.exception);
+            }
             runningStages.remove(stage);
             return;
         }
 
+        Broadcast<byte[]> taskBinary = event.taskBinary;
+        stage.taskBinary = taskBinary;
+        int jobId = event.jobId;
+        Properties properties = event.properties;
+        List<Integer> partitionsToCompute = event.partitionsToCompute;
         // 每个分区对应一个Task
         Task<?>[] tasks = new Task[partitionsToCompute.size()];
         try {
@@ -462,81 +655,124 @@ public class DAGScheduler {
             if (stage instanceof ShuffleMapStage) {
                 ShuffleMapStage mapStage = (ShuffleMapStage) stage;
                 mapStage.pendingPartitions.clear();
-                for (int partition : partitionsToCompute) {
-                    TaskLocation[] locs = taskIdToLocations.get(partition);
+                for (int i = 0; i < partitionsToCompute.size(); ++i) {
+                    int partition = partitionsToCompute.get(i);
+                    TaskLocation[] locs = event.taskIdToLocations.get(partition);
                     Partition part = stage.rdd.partitions()[partition];
                     mapStage.pendingPartitions.add(partition);
-                    tasks[partition] = new ShuffleMapTask(stage.id,
-                                                          stage.latestInfo().attemptId,
-                                                          taskBinary,
-                                                          part,
-                                                         locs,
-                                                         properties,
-                                                         jobId,
-                                                         sc.applicationId(),
-                                                         sc.applicationAttemptId());
+                    tasks[i] = new ShuffleMapTask(stage.id,
+                                                  stage.latestInfo().attemptId,
+                                                  taskBinary,
+                                                  part,
+                                                  locs,
+                                                  properties,
+                                                  jobId,
+                                                  sc.applicationId(),
+                                                  sc.applicationAttemptId());
                 }
             } else if (stage instanceof ResultStage) {
                 ResultStage resultStage = (ResultStage) stage;
-                for (int partition : partitionsToCompute) {
+                for (int i = 0; i < partitionsToCompute.size(); ++i) {
+                    int partition = partitionsToCompute.get(i);
                     int p = resultStage.partitions.get(partition);
                     Partition part = stage.rdd.partitions()[p];
-                    TaskLocation[] locs = taskIdToLocations.get(partition);
-                    tasks[partition] = new ResultTask<>(stage.id,
-                                                        stage.latestInfo().attemptId,
-                                                        taskBinary,
-                                                        part,
-                                                        locs,
-                                                        partition,
-                                                        properties,
-                                                        jobId,
-                                                        sc.applicationId(),
-                                                        sc.applicationAttemptId());
+                    TaskLocation[] locs = event.taskIdToLocations.get(partition);
+                    tasks[i] = new ResultTask<>(stage.id,
+                                                stage.latestInfo().attemptId,
+                                                taskBinary,
+                                                part,
+                                                locs,
+                                                partition,
+                                                properties,
+                                                jobId,
+                                                sc.applicationId(),
+                                                sc.applicationAttemptId());
                 }
             }
         } catch (Throwable e) {
             abortStage(stage, "Task creation failed: " + e + "\n" + exceptionString(e), e);
             runningStages.remove(stage);
+            destroyTaskBinary(stage);
             return;
         }
 
-        if (tasks.length > 0) {
-            taskScheduler.submitTasks(new TaskSet(tasks,
-                                                  stage.id,
-                                                  stage.latestInfo().attemptId,
-                                                  jobId, properties));
-        } else {
-            // Because we posted SparkListenerStageSubmitted earlier, we should mark
-            // the stage as completed here in case there are no tasks to run
-            markStageAsFinished(stage, "");
+        taskScheduler.submitTasks(new TaskSet(tasks,
+                                              stage.id,
+                                              stage.latestInfo().attemptId,
+                                              jobId, properties));
+    }
 
-            String debugString = "";
-            if (stage instanceof ShuffleMapStage) {
-                debugString = String.format("Stage %s is actually done; (available: %s, available outputs: %s, " +
-                                            "partitions: %d", stage, ((ShuffleMapStage) stage).isAvailable(),
-                                            stage.numPartitions);
-            } else if (stage instanceof ResultStage) {
-                debugString = String.format("Stage %s is actually done; (partitions: %d", stage, stage.numPartitions);
+    /**
+     * 父Stage完成: 等待其完成的子Stage未完成父Stage数减1, 返回减为0的子Stage(按firstJobId排序)
+     *
+     * 子Stage提交时仍校验父Stage是否可用, 因此父Stage输出丢失时子Stage会重新等待
+     * */
+    private List<Stage> readyChildStages(Stage parent) {
+        Set<Stage> children = waitingChildren.remove(parent);
+        if (CollectionUtils.isEmpty(children)) {
+            return Collections.emptyList();
+        }
+        List<Stage> ready = Lists.newArrayList();
+        for (Stage child : children) {
+            Integer remaining = numMissingParents.get(child);
+            if (remaining == null) {
+                // 子Stage已被清理
+                continue;
             }
-            LOGGER.debug(debugString);
+            if (remaining <= 1) {
+                numMissingParents.remove(child);
+                waitingStages.remove(child);
+                ready.add(child);
+            } else {
+                numMissingParents.put(child, remaining - 1);
+            }
+        }
+        ready.sort((s1, s2) -> s1.firstJobId != s2.firstJobId ? s1.firstJobId - s2.firstJobId : s1.id - s2.id);
+        return ready;
+    }
 
-            submitWaitingChildStages(stage);
+    /**
+     * ShuffleMapStage输出可用且存在等待该Stage的Map Stage作业({@link #submitMapStage(ShuffleDependency, ResultHandler, CallSite, Properties)}):
+     *
+     *  1: 开启自适应执行时规划Reduce端读取范围, 规划结果由MapOutputTrackerMaster维护, 规划失败不影响子Stage按原始分区读取
+     *
+     *     (只有Map Stage作业的调用方读取规划结果, 普通作业不在EventLoop上规划)
+     *
+     *  2: 结束Map Stage作业, MapOutputStatistics只计算一次(规划时计算的统计直接作为作业结果)
+     * */
+    private void shuffleMapStageAvailable(ShuffleMapStage stage) {
+        if (!stage.isAvailable() || stage.mapStageJobs().isEmpty()) {
+            return;
         }
+        MapOutputStatistics stats = null;
+        if (partitionCoalescer != null) {
+            try {
+                stats = mapOutputTracker.coalescePartitions(stage.shuffleDep, partitionCoalescer);
+                LOGGER.info("{} has {} reduce partitions, planned {} post shuffle reads", stage,
+                            stage.shuffleDep.partitioner.numPartitions(),
+                            mapOutputTracker.getPartitionSpecs(stage.shuffleDep.shuffleId()).size());
+            } catch (Exception e) {
+                LOGGER.warn("Failed to coalesce reduce partitions of {}", stage, e);
+            }
+        }
+        if (stats == null) {
+            stats = mapOutputTracker.getStatistics(stage.shuffleDep);
+        }
+        markMapStageJobsAsFinished(stage, stats);
     }
 
-    private void submitWaitingChildStages(Stage parent) {
-        LOGGER.trace("Checking if any dependencies of {} are now runnable", parent);
-        LOGGER.trace("running: {}", runningStages);
-        LOGGER.trace("waiting: {}", waitingStages);
-        LOGGER.trace("failed: {}", failedStages);
-        List<Stage> childStages = waitingStages.stream()
-                                               .filter(stage -> stage.parents.contains(parent))
-                                               .collect(Collectors.toList());
-        if (CollectionUtils.isNotEmpty(childStages)) {
-            childStages.forEach(waitingStages::remove);
-            // TODO: 排序
-            Collections.sort(childStages, (s1, s2) -> s1.firstJobId - s2.firstJobId);
-            childStages.forEach(this::submitStage);
+    private void markMapStageJobsAsFinished(ShuffleMapStage stage, MapOutputStatistics stats) {
+        // 作业结束时从mapStageJobs中删除, 遍历副本
+        for (ActiveJob job : Lists.newArrayList(stage.mapStageJobs())) {
+            job.finished[0] = true;
+            job.numFinished++;
+            cleanupStateForJobAndIndependentStages(job);
+            listenerBus.post(new SparkListenerJobEnd(job.jobId(), clock.getTimeMillis(), new JobSucceeded()));
+            try {
+                job.listener().taskSucceeded(0, stats);
+            } catch (Exception e) {
+                job.listener().jobFailed(new SparkException("Job result handler failed", e));
+            }
         }
     }
 
@@ -636,7 +872,7 @@ public class DAGScheduler {
             RDD<?> rdd = waitingForVisit.pop();
             if (!visited.contains(rdd)) {
                 visited.add(rdd);
-                boolean rddHasUncachedPartitions = getCacheLocs(rdd).length == 0;
+                boolean rddHasUncachedPartitions = hasUncachedPartitions(getCacheLocs(rdd));
                 if (rddHasUncachedPartitions) {
                     List<Dependency<?>> dependencies = rdd.dependencies();
                     if (CollectionUtils.isNotEmpty(dependencies)) {
@@ -656,7 +892,16 @@ public class DAGScheduler {
             }
 
         }
-        return Lists.newLinkedList(missing);
+        return Lists.newArrayList(missing);
+    }
+
+    private static boolean hasUncachedPartitions(TaskLocation[][] cacheLocs) {
+        for (TaskLocation[] locations : cacheLocs) {
+            if (locations == null || locations.length == 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -697,7 +942,7 @@ public class DAGScheduler {
                                             jobId,
                                             callSite);
         stageIdToStage.put(id, stage);
-        updateJobIdStageIdMaps(jobId, Lists.newArrayList(stage));
+        updateJobIdStageIdMaps(jobId, stage);
         return stage;
     }
 
@@ -806,7 +1051,7 @@ public class DAGScheduler {
         // step2: 更新ShuffleId与ShuffleMapStage映射关系
         stageIdToStage.put(id, stage);
         shuffleIdToMapStage.put(shuffleDep.shuffleId(), stage);
-        updateJobIdStageIdMaps(jobId, Lists.newArrayList(stage));
+        updateJobIdStageIdMaps(jobId, stage);
 
         // step3: MapOutputTracker记录ShuffleId对应依赖RDD输出分区数
         if (!mapOutputTracker.containsShuffle(shuffleDep.shuffleId())) {
@@ -818,21 +1063,19 @@ public class DAGScheduler {
         return stage;
     }
 
-    private void updateJobIdStageIdMaps(int jobId,
-                                        List<Stage> stages) {
-        if (CollectionUtils.isNotEmpty(stages)) {
-            Stage s = stages.get(0);
-            s.jobIds().add(jobId);
-            Set<Integer> stageIds = jobIdToStageIds.get(jobId);
-            if (stageIds == null) {
-                stageIds = Sets.newHashSet();
-                jobIdToStageIds.put(jobId, stageIds);
+    /**
+     * Stage及其未关联jobId的祖先Stage关联jobId, 已关联jobId的Stage不再遍历其祖先
+     * */
+    private void updateJobIdStageIdMaps(int jobId, Stage stage) {
+        Set<Integer> stageIds = jobIdToStageIds.computeIfAbsent(jobId, id -> Sets.newHashSet());
+        Deque<Stage> waitingForVisit = new ArrayDeque<>();
+        waitingForVisit.push(stage);
+        while (!waitingForVisit.isEmpty()) {
+            Stage s = waitingForVisit.pop();
+            if (s.jobIds().add(jobId)) {
+                stageIds.add(s.id);
+                s.parents.forEach(waitingForVisit::push);
             }
-            stageIds.add(s.id);
-            List<Stage> parentsWithoutThisJobId = s.parents.stream()
-                                                           .filter(ps -> !ps.jobIds().contains(jobId))
-                                                           .collect(Collectors.toList());
-            updateJobIdStageIdMaps(jobId, parentsWithoutThisJobId);
         }
     }
 
@@ -933,14 +1176,16 @@ public class DAGScheduler {
                         LOGGER.debug("Removing running stage {}", stageId);
                         runningStages.remove(stage);
                     }
-                    ShuffleMapStage mapStage = shuffleIdToMapStage.get(stageId);
-                    if (mapStage != null) {
-                        shuffleIdToMapStage.remove(stageId);
+                    destroyTaskBinary(stage);
+                    if (stage instanceof ShuffleMapStage) {
+                        shuffleIdToMapStage.remove(((ShuffleMapStage) stage).shuffleDep.shuffleId());
                     }
                     if (waitingStages.contains(stage)) {
                         LOGGER.debug("Removing stage {} from waiting set.", stageId);
                         waitingStages.remove(stage);
                     }
+                    numMissingParents.remove(stage);
+                    waitingChildren.remove(stage);
                     if (failedStages.contains(stage)) {
                         LOGGER.debug("Removing stage %d from failed set.", stageId);
                         failedStages.remove(stage);
@@ -971,7 +1216,7 @@ public class DAGScheduler {
             serviceTime = String.format("%.03f", (clock.getTimeMillis() - stage.latestInfo().submissionTime()) / 1000.0);
         }
 
-        if (isNotEmpty(errorMessage)) {
+        if (isEmpty(errorMessage)) {
             LOGGER.info("{} ({}) finished in {} s", stage, stage.name, serviceTime);
             stage.latestInfo().setCompletionTime(clock.getTimeMillis());
 
@@ -988,6 +1233,23 @@ public class DAGScheduler {
         outputCommitCoordinator.stageEnd(stage.id);
         listenerBus.post(new SparkListenerStageCompleted(stage.latestInfo()));
         runningStages.remove(stage);
+        destroyTaskBinary(stage);
+    }
+
+    /**
+     * 销毁Stage闭包广播: Stage结束后Task不再读取, 重新提交时重新广播
+     * */
+    private void destroyTaskBinary(Stage stage) {
+        Broadcast<byte[]> taskBinary = stage.taskBinary;
+        if (taskBinary == null) {
+            return;
+        }
+        stage.taskBinary = null;
+        try {
+            taskBinary.destroy(false);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to destroy task binary {} of {}", taskBinary, stage, e);
+        }
     }
 
     private void handleExecutorLost(String execId, boolean workerLost) {
@@ -1055,6 +1317,100 @@ public class DAGScheduler {
         listenerBus.post(new SparkListenerTaskGettingResult(taskInfo));
     }
 
+    /**
+     * Called by the TaskSetManager to report task completions or failures.
+     * */
+    public void taskEnded(Task<?> task, TaskEndReason reason, Object result, TaskInfo taskInfo) {
+        eventProcessLoop.post(new CompletionEvent(task, reason, result, taskInfo));
+    }
+
+    /**
+     * Task运行结束:
+     *
+     * 1: ResultTask标记Job结果分区完成, Job所有分区完成时结束ResultStage并清理Job状态
+     *
+     * 2: ShuffleMapTask注册MapStatus, Stage所有分区完成时结束Stage: 输出可用则提交等待其完成的子Stage, 否则重新提交Stage
+     *
+     * 失败Task由TaskSetManager重试, 超过重试次数时由{@link #taskSetFailed(TaskSet, String, Throwable)}终止Stage
+     * */
+    private void handleTaskCompletion(CompletionEvent event) {
+        Task<?> task = event.task;
+        int stageId = task.stageId;
+        if (event.taskInfo != null) {
+            outputCommitCoordinator.taskCompleted(stageId, task.partitionId, event.taskInfo.attemptNumber(), event.reason);
+        }
+
+        Stage stage = stageIdToStage.get(stageId);
+        if (stage == null) {
+            // Skip all the actions if the stage has been cancelled.
+            LOGGER.debug("Ignoring completion of {} because stage {} has been removed", task, stageId);
+            return;
+        }
+        if (!(event.reason instanceof Success)) {
+            return;
+        }
+
+        if (task instanceof ResultTask) {
+            ResultTask<?, ?> resultTask = (ResultTask<?, ?>) task;
+            ActiveJob job = ((ResultStage) stage).getActiveJob();
+            if (job == null) {
+                LOGGER.info("Ignoring result from {} because its job has finished", resultTask);
+                return;
+            }
+            if (job.finished[resultTask.outputId]) {
+                return;
+            }
+            job.finished[resultTask.outputId] = true;
+            job.numFinished++;
+            // If the whole job has finished, remove it
+            if (job.numFinished == job.numPartitions) {
+                markStageAsFinished(stage, "");
+                cleanupStateForJobAndIndependentStages(job);
+                listenerBus.post(new SparkListenerJobEnd(job.jobId(), clock.getTimeMillis(), new JobSucceeded()));
+            }
+            try {
+                job.listener().taskSucceeded(resultTask.outputId, event.result);
+            } catch (Exception e) {
+                // TODO: Perhaps we want to mark the resultStage as failed?
+                job.listener().jobFailed(new SparkException("Job result handler failed", e));
+            }
+        } else if (task instanceof ShuffleMapTask) {
+            ShuffleMapStage mapStage = (ShuffleMapStage) stage;
+            MapStatus status = (MapStatus) event.result;
+            String execId = status.location().executorId;
+            mapStage.pendingPartitions.remove(task.partitionId);
+            Long failed = failedEpoch.get(execId);
+            if (failed != null && task.epoch <= failed) {
+                LOGGER.info("Ignoring possibly bogus {} completion from executor {}", task, execId);
+            } else {
+                mapOutputTracker.registerMapOutput(mapStage.shuffleDep.shuffleId(), task.partitionId, status);
+            }
+
+            if (runningStages.contains(mapStage) && mapStage.pendingPartitions.isEmpty()) {
+                markStageAsFinished(mapStage, "");
+                // 新Task需获取最新MapOutput
+                mapOutputTracker.incrementEpoch();
+                clearCacheLocs();
+
+                if (!mapStage.isAvailable()) {
+                    // Some tasks had failed; let's resubmit this shuffleStage.
+                    LOGGER.info("Resubmitting {} ({}) because some of its tasks had failed", mapStage, mapStage.name);
+                    submitStage(mapStage);
+                } else {
+                    shuffleMapStageAvailable(mapStage);
+                    readyChildStages(mapStage).forEach(this::submitStage);
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        // EventLoop停止后投递的序列化结果不再处理
+        taskBinarySerializer.shutdown();
+        eventProcessLoop.stop();
+        taskScheduler.stop();
+    }
+
     private class DAGSchedulerEventProcessLoop extends EventLoop<DAGSchedulerEvent> {
         private final Logger LOGGER = LoggerFactory.getLogger(DAGSchedulerEventProcessLoop.class);
 
@@ -1091,6 +1447,14 @@ public class DAGScheduler {
                                                 jobSubmitted.callSite,
                                                 jobSubmitted.listener,
                                                 jobSubmitted.properties);
+            } else if (event instanceof MapStageSubmitted) {
+                // Map Stage作业生成
+                MapStageSubmitted mapStageSubmitted = (MapStageSubmitted) event;
+                dagScheduler.handleMapStageSubmitted(mapStageSubmitted.jobId,
+                                                     mapStageSubmitted.dependency,
+                                                     mapStageSubmitted.callSite,
+                                                     mapStageSubmitted.listener,
+                                                     mapStageSubmitted.properties);
             } else if (event instanceof JobCancelled) {
                 // Job取消
                 JobCancelled jobCancelled = (JobCancelled) event;
@@ -1111,6 +1475,10 @@ public class DAGScheduler {
             } else if (event instanceof GettingResultEvent) {
                 GettingResultEvent gettingResultEvent = (GettingResultEvent) event;
                 dagScheduler.handleGetTaskResult(gettingResultEvent.taskInfo);
+            } else if (event instanceof TaskBinarySerialized) {
+                dagScheduler.handleTaskBinarySerialized((TaskBinarySerialized) event);
+            } else if (event instanceof CompletionEvent) {
+                dagScheduler.handleTaskCompletion((CompletionEvent) event);
             }
         }
     }
@@ -1,11 +1,14 @@
 package com.sdu.spark.scheduler;
 
+import com.sdu.spark.ShuffleDependency;
+import com.sdu.spark.broadcast.Broadcast;
 import com.sdu.spark.executor.ExecutorExitCode.*;
 import com.sdu.spark.rdd.RDD;
 import com.sdu.spark.scheduler.action.JobAction;
 import com.sdu.spark.utils.CallSite;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -39,6 +42,26 @@ public interface DAGSchedulerEvent {
         }
     }
 
+    class MapStageSubmitted implements DAGSchedulerEvent {
+        public int jobId;
+        public ShuffleDependency<?, ?, ?> dependency;
+        public CallSite callSite;
+        public JobListener listener;
+        public Properties properties;
+
+        public MapStageSubmitted(int jobId,
+                                 ShuffleDependency<?, ?, ?> dependency,
+                                 CallSite callSite,
+                                 JobListener listener,
+                                 Properties properties) {
+            this.jobId = jobId;
+            this.dependency = dependency;
+            this.callSite = callSite;
+            this.listener = listener;
+            this.properties = properties;
+        }
+    }
+
     class JobCancelled implements DAGSchedulerEvent {
         public int jobId;
         public String reason;
@@ -78,4 +101,53 @@ public interface DAGSchedulerEvent {
             this.taskInfo = taskInfo;
         }
     }
+
+    /**
+     * Task序列化线程池完成Stage闭包序列化及广播(taskBinary与exception二者有一)
+     * */
+    class TaskBinarySerialized implements DAGSchedulerEvent {
+        public Stage stage;
+        public int stageAttemptId;
+        public int jobId;
+        public List<Integer> partitionsToCompute;
+        public Map<Integer, TaskLocation[]> taskIdToLocations;
+        public Properties properties;
+        public Broadcast<byte[]> taskBinary;
+        public Throwable exception;
+
+        public TaskBinarySerialized(Stage stage,
+                                    int stageAttemptId,
+                                    int jobId,
+                                    List<Integer> partitionsToCompute,
+                                    Map<Integer, TaskLocation[]> taskIdToLocations,
+                                    Properties properties,
+                                    Broadcast<byte[]> taskBinary,
+                                    Throwable exception) {
+            this.stage = stage;
+            this.stageAttemptId = stageAttemptId;
+            this.jobId = jobId;
+            this.partitionsToCompute = partitionsToCompute;
+            this.taskIdToLocations = taskIdToLocations;
+            this.properties = properties;
+            this.taskBinary = taskBinary;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Task运行结束(result: ResultTask为计算结果, ShuffleMapTask为MapStatus)
+     * */
+    class CompletionEvent implements DAGSchedulerEvent {
+        public Task<?> task;
+        public TaskEndReason reason;
+        public Object result;
+        public TaskInfo taskInfo;
+
+        public CompletionEvent(Task<?> task, TaskEndReason reason, Object result, TaskInfo taskInfo) {
+            this.task = task;
+            this.reason = reason;
+            this.result = result;
+            this.taskInfo = taskInfo;
+        }
+    }
 }
@@ -4,79 +4,189 @@ import com.sdu.spark.rpc.SparkConf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * {@link LiveListenerBus}异步事件总线:
+ *
+ * 1: 监听器按分组注册到命名队列({@link AsyncEventQueue}), 每个队列独立缓存事件并由独立线程分发, 慢监听器只影响所在队列
+ *
+ *    内置分组: shared(默认)、appStatus、executorManagement、eventLog
+ *
+ * 2: post()将事件投递到所有队列, 队列满时由该队列丢弃并计数
+ *
+ * 3: start()之前投递的事件暂存, start()时按序投递到各队列
+ *
  * @author hanhan.zhang
  * */
-public class LiveListenerBus implements SparkListenerBus {
+public class LiveListenerBus {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LiveListenerBus.class);
-    private static final String NAME = "SparkListenerBus";
+
+    public static final String SHARED_QUEUE = "shared";
+    public static final String APP_STATUS_QUEUE = "appStatus";
+    public static final String EXECUTOR_MANAGEMENT_QUEUE = "executorManagement";
+    public static final String EVENT_LOG_QUEUE = "eventLog";
 
     public SparkConf conf;
 
-    /******************************Spark Event********************************/
-    private AtomicBoolean stopped = new AtomicBoolean(false);
-    // 丢弃事件数
-    private AtomicLong droppedEventsCounter = new AtomicLong(0L);
-    private AtomicBoolean logDroppedEvent = new AtomicBoolean(false);
-    // 事件队列
-    private LinkedBlockingQueue<SparkListenerEvent> eventQueue;
-    // 并发控制
-    private Semaphore eventLock = new Semaphore(0);
-    private volatile boolean processingEvent = false;
-    // 事件处理线程
-    private Thread listenerThread = new Thread(NAME) {
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    eventLock.acquire();
-                    processingEvent = true;
-                    SparkListenerEvent event = eventQueue.poll();
-                    if (event != null) {
-                        postToAll(event);
-                    }
-                } catch (InterruptedException e) {
-                    // ignore
-                } finally {
-                    processingEvent = false;
-                }
-            }
-        }
-    };
+    private final CopyOnWriteArrayList<AsyncEventQueue> queues = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
 
+    // start()之前投递的事件, start()后置为null
+    @GuardedBy("this")
+    private volatile List<SparkListenerEvent> queuedEvents = new ArrayList<>();
 
     public LiveListenerBus(SparkConf conf) {
         this.conf = conf;
-        eventQueue = new LinkedBlockingQueue<>(conf.getInt("spark.scheduler.listenerbus.eventqueue.capacity", 1024));
+    }
+
+    public void addToSharedQueue(SparkListenerInterface listener) {
+        addToQueue(listener, SHARED_QUEUE);
+    }
+
+    public void addToStatusQueue(SparkListenerInterface listener) {
+        addToQueue(listener, APP_STATUS_QUEUE);
+    }
+
+    public void addToManagementQueue(SparkListenerInterface listener) {
+        addToQueue(listener, EXECUTOR_MANAGEMENT_QUEUE);
+    }
+
+    public void addToEventLogQueue(SparkListenerInterface listener) {
+        addToQueue(listener, EVENT_LOG_QUEUE);
+    }
+
+    /**
+     * 注册监听器到指定队列, 队列不存在时创建(总线已启动则立即启动该队列)
+     * */
+    public synchronized void addToQueue(SparkListenerInterface listener, String queue) {
+        if (stopped.get()) {
+            throw new IllegalStateException("LiveListenerBus is stopped.");
+        }
+        AsyncEventQueue eventQueue = getQueue(queue);
+        if (eventQueue == null) {
+            eventQueue = new AsyncEventQueue(queue, conf);
+            eventQueue.addListener(listener);
+            if (started.get()) {
+                eventQueue.start();
+            }
+            queues.add(eventQueue);
+        } else {
+            eventQueue.addListener(listener);
+        }
+    }
+
+    /**
+     * 从所有队列移除监听器, 移除后无监听器的队列停止
+     *
+     * Note: 队列在锁外停止, 避免等待的分发线程中监听器竞争LiveListenerBus锁导致死锁
+     * */
+    public void removeListener(SparkListenerInterface listener) {
+        List<AsyncEventQueue> emptyQueues = new ArrayList<>();
+        synchronized (this) {
+            for (AsyncEventQueue eventQueue : queues) {
+                eventQueue.removeListener(listener);
+                if (eventQueue.listeners().isEmpty()) {
+                    queues.remove(eventQueue);
+                    if (started.get()) {
+                        emptyQueues.add(eventQueue);
+                    }
+                }
+            }
+        }
+        emptyQueues.forEach(AsyncEventQueue::stop);
     }
 
     public void post(SparkListenerEvent event) {
         if (stopped.get()) {
-            LOGGER.info("{}已停止, 丢弃事件: {}", NAME, event);
+            LOGGER.debug("LiveListenerBus已停止, 丢弃事件: {}", event);
             return;
         }
 
-        boolean add = eventQueue.offer(event);
-        if (add) {
+        // 启动后无需加锁
+        if (queuedEvents == null) {
+            postToQueues(event);
+            return;
+        }
 
-        } else {
-            onDropEvent(event);
+        synchronized (this) {
+            if (!started.get()) {
+                queuedEvents.add(event);
+                return;
+            }
+        }
+        postToQueues(event);
+    }
+
+    private void postToQueues(SparkListenerEvent event) {
+        for (AsyncEventQueue eventQueue : queues) {
+            eventQueue.post(event);
+        }
+    }
+
+    /**
+     * 启动所有队列的分发线程并投递启动前暂存的事件
+     * */
+    public synchronized void start() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("LiveListenerBus already started.");
+        }
+        for (AsyncEventQueue eventQueue : queues) {
+            eventQueue.start();
+        }
+        for (SparkListenerEvent event : queuedEvents) {
+            postToQueues(event);
         }
+        queuedEvents = null;
     }
 
-    private void onDropEvent(SparkListenerEvent event) {
-        droppedEventsCounter.incrementAndGet();
-        if (logDroppedEvent.compareAndSet(false, true)) {
-            // Only log the following message once to avoid duplicated annoying logs.
-            LOGGER.info("Dropping SparkListenerEvent because no remaining room in event queue. " +
-                    "This likely means one of the SparkListeners is too slow and cannot keep up with " +
-                    "the rate at which tasks are being started by the scheduler.");
+    /**
+     * 停止接收事件, 等待各队列处理完已入队事件
+     * */
+    public void stop() {
+        if (!started.get()) {
+            throw new IllegalStateException("Attempted to stop bus that has not yet started!");
         }
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        List<AsyncEventQueue> stoppedQueues;
+        synchronized (this) {
+            stoppedQueues = new ArrayList<>(queues);
+            queues.clear();
+        }
+        stoppedQueues.forEach(AsyncEventQueue::stop);
+    }
+
+    public AsyncEventQueue getQueue(String queue) {
+        for (AsyncEventQueue eventQueue : queues) {
+            if (eventQueue.name.equals(queue)) {
+                return eventQueue;
+            }
+        }
+        return null;
+    }
+
+    public List<String> activeQueues() {
+        List<String> names = new ArrayList<>(queues.size());
+        for (AsyncEventQueue eventQueue : queues) {
+            names.add(eventQueue.name);
+        }
+        return names;
+    }
+
+    /**
+     * 指定队列丢弃事件数(队列不存在返回0)
+     * */
+    public long droppedEvents(String queue) {
+        AsyncEventQueue eventQueue = getQueue(queue);
+        return eventQueue == null ? 0L : eventQueue.droppedEvents();
     }
 }
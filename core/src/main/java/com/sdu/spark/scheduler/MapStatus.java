@@ -30,11 +30,12 @@ public interface MapStatus extends Serializable {
 
     class HighlyCompressedMapStatus implements MapStatus, Externalizable {
 
-        private BlockManagerId loc;
-        private int numNonEmptyBlocks;
-        private RoaringBitmap emptyBlocks;
-        private long avgSize;
-        private Map<Integer, Byte> hugeBlockSizes;
+        // 包可见字段供MapStatusCodec列式编码
+        BlockManagerId loc;
+        int numNonEmptyBlocks;
+        RoaringBitmap emptyBlocks;
+        long avgSize;
+        Map<Integer, Byte> hugeBlockSizes;
 
         public HighlyCompressedMapStatus() {
             this(null, -1, null, -1, null);
@@ -151,8 +152,12 @@ public interface MapStatus extends Serializable {
 
     class CompressedMapStatus implements MapStatus, Externalizable {
 
-        private BlockManagerId loc;
-        private byte[] compressedSizes;
+        BlockManagerId loc;
+        byte[] compressedSizes;
+
+        public CompressedMapStatus() {
+            this(null, (byte[]) null);
+        }
 
         public CompressedMapStatus(BlockManagerId loc, long[] uncompressedSizes) {
             byte[] compressedSizes = new byte[uncompressedSizes.length];
@@ -180,7 +185,7 @@ public interface MapStatus extends Serializable {
 
         @Override
         public long getSizeForBlock(int reduceId) {
-            return decompressSize(compressSize(reduceId));
+            return decompressSize(compressedSizes[reduceId]);
         }
 
         @Override
@@ -193,8 +198,8 @@ public interface MapStatus extends Serializable {
         @Override
         public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
             loc = BlockManagerId.apply(in);
-            long len = in.readLong();
-            compressedSizes = new byte[(int) len];
+            int len = in.readInt();
+            compressedSizes = new byte[len];
             in.readFully(compressedSizes);
         }
     }
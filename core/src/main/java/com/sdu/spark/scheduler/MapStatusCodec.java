@@ -0,0 +1,314 @@
+package com.sdu.spark.scheduler;
+
+import com.google.common.collect.Maps;
+import com.sdu.spark.scheduler.MapStatus.CompressedMapStatus;
+import com.sdu.spark.scheduler.MapStatus.HighlyCompressedMapStatus;
+import com.sdu.spark.storage.BlockManagerId;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link MapStatusCodec}按列编码Shuffle的MapStatus集合(全量或部分MapTask):
+ *
+ * 1: 位置列: BlockManagerId字典编码, 每个MapTask只写入字典下标(0表示MapTask输出缺失)
+ *
+ * 2: 类型列: HighlyCompressedMapStatus所在位置的RoaringBitmap
+ *
+ * 3: CompressedMapStatus列: 所有MapTask的对数压缩分区大小按最大有效位数位压缩后连续存储
+ *
+ * 4: HighlyCompressedMapStatus列: 空分区RoaringBitmap字典编码(相同空分区集合只写一次), 平均大小及大分区大小
+ *
+ * 编码内容包含ShuffleStatus版本号, Reduce端据此增量拉取变更的MapStatus
+ *
+ * @author hanhan.zhang
+ * */
+public class MapStatusCodec {
+
+    private MapStatusCodec() {}
+
+    /**
+     * @param statuses Shuffle全部MapStatus[index = mapId]
+     * @param mapIds 编码的mapId(升序), null表示编码全部
+     * @param version MapStatus集合版本号
+     * */
+    public static void encode(MapStatus[] statuses, int[] mapIds, long version, DataOutputStream out) throws IOException {
+        writeVarLong(out, version);
+        writeVarLong(out, statuses.length);
+        out.writeBoolean(mapIds == null);
+        int n = mapIds == null ? statuses.length : mapIds.length;
+        if (mapIds != null) {
+            writeVarLong(out, n);
+            int prev = -1;
+            for (int mapId : mapIds) {
+                writeVarLong(out, mapId - prev - 1);
+                prev = mapId;
+            }
+        }
+
+        MapStatus[] entries = new MapStatus[n];
+        for (int k = 0; k < n; ++k) {
+            entries[k] = statuses[mapIds == null ? k : mapIds[k]];
+        }
+
+        // 位置列
+        Map<BlockManagerId, Integer> locations = Maps.newLinkedHashMap();
+        for (MapStatus status : entries) {
+            if (status != null) {
+                locations.putIfAbsent(status.location(), locations.size());
+            }
+        }
+        writeVarLong(out, locations.size());
+        for (BlockManagerId location : locations.keySet()) {
+            out.writeUTF(location.executorId);
+            out.writeUTF(location.host);
+            out.writeInt(location.port);
+            out.writeBoolean(location.topologyInfo != null);
+            if (location.topologyInfo != null) {
+                out.writeUTF(location.topologyInfo);
+            }
+        }
+        for (MapStatus status : entries) {
+            writeVarLong(out, status == null ? 0 : locations.get(status.location()) + 1);
+        }
+
+        // 类型列
+        RoaringBitmap highlyCompressed = new RoaringBitmap();
+        List<CompressedMapStatus> compressed = new ArrayList<>();
+        List<HighlyCompressedMapStatus> highly = new ArrayList<>();
+        for (int k = 0; k < n; ++k) {
+            MapStatus status = entries[k];
+            if (status instanceof HighlyCompressedMapStatus) {
+                highlyCompressed.add(k);
+                highly.add((HighlyCompressedMapStatus) status);
+            } else if (status instanceof CompressedMapStatus) {
+                compressed.add((CompressedMapStatus) status);
+            } else if (status != null) {
+                throw new IllegalArgumentException("Unsupported map status type: " + status.getClass().getName());
+            }
+        }
+        highlyCompressed.runOptimize();
+        highlyCompressed.serialize(out);
+
+        // CompressedMapStatus列
+        int bits = 0;
+        long totalSizes = 0;
+        for (CompressedMapStatus status : compressed) {
+            writeVarLong(out, status.compressedSizes.length);
+            totalSizes += status.compressedSizes.length;
+            for (byte size : status.compressedSizes) {
+                bits = Math.max(bits, 32 - Integer.numberOfLeadingZeros(size & 0xFF));
+            }
+        }
+        out.writeByte(bits);
+        if (bits > 0) {
+            BitPacker packer = new BitPacker(totalSizes, bits);
+            for (CompressedMapStatus status : compressed) {
+                for (byte size : status.compressedSizes) {
+                    packer.write(size & 0xFF);
+                }
+            }
+            out.write(packer.bytes);
+        }
+
+        // HighlyCompressedMapStatus列
+        Map<RoaringBitmap, Integer> emptyBlocks = Maps.newLinkedHashMap();
+        for (HighlyCompressedMapStatus status : highly) {
+            emptyBlocks.putIfAbsent(status.emptyBlocks, emptyBlocks.size());
+        }
+        writeVarLong(out, emptyBlocks.size());
+        for (RoaringBitmap bitmap : emptyBlocks.keySet()) {
+            bitmap.serialize(out);
+        }
+        for (HighlyCompressedMapStatus status : highly) {
+            writeVarLong(out, emptyBlocks.get(status.emptyBlocks));
+            writeVarLong(out, status.numNonEmptyBlocks);
+            writeVarLong(out, status.avgSize);
+            writeVarLong(out, status.hugeBlockSizes.size());
+            for (Map.Entry<Integer, Byte> entry : status.hugeBlockSizes.entrySet()) {
+                writeVarLong(out, entry.getKey());
+                out.writeByte(entry.getValue());
+            }
+        }
+    }
+
+    public static MapStatusUpdate decode(DataInputStream in) throws IOException {
+        long version = readVarLong(in);
+        int numMaps = (int) readVarLong(in);
+        boolean full = in.readBoolean();
+        int[] mapIds = null;
+        int n = numMaps;
+        if (!full) {
+            n = (int) readVarLong(in);
+            mapIds = new int[n];
+            int prev = -1;
+            for (int k = 0; k < n; ++k) {
+                mapIds[k] = prev + 1 + (int) readVarLong(in);
+                prev = mapIds[k];
+            }
+        }
+
+        // 位置列
+        BlockManagerId[] locations = new BlockManagerId[(int) readVarLong(in)];
+        for (int i = 0; i < locations.length; ++i) {
+            String executorId = in.readUTF();
+            String host = in.readUTF();
+            int port = in.readInt();
+            String topologyInfo = in.readBoolean() ? in.readUTF() : null;
+            locations[i] = BlockManagerId.apply(executorId, host, port, topologyInfo);
+        }
+        int[] locationIndex = new int[n];
+        for (int k = 0; k < n; ++k) {
+            locationIndex[k] = (int) readVarLong(in);
+        }
+
+        // 类型列
+        RoaringBitmap highlyCompressed = new RoaringBitmap();
+        highlyCompressed.deserialize(in);
+
+        MapStatus[] entries = new MapStatus[n];
+
+        // CompressedMapStatus列
+        List<Integer> compressed = new ArrayList<>();
+        for (int k = 0; k < n; ++k) {
+            if (locationIndex[k] > 0 && !highlyCompressed.contains(k)) {
+                compressed.add(k);
+            }
+        }
+        int[] lengths = new int[compressed.size()];
+        long totalSizes = 0;
+        for (int i = 0; i < lengths.length; ++i) {
+            lengths[i] = (int) readVarLong(in);
+            totalSizes += lengths[i];
+        }
+        int bits = in.readByte();
+        BitPacker packer = new BitPacker(totalSizes, bits);
+        if (bits > 0) {
+            in.readFully(packer.bytes);
+        }
+        for (int i = 0; i < lengths.length; ++i) {
+            byte[] sizes = new byte[lengths[i]];
+            for (int r = 0; r < sizes.length; ++r) {
+                sizes[r] = bits == 0 ? 0 : (byte) packer.read();
+            }
+            int k = compressed.get(i);
+            entries[k] = new CompressedMapStatus(locations[locationIndex[k] - 1], sizes);
+        }
+
+        // HighlyCompressedMapStatus列
+        RoaringBitmap[] emptyBlocks = new RoaringBitmap[(int) readVarLong(in)];
+        for (int i = 0; i < emptyBlocks.length; ++i) {
+            emptyBlocks[i] = new RoaringBitmap();
+            emptyBlocks[i].deserialize(in);
+        }
+        for (int k : highlyCompressed) {
+            RoaringBitmap empty = emptyBlocks[(int) readVarLong(in)];
+            int numNonEmptyBlocks = (int) readVarLong(in);
+            long avgSize = readVarLong(in);
+            int numHugeBlocks = (int) readVarLong(in);
+            Map<Integer, Byte> hugeBlockSizes = Maps.newLinkedHashMapWithExpectedSize(numHugeBlocks);
+            for (int i = 0; i < numHugeBlocks; ++i) {
+                hugeBlockSizes.put((int) readVarLong(in), in.readByte());
+            }
+            entries[k] = new HighlyCompressedMapStatus(locations[locationIndex[k] - 1], numNonEmptyBlocks, empty,
+                                                       avgSize, hugeBlockSizes);
+        }
+
+        return new MapStatusUpdate(version, numMaps, mapIds, entries);
+    }
+
+    /**
+     * 解码结果: mapIds为null时statuses为全量MapStatus, 否则statuses[k]为mapIds[k]的最新MapStatus(null表示输出已丢失)
+     * */
+    public static class MapStatusUpdate {
+        public final long version;
+        public final int numMaps;
+        public final int[] mapIds;
+        public final MapStatus[] statuses;
+
+        MapStatusUpdate(long version, int numMaps, int[] mapIds, MapStatus[] statuses) {
+            this.version = version;
+            this.numMaps = numMaps;
+            this.mapIds = mapIds;
+            this.statuses = statuses;
+        }
+
+        public boolean isFull() {
+            return mapIds == null;
+        }
+
+        /**
+         * 增量应用到旧版本MapStatus集合(不修改base)
+         * */
+        public MapStatus[] applyTo(MapStatus[] base) {
+            if (isFull()) {
+                return statuses;
+            }
+            if (base.length != numMaps) {
+                throw new IllegalStateException(String.format("Map status delta for %d maps can't be applied to %d maps",
+                                                              numMaps, base.length));
+            }
+            MapStatus[] result = base.clone();
+            for (int k = 0; k < mapIds.length; ++k) {
+                result[mapIds[k]] = statuses[k];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 定长位压缩(高位在前)
+     * */
+    private static class BitPacker {
+        final byte[] bytes;
+        final int bits;
+        long position = 0;
+
+        BitPacker(long numValues, int bits) {
+            this.bits = bits;
+            this.bytes = new byte[(int) ((numValues * bits + 7) / 8)];
+        }
+
+        void write(int value) {
+            for (int b = bits - 1; b >= 0; --b, ++position) {
+                if (((value >>> b) & 1) != 0) {
+                    bytes[(int) (position >>> 3)] |= 1 << (7 - (position & 7));
+                }
+            }
+        }
+
+        int read() {
+            int value = 0;
+            for (int b = 0; b < bits; ++b, ++position) {
+                value = (value << 1) | ((bytes[(int) (position >>> 3)] >>> (7 - (position & 7))) & 1);
+            }
+            return value;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
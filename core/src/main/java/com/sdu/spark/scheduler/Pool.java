@@ -1,6 +1,20 @@
 package com.sdu.spark.scheduler;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sdu.spark.scheduler.SchedulingAlgorithm.FIFOSchedulingAlgorithm;
+import com.sdu.spark.scheduler.SchedulingAlgorithm.FairSchedulingAlgorithm;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 /**
+ * 调度池: 子节点为Pool或TaskSetManager
+ *
+ * 排序缓存: 子节点排序结果缓存, 仅在子节点增删或(FAIR模式下)运行Task数变化时重新排序, 运行Task数变化沿父节点向上传递
+ *
  * @author hanhan.zhang
  * */
 public class Pool implements Schedulable {
@@ -9,16 +23,159 @@ public class Pool implements Schedulable {
     private int initMinShare;
     private int initWeight;
 
+    private Pool parent;
+    private ConcurrentLinkedQueue<Schedulable> schedulableQueue = new ConcurrentLinkedQueue<>();
+    private Map<String, Schedulable> schedulableNameToSchedulable = Maps.newConcurrentMap();
+    private SchedulingAlgorithm taskSetSchedulingAlgorithm;
+    private int runningTasks = 0;
+
+    /**
+     * 子节点排序结果, sortedQueueDirty为true时重建
+     * */
+    private List<Schedulable> sortedSchedulableQueue = Collections.emptyList();
+    private volatile boolean sortedQueueDirty = true;
+
     public Pool(String poolName, SchedulingMode schedulingMode,
                 int initMinShare, int initWeight) {
         this.poolName = poolName;
         this.schedulingMode = schedulingMode;
         this.initMinShare = initMinShare;
         this.initWeight = initWeight;
+        switch (schedulingMode) {
+            case FAIR:
+                this.taskSetSchedulingAlgorithm = new FairSchedulingAlgorithm();
+                break;
+            case FIFO:
+                this.taskSetSchedulingAlgorithm = new FIFOSchedulingAlgorithm();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported scheduling mode: " + schedulingMode +
+                                                   ". Use FAIR or FIFO instead.");
+        }
+    }
+
+    @Override
+    public Pool parent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(Pool parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public String name() {
+        return poolName;
+    }
+
+    @Override
+    public SchedulingMode schedulingMode() {
+        return schedulingMode;
+    }
+
+    @Override
+    public int minShare() {
+        return initMinShare;
+    }
+
+    @Override
+    public int weight() {
+        return initWeight;
+    }
+
+    @Override
+    public int priority() {
+        return 0;
+    }
+
+    @Override
+    public int stageId() {
+        return -1;
+    }
+
+    @Override
+    public synchronized int runningTasks() {
+        return runningTasks;
     }
 
     @Override
     public void addSchedulable(Schedulable schedulable) {
-        throw new UnsupportedOperationException("");
+        assert schedulable != null;
+        schedulableQueue.add(schedulable);
+        schedulableNameToSchedulable.put(schedulable.name(), schedulable);
+        schedulable.setParent(this);
+        sortedQueueDirty = true;
+    }
+
+    @Override
+    public void removeSchedulable(Schedulable schedulable) {
+        schedulableQueue.remove(schedulable);
+        schedulableNameToSchedulable.remove(schedulable.name());
+        sortedQueueDirty = true;
+    }
+
+    public Schedulable getSchedulableByName(String schedulableName) {
+        Schedulable schedulable = schedulableNameToSchedulable.get(schedulableName);
+        if (schedulable != null) {
+            return schedulable;
+        }
+        for (Schedulable child : schedulableQueue) {
+            if (child instanceof Pool) {
+                Schedulable sched = ((Pool) child).getSchedulableByName(schedulableName);
+                if (sched != null) {
+                    return sched;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 子节点运行Task数变化: FAIR模式下子节点顺序可能改变, 标记重新排序
+     * */
+    public void increaseRunningTasks(int taskNum) {
+        synchronized (this) {
+            runningTasks += taskNum;
+        }
+        if (schedulingMode == SchedulingMode.FAIR) {
+            sortedQueueDirty = true;
+        }
+        if (parent != null) {
+            parent.increaseRunningTasks(taskNum);
+        }
+    }
+
+    public void decreaseRunningTasks(int taskNum) {
+        increaseRunningTasks(-taskNum);
+    }
+
+    @Override
+    public List<TaskSetManager> getSortedTaskSetQueue() {
+        List<TaskSetManager> sortedTaskSetQueue = Lists.newArrayList();
+        for (Schedulable schedulable : sortedSchedulableQueue()) {
+            sortedTaskSetQueue.addAll(schedulable.getSortedTaskSetQueue());
+        }
+        return sortedTaskSetQueue;
+    }
+
+    @Override
+    public boolean checkSpeculatableTasks(long minTimeToSpeculation) {
+        boolean shouldRevive = false;
+        for (Schedulable schedulable : schedulableQueue) {
+            shouldRevive |= schedulable.checkSpeculatableTasks(minTimeToSpeculation);
+        }
+        return shouldRevive;
+    }
+
+    private synchronized List<Schedulable> sortedSchedulableQueue() {
+        if (sortedQueueDirty) {
+            // 先清除标记, 排序期间的变化在下次调用时生效
+            sortedQueueDirty = false;
+            List<Schedulable> queue = Lists.newArrayList(schedulableQueue);
+            Collections.sort(queue, taskSetSchedulingAlgorithm);
+            sortedSchedulableQueue = queue;
+        }
+        return sortedSchedulableQueue;
     }
 }
@@ -27,6 +27,8 @@ public class ResultTask<T, U> extends Task<U> implements Serializable {
     private transient TaskLocation[] preferredLocs;
     private Broadcast<byte[]> taskBinary;
     private Partition partition;
+    // Job结果分区下标(ActiveJob.finished下标)
+    public final int outputId;
 
     public ResultTask(int stageId,
                       int stageAttemptId,
@@ -42,6 +44,7 @@ public class ResultTask<T, U> extends Task<U> implements Serializable {
         this.preferredLocs = locs;
         this.taskBinary = taskBinary;
         this.partition = partition;
+        this.outputId = outputId;
     }
 
     @Override
@@ -1,10 +1,50 @@
 package com.sdu.spark.scheduler;
 
+import java.util.List;
+
 /**
+ * 可调度实体: {@link Pool}(调度池, 树形结构)及{@link TaskSetManager}(叶子节点)
+ *
  * @author hanhan.zhang
  * */
 public interface Schedulable {
 
+    Pool parent();
+
+    void setParent(Pool parent);
+
+    String name();
+
+    SchedulingMode schedulingMode();
+
+    /**
+     * FAIR调度: 最少资源(CPU)份额, 运行Task数低于minShare的Schedulable优先调度
+     * */
+    int minShare();
+
+    /**
+     * FAIR调度: 权重, 按运行Task数/权重分配资源
+     * */
+    int weight();
+
+    int priority();
+
+    int stageId();
+
+    int runningTasks();
+
     void addSchedulable(Schedulable schedulable);
 
+    void removeSchedulable(Schedulable schedulable);
+
+    /**
+     * 按调度算法排序后的TaskSetManager
+     * */
+    List<TaskSetManager> getSortedTaskSetQueue();
+
+    /**
+     * 推测执行: 标记运行时间过长的Task, 返回是否存在新的推测执行Task
+     * */
+    boolean checkSpeculatableTasks(long minTimeToSpeculation);
+
 }
@@ -1,10 +1,25 @@
 package com.sdu.spark.scheduler;
 
+import com.google.common.collect.Sets;
+import com.sdu.spark.SparkException;
 import com.sdu.spark.rpc.SparkConf;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.Properties;
+import java.util.Set;
+
+import static com.sdu.spark.utils.Utils.getContextOrSparkClassLoader;
 
 /**
+ * 调度池构建
+ *
  * @author hanhan.zhang
  * */
 public interface SchedulableBuilder {
@@ -15,6 +30,9 @@ public interface SchedulableBuilder {
 
     void addTaskSetManager(Schedulable manager, Properties properties);
 
+    /**
+     * FIFO: TaskSetManager直接加入根调度池
+     * */
     class FIFOSchedulableBuilder implements SchedulableBuilder {
 
         Pool rootPool;
@@ -39,8 +57,42 @@ public interface SchedulableBuilder {
         }
     }
 
+    /**
+     * FAIR: 根调度池下按配置文件创建调度池, TaskSetManager按Job本地属性spark.scheduler.pool加入对应调度池
+     *
+     * 配置文件(spark.scheduler.allocation.file, 未配置时加载classpath下的fairscheduler.xml):
+     *
+     * 1: XML格式:
+     *
+     *    <allocations>
+     *      <pool name="production">
+     *        <schedulingMode>FAIR</schedulingMode>
+     *        <weight>1</weight>
+     *        <minShare>2</minShare>
+     *      </pool>
+     *    </allocations>
+     *
+     * 2: Properties格式(文件名以.properties结尾): {poolName}.schedulingMode, {poolName}.weight, {poolName}.minShare
+     * */
     class FairSchedulableBuilder implements SchedulableBuilder {
 
+        private static final Logger LOGGER = LoggerFactory.getLogger(FairSchedulableBuilder.class);
+
+        public static final String SCHEDULER_ALLOCATION_FILE_PROPERTY = "spark.scheduler.allocation.file";
+        public static final String FAIR_SCHEDULER_PROPERTIES = "spark.scheduler.pool";
+        public static final String DEFAULT_SCHEDULER_FILE = "fairscheduler.xml";
+        public static final String DEFAULT_POOL_NAME = "default";
+
+        private static final String POOLS_PROPERTY = "pool";
+        private static final String POOL_NAME_PROPERTY = "name";
+        private static final String SCHEDULING_MODE_PROPERTY = "schedulingMode";
+        private static final String MINIMUM_SHARES_PROPERTY = "minShare";
+        private static final String WEIGHT_PROPERTY = "weight";
+
+        private static final SchedulingMode DEFAULT_SCHEDULING_MODE = SchedulingMode.FIFO;
+        private static final int DEFAULT_MINIMUM_SHARE = 0;
+        private static final int DEFAULT_WEIGHT = 1;
+
         Pool rootPool;
         SparkConf conf;
 
@@ -56,12 +108,124 @@ public interface SchedulableBuilder {
 
         @Override
         public void buildPools() {
+            String allocationFile = conf.get(SCHEDULER_ALLOCATION_FILE_PROPERTY, null);
+            String fileName = allocationFile != null ? allocationFile : DEFAULT_SCHEDULER_FILE;
+            try (InputStream is = allocationFile != null ? new FileInputStream(allocationFile)
+                                                         : getContextOrSparkClassLoader().getResourceAsStream(DEFAULT_SCHEDULER_FILE)) {
+                if (is == null) {
+                    LOGGER.warn("Fair Scheduler configuration file not found so jobs will be scheduled in FIFO order. " +
+                                "To use fair scheduling, configure pools in {} or set {} to a file that contains " +
+                                "the configuration.", DEFAULT_SCHEDULER_FILE, SCHEDULER_ALLOCATION_FILE_PROPERTY);
+                } else {
+                    LOGGER.info("Creating Fair Scheduler pools from {}", fileName);
+                    if (fileName.endsWith(".properties")) {
+                        buildFairSchedulerPoolFromProperties(is);
+                    } else {
+                        buildFairSchedulerPoolFromXml(is);
+                    }
+                }
+            } catch (Exception e) {
+                throw new SparkException("Error while building the fair scheduler pools from " + fileName, e);
+            }
+
+            // finally create "default" pool
+            buildDefaultPool();
+        }
+
+        private void buildDefaultPool() {
+            if (rootPool.getSchedulableByName(DEFAULT_POOL_NAME) == null) {
+                addPool(DEFAULT_POOL_NAME, DEFAULT_SCHEDULING_MODE, DEFAULT_MINIMUM_SHARE, DEFAULT_WEIGHT);
+            }
+        }
+
+        private void buildFairSchedulerPoolFromXml(InputStream is) throws Exception {
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
+            NodeList pools = document.getElementsByTagName(POOLS_PROPERTY);
+            for (int i = 0; i < pools.getLength(); ++i) {
+                Element pool = (Element) pools.item(i);
+                String poolName = pool.getAttribute(POOL_NAME_PROPERTY);
+                addPool(poolName,
+                        getSchedulingModeValue(childText(pool, SCHEDULING_MODE_PROPERTY), poolName),
+                        getIntValue(childText(pool, MINIMUM_SHARES_PROPERTY), MINIMUM_SHARES_PROPERTY, DEFAULT_MINIMUM_SHARE, poolName),
+                        getIntValue(childText(pool, WEIGHT_PROPERTY), WEIGHT_PROPERTY, DEFAULT_WEIGHT, poolName));
+            }
+        }
+
+        private void buildFairSchedulerPoolFromProperties(InputStream is) throws Exception {
+            Properties properties = new Properties();
+            properties.load(is);
+            Set<String> poolNames = Sets.newLinkedHashSet();
+            for (String key : properties.stringPropertyNames()) {
+                int index = key.lastIndexOf('.');
+                if (index > 0) {
+                    poolNames.add(key.substring(0, index));
+                }
+            }
+            for (String poolName : poolNames) {
+                addPool(poolName,
+                        getSchedulingModeValue(properties.getProperty(poolName + "." + SCHEDULING_MODE_PROPERTY), poolName),
+                        getIntValue(properties.getProperty(poolName + "." + MINIMUM_SHARES_PROPERTY), MINIMUM_SHARES_PROPERTY,
+                                    DEFAULT_MINIMUM_SHARE, poolName),
+                        getIntValue(properties.getProperty(poolName + "." + WEIGHT_PROPERTY), WEIGHT_PROPERTY,
+                                    DEFAULT_WEIGHT, poolName));
+            }
+        }
+
+        private void addPool(String poolName, SchedulingMode schedulingMode, int minShare, int weight) {
+            rootPool.addSchedulable(new Pool(poolName, schedulingMode, minShare, weight));
+            LOGGER.info("Created pool: {}, schedulingMode: {}, minShare: {}, weight: {}", poolName, schedulingMode,
+                        minShare, weight);
+        }
 
+        private static String childText(Element element, String tagName) {
+            NodeList nodes = element.getElementsByTagName(tagName);
+            return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+        }
+
+        private static SchedulingMode getSchedulingModeValue(String value, String poolName) {
+            if (value == null) {
+                return DEFAULT_SCHEDULING_MODE;
+            }
+            String mode = value.trim().toUpperCase();
+            if (SchedulingMode.FAIR.name().equals(mode) || SchedulingMode.FIFO.name().equals(mode)) {
+                return SchedulingMode.withName(mode);
+            }
+            LOGGER.warn("Unsupported schedulingMode: {}, using the default schedulingMode: {} for pool: {}",
+                        value, DEFAULT_SCHEDULING_MODE, poolName);
+            return DEFAULT_SCHEDULING_MODE;
+        }
+
+        private static int getIntValue(String value, String propertyName, int defaultValue, String poolName) {
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Error while loading scheduler allocation file. {} is blank or invalid: {}, using the " +
+                            "default {}: {} for pool: {}", propertyName, value, propertyName, defaultValue, poolName);
+                return defaultValue;
+            }
         }
 
         @Override
         public void addTaskSetManager(Schedulable manager, Properties properties) {
-
+            String poolName = properties != null ? properties.getProperty(FAIR_SCHEDULER_PROPERTIES, DEFAULT_POOL_NAME)
+                                                 : DEFAULT_POOL_NAME;
+            Schedulable parentPool = rootPool.getSchedulableByName(poolName);
+            if (parentPool == null) {
+                // we will create a new pool that user has configured in app
+                // instead of being defined in xml file
+                parentPool = new Pool(poolName, DEFAULT_SCHEDULING_MODE, DEFAULT_MINIMUM_SHARE, DEFAULT_WEIGHT);
+                rootPool.addSchedulable(parentPool);
+                LOGGER.warn("A job was submitted with scheduler pool {}, which has not been configured. This can " +
+                            "happen when the file that pools are read from isn't set, or when that file doesn't " +
+                            "contain {}. Created {} with default configuration (schedulingMode: {}, minShare: {}, " +
+                            "weight: {})", poolName, poolName, poolName, DEFAULT_SCHEDULING_MODE,
+                            DEFAULT_MINIMUM_SHARE, DEFAULT_WEIGHT);
+            }
+            parentPool.addSchedulable(manager);
+            LOGGER.info("Added task set {} tasks to pool {}", manager.name(), poolName);
         }
     }
 
@@ -0,0 +1,71 @@
+package com.sdu.spark.scheduler;
+
+import java.util.Comparator;
+
+/**
+ * 调度池内Schedulable排序算法
+ *
+ * @author hanhan.zhang
+ * */
+public interface SchedulingAlgorithm extends Comparator<Schedulable> {
+
+    /**
+     * FIFO: 优先级(JobId)小者优先, 相同则StageId小者优先
+     * */
+    class FIFOSchedulingAlgorithm implements SchedulingAlgorithm {
+        @Override
+        public int compare(Schedulable s1, Schedulable s2) {
+            int res = Integer.compare(s1.priority(), s2.priority());
+            if (res == 0) {
+                res = Integer.compare(s1.stageId(), s2.stageId());
+            }
+            return res;
+        }
+    }
+
+    /**
+     * FAIR:
+     *
+     * 1: 运行Task数低于minShare(needy)者优先
+     *
+     * 2: 均为needy时, 运行Task数/minShare小者优先
+     *
+     * 3: 均不为needy时, 运行Task数/weight小者优先
+     *
+     * 4: 相同则按名称排序
+     * */
+    class FairSchedulingAlgorithm implements SchedulingAlgorithm {
+        @Override
+        public int compare(Schedulable s1, Schedulable s2) {
+            int minShare1 = s1.minShare();
+            int minShare2 = s2.minShare();
+            int runningTasks1 = s1.runningTasks();
+            int runningTasks2 = s2.runningTasks();
+            boolean s1Needy = runningTasks1 < minShare1;
+            boolean s2Needy = runningTasks2 < minShare2;
+
+            if (s1Needy && !s2Needy) {
+                return -1;
+            }
+            if (!s1Needy && s2Needy) {
+                return 1;
+            }
+
+            int res;
+            if (s1Needy) {
+                double minShareRatio1 = runningTasks1 / (double) Math.max(minShare1, 1);
+                double minShareRatio2 = runningTasks2 / (double) Math.max(minShare2, 1);
+                res = Double.compare(minShareRatio1, minShareRatio2);
+            } else {
+                double taskToWeightRatio1 = runningTasks1 / (double) s1.weight();
+                double taskToWeightRatio2 = runningTasks2 / (double) s2.weight();
+                res = Double.compare(taskToWeightRatio1, taskToWeightRatio2);
+            }
+            if (res == 0) {
+                res = s1.name().compareTo(s2.name());
+            }
+            return res;
+        }
+    }
+
+}
@@ -53,6 +53,10 @@ public class ShuffleMapStage extends Stage {
         mapStageJobs.remove(activeJob);
     }
 
+    public List<ActiveJob> mapStageJobs() {
+        return mapStageJobs;
+    }
+
     public int numAvailableOutputs() {
         return mapOutputTrackerMaster.getNumAvailableOutputs(shuffleDep.shuffleId());
     }
@@ -0,0 +1,171 @@
+package com.sdu.spark.scheduler;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.MapOutputStatistics;
+import com.sdu.spark.rpc.SparkConf;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * {@link ShufflePartitionCoalescer}根据ShuffleMapStage输出统计({@link MapOutputStatistics})规划Reduce端读取范围:
+ *
+ * 1: 相邻小分区合并: 依次累加相邻Reduce分区大小, 不超过targetSize时合并为一个读取范围[startPartition, endPartition]
+ *
+ * 2: 倾斜分区拆分: 分区大小超过max(skewedPartitionThreshold, skewedPartitionFactor * 分区大小中位数)时, 按MapTask输出大小
+ *
+ *    将该分区拆分为多个读取范围, 每个范围读取连续的MapTask[startMapIndex, endMapIndex)
+ *
+ * 配置:
+ *
+ *  spark.shuffle.adaptive.targetPostShuffleInputSize: 每个读取范围目标字节数(默认64m)
+ *
+ *  spark.shuffle.adaptive.skewedPartitionFactor: 倾斜分区相对中位数倍数(默认5)
+ *
+ *  spark.shuffle.adaptive.skewedPartitionThreshold: 倾斜分区最小字节数(默认256m)
+ *
+ * @author hanhan.zhang
+ * */
+public class ShufflePartitionCoalescer {
+
+    private final long targetSize;
+    private final double skewedPartitionFactor;
+    private final long skewedPartitionThreshold;
+
+    public ShufflePartitionCoalescer(SparkConf conf) {
+        this(conf.getSizeAsBytes("spark.shuffle.adaptive.targetPostShuffleInputSize", "64m"),
+             conf.getDouble("spark.shuffle.adaptive.skewedPartitionFactor", 5.0),
+             conf.getSizeAsBytes("spark.shuffle.adaptive.skewedPartitionThreshold", "256m"));
+    }
+
+    public ShufflePartitionCoalescer(long targetSize, double skewedPartitionFactor, long skewedPartitionThreshold) {
+        if (targetSize <= 0) {
+            throw new IllegalArgumentException("Invalid target post shuffle input size: " + targetSize);
+        }
+        this.targetSize = targetSize;
+        this.skewedPartitionFactor = skewedPartitionFactor;
+        this.skewedPartitionThreshold = skewedPartitionThreshold;
+    }
+
+    /**
+     * @param bytesByPartitionId Reduce分区大小[index = reduceId]
+     * @param numMaps MapTask数
+     * @param mapSizes 倾斜分区每个MapTask输出大小[index = mapId]
+     * */
+    public List<ShufflePartitionSpec> coalesce(long[] bytesByPartitionId, int numMaps, IntFunction<long[]> mapSizes) {
+        List<ShufflePartitionSpec> specs = Lists.newArrayList();
+        long skewedSize = skewedSize(bytesByPartitionId);
+
+        int start = -1;
+        long groupSize = 0L;
+        for (int reduceId = 0; reduceId < bytesByPartitionId.length; ++reduceId) {
+            long size = bytesByPartitionId[reduceId];
+            if (size > skewedSize) {
+                if (start >= 0) {
+                    specs.add(new ShufflePartitionSpec(start, reduceId - 1, 0, numMaps));
+                    start = -1;
+                }
+                splitSkewedPartition(reduceId, mapSizes.apply(reduceId), specs);
+                continue;
+            }
+            if (start >= 0 && groupSize + size > targetSize) {
+                specs.add(new ShufflePartitionSpec(start, reduceId - 1, 0, numMaps));
+                start = -1;
+            }
+            if (start < 0) {
+                start = reduceId;
+                groupSize = 0L;
+            }
+            groupSize += size;
+        }
+        if (start >= 0) {
+            specs.add(new ShufflePartitionSpec(start, bytesByPartitionId.length - 1, 0, numMaps));
+        }
+        return specs;
+    }
+
+    public List<ShufflePartitionSpec> coalesce(MapOutputStatistics statistics, int numMaps, IntFunction<long[]> mapSizes) {
+        return coalesce(statistics.bytesByPartitionId, numMaps, mapSizes);
+    }
+
+    /**
+     * 按MapTask顺序累加输出大小, 超过targetSize时切分(每个读取范围至少包含一个MapTask)
+     * */
+    private void splitSkewedPartition(int reduceId, long[] mapSizes, List<ShufflePartitionSpec> specs) {
+        int startMapIndex = 0;
+        long rangeSize = 0L;
+        for (int mapId = 0; mapId < mapSizes.length; ++mapId) {
+            if (mapId > startMapIndex && rangeSize + mapSizes[mapId] > targetSize) {
+                specs.add(new ShufflePartitionSpec(reduceId, reduceId, startMapIndex, mapId));
+                startMapIndex = mapId;
+                rangeSize = 0L;
+            }
+            rangeSize += mapSizes[mapId];
+        }
+        specs.add(new ShufflePartitionSpec(reduceId, reduceId, startMapIndex, mapSizes.length));
+    }
+
+    private long skewedSize(long[] bytesByPartitionId) {
+        if (bytesByPartitionId.length == 0) {
+            return Long.MAX_VALUE;
+        }
+        long[] sorted = bytesByPartitionId.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        return Math.max(skewedPartitionThreshold, (long) (median * skewedPartitionFactor));
+    }
+
+    /**
+     * Reduce端读取范围: Reduce分区[startPartition, endPartition], MapTask[startMapIndex, endMapIndex)
+     * */
+    public static class ShufflePartitionSpec implements Serializable {
+        public final int startPartition;
+        public final int endPartition;
+        public final int startMapIndex;
+        public final int endMapIndex;
+
+        public ShufflePartitionSpec(int startPartition, int endPartition, int startMapIndex, int endMapIndex) {
+            this.startPartition = startPartition;
+            this.endPartition = endPartition;
+            this.startMapIndex = startMapIndex;
+            this.endMapIndex = endMapIndex;
+        }
+
+        /**
+         * 是否只读取部分MapTask输出(倾斜分区拆分)
+         * */
+        public boolean isPartialMapRange(int numMaps) {
+            return startMapIndex > 0 || endMapIndex < numMaps;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ShufflePartitionSpec that = (ShufflePartitionSpec) o;
+            return startPartition == that.startPartition && endPartition == that.endPartition &&
+                   startMapIndex == that.startMapIndex && endMapIndex == that.endMapIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = startPartition;
+            result = 31 * result + endPartition;
+            result = 31 * result + startMapIndex;
+            result = 31 * result + endMapIndex;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ShufflePartitionSpec(partitions = [%d, %d], maps = [%d, %d))",
+                                 startPartition, endPartition, startMapIndex, endMapIndex);
+        }
+    }
+}
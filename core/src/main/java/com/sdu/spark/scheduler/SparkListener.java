@@ -0,0 +1,116 @@
+package com.sdu.spark.scheduler;
+
+import com.sdu.spark.scheduler.SparkListenerEvent.*;
+
+/**
+ * {@link SparkListenerInterface}空实现, 监听器只需覆写关注的事件
+ *
+ * @author hanhan.zhang
+ * */
+public abstract class SparkListener implements SparkListenerInterface {
+
+    @Override
+    public void onStageCompleted(SparkListenerStageCompleted stageCompleted) {
+
+    }
+
+    @Override
+    public void onStageSubmitted(SparkListenerStageSubmitted stageSubmitted) {
+
+    }
+
+    @Override
+    public void onTaskStart(SparkListenerTaskStart taskStart) {
+
+    }
+
+    @Override
+    public void onTaskGettingResult(SparkListenerTaskGettingResult taskGettingResult) {
+
+    }
+
+    @Override
+    public void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+
+    }
+
+    @Override
+    public void onJobStart(SparkListenerJobStart jobStart) {
+
+    }
+
+    @Override
+    public void onJobEnd(SparkListenerJobEnd jobEnd) {
+
+    }
+
+    @Override
+    public void onEnvironmentUpdate(SparkListenerEnvironmentUpdate environmentUpdate) {
+
+    }
+
+    @Override
+    public void onBlockManagerAdded(SparkListenerBlockManagerAdded blockManagerAdded) {
+
+    }
+
+    @Override
+    public void onBlockManagerRemoved(SparkListenerBlockManagerRemoved blockManagerRemoved) {
+
+    }
+
+    @Override
+    public void onUnpersistRDD(SparkListenerUnpersistRDD unpersistRDD) {
+
+    }
+
+    @Override
+    public void onApplicationStart(SparkListenerApplicationStart applicationStart) {
+
+    }
+
+    @Override
+    public void onApplicationEnd(SparkListenerApplicationEnd applicationEnd) {
+
+    }
+
+    @Override
+    public void onExecutorAdded(SparkListenerExecutorAdded executorAdded) {
+
+    }
+
+    @Override
+    public void onExecutorRemoved(SparkListenerExecutorRemoved executorRemoved) {
+
+    }
+
+    @Override
+    public void onExecutorBlacklisted(SparkListenerExecutorBlacklisted executorBlacklisted) {
+
+    }
+
+    @Override
+    public void onExecutorUnblacklisted(SparkListenerExecutorUnblacklisted executorUnblacklisted) {
+
+    }
+
+    @Override
+    public void onNodeBlacklisted(SparkListenerNodeBlacklisted nodeBlacklisted) {
+
+    }
+
+    @Override
+    public void onNodeUnblacklisted(SparkListenerNodeUnblacklisted nodeUnblacklisted) {
+
+    }
+
+    @Override
+    public void onBlockUpdated(SparkListenerBlockUpdated blockUpdated) {
+
+    }
+
+    @Override
+    public void onOtherEvent(SparkListenerEvent event) {
+
+    }
+}
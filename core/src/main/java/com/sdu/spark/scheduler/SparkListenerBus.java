@@ -1,9 +1,59 @@
 package com.sdu.spark.scheduler;
 
+import com.sdu.spark.scheduler.SparkListenerEvent.*;
 import com.sdu.spark.utils.ListenerBus;
 
 /**
  * @author hanhan.zhang
  * */
 public interface SparkListenerBus extends ListenerBus {
+
+    /**
+     * 按事件类型回调监听器
+     * */
+    default void doPostEvent(SparkListenerInterface listener, SparkListenerEvent event) {
+        if (event instanceof SparkListenerStageSubmitted) {
+            listener.onStageSubmitted((SparkListenerStageSubmitted) event);
+        } else if (event instanceof SparkListenerStageCompleted) {
+            listener.onStageCompleted((SparkListenerStageCompleted) event);
+        } else if (event instanceof SparkListenerJobStart) {
+            listener.onJobStart((SparkListenerJobStart) event);
+        } else if (event instanceof SparkListenerJobEnd) {
+            listener.onJobEnd((SparkListenerJobEnd) event);
+        } else if (event instanceof SparkListenerTaskStart) {
+            listener.onTaskStart((SparkListenerTaskStart) event);
+        } else if (event instanceof SparkListenerTaskGettingResult) {
+            listener.onTaskGettingResult((SparkListenerTaskGettingResult) event);
+        } else if (event instanceof SparkListenerTaskEnd) {
+            listener.onTaskEnd((SparkListenerTaskEnd) event);
+        } else if (event instanceof SparkListenerEnvironmentUpdate) {
+            listener.onEnvironmentUpdate((SparkListenerEnvironmentUpdate) event);
+        } else if (event instanceof SparkListenerBlockManagerAdded) {
+            listener.onBlockManagerAdded((SparkListenerBlockManagerAdded) event);
+        } else if (event instanceof SparkListenerBlockManagerRemoved) {
+            listener.onBlockManagerRemoved((SparkListenerBlockManagerRemoved) event);
+        } else if (event instanceof SparkListenerUnpersistRDD) {
+            listener.onUnpersistRDD((SparkListenerUnpersistRDD) event);
+        } else if (event instanceof SparkListenerApplicationStart) {
+            listener.onApplicationStart((SparkListenerApplicationStart) event);
+        } else if (event instanceof SparkListenerApplicationEnd) {
+            listener.onApplicationEnd((SparkListenerApplicationEnd) event);
+        } else if (event instanceof SparkListenerExecutorAdded) {
+            listener.onExecutorAdded((SparkListenerExecutorAdded) event);
+        } else if (event instanceof SparkListenerExecutorRemoved) {
+            listener.onExecutorRemoved((SparkListenerExecutorRemoved) event);
+        } else if (event instanceof SparkListenerExecutorBlacklisted) {
+            listener.onExecutorBlacklisted((SparkListenerExecutorBlacklisted) event);
+        } else if (event instanceof SparkListenerExecutorUnblacklisted) {
+            listener.onExecutorUnblacklisted((SparkListenerExecutorUnblacklisted) event);
+        } else if (event instanceof SparkListenerNodeBlacklisted) {
+            listener.onNodeBlacklisted((SparkListenerNodeBlacklisted) event);
+        } else if (event instanceof SparkListenerNodeUnblacklisted) {
+            listener.onNodeUnblacklisted((SparkListenerNodeUnblacklisted) event);
+        } else if (event instanceof SparkListenerBlockUpdated) {
+            listener.onBlockUpdated((SparkListenerBlockUpdated) event);
+        } else {
+            listener.onOtherEvent(event);
+        }
+    }
 }
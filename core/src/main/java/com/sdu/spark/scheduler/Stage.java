@@ -1,6 +1,7 @@
 package com.sdu.spark.scheduler;
 
 import com.google.common.collect.Sets;
+import com.sdu.spark.broadcast.Broadcast;
 import com.sdu.spark.rdd.RDD;
 import com.sdu.spark.utils.CallSite;
 
@@ -29,6 +30,8 @@ public abstract class Stage {
     public String details;
     private StageInfo latestInfo;
     private Set<Integer> fetchFailedAttemptIds = Sets.newHashSet();
+    // 当前Stage Attempt的闭包广播(Stage结束时销毁)
+    public Broadcast<byte[]> taskBinary;
 
 
 
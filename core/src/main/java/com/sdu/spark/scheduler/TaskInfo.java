@@ -21,6 +21,12 @@ public class TaskInfo {
      * IndirectTaskResult and later fetching the result from the block manager).
      * */
     private long gettingResultTime = 0;
+    /**
+     * Task结束时间, 0表示运行中
+     * */
+    private long finishTime = 0;
+    private boolean failed = false;
+    private boolean killed = false;
 
     public TaskInfo(long taskId,
                     int index,
@@ -43,4 +49,76 @@ public class TaskInfo {
     public void markGettingResult(long time) {
         gettingResultTime = time;
     }
+
+    public void markFinished(TaskState state, long time) {
+        assert time > 0;
+        finishTime = time;
+        if (state == TaskState.FAILED) {
+            failed = true;
+        } else if (state == TaskState.KILLED) {
+            killed = true;
+        }
+    }
+
+    public long taskId() {
+        return taskId;
+    }
+
+    public int attemptNumber() {
+        return attemptNumber;
+    }
+
+    public long launchTime() {
+        return launchTime;
+    }
+
+    public String executorId() {
+        return executorId;
+    }
+
+    public String host() {
+        return host;
+    }
+
+    public TaskLocality taskLocality() {
+        return taskLocality;
+    }
+
+    public boolean speculative() {
+        return speculative;
+    }
+
+    public long finishTime() {
+        return finishTime;
+    }
+
+    public boolean finished() {
+        return finishTime != 0;
+    }
+
+    /**
+     * Task运行时长(仅Task结束后调用)
+     * */
+    public long duration() {
+        if (!finished()) {
+            throw new UnsupportedOperationException("duration() called on unfinished task");
+        }
+        return finishTime - launchTime;
+    }
+
+    public long timeRunning(long currentTime) {
+        return currentTime - launchTime;
+    }
+
+    public boolean successful() {
+        return finished() && !failed && !killed;
+    }
+
+    public boolean running() {
+        return !finished();
+    }
+
+    public String id() {
+        return String.format("%d.%d", index, attemptNumber);
+    }
 }
@@ -15,7 +15,7 @@ public abstract class TaskLocation implements Serializable {
 
     public abstract String host();
 
-    private static class ExecutorCacheTaskLocation extends TaskLocation {
+    public static class ExecutorCacheTaskLocation extends TaskLocation {
         private String host;
         public String executorId;
 
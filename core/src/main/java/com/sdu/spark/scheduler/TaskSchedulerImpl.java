@@ -1,16 +1,20 @@
 package com.sdu.spark.scheduler;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.sdu.spark.ExecutorAllocationClient;
 import com.sdu.spark.SparkContext;
+import com.sdu.spark.SparkEnv;
 import com.sdu.spark.scheduler.TaskEndReason.*;
 import com.sdu.spark.executor.ExecutorExitCode.ExecutorLossReason;
 import com.sdu.spark.executor.ExecutorExitCode.SlaveLost;
 import com.sdu.spark.rpc.SparkConf;
 import com.sdu.spark.scheduler.SchedulableBuilder.FIFOSchedulableBuilder;
 import com.sdu.spark.scheduler.SchedulableBuilder.FairSchedulableBuilder;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.StatusUpdate;
 import com.sdu.spark.storage.BlockManagerId;
+import com.sdu.spark.utils.ThreadUtils;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -18,6 +22,8 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -35,7 +41,8 @@ public class TaskSchedulerImpl implements TaskScheduler {
 
 
     public SparkContext sc;
-    private SparkConf conf;
+    public SparkConf conf;
+    public SparkEnv env;
     public int CPUS_PER_TASK;
     private boolean isLocal;
 
@@ -47,6 +54,12 @@ public class TaskSchedulerImpl implements TaskScheduler {
 
     private Timer starvationTimer = new Timer(true);
 
+    /********************************推测执行***********************************/
+    // 推测执行Task的最短运行时长
+    private static final long MIN_TIME_TO_SPECULATION = 100;
+    private long SPECULATION_INTERVAL_MS;
+    private ScheduledExecutorService speculationScheduler;
+
     /********************************Spark Task***********************************/
     // key = stateId, value = [key = , value = ]
     private Map<Integer, Map<Integer, TaskSetManager>> taskSetsByStageIdAndAttempt = Maps.newHashMap();
@@ -65,8 +78,9 @@ public class TaskSchedulerImpl implements TaskScheduler {
 
     /*****************************Spark Executor**********************************/
     public Map<String, Set<String>> hostToExecutors = Maps.newHashMap();
+    private Map<String, Set<String>> hostsByRack = Maps.newHashMap();
     private Map<String, String> executorIdToHost = Maps.newHashMap();
-    private SchedulerBackend backend;
+    SchedulerBackend backend;
     // Lazily initializing blackListTrackOpt to avoid getting empty ExecutorAllocationClient,
     // because ExecutorAllocationClient is created after this TaskSchedulerImpl.
     private BlacklistTracker blacklistTrackerOpt;
@@ -81,16 +95,22 @@ public class TaskSchedulerImpl implements TaskScheduler {
     }
 
     public TaskSchedulerImpl(SparkContext sc, int maxTaskFailures, boolean isLocal) {
+        this(sc.conf, sc.env, maxTaskFailures, isLocal);
         this.sc = sc;
-        this.conf = this.sc.conf;
+    }
+
+    public TaskSchedulerImpl(SparkConf conf, SparkEnv env, int maxTaskFailures, boolean isLocal) {
+        this.conf = conf;
+        this.env = env;
         this.CPUS_PER_TASK = this.conf.getInt("spark.task.cpus", 1);
         this.STARVATION_TIMEOUT_MS = conf.getTimeAsMs("spark.starvation.timeout", "15s");
+        this.SPECULATION_INTERVAL_MS = conf.getTimeAsMs("spark.speculation.interval", "100ms");
         this.maxTaskFailures = maxTaskFailures;
         this.isLocal = isLocal;
 
         this.schedulingMode = SchedulingMode.withName(this.conf.get(SCHEDULER_MODE_PROPERTY, SchedulingMode.FIFO.name()));
         this.rootPool = new Pool("", schedulingMode, 0, 0);
-        this.taskResultGetter = new TaskResultGetter(sc.env, this);
+        this.taskResultGetter = new TaskResultGetter(env, this);
     }
 
     public void initialize(SchedulerBackend schedulerBackend) {
@@ -113,6 +133,32 @@ public class TaskSchedulerImpl implements TaskScheduler {
     public void start() {
         this.backend.start();
         this.blacklistTrackerOpt = maybeCreateBlacklistTracker(sc);
+
+        if (!isLocal && conf.getBoolean("spark.speculation", false)) {
+            LOGGER.info("Starting speculative execution thread");
+            speculationScheduler = ThreadUtils.newDaemonSingleThreadScheduledExecutor("task-scheduler-speculation");
+            speculationScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    checkSpeculatableTasks();
+                } catch (Throwable e) {
+                    // 异常不终止周期检查
+                    LOGGER.error("Exception in checking speculatable tasks", e);
+                }
+            }, SPECULATION_INTERVAL_MS, SPECULATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 推测执行检查, 存在推测执行Task时通知SchedulerBackend分配资源
+     * */
+    void checkSpeculatableTasks() {
+        boolean shouldRevive;
+        synchronized (this) {
+            shouldRevive = rootPool.checkSpeculatableTasks(MIN_TIME_TO_SPECULATION);
+        }
+        if (shouldRevive) {
+            backend.reviveOffers();
+        }
     }
 
     @Override
@@ -207,7 +253,9 @@ public class TaskSchedulerImpl implements TaskScheduler {
 
     @Override
     public void stop() {
-
+        if (speculationScheduler != null) {
+            speculationScheduler.shutdown();
+        }
     }
 
     @Override
@@ -252,50 +300,71 @@ public class TaskSchedulerImpl implements TaskScheduler {
 
     /*****************************Spark Job Task运行状态变更******************************/
     public void statusUpdate(long taskId, TaskState state, ByteBuffer value) {
-        String failedExecutor = null;
-        ExecutorLossReason reason = null;
+        Map<String, ExecutorLossReason> failedExecutors = Maps.newHashMap();
         synchronized (this) {
-            try {
-                TaskSetManager taskSet = taskIdToTaskSetManager.get(taskId);
-                if (taskSet == null) {
-                    LOGGER.warn("Ignoring update with state {} for TID {} because its task set is gone (this is " +
-                                "likely the result of receiving duplicate task finished status updates) or its " +
-                                "executor has been marked as failed.", state, taskId);
-                } else {
-                    if (state == TaskState.LOST) {
-                        String execId = taskIdToExecutorId.get(taskId);
-                        if (isNullOrEmpty(execId)) {
-                            throw new IllegalStateException("taskIdToTaskSetManager.contains(tid) <=> taskIdToExecutorId.contains(tid)");
-                        }
-                        if (executorIdToRunningTaskIds.containsKey(execId)) {
-                            reason = new SlaveLost(format("Task %s was lost, so marking the executor as lost as well.", taskId));
-                            removeExecutor(execId, reason);
-                            failedExecutor = execId;
-                        }
+            updateTaskState(taskId, state, value, failedExecutors);
+        }
+        handleFailedExecutors(failedExecutors);
+    }
+
+    /**
+     * 批量处理Executor合并上报的Task状态: 整批只获取一次调度锁, 丢失的Executor在释放锁后统一通知DAGScheduler
+     * */
+    public void statusUpdate(List<StatusUpdate> updates) {
+        Map<String, ExecutorLossReason> failedExecutors = Maps.newLinkedHashMap();
+        synchronized (this) {
+            for (StatusUpdate update : updates) {
+                updateTaskState(update.taskId, update.state, update.data == null ? null : update.data.buffer,
+                                failedExecutors);
+            }
+        }
+        handleFailedExecutors(failedExecutors);
+    }
+
+    private void updateTaskState(long taskId, TaskState state, ByteBuffer value,
+                                 Map<String, ExecutorLossReason> failedExecutors) {
+        try {
+            TaskSetManager taskSet = taskIdToTaskSetManager.get(taskId);
+            if (taskSet == null) {
+                LOGGER.warn("Ignoring update with state {} for TID {} because its task set is gone (this is " +
+                            "likely the result of receiving duplicate task finished status updates) or its " +
+                            "executor has been marked as failed.", state, taskId);
+            } else {
+                if (state == TaskState.LOST) {
+                    String execId = taskIdToExecutorId.get(taskId);
+                    if (isNullOrEmpty(execId)) {
+                        throw new IllegalStateException("taskIdToTaskSetManager.contains(tid) <=> taskIdToExecutorId.contains(tid)");
+                    }
+                    if (executorIdToRunningTaskIds.containsKey(execId)) {
+                        ExecutorLossReason reason = new SlaveLost(format("Task %s was lost, so marking the executor as lost as well.", taskId));
+                        removeExecutor(execId, reason);
+                        failedExecutors.put(execId, reason);
                     }
-                    if (TaskState.isFinished(state)) {
-                        cleanupTaskState(taskId);
-                        taskSet.removeRunningTask(taskId);
-                        if (state == TaskState.FINISHED) {
-                            taskResultGetter.enqueueSuccessfulTask(taskSet,
-                                                                   taskId,
-                                                                   value);
-                        } else if (Sets.newHashSet(TaskState.FAILED, TaskState.KILLED, TaskState.LOST).contains(state)) {
-                            taskResultGetter.enqueueFailedTask(taskSet,
+                }
+                if (TaskState.isFinished(state)) {
+                    cleanupTaskState(taskId);
+                    taskSet.removeRunningTask(taskId);
+                    if (state == TaskState.FINISHED) {
+                        taskResultGetter.enqueueSuccessfulTask(taskSet,
                                                                taskId,
-                                                               state,
                                                                value);
-                        }
+                    } else if (Sets.newHashSet(TaskState.FAILED, TaskState.KILLED, TaskState.LOST).contains(state)) {
+                        taskResultGetter.enqueueFailedTask(taskSet,
+                                                           taskId,
+                                                           state,
+                                                           value);
                     }
                 }
-            } catch (Exception e) {
-                LOGGER.error("Exception in statusUpdate", e);
             }
+        } catch (Exception e) {
+            LOGGER.error("Exception in statusUpdate", e);
         }
+    }
 
+    private void handleFailedExecutors(Map<String, ExecutorLossReason> failedExecutors) {
         // Update the DAGScheduler without holding a lock on this, since that can deadlock
-        if (failedExecutor != null) {
-            dagScheduler.executorLost(failedExecutor, reason);
+        if (!failedExecutors.isEmpty()) {
+            failedExecutors.forEach((execId, reason) -> dagScheduler.executorLost(execId, reason));
             backend.reviveOffers();
         }
     }
@@ -319,8 +388,119 @@ public class TaskSchedulerImpl implements TaskScheduler {
     }
 
     /******************************Spark Job Task分发***********************************/
-    public List<TaskDescription> resourceOffers(List<WorkerOffer> offers) {
-        throw new UnsupportedOperationException("");
+    /**
+     * Executor资源分配Task:
+     *
+     * 1: 记录新加入的Executor(Host/Rack), 通知TaskSetManager重新计算本地性级别
+     *
+     * 2: WorkerOffer随机打乱后轮询分配, 每轮每个WorkerOffer至多分配一个Task, 避免Task集中在少数Executor
+     *
+     * 3: 按调度池排序遍历TaskSetManager, 由高到低逐级放宽本地性, 空闲CPU耗尽后结束本次分配
+     *
+     * 单次分配代价为O(TaskSet数 * 本地性级别数 * WorkerOffer数 + 分配Task数), 与TaskSet中Task总数无关
+     * */
+    public synchronized List<TaskDescription> resourceOffers(List<WorkerOffer> offers) {
+        boolean newExecAvail = false;
+        for (WorkerOffer offer : offers) {
+            hostToExecutors.computeIfAbsent(offer.host, host -> Sets.newHashSet()).add(offer.executorId);
+            if (!executorIdToRunningTaskIds.containsKey(offer.executorId)) {
+                executorIdToHost.put(offer.executorId, offer.host);
+                executorIdToRunningTaskIds.put(offer.executorId, Sets.newHashSet());
+                newExecAvail = true;
+            }
+            String rack = getRackForHost(offer.host);
+            if (rack != null) {
+                hostsByRack.computeIfAbsent(rack, r -> Sets.newHashSet()).add(offer.host);
+            }
+        }
+
+        Set<String> blacklistNodes = nodeBlacklist();
+        List<WorkerOffer> shuffledOffers = Lists.newArrayListWithCapacity(offers.size());
+        for (WorkerOffer offer : offers) {
+            if (!blacklistNodes.contains(offer.host)) {
+                shuffledOffers.add(offer);
+            }
+        }
+        Collections.shuffle(shuffledOffers);
+
+        int[] availableCpus = new int[shuffledOffers.size()];
+        int totalFreeCpus = 0;
+        for (int i = 0; i < shuffledOffers.size(); ++i) {
+            availableCpus[i] = shuffledOffers.get(i).cores;
+            totalFreeCpus += availableCpus[i];
+        }
+
+        List<TaskDescription> tasks = Lists.newArrayList();
+        List<TaskSetManager> sortedTaskSets = rootPool.getSortedTaskSetQueue();
+        for (TaskSetManager taskSet : sortedTaskSets) {
+            if (newExecAvail) {
+                taskSet.executorAdded();
+            }
+        }
+
+        for (TaskSetManager taskSet : sortedTaskSets) {
+            for (TaskLocality locality : taskSet.myLocalityLevels) {
+                int launched;
+                do {
+                    launched = resourceOfferSingleTaskSet(taskSet, locality, shuffledOffers, availableCpus, tasks);
+                    totalFreeCpus -= launched * CPUS_PER_TASK;
+                } while (launched > 0 && totalFreeCpus >= CPUS_PER_TASK);
+                if (totalFreeCpus < CPUS_PER_TASK) {
+                    break;
+                }
+            }
+            if (totalFreeCpus < CPUS_PER_TASK) {
+                break;
+            }
+        }
+
+        if (!tasks.isEmpty()) {
+            hasLaunchedTask = true;
+        }
+        return tasks;
+    }
+
+    /**
+     * 每个WorkerOffer至多分配一个Task, 返回分配的Task数
+     * */
+    private int resourceOfferSingleTaskSet(TaskSetManager taskSet,
+                                           TaskLocality maxLocality,
+                                           List<WorkerOffer> shuffledOffers,
+                                           int[] availableCpus,
+                                           List<TaskDescription> tasks) {
+        int launched = 0;
+        for (int i = 0; i < shuffledOffers.size(); ++i) {
+            if (availableCpus[i] < CPUS_PER_TASK) {
+                continue;
+            }
+            WorkerOffer offer = shuffledOffers.get(i);
+            TaskDescription task = taskSet.resourceOffer(offer.executorId, offer.host, maxLocality);
+            if (task == null) {
+                continue;
+            }
+            tasks.add(task);
+            taskIdToTaskSetManager.put(task.taskId, taskSet);
+            taskIdToExecutorId.put(task.taskId, offer.executorId);
+            executorIdToRunningTaskIds.get(offer.executorId).add(task.taskId);
+            availableCpus[i] -= CPUS_PER_TASK;
+            launched++;
+        }
+        return launched;
+    }
+
+    /**
+     * TaskSet结束(全部成功或被终止)且无运行中Task, 从调度池中删除
+     * */
+    public synchronized void taskSetFinished(TaskSetManager manager) {
+        Map<Integer, TaskSetManager> taskSetsForStage = taskSetsByStageIdAndAttempt.get(manager.taskSet.stageId);
+        if (taskSetsForStage != null) {
+            taskSetsForStage.remove(manager.taskSet.stageAttemptId);
+            if (taskSetsForStage.isEmpty()) {
+                taskSetsByStageIdAndAttempt.remove(manager.taskSet.stageId);
+            }
+        }
+        manager.parent().removeSchedulable(manager);
+        LOGGER.info("Removed TaskSet {}, whose tasks have all completed", manager.taskSet.id());
     }
 
     private void cleanupTaskState(long tid) {
@@ -335,8 +515,28 @@ public class TaskSchedulerImpl implements TaskScheduler {
     }
 
     /******************************Spark Executor运行状态********************************/
-    public boolean isExecutorBusy(String executorId) {
-        throw new UnsupportedOperationException("");
+    public synchronized boolean isExecutorBusy(String executorId) {
+        Set<Long> runningTaskIds = executorIdToRunningTaskIds.get(executorId);
+        return runningTaskIds != null && !runningTaskIds.isEmpty();
+    }
+
+    public synchronized boolean isExecutorAlive(String executorId) {
+        return executorIdToRunningTaskIds.containsKey(executorId);
+    }
+
+    public synchronized boolean hasExecutorsAliveOnHost(String host) {
+        return hostToExecutors.containsKey(host);
+    }
+
+    public synchronized boolean hasHostAliveOnRack(String rack) {
+        return hostsByRack.containsKey(rack);
+    }
+
+    /**
+     * Host所属机架, 默认无机架信息(集群管理器可覆盖)
+     * */
+    public String getRackForHost(String host) {
+        return null;
     }
 
     private void removeExecutor(String execId, ExecutorLossReason reason) {
@@ -368,7 +568,7 @@ public class TaskSchedulerImpl implements TaskScheduler {
         return null;
     }
 
-    private long newTaskId() {
+    long newTaskId() {
         return nextTaskId.getAndIncrement();
     }
 }
@@ -1,18 +1,43 @@
 package com.sdu.spark.scheduler;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.sdu.spark.rpc.SparkConf;
 import com.sdu.spark.scheduler.TaskEndReason.*;
+import com.sdu.spark.scheduler.TaskLocation.ExecutorCacheTaskLocation;
+import com.sdu.spark.serializer.SerializerInstance;
 import com.sdu.spark.utils.Clock;
+import com.sdu.spark.utils.colleciton.MedianHeap;
+import com.sdu.spark.utils.scala.Tuple2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
 
 import static com.sdu.spark.utils.Utils.bytesToString;
 import static com.sdu.spark.utils.Utils.getMaxResultSize;
 import static java.lang.String.format;
 
 /**
+ * TaskSet调度管理:
+ *
+ * 1: 待调度Task按本地性建立索引(Executor/Host/Rack/无偏好/全部), 列表中存储Task索引, 列表尾部出队
+ *
+ *    Task调度后不从其他列表删除, 出队时跳过已运行或已成功的Task(惰性删除), 每个索引项至多出队一次,
+ *
+ *    因此单次{@link #resourceOffer(String, String, TaskLocality)}的均摊代价为O(1), 与Task数无关
+ *
+ * 2: 延迟调度: 当前本地性级别仍有待调度Task且等待未超过spark.locality.wait.*时, 不降级调度
+ *
+ * 3: 推测执行: 成功Task数达到spark.speculation.quantile比例后, 运行时长超过成功Task运行时长中位数
+ *
+ *    spark.speculation.multiplier倍的Task标记为推测执行Task, 在其他Host上启动第二个执行尝试,
+ *
+ *    任一执行尝试成功后终止其余执行尝试
+ *
  * @author hanhan.zhang
  * */
 public class TaskSetManager implements Schedulable {
@@ -21,15 +46,51 @@ public class TaskSetManager implements Schedulable {
 
     public TaskSchedulerImpl sched;
     public TaskSet taskSet;
+    private Task<?>[] tasks;
+    public int numTasks;
     private boolean[] successful;
+    private int[] copiesRunning;
+    private int[] numFailures;
+    private int[] numAttempts;
+    private int tasksSuccessful = 0;
     public int maxTaskFailures;
     public BlacklistTracker blacklistTracker;
     public Clock clock;
 
     public boolean isZombie = false;
 
+    private Pool parent;
+    private String name;
+    private int priority;
+    private int stageId;
+    private SerializerInstance ser;
+
     // Task index, start and finish time for each task attempt (indexed by task ID)
     private Map<Long, TaskInfo> taskInfos;
+    private Set<Long> runningTasksSet = Sets.newHashSet();
+    // Task全部执行尝试(indexed by task index)
+    private List<List<TaskInfo>> taskAttempts;
+
+    /*****************************待调度Task索引(Task index)*****************************/
+    private Map<String, ArrayList<Integer>> pendingTasksForExecutor = Maps.newHashMap();
+    private Map<String, ArrayList<Integer>> pendingTasksForHost = Maps.newHashMap();
+    private Map<String, ArrayList<Integer>> pendingTasksForRack = Maps.newHashMap();
+    private ArrayList<Integer> pendingTasksWithNoPrefs = Lists.newArrayList();
+    private ArrayList<Integer> allPendingTasks = Lists.newArrayList();
+
+    /*********************************延迟调度*********************************/
+    public TaskLocality[] myLocalityLevels;
+    private long[] localityWaits;
+    private int currentLocalityIndex = 0;
+    private long lastLaunchTime;
+
+    /*********************************推测执行*********************************/
+    private double speculationQuantile;
+    private double speculationMultiplier;
+    // 待推测执行Task索引
+    private Set<Integer> speculatableTasks = Sets.newLinkedHashSet();
+    // 成功Task运行时长, 增量维护中位数
+    private MedianHeap successfulTaskDurations = new MedianHeap();
 
     private long totalResultSize = 0L;
     private int calculatedTasks = 0;
@@ -49,13 +110,81 @@ public class TaskSetManager implements Schedulable {
                           Clock clock) {
         this.sched = sched;
         this.taskSet = taskSet;
-        this.successful = new boolean[taskSet.tasks.length];
+        this.tasks = taskSet.tasks;
+        this.numTasks = tasks.length;
+        this.successful = new boolean[numTasks];
+        this.copiesRunning = new int[numTasks];
+        this.numFailures = new int[numTasks];
+        this.numAttempts = new int[numTasks];
         this.maxTaskFailures = maxTaskFailures;
         this.blacklistTracker = blacklistTracker;
         this.clock = clock;
 
-        this.maxResultSize = getMaxResultSize(this.sched.sc.conf);
+        this.name = "TaskSet_" + taskSet.id();
+        this.priority = taskSet.priority;
+        this.stageId = taskSet.stageId;
+        this.ser = sched.env.closureSerializer.newInstance();
+        this.maxResultSize = getMaxResultSize(this.sched.conf);
         this.taskInfos = Maps.newHashMap();
+        this.taskAttempts = Lists.newArrayListWithCapacity(numTasks);
+        for (int i = 0; i < numTasks; ++i) {
+            this.taskAttempts.add(Lists.newArrayListWithCapacity(1));
+        }
+        this.speculationQuantile = this.sched.conf.getDouble("spark.speculation.quantile", 0.75);
+        this.speculationMultiplier = this.sched.conf.getDouble("spark.speculation.multiplier", 1.5);
+
+        // 逆序加入, 列表尾部出队时索引小的Task先调度
+        for (int i = numTasks - 1; i >= 0; --i) {
+            addPendingTask(i);
+        }
+        this.myLocalityLevels = computeValidLocalityLevels();
+        this.localityWaits = localityWaits(myLocalityLevels);
+        this.lastLaunchTime = clock.getTimeMillis();
+    }
+
+    @Override
+    public Pool parent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(Pool parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public SchedulingMode schedulingMode() {
+        return SchedulingMode.NONE;
+    }
+
+    @Override
+    public int minShare() {
+        return 0;
+    }
+
+    @Override
+    public int weight() {
+        return 1;
+    }
+
+    @Override
+    public int priority() {
+        return priority;
+    }
+
+    @Override
+    public int stageId() {
+        return stageId;
+    }
+
+    @Override
+    public int runningTasks() {
+        return runningTasksSet.size();
     }
 
     @Override
@@ -63,6 +192,345 @@ public class TaskSetManager implements Schedulable {
 
     }
 
+    @Override
+    public void removeSchedulable(Schedulable schedulable) {
+
+    }
+
+    @Override
+    public List<TaskSetManager> getSortedTaskSetQueue() {
+        return Lists.newArrayList(this);
+    }
+
+    /******************************Task本地性索引*********************************/
+    private void addPendingTask(int index) {
+        TaskLocation[] locations = tasks[index].preferredLocations();
+        if (locations != null) {
+            for (TaskLocation location : locations) {
+                if (location instanceof ExecutorCacheTaskLocation) {
+                    addTo(pendingTasksForExecutor, ((ExecutorCacheTaskLocation) location).executorId, index);
+                }
+                addTo(pendingTasksForHost, location.host(), index);
+                String rack = sched.getRackForHost(location.host());
+                if (rack != null) {
+                    addTo(pendingTasksForRack, rack, index);
+                }
+            }
+        }
+        if (locations == null || locations.length == 0) {
+            pendingTasksWithNoPrefs.add(index);
+        }
+        allPendingTasks.add(index);
+    }
+
+    private static void addTo(Map<String, ArrayList<Integer>> pendingTasks, String key, int index) {
+        pendingTasks.computeIfAbsent(key, k -> Lists.newArrayList()).add(index);
+    }
+
+    /**
+     * 由列表尾部出队待调度Task, 已运行或已成功的Task直接删除
+     * */
+    private int dequeueTaskFromList(List<Integer> list) {
+        if (list == null) {
+            return -1;
+        }
+        while (!list.isEmpty()) {
+            int index = list.remove(list.size() - 1);
+            if (copiesRunning[index] == 0 && !successful[index]) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 按本地性由高到低出队Task, 返回Task索引及本地性级别, 无待调度Task时出队推测执行Task
+     * */
+    private Tuple2<Integer, TaskLocality> dequeueTask(String execId, String host, TaskLocality maxLocality) {
+        int index = dequeueTaskFromList(pendingTasksForExecutor.get(execId));
+        if (index >= 0) {
+            return new Tuple2<>(index, TaskLocality.PROCESS_LOCAL);
+        }
+
+        if (TaskLocality.isAllowed(maxLocality, TaskLocality.NODE_LOCAL)) {
+            index = dequeueTaskFromList(pendingTasksForHost.get(host));
+            if (index >= 0) {
+                return new Tuple2<>(index, TaskLocality.NODE_LOCAL);
+            }
+        }
+
+        if (TaskLocality.isAllowed(maxLocality, TaskLocality.NO_PREF)) {
+            // 无偏好Task视为PROCESS_LOCAL, 不影响延迟调度级别
+            index = dequeueTaskFromList(pendingTasksWithNoPrefs);
+            if (index >= 0) {
+                return new Tuple2<>(index, TaskLocality.PROCESS_LOCAL);
+            }
+        }
+
+        if (TaskLocality.isAllowed(maxLocality, TaskLocality.RACK_LOCAL)) {
+            String rack = sched.getRackForHost(host);
+            if (rack != null) {
+                index = dequeueTaskFromList(pendingTasksForRack.get(rack));
+                if (index >= 0) {
+                    return new Tuple2<>(index, TaskLocality.RACK_LOCAL);
+                }
+            }
+        }
+
+        if (TaskLocality.isAllowed(maxLocality, TaskLocality.ANY)) {
+            index = dequeueTaskFromList(allPendingTasks);
+            if (index >= 0) {
+                return new Tuple2<>(index, TaskLocality.ANY);
+            }
+        }
+
+        return dequeueSpeculativeTask(execId, host, maxLocality);
+    }
+
+    /**
+     * 出队推测执行Task: 不在已有执行尝试的Host上启动, 已成功或已重新加入待调度列表的Task直接删除
+     * */
+    private Tuple2<Integer, TaskLocality> dequeueSpeculativeTask(String execId, String host, TaskLocality maxLocality) {
+        Iterator<Integer> iterator = speculatableTasks.iterator();
+        while (iterator.hasNext()) {
+            int index = iterator.next();
+            if (successful[index] || copiesRunning[index] == 0) {
+                iterator.remove();
+                continue;
+            }
+            if (hasAttemptOnHost(index, host)) {
+                continue;
+            }
+            TaskLocality locality = speculativeTaskLocality(index, execId, host);
+            if (TaskLocality.isAllowed(maxLocality, locality)) {
+                iterator.remove();
+                // 无偏好Task视为PROCESS_LOCAL
+                return new Tuple2<>(index, locality == TaskLocality.NO_PREF ? TaskLocality.PROCESS_LOCAL : locality);
+            }
+        }
+        return null;
+    }
+
+    private boolean hasAttemptOnHost(int index, String host) {
+        for (TaskInfo attempt : taskAttempts.get(index)) {
+            if (attempt.host().equals(host)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private TaskLocality speculativeTaskLocality(int index, String execId, String host) {
+        TaskLocation[] locations = tasks[index].preferredLocations();
+        if (locations == null || locations.length == 0) {
+            return TaskLocality.NO_PREF;
+        }
+        String rack = sched.getRackForHost(host);
+        TaskLocality locality = TaskLocality.ANY;
+        for (TaskLocation location : locations) {
+            if (location instanceof ExecutorCacheTaskLocation &&
+                    ((ExecutorCacheTaskLocation) location).executorId.equals(execId)) {
+                return TaskLocality.PROCESS_LOCAL;
+            }
+            if (location.host().equals(host)) {
+                locality = TaskLocality.NODE_LOCAL;
+            } else if (locality == TaskLocality.ANY && rack != null && rack.equals(sched.getRackForHost(location.host()))) {
+                locality = TaskLocality.RACK_LOCAL;
+            }
+        }
+        return locality;
+    }
+
+    /****************************Task调度(资源分配)*******************************/
+    /**
+     * 为Executor分配一个Task, maxLocality为本轮允许的最低本地性级别, 无可调度Task返回null
+     * */
+    public TaskDescription resourceOffer(String execId, String host, TaskLocality maxLocality) {
+        if (isZombie) {
+            return null;
+        }
+
+        long curTime = clock.getTimeMillis();
+        TaskLocality allowedLocality = maxLocality;
+        if (maxLocality != TaskLocality.NO_PREF) {
+            allowedLocality = getAllowedLocalityLevel(curTime);
+            if (allowedLocality.ordinal() > maxLocality.ordinal()) {
+                allowedLocality = maxLocality;
+            }
+        }
+
+        Tuple2<Integer, TaskLocality> dequeued = dequeueTask(execId, host, allowedLocality);
+        if (dequeued == null) {
+            return null;
+        }
+        int index = dequeued._1();
+        TaskLocality taskLocality = dequeued._2();
+        Task<?> task = tasks[index];
+
+        long taskId = sched.newTaskId();
+        int attemptNumber = numAttempts[index]++;
+        // 待调度列表仅出队无运行中执行尝试的Task, 否则为推测执行
+        boolean speculative = copiesRunning[index] > 0;
+        copiesRunning[index]++;
+        TaskInfo info = new TaskInfo(taskId, index, attemptNumber, curTime, execId, host, taskLocality, speculative);
+        taskInfos.put(taskId, info);
+        taskAttempts.get(index).add(info);
+        // 按本次调度的本地性级别更新延迟调度状态(NO_PREF调度不影响)
+        if (maxLocality != TaskLocality.NO_PREF) {
+            currentLocalityIndex = getLocalityIndex(taskLocality);
+            lastLaunchTime = curTime;
+        }
+
+        ByteBuffer serializedTask;
+        try {
+            serializedTask = ser.serialize(task);
+        } catch (Exception e) {
+            String msg = format("Failed to serialize task %s, not attempting to retry it.", taskId);
+            LOGGER.error(msg, e);
+            abort(format("%s Exception during serialization: %s", msg, e));
+            return null;
+        }
+
+        addRunningTask(taskId);
+        String taskName = format("task %s in stage %s (TID %d)", info.id(), taskSet.id(), taskId);
+        LOGGER.info("Starting {}{} ({}, executor {}, partition {}, {}, {} bytes)", speculative ? "speculative " : "",
+                    taskName, host, execId, index, taskLocality, serializedTask.limit());
+        Properties properties = task.localProperties != null ? task.localProperties : new Properties();
+        return new TaskDescription(taskId, attemptNumber, execId, taskName, index,
+                                   Maps.newHashMap(), Maps.newHashMap(), properties, serializedTask);
+    }
+
+    /*********************************延迟调度*********************************/
+    /**
+     * 当前允许的本地性级别: 当前级别无待调度Task或等待超时时降级
+     * */
+    private TaskLocality getAllowedLocalityLevel(long curTime) {
+        while (currentLocalityIndex < myLocalityLevels.length - 1) {
+            boolean moreTasks = moreTasksToRunIn(myLocalityLevels[currentLocalityIndex]);
+            if (!moreTasks) {
+                lastLaunchTime = curTime;
+                currentLocalityIndex++;
+            } else if (curTime - lastLaunchTime >= localityWaits[currentLocalityIndex]) {
+                // 跳到下一级别, 下一级别的等待从当前级别超时时刻开始计算
+                lastLaunchTime += localityWaits[currentLocalityIndex];
+                currentLocalityIndex++;
+            } else {
+                return myLocalityLevels[currentLocalityIndex];
+            }
+        }
+        return myLocalityLevels[currentLocalityIndex];
+    }
+
+    private boolean moreTasksToRunIn(TaskLocality locality) {
+        switch (locality) {
+            case PROCESS_LOCAL:
+                return moreTasksToRunIn(pendingTasksForExecutor);
+            case NODE_LOCAL:
+                return moreTasksToRunIn(pendingTasksForHost);
+            case NO_PREF:
+                return !pendingTasksWithNoPrefs.isEmpty();
+            case RACK_LOCAL:
+                return moreTasksToRunIn(pendingTasksForRack);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * 检查过程中删除已调度Task及空列表
+     * */
+    private boolean moreTasksToRunIn(Map<String, ArrayList<Integer>> pendingTasks) {
+        Iterator<Map.Entry<String, ArrayList<Integer>>> iterator = pendingTasks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (tasksNeedToBeScheduledFrom(iterator.next().getValue())) {
+                return true;
+            }
+            iterator.remove();
+        }
+        return false;
+    }
+
+    private boolean tasksNeedToBeScheduledFrom(List<Integer> pendingTaskIds) {
+        while (!pendingTaskIds.isEmpty()) {
+            int index = pendingTaskIds.get(pendingTaskIds.size() - 1);
+            if (copiesRunning[index] == 0 && !successful[index]) {
+                return true;
+            }
+            pendingTaskIds.remove(pendingTaskIds.size() - 1);
+        }
+        return false;
+    }
+
+    private int getLocalityIndex(TaskLocality locality) {
+        int index = 0;
+        while (index < myLocalityLevels.length - 1 && locality.ordinal() > myLocalityLevels[index].ordinal()) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * 有效本地性级别: 存在待调度Task且对应Executor/Host/Rack存活, 最后总是ANY
+     * */
+    private TaskLocality[] computeValidLocalityLevels() {
+        List<TaskLocality> levels = Lists.newArrayList();
+        if (!pendingTasksForExecutor.isEmpty() && getLocalityWait(TaskLocality.PROCESS_LOCAL) != 0 &&
+                pendingTasksForExecutor.keySet().stream().anyMatch(sched::isExecutorAlive)) {
+            levels.add(TaskLocality.PROCESS_LOCAL);
+        }
+        if (!pendingTasksForHost.isEmpty() && getLocalityWait(TaskLocality.NODE_LOCAL) != 0 &&
+                pendingTasksForHost.keySet().stream().anyMatch(sched::hasExecutorsAliveOnHost)) {
+            levels.add(TaskLocality.NODE_LOCAL);
+        }
+        if (!pendingTasksWithNoPrefs.isEmpty()) {
+            levels.add(TaskLocality.NO_PREF);
+        }
+        if (!pendingTasksForRack.isEmpty() && getLocalityWait(TaskLocality.RACK_LOCAL) != 0 &&
+                pendingTasksForRack.keySet().stream().anyMatch(sched::hasHostAliveOnRack)) {
+            levels.add(TaskLocality.RACK_LOCAL);
+        }
+        levels.add(TaskLocality.ANY);
+        LOGGER.debug("Valid locality levels for {}: {}", name, levels);
+        return levels.toArray(new TaskLocality[levels.size()]);
+    }
+
+    private long[] localityWaits(TaskLocality[] levels) {
+        long[] waits = new long[levels.length];
+        for (int i = 0; i < levels.length; ++i) {
+            waits[i] = getLocalityWait(levels[i]);
+        }
+        return waits;
+    }
+
+    private long getLocalityWait(TaskLocality level) {
+        SparkConf conf = sched.conf;
+        String defaultWait = conf.get("spark.locality.wait", "3s");
+        switch (level) {
+            case PROCESS_LOCAL:
+                return conf.getTimeAsMs("spark.locality.wait.process", defaultWait);
+            case NODE_LOCAL:
+                return conf.getTimeAsMs("spark.locality.wait.node", defaultWait);
+            case RACK_LOCAL:
+                return conf.getTimeAsMs("spark.locality.wait.rack", defaultWait);
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * 新Executor加入后重新计算有效本地性级别
+     * */
+    public void executorAdded() {
+        recomputeLocality();
+    }
+
+    private void recomputeLocality() {
+        TaskLocality previousLocalityLevel = myLocalityLevels[currentLocalityIndex];
+        myLocalityLevels = computeValidLocalityLevels();
+        localityWaits = localityWaits(myLocalityLevels);
+        currentLocalityIndex = getLocalityIndex(previousLocalityLevel);
+    }
+
     /**
      * Check whether has enough quota to fetch the result with `size` bytes
      * */
@@ -89,18 +557,115 @@ public class TaskSetManager implements Schedulable {
     public void handleFailedTask(long tid,
                                  TaskState state,
                                  TaskFailedReason reason) {
+        TaskInfo info = taskInfos.get(tid);
+        if (info == null || info.finished()) {
+            return;
+        }
+        removeRunningTask(tid);
+        info.markFinished(state, clock.getTimeMillis());
+        int index = info.index;
+        copiesRunning[index]--;
+        LOGGER.warn("Lost {} in stage {} (TID {}, {}, executor {}): {}", info.id(), taskSet.id(), tid,
+                    info.host(), info.executorId(), reason == null ? state : reason.toErrorString());
 
+        if (!successful[index] && !isZombie) {
+            if (reason == null || reason.countTowardsTaskFailures()) {
+                numFailures[index]++;
+                if (numFailures[index] >= maxTaskFailures) {
+                    abort(format("Task %d in stage %s failed %d times, most recent failure: %s", index,
+                                 taskSet.id(), maxTaskFailures, reason == null ? state : reason.toErrorString()));
+                    return;
+                }
+            }
+            addPendingTask(index);
+        }
+        maybeFinishTaskSet();
     }
 
     public void handleSuccessfulTask(long tid,
                                      DirectTaskResult<?> taskResult) {
+        TaskInfo info = taskInfos.get(tid);
+        int index = info.index;
+        info.markFinished(TaskState.FINISHED, clock.getTimeMillis());
+        removeRunningTask(tid);
+        copiesRunning[index]--;
+        if (!successful[index]) {
+            tasksSuccessful++;
+            successful[index] = true;
+            successfulTaskDurations.insert(info.duration());
+            LOGGER.info("Finished {} in stage {} (TID {}) in {} ms on {} ({}/{})", info.id(), taskSet.id(), tid,
+                        info.finishTime() - info.launchTime(), info.host(), tasksSuccessful, numTasks);
+            if (tasksSuccessful == numTasks) {
+                isZombie = true;
+            }
+        }
+
+        // 终止同一Task的其他运行中执行尝试
+        for (TaskInfo attemptInfo : taskAttempts.get(index)) {
+            if (attemptInfo.running()) {
+                LOGGER.info("Killing attempt {} for task {} in stage {} (TID {}) on {} as the attempt {} succeeded on {}",
+                            attemptInfo.attemptNumber(), attemptInfo.id(), taskSet.id(), attemptInfo.taskId(),
+                            attemptInfo.host(), info.attemptNumber(), info.host());
+                sched.backend.killTask(attemptInfo.taskId(), attemptInfo.executorId(), true, "another attempt succeeded");
+            }
+        }
 
+        // 通知DAGScheduler记录Task输出(TaskResultGetter已反序列化结果, 此处读取缓存值)
+        if (sched.dagScheduler != null) {
+            Object result;
+            try {
+                result = taskResult == null ? null : taskResult.value(null);
+            } catch (IOException e) {
+                abort(format("Failed to read result of task %d in stage %s: %s", index, taskSet.id(), e));
+                return;
+            }
+            sched.dagScheduler.taskEnded(taskSet.tasks[index], new Success(), result, info);
+        }
+        maybeFinishTaskSet();
+    }
+
+    /**
+     * 推测执行检查: 成功Task数达到spark.speculation.quantile比例后, 运行时长超过
+     *
+     * max(spark.speculation.multiplier * 成功Task运行时长中位数, minTimeToSpeculation)且仅有一个运行中执行尝试的Task
+     *
+     * 加入推测执行列表, 仅遍历运行中Task
+     * */
+    @Override
+    public boolean checkSpeculatableTasks(long minTimeToSpeculation) {
+        // 单个Task的TaskSet无其他Task运行时长可比较
+        if (isZombie || numTasks == 1) {
+            return false;
+        }
+        int minFinishedForSpeculation = (int) Math.floor(speculationQuantile * numTasks);
+        if (tasksSuccessful == 0 || tasksSuccessful < minFinishedForSpeculation) {
+            return false;
+        }
+        long time = clock.getTimeMillis();
+        double threshold = Math.max(speculationMultiplier * successfulTaskDurations.median(), minTimeToSpeculation);
+        LOGGER.debug("Task length threshold for speculation: {}", threshold);
+        boolean foundTasks = false;
+        for (long tid : runningTasksSet) {
+            TaskInfo info = taskInfos.get(tid);
+            int index = info.index;
+            if (!successful[index] && copiesRunning[index] == 1 && info.timeRunning(time) > threshold &&
+                    speculatableTasks.add(index)) {
+                LOGGER.info("Marking task {} in stage {} (on {}) as speculatable because it ran more than {} ms",
+                            index, taskSet.id(), info.host(), threshold);
+                foundTasks = true;
+            }
+        }
+        return foundTasks;
     }
 
     public boolean someAttemptSucceeded(long tid) {
         return successful[taskInfos.get(tid).index];
     }
 
+    public int tasksSuccessful() {
+        return tasksSuccessful;
+    }
+
     public void abort(String msg) {
         // TODO: Kill running tasks if we were not terminated due to a Mesos error
         sched.dagScheduler.taskSetFailed(taskSet, msg, null);
@@ -109,19 +674,21 @@ public class TaskSetManager implements Schedulable {
     }
 
     private void maybeFinishTaskSet() {
-//        if (isZombie && runningTasks == 0) {
-//            sched.taskSetFinished(this)
-//            if (tasksSuccessful == numTasks) {
-//                blacklistTracker.foreach(_.updateBlacklistForSuccessfulTaskSet(
-//                        taskSet.stageId,
-//                        taskSet.stageAttemptId,
-//                        taskSetBlacklistHelperOpt.get.execToFailures))
-//            }
-//        }
+        if (isZombie && runningTasks() == 0) {
+            sched.taskSetFinished(this);
+        }
+    }
+
+    private void addRunningTask(long tid) {
+        if (runningTasksSet.add(tid) && parent != null) {
+            parent.increaseRunningTasks(1);
+        }
     }
 
     /** If the given task ID is in the set of running tasks, removes it. */
     public void removeRunningTask(long tid) {
-        throw new UnsupportedOperationException("");
+        if (runningTasksSet.remove(tid) && parent != null) {
+            parent.decreaseRunningTasks(1);
+        }
     }
 }
@@ -8,6 +8,7 @@ import com.sdu.spark.utils.SerializableBuffer;
 
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -33,6 +34,18 @@ public interface CoarseGrainedClusterMessage extends Serializable {
             this.taskData = taskData;
         }
     }
+
+    /**
+     * 同一轮资源分配中发往同一Executor的多个Task合并为一条消息
+     * */
+    class LaunchTasks implements CoarseGrainedClusterMessage {
+        public List<SerializableBuffer> taskData;
+
+        public LaunchTasks(List<SerializableBuffer> taskData) {
+            this.taskData = taskData;
+        }
+    }
+
     class RetrieveSparkAppConfig implements CoarseGrainedClusterMessage {}
 
     class SparkAppConfig implements CoarseGrainedClusterMessage {
@@ -82,6 +95,27 @@ public interface CoarseGrainedClusterMessage extends Serializable {
         }
     }
 
+    /**
+     * Executor在合并窗口内的多个Task状态更新合并为一条消息
+     * */
+    class StatusUpdates implements CoarseGrainedClusterMessage {
+        public String executorId;
+        public List<StatusUpdate> updates;
+
+        public StatusUpdates(String executorId, List<StatusUpdate> updates) {
+            this.executorId = executorId;
+            this.updates = updates;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("execId", executorId)
+                              .add("numUpdates", updates.size())
+                              .toString();
+        }
+    }
+
     class RegisterExecutor implements CoarseGrainedClusterMessage {
         public String executorId;
         public RpcEndpointRef executorRef;
@@ -1,5 +1,6 @@
 package com.sdu.spark.scheduler.cluster;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -66,6 +67,8 @@ import static org.apache.commons.lang3.StringUtils.join;
  *                             +--> MapOutputTrackerMaster.removeOutputOnHost()/removeOutputOnExecutor[Driver]
  *
  *
+ *      Note: Executor合并上报的StatusUpdates整批交由TaskScheduler处理, 释放的CPU核数累加后只触发一次makeOffers
+ *
  *   2': RegisterExecutor[Executor注册], 调用链:
  *
  *      CoarseGrainedExecutorBackend.onStart()[Executor]
@@ -74,7 +77,9 @@ import static org.apache.commons.lang3.StringUtils.join;
  *               |
  *               +--> CoarseGrainedSchedulerBackend.DriverEndpoint.receiveAndReply(RegisteredExecutor)[Driver]
  *
- * 3: Executor资源管理
+ * 3: 同一轮资源分配中发往同一Executor的Task合并为LaunchTasks消息(单条消息不超过spark.rpc.message.maxSize)
+ *
+ * 4: Executor资源管理
  *
  *  1': 向Spark Master申请Executor资源
  *
@@ -176,6 +181,19 @@ public abstract class CoarseGrainedSchedulerBackend implements ExecutorAllocatio
                                     update.taskId, update.state, update.executorId);
                     }
                 }
+            } else if (msg instanceof StatusUpdates) {
+                StatusUpdates updates = (StatusUpdates) msg;
+                scheduler.statusUpdate(updates.updates);
+                if (updates.updates.stream().anyMatch(update -> TaskState.isFinished(update.state))) {
+                    ExecutorData executorData = executorDataMap.get(updates.executorId);
+                    if (executorData != null) {
+                        releaseFinishedTaskCores(executorData, updates.updates, scheduler.CPUS_PER_TASK);
+                        makeOffers(updates.executorId);
+                    } else {
+                        LOGGER.warn("Ignored {} task status updates from unknown executor with ID {}",
+                                    updates.updates.size(), updates.executorId);
+                    }
+                }
             } else if (msg instanceof ReviveOffers){
                 makeOffers();
             } else if (msg instanceof KillTask) {
@@ -307,29 +325,40 @@ public abstract class CoarseGrainedSchedulerBackend implements ExecutorAllocatio
                 launchTask(taskDescriptions);
             }
         }
+        /**
+         * 按Executor分组发送Task, 同一Executor的Task合并为LaunchTasks, 累计大小达到maxRpcMessageSize时拆分
+         * */
         private void launchTask(List<TaskDescription> tasks) {
+            Map<String, List<TaskDescription>> executorTasks = Maps.newLinkedHashMap();
             for (TaskDescription task : tasks) {
-                try {
-                    ByteBuffer buffer = TaskDescription.encode(task);
-                    if (buffer.limit() >= maxRpcMessageSize) {
-                        String msg = "Serialized task %s:%d was %d bytes, which exceeds max allowed: " +
-                                "spark.rpc.message.maxSize (%d bytes). Consider increasing " +
-                                "spark.rpc.message.maxSize or using broadcast variables for large values.";
-                        msg = format(msg, task.taskId, task.index, buffer.limit(), maxRpcMessageSize);
-                        TaskSetManager tasSetMgr = scheduler.taskIdToTaskSetManager.get(task.taskId);
-                        tasSetMgr.abort(msg);
-                    } else {
-                        ExecutorData executorData = executorDataMap.get(task.executorId);
+                executorTasks.computeIfAbsent(task.executorId, execId -> Lists.newArrayList()).add(task);
+            }
+
+            executorTasks.forEach((executorId, execTasks) -> {
+                ExecutorData executorData = executorDataMap.get(executorId);
+                List<SerializableBuffer> taskData = Lists.newArrayListWithCapacity(execTasks.size());
+                for (TaskDescription task : execTasks) {
+                    try {
+                        ByteBuffer buffer = TaskDescription.encode(task);
+                        if (buffer.limit() >= maxRpcMessageSize) {
+                            String msg = "Serialized task %s:%d was %d bytes, which exceeds max allowed: " +
+                                    "spark.rpc.message.maxSize (%d bytes). Consider increasing " +
+                                    "spark.rpc.message.maxSize or using broadcast variables for large values.";
+                            msg = format(msg, task.taskId, task.index, buffer.limit(), maxRpcMessageSize);
+                            TaskSetManager tasSetMgr = scheduler.taskIdToTaskSetManager.get(task.taskId);
+                            tasSetMgr.abort(msg);
+                            continue;
+                        }
                         executorData.freeCores -= scheduler.CPUS_PER_TASK;
                         LOGGER.debug("Executor(execId = {}, execAddress = {})分配Spark Task(taskId = {}, taskName = {})",
                                 task.executorId, executorData.executorHost, task.taskId, task.name);
-                        executorData.executorEndpoint.send(new LaunchTask(new SerializableBuffer(buffer)));
+                        taskData.add(new SerializableBuffer(buffer));
+                    } catch (IOException e) {
+                        LOGGER.error("Task(taskId = {})序列化异常", task.taskId, e);
                     }
-                } catch (IOException e) {
-                    LOGGER.error("Task(taskId = {})序列化异常", task.taskId, e);
                 }
-
-            }
+                launchTaskMessages(taskData, maxRpcMessageSize).forEach(executorData.executorEndpoint::send);
+            });
         }
 
         /**********************************删除Executor(连接断开)*********************************/
@@ -593,4 +622,43 @@ public abstract class CoarseGrainedSchedulerBackend implements ExecutorAllocatio
     public abstract CompletableFuture<Boolean> doRequestTotalExecutors(int requestedTotal);
 
     public abstract CompletableFuture<Boolean> doKillExecutors(List<String> executorIds);
+
+    /**
+     * 发往同一Executor的Task合并为LaunchTasks, 累计大小达到maxRpcMessageSize时拆分, 只有一个Task时为LaunchTask
+     * */
+    @VisibleForTesting
+    static List<CoarseGrainedClusterMessage> launchTaskMessages(List<SerializableBuffer> taskData, int maxRpcMessageSize) {
+        List<CoarseGrainedClusterMessage> messages = Lists.newArrayList();
+        List<SerializableBuffer> batch = Lists.newArrayList();
+        long batchSize = 0;
+        for (SerializableBuffer data : taskData) {
+            if (!batch.isEmpty() && batchSize + data.buffer.limit() >= maxRpcMessageSize) {
+                messages.add(launchTaskMessage(batch));
+                batch = Lists.newArrayList();
+                batchSize = 0;
+            }
+            batch.add(data);
+            batchSize += data.buffer.limit();
+        }
+        if (!batch.isEmpty()) {
+            messages.add(launchTaskMessage(batch));
+        }
+        return messages;
+    }
+
+    private static CoarseGrainedClusterMessage launchTaskMessage(List<SerializableBuffer> batch) {
+        return batch.size() == 1 ? new LaunchTask(batch.get(0)) : new LaunchTasks(batch);
+    }
+
+    /**
+     * 释放状态更新中已结束Task占用的CPU核数
+     * */
+    @VisibleForTesting
+    static void releaseFinishedTaskCores(ExecutorData executorData, List<StatusUpdate> updates, int cpusPerTask) {
+        for (StatusUpdate update : updates) {
+            if (TaskState.isFinished(update.state)) {
+                executorData.freeCores += cpusPerTask;
+            }
+        }
+    }
 }
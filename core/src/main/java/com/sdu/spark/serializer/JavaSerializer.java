@@ -15,6 +15,13 @@ public class JavaSerializer implements Serializer, Externalizable {
     private int counterReset;
     private boolean extraDebugInfo;
 
+    /**
+     * Externalizable反序列化需要public无参构造函数(字段由readExternal恢复)
+     * */
+    public JavaSerializer() {
+
+    }
+
     public JavaSerializer(SparkConf conf) {
         this.counterReset = conf.getInt("spark.serializer.objectStreamReset", 10);
         this.extraDebugInfo = conf.getBoolean("spark.closureSerializer.extraDebugInfo", true);
@@ -26,7 +26,7 @@ import static org.apache.commons.crypto.utils.Utils.checkArgument;
  *
  * {@link BlockStoreShuffleReader}负责读取{@link #startPartition}~{@link #endPartition} Shuffle数据
  *
- * 1: {@link ShuffleBlockFetcherIterator}负责Executor上读取Block数据
+ * 1: {@link ShuffleBlockFetcherIterator}负责Executor上读取Block数据(可只读取MapTask[{@link #startMapIndex}, {@link #endMapIndex})输出)
  *
  * 2: {@link #read()}Shuffle数据读取完成后, 根据{@link ShuffleDependency}是否定义{@link Aggregator}进行
  *
@@ -41,6 +41,8 @@ public class BlockStoreShuffleReader<K, C> implements ShuffleReader<K, C> {
     private static final Logger LOGGER = LoggerFactory.getLogger(BlockStoreShuffleReader.class);
 
     private BaseShuffleHandle<K, Object, C> handle;
+    private int startMapIndex;
+    private int endMapIndex;
     private int startPartition;
     private int endPartition;
     private TaskContext context;
@@ -55,7 +57,18 @@ public class BlockStoreShuffleReader<K, C> implements ShuffleReader<K, C> {
                                    int startPartition,
                                    int endPartition,
                                    TaskContext context) {
+        this(handle, 0, Integer.MAX_VALUE, startPartition, endPartition, context);
+    }
+
+    public BlockStoreShuffleReader(BaseShuffleHandle<K, Object, C> handle,
+                                   int startMapIndex,
+                                   int endMapIndex,
+                                   int startPartition,
+                                   int endPartition,
+                                   TaskContext context) {
         this.handle = handle;
+        this.startMapIndex = startMapIndex;
+        this.endMapIndex = endMapIndex;
         this.startPartition = startPartition;
         this.endPartition = endPartition;
         this.context = context;
@@ -75,7 +88,7 @@ public class BlockStoreShuffleReader<K, C> implements ShuffleReader<K, C> {
                 context,
                 blockManager.shuffleClient,
                 blockManager,
-                mapOutputTracker.getMapSizesByExecutorId(handle.shuffleId, startPartition, endPartition),
+                mapOutputTracker.getMapSizesByRange(handle.shuffleId, startMapIndex, endMapIndex, startPartition, endPartition),
                 (blockId, inputStream) -> serializerManager.wrapStream(blockId, inputStream),
                 SparkEnv.env.conf.getSizeAsMb("spark.reducer.maxSizeInFlight", "48m") * 1024 * 1024,
                 SparkEnv.env.conf.getInt("spark.reducer.maxReqsInFlight", Integer.MAX_VALUE),
@@ -1,9 +1,11 @@
 package com.sdu.spark.shuffle;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.sdu.spark.MapSizesByExecutor;
 import com.sdu.spark.SparkException;
 import com.sdu.spark.TaskContext;
 import com.sdu.spark.network.buffer.FileSegmentManagedBuffer;
@@ -79,6 +81,10 @@ import static com.sdu.spark.utils.Utils.getUsedTimeMs;
  *
  *    {@link FileSegmentManagedBuffer#file}为Shuffle Block数据落地磁盘文件
  *
+ *  6: 数据块大小以{@link MapSizesByExecutor}传入时, 直接遍历并列数组拆分本进程/跨进程请求, 跨进程请求只记录数据块下标区间,
+ *
+ *    发送请求时才创建BlockId
+ *
  * @author hanhan.zhang
  * */
 @SuppressWarnings("ConstantConditions")
@@ -90,6 +96,7 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
     private ShuffleClient shuffleClient;
     private BlockManager blockManager;
     private Multimap<BlockManagerId, Tuple2<BlockId, Long>> blocksByAddress;
+    private MapSizesByExecutor blockSizes;
     private ResultWrapper wrapper;
 
     /**
@@ -167,10 +174,43 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
                                        int maxBlocksInFlightPerAddress,
                                        long maxReqSizeShuffleToMem,
                                        boolean detectCorrupt) {
+        this(context, shuffleClient, blockManager, blocksByAddress, null, wrapper, maxBytesInFlight,
+             maxReqsInFlight, maxBlocksInFlightPerAddress, maxReqSizeShuffleToMem, detectCorrupt);
+    }
+
+    /**
+     * @param blockSizes non-empty blocks to fetch grouped by the [[BlockManagerId]], stored in primitive arrays.
+     * */
+    public ShuffleBlockFetcherIterator(TaskContext context,
+                                       ShuffleClient shuffleClient,
+                                       BlockManager blockManager,
+                                       MapSizesByExecutor blockSizes,
+                                       ResultWrapper wrapper,
+                                       long maxBytesInFlight,
+                                       long maxReqsInFlight,
+                                       int maxBlocksInFlightPerAddress,
+                                       long maxReqSizeShuffleToMem,
+                                       boolean detectCorrupt) {
+        this(context, shuffleClient, blockManager, null, blockSizes, wrapper, maxBytesInFlight,
+             maxReqsInFlight, maxBlocksInFlightPerAddress, maxReqSizeShuffleToMem, detectCorrupt);
+    }
+
+    private ShuffleBlockFetcherIterator(TaskContext context,
+                                        ShuffleClient shuffleClient,
+                                        BlockManager blockManager,
+                                        Multimap<BlockManagerId, Tuple2<BlockId, Long>> blocksByAddress,
+                                        MapSizesByExecutor blockSizes,
+                                        ResultWrapper wrapper,
+                                        long maxBytesInFlight,
+                                        long maxReqsInFlight,
+                                        int maxBlocksInFlightPerAddress,
+                                        long maxReqSizeShuffleToMem,
+                                        boolean detectCorrupt) {
         this.context = context;
         this.shuffleClient = shuffleClient;
         this.blockManager = blockManager;
         this.blocksByAddress = blocksByAddress;
+        this.blockSizes = blockSizes;
         this.wrapper = wrapper;
         this.maxBytesInFlight = maxBytesInFlight;
         this.maxReqsInFlight = maxReqsInFlight;
@@ -205,6 +245,15 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
         LOGGER.debug("maxBytesInFlight: {}, targetRequestSize: {}, maxBlocksInFlightPerAddress: {}",
                      maxBytesInFlight, targetRequestSize, maxBlocksInFlightPerAddress);
 
+        if (blockSizes != null) {
+            List<FetchRequest> remoteRequests = splitLocalRemoteBlockSizes(
+                    blockSizes, blockManager.blockManagerId.executorId, targetRequestSize,
+                    maxBlocksInFlightPerAddress, localBlocks);
+            numBlocksToFetch += blockSizes.numBlocks();
+            LOGGER.info("Getting {} non-empty blocks out of {} blocks", numBlocksToFetch, blockSizes.totalBlocks());
+            return remoteRequests;
+        }
+
         List<FetchRequest> remoteRequests = Lists.newLinkedList();
         int totalBlocks = 0;
         Iterator<BlockManagerId> iter = blocksByAddress.keySet().iterator();
@@ -214,14 +263,15 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
             totalBlocks += blockInfos.size();
 
             if (address.executorId.equals(blockManager.blockManagerId.executorId)) {    // 同进程请求
-                localBlocks.addAll(blockInfos.stream()
-                                          .filter(t -> t._2() != 0)
-                                          .map(Tuple2::_1).collect(Collectors.toList()));
-                numBlocksToFetch += localBlocks.size();
+                List<BlockId> blockIds = blockInfos.stream()
+                                                   .filter(t -> t._2() != 0)
+                                                   .map(Tuple2::_1).collect(Collectors.toList());
+                localBlocks.addAll(blockIds);
+                numBlocksToFetch += blockIds.size();
             } else {                                                                    // 跨进程请求
                 Iterator<Tuple2<BlockId, Long>> iterator = blockInfos.iterator();
                 long curRequestSize = 0L;
-                List<Tuple2<BlockId, Long>> curBlocks = Lists.newLinkedList();
+                List<Tuple2<BlockId, Long>> curBlocks = Lists.newArrayList();
                 while (iterator.hasNext()) {
                     Tuple2<BlockId, Long> tuple2 = iterator.next();
                     if (tuple2._2() > 0) {
@@ -237,7 +287,7 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
                         remoteRequests.add(new FetchRequest(address, curBlocks));
                         LOGGER.debug("Creating fetch request of {} at {} with {} blocks",
                                       curRequestSize, address, curBlocks.size());
-                        curBlocks = Lists.newLinkedList();
+                        curBlocks = Lists.newArrayList();
                         curRequestSize = 0;
                     }
                 }
@@ -252,16 +302,69 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
         return remoteRequests;
     }
 
+    /**
+     * {@link MapSizesByExecutor}只包含非空数据块, 按Executor区间遍历并列数组, 跨进程请求为Executor区间内连续的下标区间
+     *
+     * @param localBlocks 收集本进程数据块
+     * @return 跨进程数据块拉取请求
+     * */
+    @VisibleForTesting
+    static List<FetchRequest> splitLocalRemoteBlockSizes(MapSizesByExecutor blockSizes,
+                                                         String localExecutorId,
+                                                         long targetRequestSize,
+                                                         int maxBlocksInFlightPerAddress,
+                                                         List<BlockId> localBlocks) {
+        List<FetchRequest> remoteRequests = Lists.newLinkedList();
+        for (int loc = 0; loc < blockSizes.numLocations(); ++loc) {
+            BlockManagerId address = blockSizes.location(loc);
+            int start = blockSizes.blockStart(loc);
+            int end = blockSizes.blockEnd(loc);
+
+            if (address.executorId.equals(localExecutorId)) {                           // 同进程请求
+                for (int i = start; i < end; ++i) {
+                    localBlocks.add(blockSizes.blockId(i));
+                }
+            } else {                                                                    // 跨进程请求
+                long curRequestSize = 0L;
+                int curStart = start;
+                for (int i = start; i < end; ++i) {
+                    long size = blockSizes.size(i);
+                    if (size < 0) {
+                        throw new BlockException("Negative block size " + size, blockSizes.blockId(i));
+                    }
+                    curRequestSize += size;
+
+                    if (curRequestSize > targetRequestSize || i + 1 - curStart >= maxBlocksInFlightPerAddress) {
+                        remoteRequests.add(new FetchRequest(address, blockSizes, curStart, i + 1, curRequestSize));
+                        LOGGER.debug("Creating fetch request of {} at {} with {} blocks",
+                                     curRequestSize, address, i + 1 - curStart);
+                        curStart = i + 1;
+                        curRequestSize = 0;
+                    }
+                }
+                if (curStart < end) {
+                    remoteRequests.add(new FetchRequest(address, blockSizes, curStart, end, curRequestSize));
+                }
+            }
+        }
+        return remoteRequests;
+    }
+
     private void sendRequest(FetchRequest request) {
-        LOGGER.debug("Sending request for {} blocks ({}) from {}", request.blocks.size(),
+        int numBlocks = request.numBlocks();
+        LOGGER.debug("Sending request for {} blocks ({}) from {}", numBlocks,
                       Utils.bytesToString(request.size), request.address.hostPort());
         bytesInFlight += request.size;
         reqsInFlight += 1;
 
-        Map<String, Long> sizeMap = request.blocks.stream()
-                                                  .collect(Collectors.toMap(e -> e._1().toString(), Tuple2::_2));
+        // 发送请求时才创建BlockId
+        Map<String, Long> sizeMap = Maps.newHashMapWithExpectedSize(numBlocks);
+        String[] blockIds = new String[numBlocks];
+        for (int i = 0; i < numBlocks; ++i) {
+            blockIds[i] = request.blockId(i).toString();
+            sizeMap.put(blockIds[i], request.blockSize(i));
+        }
         Set<String> remainingBlocks = Sets.newHashSet(sizeMap.keySet());
-        List<String> blockIds = request.blocks.stream().map(t -> t._1().toString()).collect(Collectors.toList());
         BlockManagerId address = request.address;
 
         BlockFetchingListener blockFetchingListener = new BlockFetchingListener() {
@@ -296,13 +399,13 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
             shuffleClient.fetchBlocks(address.host,
                                       address.port,
                                       address.executorId,
-                                      blockIds.toArray(new String[blockIds.size()]),
+                                      blockIds,
                                       blockFetchingListener, this);
         } else {
             shuffleClient.fetchBlocks(address.host,
                                       address.port,
                                       address.executorId,
-                                      blockIds.toArray(new String[blockIds.size()]),
+                                      blockIds,
                                       blockFetchingListener, null);
         }
     }
@@ -310,7 +413,7 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
     private void send(BlockManagerId remoteAddress, FetchRequest request) {
         sendRequest(request);
         int fetchBlocks = numBlocksInFlightPerAddress.getOrDefault(remoteAddress, 0);
-        fetchBlocks += request.blocks.size();
+        fetchBlocks += request.numBlocks();
         numBlocksInFlightPerAddress.put(remoteAddress, fetchBlocks);
     }
 
@@ -322,7 +425,7 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
     }
 
     private boolean isRemoteAddressMaxedOut(BlockManagerId blockManagerId, FetchRequest request) {
-        return numBlocksInFlightPerAddress.getOrDefault(blockManagerId, 0) + request.blocks.size() > maxBlocksInFlightPerAddress;
+        return numBlocksInFlightPerAddress.getOrDefault(blockManagerId, 0) + request.numBlocks() > maxBlocksInFlightPerAddress;
     }
 
     private void fetchUpToMaxBytes() {
@@ -333,7 +436,7 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
                         !isRemoteAddressMaxedOut(remoteAddress, defQueue.peek())) {
                     FetchRequest request = defQueue.poll();
                     LOGGER.debug("Processing deferred fetch request for {} with {} blocks",
-                                 remoteAddress, request.blocks.size());
+                                 remoteAddress, request.numBlocks());
                     send(remoteAddress, request);
                 }
                 if (defQueue.isEmpty()) {
@@ -346,7 +449,7 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
             FetchRequest request = fetchRequests.poll();
             BlockManagerId address = request.address;
             if (isRemoteAddressMaxedOut(address, request)) {
-                LOGGER.debug("Deferring fetch request for {} with {} blocks", address, request.blocks.size());
+                LOGGER.debug("Deferring fetch request for {} with {} blocks", address, request.numBlocks());
                 Queue<FetchRequest> defReqQueue = deferredFetchRequests.get(address);
                 if (defReqQueue == null) {
                     defReqQueue = new LinkedBlockingQueue<>();
@@ -535,9 +638,14 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
         return new Tuple2<>(currentResult.blockId, new BufferReleasingInputStream(input, this));
     }
 
-    private class FetchRequest implements Serializable {
+    static class FetchRequest implements Serializable {
         BlockManagerId address;
+        // 数据块及其大小(blockSizes == null时使用)
         List<Tuple2<BlockId, Long>> blocks;
+        // 数据块为blockSizes下标区间[start, end)
+        MapSizesByExecutor blockSizes;
+        int start;
+        int end;
 
         long size;
 
@@ -551,9 +659,35 @@ public class ShuffleBlockFetcherIterator implements TempShuffleFileManager, Iter
                             List<Tuple2<BlockId, Long>> blocks) {
             this.address = address;
             this.blocks = blocks;
+            this.start = 0;
+            this.end = blocks.size();
 
             size = blocks.stream().map(Tuple2::_2).reduce((t1, t2) -> t1 + t2).get();
         }
+
+        /**
+         * A request to fetch blocks [start, end) of {@link MapSizesByExecutor} from a remote BlockManager.
+         * @param size total size of the blocks, used to calculate bytesInFlight.
+         * */
+        FetchRequest(BlockManagerId address, MapSizesByExecutor blockSizes, int start, int end, long size) {
+            this.address = address;
+            this.blockSizes = blockSizes;
+            this.start = start;
+            this.end = end;
+            this.size = size;
+        }
+
+        int numBlocks() {
+            return end - start;
+        }
+
+        BlockId blockId(int i) {
+            return blockSizes == null ? blocks.get(i)._1() : blockSizes.blockId(start + i);
+        }
+
+        long blockSize(int i) {
+            return blockSizes == null ? blocks.get(i)._2() : blockSizes.size(start + i);
+        }
     }
 
     /**
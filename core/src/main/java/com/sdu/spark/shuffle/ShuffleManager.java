@@ -22,7 +22,7 @@ public interface ShuffleManager {
                                          int mapId,
                                          TaskContext context);
     /**
-     * Get a reader for a range of reduce partitions (startPartition to endPartition-1, inclusive).
+     * Get a reader for a range of reduce partitions [startPartition, endPartition] (both inclusive).
      * Called on executors by reduce tasks.
      */
     <K, V> ShuffleReader<K, V> getReader(ShuffleHandle handle,
@@ -30,6 +30,18 @@ public interface ShuffleManager {
                                          int endPartition,
                                          TaskContext context);
 
+    /**
+     * Get a reader for a range of reduce partitions [startPartition, endPartition] (both inclusive) that
+     * only reads the output of map tasks [startMapIndex, endMapIndex), used to split a skewed reduce
+     * partition across several tasks.
+     */
+    <K, V> ShuffleReader<K, V> getReader(ShuffleHandle handle,
+                                         int startMapIndex,
+                                         int endMapIndex,
+                                         int startPartition,
+                                         int endPartition,
+                                         TaskContext context);
+
     /**
      * Remove a shuffle's metadata from the ShuffleManager.
      * @return true if the metadata removed successfully, otherwise false.
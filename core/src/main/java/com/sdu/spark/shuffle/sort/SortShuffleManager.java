@@ -117,6 +117,24 @@ public class SortShuffleManager implements ShuffleManager {
         );
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, C> ShuffleReader<K, C> getReader(ShuffleHandle handle,
+                                                int startMapIndex,
+                                                int endMapIndex,
+                                                int startPartition,
+                                                int endPartition,
+                                                TaskContext context) {
+        return new BlockStoreShuffleReader<>(
+                (BaseShuffleHandle<K, Object, C>)handle,
+                startMapIndex,
+                endMapIndex,
+                startPartition,
+                endPartition,
+                context
+        );
+    }
+
     @Override
     public boolean unregisterShuffle(int shuffleId) {
         int numMaps = numMapsForShuffle.remove(shuffleId);
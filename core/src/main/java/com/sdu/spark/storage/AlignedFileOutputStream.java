@@ -0,0 +1,281 @@
+package com.sdu.spark.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link AlignedFileOutputStream}以FileChannel追加写文件:
+ *
+ *  1: 数据先写入堆外缓冲区, 缓冲区满时以一次FileChannel.write写入, 减少系统调用及小块写
+ *
+ *  2: directIO = true且JDK提供ExtendedOpenOption.DIRECT(JDK 10+)时以O_DIRECT打开文件, 数据不经过PageCache,
+ *
+ *     避免Spill/Shuffle大文件写挤出PageCache中的热数据(如Shuffle Index文件). O_DIRECT要求缓冲区地址、偏移及长度
+ *
+ *     按4KB对齐: 缓冲区由ByteBuffer.alignedSlice(JDK 9+)对齐; flush时不足4KB的尾部数据补零后同样经O_DIRECT写入,
+ *
+ *     尾部数据保留在缓冲区中, 下次写入时覆盖补零部分, close时截断到实际长度(同一文件的读写均经O_DIRECT, 不与PageCache混用)
+ *
+ * Note: 非线程安全
+ *
+ * @author hanhan.zhang
+ * */
+public class AlignedFileOutputStream extends OutputStream implements WritableByteChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlignedFileOutputStream.class);
+
+    private static final int ALIGNMENT = 4096;
+    private static final OpenOption DIRECT_OPEN_OPTION = directOpenOption();
+    private static final MethodHandle ALIGNED_SLICE = alignedSliceMethod();
+    private static final MethodHandle INVOKE_CLEANER = invokeCleanerMethod();
+
+    private final boolean directIO;
+    private final FileChannel channel;
+
+    private final ByteBuffer rawBuffer;
+    private final ByteBuffer buffer;
+    // buffer[0]对应的文件偏移(directIO时按ALIGNMENT对齐)
+    private long bufferFileOffset;
+    private boolean closed = false;
+
+    public AlignedFileOutputStream(File file, int bufferSize, boolean directIO) throws IOException {
+        FileChannel directChannel = directIO ? openDirect(file) : null;
+        this.directIO = directChannel != null;
+        this.channel = this.directIO ? directChannel : FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                                                        StandardOpenOption.WRITE, StandardOpenOption.READ);
+
+        int capacity = Math.max(ALIGNMENT, (bufferSize + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+        if (this.directIO) {
+            this.rawBuffer = ByteBuffer.allocateDirect(capacity + ALIGNMENT - 1);
+            this.buffer = alignedSlice(rawBuffer, capacity);
+        } else {
+            this.rawBuffer = ByteBuffer.allocateDirect(capacity);
+            this.buffer = rawBuffer;
+        }
+
+        // 追加写: O_DIRECT时从对齐偏移开始, 已有尾部数据读入缓冲区
+        long size = channel.size();
+        this.bufferFileOffset = this.directIO ? size / ALIGNMENT * ALIGNMENT : size;
+        while (bufferFileOffset + buffer.position() < size) {
+            if (channel.read(buffer, bufferFileOffset + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    public static boolean isDirectIOSupported() {
+        return DIRECT_OPEN_OPTION != null && ALIGNED_SLICE != null;
+    }
+
+    public boolean isDirectIO() {
+        return directIO;
+    }
+
+    /**
+     * 已写入(含缓冲区)的逻辑文件长度
+     * */
+    public long position() {
+        return bufferFileOffset + buffer.position();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            writeBuffer();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buffer.hasRemaining()) {
+                writeBuffer();
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int written = src.remaining();
+        while (src.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                writeBuffer();
+            }
+            int n = Math.min(src.remaining(), buffer.remaining());
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + n);
+            buffer.put(slice);
+            src.position(src.position() + n);
+        }
+        return written;
+    }
+
+    /**
+     * 缓冲区数据写入文件(数据对PageCache或磁盘可见), 不保证落盘
+     * */
+    @Override
+    public void flush() throws IOException {
+        int length = buffer.position();
+        if (length == 0) {
+            return;
+        }
+        if (!directIO) {
+            buffer.flip();
+            writeFully(channel, buffer, bufferFileOffset);
+            bufferFileOffset += length;
+            buffer.clear();
+            return;
+        }
+        // 尾部数据补零到对齐长度后写入, 缓冲区保留尾部数据
+        int alignedLength = length / ALIGNMENT * ALIGNMENT;
+        int paddedLength = (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        ByteBuffer padded = buffer.duplicate();
+        while (padded.position() < paddedLength) {
+            padded.put((byte) 0);
+        }
+        padded.flip();
+        writeFully(channel, padded, bufferFileOffset);
+        bufferFileOffset += alignedLength;
+        buffer.flip();
+        buffer.position(alignedLength);
+        buffer.compact();
+    }
+
+    /**
+     * flush并将文件数据落盘(fsync)
+     * */
+    public void sync() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            if (channel.size() > position()) {
+                channel.truncate(position());
+            }
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                dispose(rawBuffer);
+            }
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        // 缓冲区已满, 长度为ALIGNMENT整数倍
+        buffer.flip();
+        writeFully(channel, buffer, bufferFileOffset);
+        bufferFileOffset += buffer.limit();
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    private static FileChannel openDirect(File file) {
+        if (!isDirectIOSupported()) {
+            LOGGER.debug("O_DIRECT is not supported by current JDK, write {} through page cache", file);
+            return null;
+        }
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                    StandardOpenOption.READ, DIRECT_OPEN_OPTION);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Failed to open {} with O_DIRECT, write through page cache", file, e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer alignedSlice(ByteBuffer rawBuffer, int capacity) {
+        try {
+            ByteBuffer aligned = (ByteBuffer) ALIGNED_SLICE.invoke(rawBuffer, ALIGNMENT);
+            aligned.limit(capacity);
+            return aligned.slice();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to align direct buffer", e);
+        }
+    }
+
+    /**
+     * JDK 9+不再导出sun.nio.ch.DirectBuffer, 经Unsafe.invokeCleaner释放堆外内存
+     * */
+    private static void dispose(ByteBuffer rawBuffer) {
+        if (INVOKE_CLEANER == null) {
+            StorageUtils.dispose(rawBuffer);
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(rawBuffer);
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to dispose direct buffer", e);
+        }
+    }
+
+    private static MethodHandle invokeCleanerMethod() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            // JDK 9+
+            return MethodHandles.publicLookup().findVirtual(unsafeClass, "invokeCleaner",
+                                                            MethodType.methodType(void.class, ByteBuffer.class))
+                                .bindTo(unsafeField.get(null));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle alignedSliceMethod() {
+        try {
+            // JDK 9+
+            return MethodHandles.publicLookup().findVirtual(ByteBuffer.class, "alignedSlice",
+                                                            MethodType.methodType(ByteBuffer.class, int.class));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static OpenOption directOpenOption() {
+        try {
+            Class<? extends Enum> clazz = (Class<? extends Enum>) Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            return (OpenOption) Enum.valueOf(clazz, "DIRECT");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
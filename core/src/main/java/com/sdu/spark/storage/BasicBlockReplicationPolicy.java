@@ -1,16 +1,104 @@
 package com.sdu.spark.storage;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
+import static com.sdu.spark.storage.RandomBlockReplicationPolicy.getRandomSample;
+
 /**
+ * {@link BasicBlockReplicationPolicy}机架感知副本策略(拓扑信息由{@link TopologyMapper}提供):
+ *
+ *  1: 第一个副本放置在同机架的其他Host(已有同机架副本则跳过)
+ *
+ *  2: 第二个副本放置在其他机架(已有跨机架副本则跳过)
+ *
+ *  3: 其余副本随机放置, 优先选择未放置副本的Host(可用Host不足时才允许同Host)
+ *
+ * 当前BlockManager无拓扑信息时退化为随机策略
+ *
  * @author hanhan.zhang
  * */
 public class BasicBlockReplicationPolicy implements BlockReplicationPolicy {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BasicBlockReplicationPolicy.class);
+
     @Override
-    public List<BlockManagerId> prioritize(BlockInfoManager blockInfoManager,
-                                           Set<BlockManagerId> peers, BlockId blockId, int numReplicas) {
-        return null;
+    public List<BlockManagerId> prioritize(BlockManagerId blockManagerId, Set<BlockManagerId> peers,
+                                           Set<BlockManagerId> peersReplicatedTo, BlockId blockId, int numReplicas) {
+        Random random = new Random(blockId.hashCode());
+        LOGGER.debug("Input peers : {}", StringUtils.join(peers, ", "));
+        if (peers.isEmpty() || numReplicas <= 0) {
+            return Collections.emptyList();
+        }
+
+        String topology = topologyOf(blockManagerId);
+        if (topology == null) {
+            return getRandomSample(Lists.newArrayList(peers), numReplicas, random);
+        }
+
+        boolean doneWithinRack = peersReplicatedTo.stream().anyMatch(p -> topology.equals(topologyOf(p)));
+        boolean doneOutsideRack = peersReplicatedTo.stream().anyMatch(p -> topologyOf(p) != null
+                                                                           && !topology.equals(topologyOf(p)));
+
+        // 同Host副本不能容忍节点故障
+        Set<String> usedHosts = Sets.newHashSet(blockManagerId.host);
+        peersReplicatedTo.forEach(p -> usedHosts.add(p.host));
+
+        List<BlockManagerId> inRackPeers = Lists.newArrayList();
+        List<BlockManagerId> outOfRackPeers = Lists.newArrayList();
+        for (BlockManagerId peer : peers) {
+            if (usedHosts.contains(peer.host)) {
+                continue;
+            }
+            if (topology.equals(topologyOf(peer))) {
+                inRackPeers.add(peer);
+            } else {
+                outOfRackPeers.add(peer);
+            }
+        }
+
+        List<BlockManagerId> priorityPeers = Lists.newArrayListWithCapacity(numReplicas);
+        if (!doneWithinRack && !inRackPeers.isEmpty()) {
+            priorityPeers.add(inRackPeers.get(random.nextInt(inRackPeers.size())));
+        }
+        if (!doneOutsideRack && priorityPeers.size() < numReplicas && !outOfRackPeers.isEmpty()) {
+            priorityPeers.add(outOfRackPeers.get(random.nextInt(outOfRackPeers.size())));
+        }
+        priorityPeers.forEach(p -> usedHosts.add(p.host));
+
+        if (priorityPeers.size() < numReplicas) {
+            List<BlockManagerId> remainingPeers = Lists.newArrayList(peers);
+            remainingPeers.removeAll(priorityPeers);
+            // 随机顺序遍历, 每个Host最多选择一个副本
+            List<BlockManagerId> sameHostPeers = Lists.newArrayList();
+            for (BlockManagerId peer : getRandomSample(remainingPeers, remainingPeers.size(), random)) {
+                if (priorityPeers.size() >= numReplicas) {
+                    break;
+                }
+                if (usedHosts.add(peer.host)) {
+                    priorityPeers.add(peer);
+                } else {
+                    sameHostPeers.add(peer);
+                }
+            }
+            int numRemainingPeers = numReplicas - priorityPeers.size();
+            if (numRemainingPeers > 0) {
+                priorityPeers.addAll(sameHostPeers.subList(0, Math.min(numRemainingPeers, sameHostPeers.size())));
+            }
+        }
+        LOGGER.debug("Prioritized peers : {}", StringUtils.join(priorityPeers, ", "));
+        return priorityPeers;
+    }
+
+    private static String topologyOf(BlockManagerId id) {
+        return StringUtils.isEmpty(id.topologyInfo) ? null : id.topologyInfo;
     }
 }
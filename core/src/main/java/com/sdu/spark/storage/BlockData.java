@@ -73,9 +73,14 @@ public interface BlockData {
             return buffer.size();
         }
 
+        /**
+         * shouldDispose = false时buffer归MemoryStore所有(如OFF_HEAP Block), 只能由MemoryStore在remove时释放
+         * */
         @Override
         public void dispose() {
-            buffer.dispose();
+            if (shouldDispose) {
+                buffer.dispose();
+            }
         }
     }
 }
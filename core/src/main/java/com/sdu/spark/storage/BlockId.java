@@ -70,7 +70,7 @@ public abstract class BlockId implements Serializable {
         m = BROADCAST.matcher(id);
         if (m.find()) {
             return new BroadcastBlockId(NumberUtils.toLong(m.group(1)),
-                                        m.group(2));
+                                        StringUtils.removeStart(m.group(2), "_"));
         }
 
         m = TASKRESULT.matcher(id);
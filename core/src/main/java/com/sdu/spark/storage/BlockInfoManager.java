@@ -5,6 +5,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.sdu.spark.SparkException;
+import com.sdu.spark.TaskContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,8 +50,8 @@ public class BlockInfoManager {
     }
 
     public long currentTaskAttemptId() {
-        // TODO:
-        throw new UnsupportedOperationException("");
+        TaskContext context = TaskContext.get();
+        return context != null ? context.taskAttemptId() : BlockInfo.NON_TASK_WRITER;
     }
 
     /**
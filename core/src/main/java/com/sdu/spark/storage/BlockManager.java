@@ -1,5 +1,6 @@
 package com.sdu.spark.storage;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.sdu.spark.MapOutputTracker;
 import com.sdu.spark.SecurityManager;
@@ -22,6 +23,7 @@ import com.sdu.spark.serializer.SerializerManager;
 import com.sdu.spark.shuffle.ShuffleManager;
 import com.sdu.spark.storage.BlockData.Allocator;
 import com.sdu.spark.storage.BlockData.ByteBufferBlockData;
+import com.sdu.spark.storage.BlockId.BroadcastBlockId;
 import com.sdu.spark.storage.BlockManagerInfo.BlockStatus;
 import com.sdu.spark.storage.memory.BlockEvictionHandler;
 import com.sdu.spark.storage.memory.MemoryStore;
@@ -31,6 +33,7 @@ import com.sdu.spark.utils.IdGenerator;
 import com.sdu.spark.utils.scala.Either;
 import com.sdu.spark.utils.scala.Left;
 import com.sdu.spark.utils.scala.Right;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,8 +44,11 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 import static com.sdu.spark.network.netty.SparkTransportConf.fromSparkConf;
@@ -88,6 +94,8 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
     private long maxFailuresBeforeLocationRefresh;
 
     private RpcEndpointRef slaveEndpoint;
+    // RDD Block状态异步批量汇报(spark.storage.blockStatusReport.async = false时为null)
+    private BlockStatusReporter blockStatusReporter;
 
     private BlockInfoManager blockInfoManager;
 
@@ -99,6 +107,9 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
     public MemoryStore memoryStore;
 
     private BlockReplicationPolicy blockReplicationPolicy;
+    // 流水线副本复制: 源节点只上传至第一个副本节点, 副本节点依次转发
+    private boolean pipelineReplication;
+    private DiskWriteOptions diskWriteOptions;
     private volatile Set<BlockManagerId> cachedPeers;
     private final Object peerFetchLock = new Object();
     private long lastPeerFetchTime = 0L;
@@ -146,6 +157,7 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
 
         // Block数据块实际存储位置
         this.diskStore = new DiskStore(conf, this.diskBlockManager, securityManager);
+        this.diskWriteOptions = DiskWriteOptions.fromConf(conf);
         this.memoryStore = new MemoryStore(conf, this.blockInfoManager, serializerManager, memoryManager, this);
         // Block分配内存容量
         this.maxOnHeapMemory = memoryManager.maxOnHeapStorageMemory();
@@ -186,6 +198,7 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
         } catch (Exception e) {
             throw new SparkException("initialize block replication policy failure", e);
         }
+        this.pipelineReplication = conf.getBoolean("spark.storage.replication.pipeline", false);
 
         // 初始化Block存储地址信息及向BlockManagerMasterEndpoint注册BlockManagerId
         // Executor或Driver进程启动的BlockManager
@@ -193,6 +206,10 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
         BlockManagerId idFromMaster = master.registerBlockManager(id, maxOnHeapMemory, maxOffHeapMemory, slaveEndpoint);
         this.blockManagerId = idFromMaster == null ? id : idFromMaster;
 
+        if (conf.getBoolean("spark.storage.blockStatusReport.async", true)) {
+            this.blockStatusReporter = new BlockStatusReporter(master, blockManagerId, conf, this::asyncReregister);
+        }
+
         // 初始化Shuffle Block外部存储服务地址并注册
         if (externalShuffleServiceEnabled) {
             LOGGER.info("external shuffle service port = {}", externalShuffleServicePort);
@@ -203,9 +220,30 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
         if (externalShuffleServiceEnabled && !blockManagerId.isDriver()) {
             registerWithExternalShuffleServer();
         }
+        if (!externalShuffleServiceEnabled && !blockManagerId.isDriver()
+                && blockTransferService.warmUpConnections() > 0) {
+            warmUpPeerConnections();
+        }
         LOGGER.info("Initialized BlockManager: {}", blockManagerId);
     }
 
+    /**
+     * Executor注册后异步预建到其他Executor的Shuffle连接(由spark.shuffle.io.warmUpConnections控制), 避免Stage开始时
+     *
+     * 大量Reducer同时在关键路径上建立连接
+     * */
+    private void warmUpPeerConnections() {
+        futureExecutionContext.submit(() -> {
+            try {
+                for (BlockManagerId peer : getPeers(false)) {
+                    blockTransferService.warmUp(peer.host, peer.port);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Failed to warm up connections to peers", e);
+            }
+        });
+    }
+
     private void registerWithExternalShuffleServer() {
         LOGGER.info("Registering executor with local external shuffle service.");
         String[] localDirPath = new String[diskBlockManager.localDirs.length];
@@ -287,7 +325,61 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
 
     @Override
     public boolean putBlockData(BlockId blockId, ManagedBuffer data, StorageLevel level) {
-        return false;
+        try {
+            return putBytes(blockId, new ChunkedByteBuffer(data.nioByteBuffer()), level);
+        } catch (IOException e) {
+            throw new SparkException("put block " + blockId + " failure", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<BlockManagerId[]> putBlockDataAndForward(BlockId blockId, ManagedBuffer data,
+                                                                      StorageLevel level, BlockManagerId[] downstream) {
+        // 本地写入后转发, 转发结果以Future串联(不阻塞futureExecutionContext线程等待下游节点); 上传建立连接会阻塞,
+        // 始终在futureExecutionContext中转发, 不在调用方(RPC处理线程)或Netty EventLoop线程中转发
+        return CompletableFuture.supplyAsync(() -> putBlockData(blockId, data, level), futureExecutionContext)
+                .thenComposeAsync(putSucceeded -> forwardInPipeline(blockId, downstream, 0, (next, rest) ->
+                        blockTransferService.uploadBlockPipeline(next.host, next.port, next.executorId,
+                                                                 blockId, data, level, rest), futureExecutionContext)
+                        .thenApply(replicated -> {
+                            List<BlockManagerId> stored = Lists.newArrayListWithCapacity(replicated.length + 1);
+                            if (putSucceeded) {
+                                stored.add(blockManagerId);
+                            }
+                            stored.addAll(Arrays.asList(replicated));
+                            return stored.toArray(new BlockManagerId[stored.size()]);
+                        }), futureExecutionContext);
+    }
+
+    /**
+     * 将数据块转发给downstream[index], 失败则跳过该节点转发给后续节点
+     *
+     * @param upload 上传数据块到下一节点: (下一节点, 下一节点需继续转发的节点) -> 存储数据块的节点
+     * @param executor 转发失败后在executor中转发给后续节点(上传失败通常在Netty EventLoop线程回调, 建立连接会阻塞EventLoop)
+     * @return 下游存储数据块的节点
+     * */
+    static CompletableFuture<BlockManagerId[]> forwardInPipeline(BlockId blockId, BlockManagerId[] downstream, int index,
+                                                                 BiFunction<BlockManagerId, BlockManagerId[], CompletableFuture<BlockManagerId[]>> upload,
+                                                                 Executor executor) {
+        if (index >= downstream.length) {
+            return CompletableFuture.completedFuture(new BlockManagerId[0]);
+        }
+        BlockManagerId next = downstream[index];
+        BlockManagerId[] rest = Arrays.copyOfRange(downstream, index + 1, downstream.length);
+        CompletableFuture<BlockManagerId[]> uploaded;
+        try {
+            uploaded = upload.apply(next, rest);
+        } catch (Exception e) {
+            uploaded = new CompletableFuture<>();
+            uploaded.completeExceptionally(e);
+        }
+        return uploaded.handleAsync((replicated, cause) -> {
+            if (cause == null) {
+                return CompletableFuture.completedFuture(replicated);
+            }
+            LOGGER.warn("Failed to forward {} to {} in replication pipeline", blockId, next, cause);
+            return forwardInPipeline(blockId, downstream, index + 1, upload, executor);
+        }, executor).thenCompose(future -> future);
     }
 
     public void registerTask(long taskAttemptId) {
@@ -300,6 +392,12 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
     }
 
     private void reportBlockStatus(BlockId blockId, BlockStatus status, long droppedMemorySize) {
+        // RDD Block数量多且Master只用于定位缓存, 可异步合并汇报; Broadcast/TaskResult等Block需立即对其他节点可见
+        if (blockStatusReporter != null && blockId.isRDD()) {
+            blockStatusReporter.report(blockId, status.storageLevel,
+                                       Math.max(status.memorySize, droppedMemorySize), status.diskSize);
+            return;
+        }
         boolean needReregister = !tryToReportBlockStatus(blockId, status, droppedMemorySize);
         if (needReregister) {
             LOGGER.info("Got told to re-register updating block {}", blockId);
@@ -349,13 +447,19 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
         return new BlockStatus(storageLevel, memSize, diskSize);
     }
 
-    private BlockData getLocalBytes(BlockId blockId) {
+    /**
+     * 读取本地Block数据, Block不存在返回null; 返回时持有Block读锁, 调用方负责释放
+     * */
+    public BlockData getLocalBytes(BlockId blockId) {
         LOGGER.debug("Getting local block {} as bytes", blockId);
         if (blockId.isShuffle()) {
             // TODO: Shuffle Manager负责Block数据获取
             throw new UnsupportedOperationException("");
         } else {
             BlockInfo blockInfo = blockInfoManager.lockForReading(blockId);
+            if (blockInfo == null) {
+                return null;
+            }
             return doGetLocalBytes(blockId, blockInfo);
         }
     }
@@ -428,8 +532,48 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
         throw new SparkException("Block " + blockId + " was not found even though it's read-locked");
     }
 
+    /**
+     * 由BlockManagerMaster定位Block后依次尝试拉取(同Host优先, 其余随机), 均失败返回null
+     * */
     public ChunkedByteBuffer getRemoteBytes(BlockId blockId) {
-        throw new UnsupportedOperationException("");
+        LOGGER.debug("Getting remote block {}", blockId);
+        for (BlockManagerId location : sortLocations(master.getLocations(blockId))) {
+            LOGGER.debug("Getting remote block {} from {}", blockId, location);
+            try {
+                ManagedBuffer data = blockTransferService.fetchBlockSync(location.host, location.port,
+                                                                         location.executorId, blockId.name());
+                if (data != null) {
+                    return new ChunkedByteBuffer(data.nioByteBuffer());
+                }
+                LOGGER.warn("Failed to fetch remote block {} from {}", blockId, location);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to fetch remote block {} from {}", blockId, location, e);
+            }
+        }
+        LOGGER.debug("Block {} not found", blockId);
+        return null;
+    }
+
+    private List<BlockManagerId> sortLocations(BlockManagerId[] locations) {
+        List<BlockManagerId> sorted = Lists.newArrayList();
+        if (locations == null) {
+            return sorted;
+        }
+        List<BlockManagerId> shuffled = Lists.newArrayList(locations);
+        Collections.shuffle(shuffled);
+        List<BlockManagerId> otherHosts = Lists.newArrayList();
+        for (BlockManagerId location : shuffled) {
+            if (location.equals(blockManagerId)) {
+                continue;
+            }
+            if (blockManagerId != null && location.host.equals(blockManagerId.host)) {
+                sorted.add(location);
+            } else {
+                otherHosts.add(location);
+            }
+        }
+        sorted.addAll(otherHosts);
+        return sorted;
     }
 
     public DiskBlockObjectWriter getDiskWriter(BlockId blockId,
@@ -443,7 +587,8 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
                 serializerInstance,
                 bufferSize,
                 syncWrites,
-                blockId
+                blockId,
+                diskWriteOptions
         );
     }
 
@@ -458,6 +603,9 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
     }
 
     public void stop() {
+        if (blockStatusReporter != null) {
+            blockStatusReporter.stop();
+        }
         diskBlockManager.stop();
     }
 
@@ -492,18 +640,11 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
                 } else {
                     MemoryMode memoryMode = level.memoryMode();
                     putSucceeded = memoryStore.putBytes(blockId, bytes.size(), memoryMode, size -> {
-                        boolean exist = false;
-                        for (int i = 0; i < bytes.chunks.length; ++i) {
-                           if (!bytes.chunks[i].isDirect()) {
-                               exist = true;
-                               break;
-                           }
+                        // OFF_HEAP: 堆内数据拷贝至Platform分配的直接内存, 由MemoryStore.remove()时释放
+                        if (memoryMode == MemoryMode.OFF_HEAP && !bytes.isDirect()) {
+                            return bytes.copy(Platform::allocateDirectBuffer);
                         }
-                       if (memoryMode == MemoryMode.OFF_HEAP && exist) {
-                           return bytes.copy(Platform::allocateDirectBuffer);
-                       } else {
-                           return bytes;
-                       }
+                        return bytes;
                     });
                 }
 
@@ -569,17 +710,52 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
 
         // Block副本存储地址
         Set<BlockManagerId> initialPeers = getPeers(false).stream()
-                                                          .filter(existingReplicas::contains)
+                                                          .filter(p -> !existingReplicas.contains(p))
                                                           .collect(Collectors.toSet());
 
         // 根据副本地址选择策略, 选择可存储副本的BlockManager
         List<BlockManagerId> peersForReplication = blockReplicationPolicy.prioritize(
-                blockInfoManager,
+                blockManagerId,
                 initialPeers,
+                peersReplicatedTo,
                 blockId,
-                numPeersToReplicateTo
+                numPeersToReplicateTo - peersReplicatedTo.size()
         );
 
+        if (pipelineReplication && peersForReplication.size() > 1) {
+            // 流水线复制: 源节点只上传一份, 由副本节点逐个转发, 避免源节点网卡成为瓶颈
+            BlockManagerId head = peersForReplication.get(0);
+            List<BlockManagerId> downstream = peersForReplication.subList(1, peersForReplication.size());
+            try {
+                long startTime = System.currentTimeMillis();
+                BlockManagerId[] replicated = blockTransferService.uploadBlockPipeline(
+                        head.host,
+                        head.port,
+                        head.executorId,
+                        blockId,
+                        new BlockManagerManagedBuffer(blockInfoManager, blockId, blockData, false),
+                        tLevel,
+                        downstream.toArray(new BlockManagerId[downstream.size()])
+                ).get();
+                peersReplicatedTo.addAll(Arrays.asList(replicated));
+                LOGGER.trace("Replicated {} of {} bytes to {} in pipeline in {} ms", blockId, blockData.size(),
+                             StringUtils.join(replicated, ", "), System.currentTimeMillis() - startTime);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to replicate {} in pipeline starting at {}, failure {}", blockId, head, numFailures, e);
+                peersFailedToReplicateTo.add(head);
+                numFailures++;
+            }
+
+            // 流水线未完成的副本逐个上传
+            Set<BlockManagerId> filterPeers = initialPeers.stream().filter(p ->
+                    !peersFailedToReplicateTo.contains(p) && !peersReplicatedTo.contains(p)
+            ).collect(Collectors.toSet());
+            peersForReplication = peersReplicatedTo.size() < numPeersToReplicateTo
+                    ? blockReplicationPolicy.prioritize(blockManagerId, filterPeers, peersReplicatedTo, blockId,
+                                                        numPeersToReplicateTo - peersReplicatedTo.size())
+                    : Collections.emptyList();
+        }
+
         Iterator<BlockManagerId> iterator = peersForReplication.iterator();
         while (iterator.hasNext() && numFailures <= maxReplicationFailures &&
                 peersReplicatedTo.size() < numPeersToReplicateTo) {
@@ -594,7 +770,7 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
                         blockId,
                         new BlockManagerManagedBuffer(blockInfoManager, blockId, blockData, false),
                         tLevel
-                );
+                ).get();
                 peersReplicatedTo.add(peer);
 
                 LOGGER.trace("Replicated {} of {} bytes to {} in {} ms",
@@ -610,8 +786,9 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
 
                 numFailures++;
                 peersForReplication = blockReplicationPolicy.prioritize(
-                        blockInfoManager,
+                        blockManagerId,
                         filterPeers,
+                        peersReplicatedTo,
                         blockId,
                         numPeersToReplicateTo - peersReplicatedTo.size()
                 );
@@ -668,10 +845,10 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
         removeBlock(blockId, true);
     }
 
-    private void removeBlock(BlockId blockId, boolean tellMaster) {
+    public void removeBlock(BlockId blockId, boolean tellMaster) {
         LOGGER.debug("remove blockId {}", blockId);
         BlockInfo blockInfo = blockInfoManager.lockForWriting(blockId);
-        if (blockInfo != null) {
+        if (blockInfo == null) {
             LOGGER.warn("Asked to remove block {}, which does not exist", blockId);
             return;
         }
@@ -679,6 +856,43 @@ public class BlockManager implements BlockDataManager, BlockEvictionHandler {
         // TODO: Block Metric
     }
 
+    /**
+     * 删除RDD所有Block, 返回删除Block数
+     * */
+    public int removeRdd(int rddId) {
+        LOGGER.info("Removing RDD {}", rddId);
+        List<BlockId> blocksToRemove = Lists.newLinkedList();
+        synchronized (blockInfoManager) {
+            for (Map.Entry<BlockId, BlockInfo> entry : blockInfoManager.entries()) {
+                BlockId blockId = entry.getKey();
+                if (blockId.isRDD() && blockId.asRDDId().rddId == rddId) {
+                    blocksToRemove.add(blockId);
+                }
+            }
+        }
+        // Master已删除RDD Block信息, 无需汇报
+        blocksToRemove.forEach(blockId -> removeBlock(blockId, false));
+        return blocksToRemove.size();
+    }
+
+    /**
+     * 删除Broadcast所有Block, 返回删除Block数
+     * */
+    public int removeBroadcast(long broadcastId, boolean tellMaster) {
+        LOGGER.debug("Removing broadcast {}", broadcastId);
+        List<BlockId> blocksToRemove = Lists.newLinkedList();
+        synchronized (blockInfoManager) {
+            for (Map.Entry<BlockId, BlockInfo> entry : blockInfoManager.entries()) {
+                BlockId blockId = entry.getKey();
+                if (blockId.isBroadcast() && ((BroadcastBlockId) blockId).broadcastId == broadcastId) {
+                    blocksToRemove.add(blockId);
+                }
+            }
+        }
+        blocksToRemove.forEach(blockId -> removeBlock(blockId, tellMaster));
+        return blocksToRemove.size();
+    }
+
     private void removeBlockInternal(BlockId blockId, boolean tellMaster) {
         boolean removedFromMemory = memoryStore.remove(blockId);
         boolean removedFromDisk = diskStore.remove(blockId);
@@ -10,6 +10,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.sdu.spark.utils.RpcUtils.getRpcAskTimeout;
 
@@ -86,6 +88,17 @@ public class BlockManagerMaster {
         }
     }
 
+    public boolean updateBlockInfos(UpdateBlockInfos updateBlockInfos) {
+        try {
+            boolean res = (boolean) driverEndpoint.askSync(updateBlockInfos);
+            LOGGER.debug("Updated info of {} blocks", updateBlockInfos.size());
+            return res;
+        } catch (Exception e) {
+            throw new SparkException(String.format("update blockInfo failure, host = %s, blocks = %d",
+                    updateBlockInfos.blockManagerId.hostPort(), updateBlockInfos.size()), e);
+        }
+    }
+
     public BlockManagerId[] getLocations(BlockId blockId) {
         try {
             return (BlockManagerId[]) driverEndpoint.askSync(new GetLocations(blockId));
@@ -135,8 +148,24 @@ public class BlockManagerMaster {
         }
     }
 
+    /**
+     * 删除RDD所有Block(BlockManagerMasterEndpoint仅通知存储该RDD Block的BlockManager)
+     * */
     public void removeRdd(int rddId, boolean blocking) {
-
+        try {
+            CompletableFuture<Integer> future = (CompletableFuture<Integer>) driverEndpoint.askSync(new RemoveRdd(rddId));
+            future.whenComplete((removed, cause) -> {
+                if (cause != null) {
+                    LOGGER.warn("Failed to remove RDD {} - {}", rddId, cause.getMessage(), cause);
+                }
+            });
+            if (blocking) {
+                int removed = future.get(timeout, TimeUnit.MILLISECONDS);
+                LOGGER.info("Removed {} blocks of RDD {}", removed, rddId);
+            }
+        } catch (Exception e) {
+            throw new SparkException("remove rdd " + rddId + " failure", e);
+        }
     }
 
     public void removeShuffle(int shuffleId, boolean blocking) {
@@ -144,7 +173,21 @@ public class BlockManagerMaster {
     }
 
     public void removeBroadcast(long broadcastId, boolean removeFromMaster, boolean blocking) {
-
+        try {
+            CompletableFuture<Integer> future = (CompletableFuture<Integer>) driverEndpoint.askSync(
+                    new RemoveBroadcast(broadcastId, removeFromMaster));
+            future.whenComplete((removed, cause) -> {
+                if (cause != null) {
+                    LOGGER.warn("Failed to remove broadcast {} with removeFromMaster = {} - {}",
+                                broadcastId, removeFromMaster, cause.getMessage(), cause);
+                }
+            });
+            if (blocking) {
+                future.get(timeout, TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            throw new SparkException("remove broadcast " + broadcastId + " failure", e);
+        }
     }
 
     public Map<BlockManagerId, Pair<Long, Long>> getMemoryStatus() {
@@ -1,25 +1,31 @@
 package com.sdu.spark.storage;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.sdu.spark.SparkException;
 import com.sdu.spark.rpc.*;
 import com.sdu.spark.scheduler.LiveListenerBus;
 import com.sdu.spark.scheduler.SparkListenerEvent.SparkListenerBlockManagerAdded;
 import com.sdu.spark.scheduler.SparkListenerEvent.SparkListenerBlockManagerRemoved;
+import com.sdu.spark.storage.BlockId.BroadcastBlockId;
 import com.sdu.spark.storage.BlockManagerMessages.*;
 import com.sdu.spark.utils.ThreadUtils;
+import com.sdu.spark.utils.colleciton.PrimitiveKeyOpenHashMap;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
 
 import static com.sdu.spark.utils.Utils.bytesToString;
+import static com.sdu.spark.utils.Utils.classForName;
 
 /**
  *
@@ -43,7 +49,14 @@ import static com.sdu.spark.utils.Utils.bytesToString;
  *
  * 3: Block数据块存储信息
  *
- * todo: {@link TopologyMapper} 作用
+ *    除blockLocations外, 维护按rddId/broadcastId索引的BlockId集合(Executor维度即BlockManagerInfo.blocks()),
+ *
+ *    RemoveRdd/RemoveBroadcast/RemoveExecutor的代价与涉及的Block数成正比, 而非集群Block总数
+ *
+ * 4: BlockManager注册时由{@link TopologyMapper}('spark.storage.replication.topologyMapper')确定其拓扑信息(如机架),
+ *
+ *    BlockManagerId.topologyInfo供{@link BlockReplicationPolicy}选择副本地址
+ *
  * todo: {@link #removeBlockManager(BlockManagerId)} 副本的删除
  *
  * @author hanhan.zhang
@@ -51,6 +64,7 @@ import static com.sdu.spark.utils.Utils.bytesToString;
 public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BlockManagerMasterEndpoint.class);
+    private static final BlockManagerId[] EMPTY_LOCATIONS = new BlockManagerId[0];
 
     private boolean isLocal;
     private SparkConf conf;
@@ -60,6 +74,12 @@ public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
     private Map<String, BlockManagerId> blockManagerIdByExecutor;
     // Block数据可能会有副本
     private Map<BlockId, Set<BlockManagerId>> blockLocations;
+    // 二级索引: key = rddId/broadcastId, value = 集群中存在的该RDD/Broadcast的BlockId
+    private PrimitiveKeyOpenHashMap<Set<BlockId>> rddBlockIds;
+    private PrimitiveKeyOpenHashMap<Set<BlockId>> broadcastBlockIds;
+    // 已删除的RDD, 删除后(异步)汇报的该RDD Block需通知BlockManager删除
+    // 只保留最近删除的spark.storage.maxRemovedRddIds个RDD(RDD标识递增, 更早删除的RDD不会再有延迟汇报)
+    private Set<Integer> removedRddIds;
 
     private ThreadPoolExecutor askThreadPool;
     private boolean proactivelyReplicate;
@@ -76,6 +96,16 @@ public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
         this.blockManagerInfo = Maps.newHashMap();
         this.blockManagerIdByExecutor = Maps.newHashMap();
         this.blockLocations = Maps.newHashMap();
+        this.topologyMapper = createTopologyMapper(conf);
+        this.rddBlockIds = new PrimitiveKeyOpenHashMap<>();
+        this.broadcastBlockIds = new PrimitiveKeyOpenHashMap<>();
+        int maxRemovedRddIds = conf.getInt("spark.storage.maxRemovedRddIds", 10000);
+        this.removedRddIds = Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > maxRemovedRddIds;
+            }
+        });
 
         this.askThreadPool = ThreadUtils.newDaemonCachedThreadPool("block-manager-ask-thread-pool");
         this.proactivelyReplicate = conf.getBoolean("spark.storage.replication.proactive", false);
@@ -89,6 +119,9 @@ public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
         } else if (msg instanceof UpdateBlockInfo) {
             boolean result = updateBlockInfo((UpdateBlockInfo) msg);
             context.reply(result);
+        } else if (msg instanceof UpdateBlockInfos) {
+            boolean result = updateBlockInfos((UpdateBlockInfos) msg);
+            context.reply(result);
         } else if (msg instanceof GetLocations) {
             BlockManagerId[] locations = getLocation(((GetLocations) msg).blockId);
             context.reply(locations);
@@ -110,11 +143,12 @@ public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
         } else if (msg instanceof GetMatchingBlockIds) {
 
         } else if (msg instanceof RemoveRdd) {
-
+            context.reply(removeRdd(((RemoveRdd) msg).rddId));
         } else if (msg instanceof RemoveShuffle) {
 
         } else if (msg instanceof RemoveBroadcast) {
-
+            RemoveBroadcast removeBroadcast = (RemoveBroadcast) msg;
+            context.reply(removeBroadcast(removeBroadcast.broadcastId, removeBroadcast.removeFromDriver));
         } else if (msg instanceof RemoveBlock) {
 
         } else if (msg instanceof RemoveExecutor) {
@@ -129,6 +163,19 @@ public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
         }
     }
 
+    private static TopologyMapper createTopologyMapper(SparkConf conf) {
+        String topologyMapperClassName = conf.get("spark.storage.replication.topologyMapper",
+                                                  DefaultTopologyMapper.class.getName());
+        try {
+            Class<?> clazz = classForName(topologyMapperClassName);
+            TopologyMapper mapper = (TopologyMapper) clazz.getConstructor(SparkConf.class).newInstance(conf);
+            LOGGER.info("Using {} for getting topology information", topologyMapperClassName);
+            return mapper;
+        } catch (Exception e) {
+            throw new SparkException("initialize topology mapper " + topologyMapperClassName + " failure", e);
+        }
+    }
+
     private BlockManagerId register(RegisterBlockManager manager) {
         BlockManagerId id = BlockManagerId.apply(manager.blockManagerId.executorId,
                                                              manager.blockManagerId.host,
@@ -172,37 +219,225 @@ public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
             managerInfo.updateLastSeenMs();
             return true;
         }
-        managerInfo.updateBlockInfo(updateBlockInfo.blockId, updateBlockInfo.storageLevel,
-                                    updateBlockInfo.memSize, updateBlockInfo.diskSize);
+        doUpdateBlockInfo(managerInfo, updateBlockInfo.blockManagerId, updateBlockInfo.blockId,
+                          updateBlockInfo.storageLevel, updateBlockInfo.memSize, updateBlockInfo.diskSize);
+        return true;
+    }
+
+    /**
+     * 批量更新同一BlockManager的Block状态, BlockManagerInfo只需查找一次
+     * */
+    private boolean updateBlockInfos(UpdateBlockInfos updateBlockInfos) {
+        BlockManagerInfo managerInfo = blockManagerInfo.get(updateBlockInfos.blockManagerId);
+        if (managerInfo == null) {
+            return updateBlockInfos.blockManagerId.isDriver() && !isLocal;
+        }
+
+        for (int i = 0; i < updateBlockInfos.size(); ++i) {
+            doUpdateBlockInfo(managerInfo, updateBlockInfos.blockManagerId, updateBlockInfos.blockIds[i],
+                              updateBlockInfos.storageLevels[i], updateBlockInfos.memSizes[i],
+                              updateBlockInfos.diskSizes[i]);
+        }
+        managerInfo.updateLastSeenMs();
+        return true;
+    }
+
+    private void doUpdateBlockInfo(BlockManagerInfo managerInfo, BlockManagerId blockManagerId, BlockId blockId,
+                                   StorageLevel storageLevel, long memSize, long diskSize) {
+        managerInfo.updateBlockInfo(blockId, storageLevel, memSize, diskSize);
+
+        if (storageLevel.isValid() && blockId.isRDD() && removedRddIds.contains(blockId.asRDDId().rddId)) {
+            // RDD已删除后才汇报的Block(异步汇报延迟), 通知BlockManager删除
+            managerInfo.removeBlock(blockId);
+            managerInfo.slaveEndpoint.ask(new RemoveBlock(blockId));
+            return;
+        }
 
         // 更新数据块存储地址信息
-        Set<BlockManagerId> locations = blockLocations.get(updateBlockInfo.blockId);
+        Set<BlockManagerId> locations = blockLocations.get(blockId);
         if (locations == null) {
             locations = Sets.newHashSet();
-            blockLocations.put(updateBlockInfo.blockId, locations);
+            blockLocations.put(blockId, locations);
+            addToIndex(blockId);
         }
-        if (updateBlockInfo.storageLevel.isValid()) {
-            locations.add(updateBlockInfo.blockManagerId);
+        if (storageLevel.isValid()) {
+            locations.add(blockManagerId);
         } else {
-            locations.remove(updateBlockInfo.blockManagerId);
+            locations.remove(blockManagerId);
         }
         // Remove the block from master tracking if it has been removed on all slaves.
         if (locations.size() == 0) {
-            blockLocations.remove(updateBlockInfo.blockId);
+            blockLocations.remove(blockId);
+            removeFromIndex(blockId);
         }
+    }
 
-        return true;
+    private PrimitiveKeyOpenHashMap<Set<BlockId>> indexOf(BlockId blockId) {
+        if (blockId.isRDD()) {
+            return rddBlockIds;
+        } else if (blockId.isBroadcast()) {
+            return broadcastBlockIds;
+        }
+        return null;
+    }
+
+    private static long indexKey(BlockId blockId) {
+        return blockId.isRDD() ? blockId.asRDDId().rddId : ((BroadcastBlockId) blockId).broadcastId;
+    }
+
+    private void addToIndex(BlockId blockId) {
+        PrimitiveKeyOpenHashMap<Set<BlockId>> index = indexOf(blockId);
+        if (index != null) {
+            index.computeIfAbsent(indexKey(blockId), key -> Sets.newHashSet()).add(blockId);
+        }
+    }
+
+    private void removeFromIndex(BlockId blockId) {
+        PrimitiveKeyOpenHashMap<Set<BlockId>> index = indexOf(blockId);
+        if (index == null) {
+            return;
+        }
+        long key = indexKey(blockId);
+        Set<BlockId> blockIds = index.get(key);
+        if (blockIds != null) {
+            blockIds.remove(blockId);
+            if (blockIds.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 从Master移除Block信息, 返回存储这些Block的BlockManager
+     * */
+    private Set<BlockManagerId> removeBlocksFromMaster(Set<BlockId> blockIds) {
+        Set<BlockManagerId> holders = Sets.newHashSet();
+        for (BlockId blockId : blockIds) {
+            Set<BlockManagerId> locations = blockLocations.remove(blockId);
+            if (locations == null) {
+                continue;
+            }
+            for (BlockManagerId id : locations) {
+                BlockManagerInfo managerInfo = blockManagerInfo.get(id);
+                if (managerInfo != null) {
+                    managerInfo.removeBlock(blockId);
+                }
+                holders.add(id);
+            }
+        }
+        return holders;
+    }
+
+    private CompletableFuture<Integer> removeRdd(int rddId) {
+        removedRddIds.add(rddId);
+        Set<BlockId> blockIds = rddBlockIds.remove(rddId);
+        if (blockIds == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        // 仅通知存储该RDD Block的BlockManager
+        return askSlaves(removeBlocksFromMaster(blockIds), new RemoveRdd(rddId));
+    }
+
+    private CompletableFuture<Integer> removeBroadcast(long broadcastId, boolean removeFromDriver) {
+        Set<BlockId> blockIds = broadcastBlockIds.get(broadcastId);
+        if (blockIds == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        Set<BlockId> toRemove = blockIds;
+        if (!removeFromDriver) {
+            // Driver上的Broadcast Block保留
+            toRemove = Sets.newHashSet();
+            for (BlockId blockId : blockIds) {
+                Set<BlockManagerId> locations = blockLocations.get(blockId);
+                if (locations != null && locations.stream().anyMatch(id -> !id.isDriver())) {
+                    toRemove.add(blockId);
+                }
+            }
+        }
+
+        Set<BlockManagerId> holders = Sets.newHashSet();
+        for (BlockId blockId : toRemove) {
+            Set<BlockManagerId> locations = blockLocations.get(blockId);
+            if (locations == null) {
+                continue;
+            }
+            Iterator<BlockManagerId> iterator = locations.iterator();
+            while (iterator.hasNext()) {
+                BlockManagerId id = iterator.next();
+                if (id.isDriver() && !removeFromDriver) {
+                    continue;
+                }
+                BlockManagerInfo managerInfo = blockManagerInfo.get(id);
+                if (managerInfo != null) {
+                    managerInfo.removeBlock(blockId);
+                }
+                iterator.remove();
+                holders.add(id);
+            }
+        }
+        for (BlockId blockId : Lists.newArrayList(toRemove)) {
+            Set<BlockManagerId> locations = blockLocations.get(blockId);
+            if (locations != null && locations.isEmpty()) {
+                blockLocations.remove(blockId);
+                removeFromIndex(blockId);
+            }
+        }
+        return askSlaves(holders, new RemoveBroadcast(broadcastId, removeFromDriver));
+    }
+
+    private CompletableFuture<Integer> askSlaves(Set<BlockManagerId> holders, ToBlockManagerSlave message) {
+        List<CompletableFuture<Integer>> futures = Lists.newArrayListWithCapacity(holders.size());
+        for (BlockManagerId id : holders) {
+            BlockManagerInfo managerInfo = blockManagerInfo.get(id);
+            if (managerInfo != null) {
+                futures.add(managerInfo.slaveEndpoint.ask(message));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenApply(v -> {
+            int removed = 0;
+            for (CompletableFuture<Integer> future : futures) {
+                removed += future.join();
+            }
+            return removed;
+        });
+    }
+
+    @VisibleForTesting
+    Set<BlockId> rddBlockIds(int rddId) {
+        Set<BlockId> blockIds = rddBlockIds.get(rddId);
+        return blockIds == null ? Collections.emptySet() : Sets.newHashSet(blockIds);
+    }
+
+    @VisibleForTesting
+    Set<BlockId> broadcastBlockIds(long broadcastId) {
+        Set<BlockId> blockIds = broadcastBlockIds.get(broadcastId);
+        return blockIds == null ? Collections.emptySet() : Sets.newHashSet(blockIds);
     }
 
     private BlockManagerId[] getLocation(BlockId blockId) {
         Set<BlockManagerId> locations = blockLocations.get(blockId);
-        return locations == null ? new BlockManagerId[0]
+        return locations == null ? EMPTY_LOCATIONS
                                  : locations.toArray(new BlockManagerId[locations.size()]);
     }
 
     private BlockManagerId[][] getLocationsMultipleBlockIds(BlockId[] blockIds) {
         // 一个分区对应一个BlockId
         BlockManagerId[][] locations = new BlockManagerId[blockIds.length][];
+        if (blockIds.length > 0 && blockIds[0].isRDD() && !rddBlockIds.containsKey(blockIds[0].asRDDId().rddId)) {
+            // DAGScheduler.getCacheLocs()查询同一RDD全部分区, RDD无缓存Block时无需逐个查询
+            boolean sameRdd = true;
+            int rddId = blockIds[0].asRDDId().rddId;
+            for (BlockId blockId : blockIds) {
+                if (!blockId.isRDD() || blockId.asRDDId().rddId != rddId) {
+                    sameRdd = false;
+                    break;
+                }
+            }
+            if (sameRdd) {
+                Arrays.fill(locations, EMPTY_LOCATIONS);
+                return locations;
+            }
+        }
         for (int i = 0; i < blockIds.length; ++i) {
             locations[i] = getLocation(blockIds[i]);
         }
@@ -252,17 +487,24 @@ public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
         // 移除BlockManager同时, 移除存在Executor上Block存储数据
         BlockManagerInfo info = blockManagerInfo.remove(blockManagerId);
         blockManagerIdByExecutor.remove(blockManagerId.executorId);
+        if (info == null) {
+            return;
+        }
 
-        // 移除数据块信息
+        // 移除数据块信息(只遍历该BlockManager存储的Block)
         Iterator<BlockId> iterator = info.blocks().keySet().iterator();
         while (iterator.hasNext()) {
             BlockId blockId = iterator.next();
             Set<BlockManagerId> locations = blockLocations.get(blockId);
+            if (locations == null) {
+                continue;
+            }
             locations.remove(blockManagerId);
 
             if (locations.size() == 0) {
                 // Block数据只存储在blockManagerId中(没有数据副本)
                 blockLocations.remove(blockId);
+                removeFromIndex(blockId);
                 LOGGER.info("No more replicas available for {} !", blockId);
             } else if (proactivelyReplicate && blockId.isRDD()) {
                 int maxReplicas = locations.size() + 1;
@@ -283,10 +525,10 @@ public class BlockManagerMasterEndpoint extends ThreadSafeRpcEndpoint {
                     managerInfo.slaveEndpoint.ask(new ReplicateBlock(blockId, replicas, maxReplicas));
                 }
             }
-
-            listenerBus.post(new SparkListenerBlockManagerRemoved(System.currentTimeMillis(), blockManagerId));
-            LOGGER.info("Removing block manager {}", blockManagerId);
         }
+
+        listenerBus.post(new SparkListenerBlockManagerRemoved(System.currentTimeMillis(), blockManagerId));
+        LOGGER.info("Removing block manager {}", blockManagerId);
     }
 
     /**
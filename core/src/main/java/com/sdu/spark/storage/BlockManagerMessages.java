@@ -127,6 +127,28 @@ public interface BlockManagerMessages extends Serializable{
         }
     }
 
+    // 批量汇报Block状态(由BlockStatusReporter合并同一BlockManager的多次UpdateBlockInfo)
+    class UpdateBlockInfos implements ToBlockManagerMaster {
+        public BlockManagerId blockManagerId;
+        public BlockId[] blockIds;
+        public StorageLevel[] storageLevels;
+        public long[] memSizes;
+        public long[] diskSizes;
+
+        public UpdateBlockInfos(BlockManagerId blockManagerId, BlockId[] blockIds, StorageLevel[] storageLevels,
+                                long[] memSizes, long[] diskSizes) {
+            this.blockManagerId = blockManagerId;
+            this.blockIds = blockIds;
+            this.storageLevels = storageLevels;
+            this.memSizes = memSizes;
+            this.diskSizes = diskSizes;
+        }
+
+        public int size() {
+            return blockIds.length;
+        }
+    }
+
     class GetLocations implements ToBlockManagerMaster {
         public BlockId blockId;
 
@@ -1,22 +1,77 @@
 package com.sdu.spark.storage;
 
 import com.sdu.spark.MapOutputTracker;
+import com.sdu.spark.rpc.RpcCallContext;
 import com.sdu.spark.rpc.RpcEnv;
 import com.sdu.spark.rpc.ThreadSafeRpcEndpoint;
+import com.sdu.spark.storage.BlockManagerMessages.*;
+import com.sdu.spark.utils.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
+ * {@link BlockManagerSlaveEndpoint}处理BlockManagerMaster下发的Block删除请求
+ *
+ * Note:
+ *
+ *  删除Block/RDD/Broadcast需删除本地数据块(可能涉及磁盘IO), 在异步线程池执行, 不阻塞Dispatcher线程
  *
  * @author hanhan.zhang
  * */
 public class BlockManagerSlaveEndpoint extends ThreadSafeRpcEndpoint {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockManagerSlaveEndpoint.class);
+
     private BlockManager blockManager;
     private MapOutputTracker mapOutputTracker;
 
+    private final ThreadPoolExecutor asyncThreadPool =
+            ThreadUtils.newDaemonCachedThreadPool("block-manager-slave-async-thread-pool", 100, 60);
+
     public BlockManagerSlaveEndpoint(RpcEnv rpcEnv, BlockManager blockManager,
                                      MapOutputTracker mapOutputTracker) {
         super(rpcEnv);
         this.blockManager = blockManager;
         this.mapOutputTracker = mapOutputTracker;
     }
+
+    @Override
+    public void receiveAndReply(Object msg, RpcCallContext context) {
+        if (msg instanceof RemoveBlock) {
+            BlockId blockId = ((RemoveBlock) msg).blockId;
+            doAsync("removing block " + blockId, context, () -> {
+                blockManager.removeBlock(blockId, true);
+                return true;
+            });
+        } else if (msg instanceof RemoveRdd) {
+            int rddId = ((RemoveRdd) msg).rddId;
+            doAsync("removing RDD " + rddId, context, () -> blockManager.removeRdd(rddId));
+        } else if (msg instanceof RemoveBroadcast) {
+            RemoveBroadcast removeBroadcast = (RemoveBroadcast) msg;
+            doAsync("removing broadcast " + removeBroadcast.broadcastId, context,
+                    () -> blockManager.removeBroadcast(removeBroadcast.broadcastId, true));
+        }
+    }
+
+    private <T> void doAsync(String actionMessage, RpcCallContext context, Callable<T> body) {
+        asyncThreadPool.execute(() -> {
+            try {
+                LOGGER.debug(actionMessage);
+                T response = body.call();
+                LOGGER.debug("Done {}, response is {}", actionMessage, response);
+                context.reply(response);
+            } catch (Throwable t) {
+                LOGGER.error("Error in {}", actionMessage, t);
+                context.sendFailure(t);
+            }
+        });
+    }
+
+    @Override
+    public void onStop() {
+        asyncThreadPool.shutdownNow();
+    }
 }
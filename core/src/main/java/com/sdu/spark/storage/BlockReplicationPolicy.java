@@ -13,9 +13,12 @@ public interface BlockReplicationPolicy {
 
 
     /**
+     * @param blockManagerId : 当前BlockManager(Block源节点)
      * @param peers : Block副本可存放地址集合
+     * @param peersReplicatedTo : 已存储Block副本的地址集合
      * @param numReplicas : 存放副本数
+     * @return 按优先级排序的副本地址
      * */
-    List<BlockManagerId> prioritize(BlockInfoManager blockInfoManager, Set<BlockManagerId> peers,
-                                    BlockId blockId, int numReplicas);
+    List<BlockManagerId> prioritize(BlockManagerId blockManagerId, Set<BlockManagerId> peers,
+                                    Set<BlockManagerId> peersReplicatedTo, BlockId blockId, int numReplicas);
 }
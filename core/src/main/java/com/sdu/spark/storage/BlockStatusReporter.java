@@ -0,0 +1,160 @@
+package com.sdu.spark.storage;
+
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.storage.BlockManagerMessages.UpdateBlockInfos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.sdu.spark.utils.ThreadUtils.newDaemonSingleThreadScheduledExecutor;
+
+/**
+ * {@link BlockStatusReporter}职责:
+ *
+ * 1: 合并BlockManager向BlockManagerMasterEndpoint汇报的Block状态, 同一Block多次汇报只保留最新状态
+ *
+ * 2: 每隔'spark.storage.blockStatusReport.interval'将待汇报状态以{@link UpdateBlockInfos}批量发送,
+ *
+ *    待汇报Block数达到'spark.storage.blockStatusReport.maxBatchSize'时立即发送
+ *
+ * Note:
+ *
+ *  1': 汇报由单线程串行发送, 故Master收到的同一Block状态顺序与汇报顺序一致, BlockManagerInfo最终一致
+ *
+ *  2': Master返回false(BlockManager未注册)时, 由reregister回调重新注册并全量汇报Block
+ *
+ * @author hanhan.zhang
+ * */
+public class BlockStatusReporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockStatusReporter.class);
+
+    private final BlockManagerMaster master;
+    private final BlockManagerId blockManagerId;
+    private final Runnable reregister;
+
+    private final long reportIntervalMs;
+    private final int maxBatchSize;
+
+    // key = BlockId, value = 待汇报的最新Block状态(guarded by this)
+    private LinkedHashMap<BlockId, PendingBlockStatus> pendingStatus = new LinkedHashMap<>();
+    private boolean flushRequested = false;
+
+    private final ScheduledExecutorService reportThread;
+
+    public BlockStatusReporter(BlockManagerMaster master, BlockManagerId blockManagerId,
+                               SparkConf conf, Runnable reregister) {
+        this.master = master;
+        this.blockManagerId = blockManagerId;
+        this.reregister = reregister;
+
+        this.reportIntervalMs = conf.getTimeAsMs("spark.storage.blockStatusReport.interval", "10ms");
+        this.maxBatchSize = conf.getInt("spark.storage.blockStatusReport.maxBatchSize", 1024);
+
+        this.reportThread = newDaemonSingleThreadScheduledExecutor("block-status-reporter");
+        this.reportThread.scheduleWithFixedDelay(this::flush, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void report(BlockId blockId, StorageLevel storageLevel, long memSize, long diskSize) {
+        synchronized (this) {
+            // 覆盖尚未发送的旧状态
+            pendingStatus.remove(blockId);
+            pendingStatus.put(blockId, new PendingBlockStatus(storageLevel, memSize, diskSize));
+            if (pendingStatus.size() < maxBatchSize || flushRequested) {
+                return;
+            }
+            flushRequested = true;
+        }
+        try {
+            reportThread.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Block status reporter stopped, {} blocks not reported", numPendingBlocks());
+        }
+    }
+
+    public synchronized int numPendingBlocks() {
+        return pendingStatus.size();
+    }
+
+    private void flush() {
+        LinkedHashMap<BlockId, PendingBlockStatus> toReport;
+        synchronized (this) {
+            flushRequested = false;
+            if (pendingStatus.isEmpty()) {
+                return;
+            }
+            toReport = pendingStatus;
+            pendingStatus = new LinkedHashMap<>();
+        }
+
+        int size = toReport.size();
+        BlockId[] blockIds = new BlockId[size];
+        StorageLevel[] storageLevels = new StorageLevel[size];
+        long[] memSizes = new long[size];
+        long[] diskSizes = new long[size];
+        int i = 0;
+        for (Map.Entry<BlockId, PendingBlockStatus> entry : toReport.entrySet()) {
+            blockIds[i] = entry.getKey();
+            storageLevels[i] = entry.getValue().storageLevel;
+            memSizes[i] = entry.getValue().memSize;
+            diskSizes[i] = entry.getValue().diskSize;
+            ++i;
+        }
+
+        try {
+            boolean registered = master.updateBlockInfos(new UpdateBlockInfos(blockManagerId, blockIds,
+                                                                              storageLevels, memSizes, diskSizes));
+            if (!registered) {
+                LOGGER.info("Got told to re-register updating {} blocks", size);
+                reregister.run();
+            }
+            LOGGER.debug("Told master about {} blocks", size);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to report {} blocks to master, will retry", size, e);
+            synchronized (this) {
+                // 发送失败重新入队, 但不能覆盖失败期间产生的新状态
+                LinkedHashMap<BlockId, PendingBlockStatus> retry = new LinkedHashMap<>(toReport);
+                retry.keySet().removeAll(pendingStatus.keySet());
+                retry.putAll(pendingStatus);
+                pendingStatus = retry;
+            }
+        }
+    }
+
+    /**
+     * 先由汇报线程发送剩余Block状态(与定时汇报串行, 保证汇报顺序), 再关闭汇报线程
+     * */
+    public void stop() {
+        try {
+            reportThread.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            // 已停止
+            return;
+        }
+        reportThread.shutdown();
+        try {
+            if (!reportThread.awaitTermination(Math.max(reportIntervalMs * 10, 10000L), TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Timed out waiting for block status reporter to flush {} blocks", numPendingBlocks());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class PendingBlockStatus {
+        StorageLevel storageLevel;
+        long memSize;
+        long diskSize;
+
+        PendingBlockStatus(StorageLevel storageLevel, long memSize, long diskSize) {
+            this.storageLevel = storageLevel;
+            this.memSize = memSize;
+            this.diskSize = diskSize;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.sdu.spark.storage;
+
+import com.sdu.spark.rpc.SparkConf;
+
+/**
+ * {@link DefaultTopologyMapper}不提供拓扑信息, 所有BlockManager视为同一拓扑
+ *
+ * @author hanhan.zhang
+ * */
+public class DefaultTopologyMapper implements TopologyMapper {
+
+    public DefaultTopologyMapper(SparkConf conf) {
+
+    }
+
+    @Override
+    public String getTopologyForHost(String hostname) {
+        return null;
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.sdu.spark.storage;
 
 import com.sdu.spark.SparkException;
+import com.sdu.spark.TaskContext;
 import com.sdu.spark.serializer.SerializationStream;
 import com.sdu.spark.serializer.SerializerInstance;
 import com.sdu.spark.serializer.SerializerManager;
@@ -11,6 +12,14 @@ import java.io.*;
 import java.nio.channels.FileChannel;
 
 /**
+ * {@link DiskBlockObjectWriter}追加写文件, 每次commit生成一个{@link FileSegment}
+ *
+ *  1: 默认经FileOutputStream写文件, DiskWriteOptions.alignedWrite开启时经{@link AlignedFileOutputStream}写对齐大块数据
+ *
+ *  2: syncWrites开启时每次commit执行fsync, DiskWriteOptions.syncPerTask开启时fsync推迟至Writer关闭或Task结束(每个文件一次),
+ *
+ *     fsync经Writer已打开的文件句柄执行, 不重新打开文件
+ *
  * @author hanhan.zhang
  * */
 public class DiskBlockObjectWriter extends OutputStream {
@@ -23,17 +32,23 @@ public class DiskBlockObjectWriter extends OutputStream {
     private int bufferSize;
     private boolean syncWrites;
     private BlockId blockId;
+    private DiskWriteOptions writeOptions;
     // TODO: Shuffle Metric
 
     private FileChannel channel;
     private ManualCloseBufferedOutputStream mcs;
     private OutputStream bs;
     private FileOutputStream fos;
+    private AlignedFileOutputStream afs;
     private TimeTrackingOutputStream ts;
     private SerializationStream objOut;
     private boolean initialized = false;
     private boolean streamOpen = false;
     private boolean hasBeenClosed = false;
+    // Task结束时fsync是否已注册
+    private boolean syncRegistered = false;
+    // syncPerTask: 已commit但尚未fsync
+    private boolean syncPending = false;
 
     private long committedPosition;
     private long reportedPosition;
@@ -67,24 +82,80 @@ public class DiskBlockObjectWriter extends OutputStream {
                                  int bufferSize,
                                  boolean syncWrites,
                                  BlockId blockId) {
+        this(file, serializerManager, serializerInstance, bufferSize, syncWrites, blockId, DiskWriteOptions.DEFAULT);
+    }
+
+    public DiskBlockObjectWriter(File file,
+                                 SerializerManager serializerManager,
+                                 SerializerInstance serializerInstance,
+                                 int bufferSize,
+                                 boolean syncWrites,
+                                 BlockId blockId,
+                                 DiskWriteOptions writeOptions) {
         this.file = file;
         this.serializerManager = serializerManager;
         this.serializerInstance = serializerInstance;
         this.bufferSize = bufferSize;
         this.syncWrites = syncWrites;
         this.blockId = blockId;
+        this.writeOptions = writeOptions;
 
         this.committedPosition = file.length();
         this.reportedPosition = committedPosition;
     }
 
     private void initialize() throws IOException {
-        fos = new FileOutputStream(file);
-        channel = fos.getChannel();
-        ts = new TimeTrackingOutputStream(fos);
+        if (writeOptions.alignedWrite) {
+            afs = new AlignedFileOutputStream(file, writeOptions.alignedWriteBufferSize, writeOptions.directIO);
+            ts = new TimeTrackingOutputStream(afs);
+        } else {
+            fos = new FileOutputStream(file, true);
+            channel = fos.getChannel();
+            ts = new TimeTrackingOutputStream(fos);
+        }
         mcs = new ManualCloseBufferedOutputStream(ts, bufferSize);
     }
 
+    private long filePosition() throws IOException {
+        return afs != null ? afs.position() : channel.position();
+    }
+
+    private void sync() throws IOException {
+        TaskContext context = TaskContext.get();
+        if (writeOptions.syncPerTask && context != null) {
+            // 每个文件只在Writer关闭或Task结束时fsync一次
+            syncPending = true;
+            if (!syncRegistered) {
+                syncRegistered = true;
+                context.addTaskCompletionListener(taskContext -> {
+                    try {
+                        syncPendingWrites();
+                    } catch (IOException e) {
+                        throw new SparkException("sync file " + file + " failure", e);
+                    }
+                });
+            }
+        } else {
+            forceFile();
+        }
+    }
+
+    private void syncPendingWrites() throws IOException {
+        if (syncPending && initialized) {
+            mcs.flush();
+            forceFile();
+        }
+        syncPending = false;
+    }
+
+    private void forceFile() throws IOException {
+        if (afs != null) {
+            afs.sync();
+        } else {
+            fos.getFD().sync();
+        }
+    }
+
     private DiskBlockObjectWriter open() throws IOException {
         if (hasBeenClosed) {
             throw new IllegalStateException("Writer already closed. Can't be reopened.");
@@ -101,8 +172,14 @@ public class DiskBlockObjectWriter extends OutputStream {
 
     private void closeResources() throws IOException {
         if (initialized) {
-            mcs.close();
+            try {
+                syncPendingWrites();
+                mcs.close();
+            } finally {
+                ts.close();
+            }
             channel = null;
+            afs = null;
             mcs = null;
             bs = null;
             fos = null;
@@ -124,11 +201,11 @@ public class DiskBlockObjectWriter extends OutputStream {
 
                 if (syncWrites) {
                     long start = System.nanoTime();
-                    fos.getFD().sync();
+                    sync();
                     // TODO: Shuffle Metric
                 }
 
-                long pos = channel.position();
+                long pos = filePosition();
                 FileSegment segment = new FileSegment(file, committedPosition, pos - committedPosition);
                 committedPosition = pos;
                 // TODO: Shuffle Metric
@@ -173,7 +250,7 @@ public class DiskBlockObjectWriter extends OutputStream {
     }
 
     private void updateBytesWritten() throws IOException {
-        long pos = channel.position();
+        long pos = filePosition();
 //        writeMetrics.incBytesWritten(pos - reportedPosition)
         reportedPosition = pos;
     }
@@ -16,6 +16,8 @@ import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.ConcurrentMap;
 
 /**
+ * DiskWriteOptions.alignedWrite开启时Block经{@link AlignedFileOutputStream}写入
+ *
  * todo: 文件读写安全验证
  *
  * @author hanhan.zhang
@@ -29,6 +31,7 @@ public class DiskStore {
     public SecurityManager securityManager;
 
     private long minMemoryMapBytes;
+    private DiskWriteOptions writeOptions;
     private ConcurrentMap<String, Long> blockSizes;
 
     public DiskStore(SparkConf conf, DiskBlockManager diskManager, SecurityManager securityManager) {
@@ -37,6 +40,7 @@ public class DiskStore {
         this.securityManager = securityManager;
 
         this.minMemoryMapBytes = conf.getSizeAsBytes("spark.storage.memoryMapThreshold", "2m");
+        this.writeOptions = DiskWriteOptions.fromConf(conf);
         this.blockSizes = Maps.newConcurrentMap();
     }
 
@@ -128,8 +132,12 @@ public class DiskStore {
 
     }
 
-    private WritableByteChannel openForWrite(File file) throws FileNotFoundException {
+    private WritableByteChannel openForWrite(File file) throws IOException {
         // TODO: 安全认证
+        if (writeOptions.alignedWrite) {
+            return new AlignedFileOutputStream(file, writeOptions.alignedWriteBufferSize,
+                                               writeOptions.directIO);
+        }
         return new FileOutputStream(file).getChannel();
     }
 
@@ -0,0 +1,42 @@
+package com.sdu.spark.storage;
+
+import com.sdu.spark.rpc.SparkConf;
+
+/**
+ * 磁盘写配置({@link DiskStore}及{@link DiskBlockObjectWriter}共用):
+ *
+ *  1: spark.storage.io.alignedWrite: 使用{@link AlignedFileOutputStream}经FileChannel写对齐的大块数据
+ *
+ *  2: spark.storage.io.alignedWrite.bufferSize: 对齐写缓冲区大小(按4KB对齐)
+ *
+ *  3: spark.storage.io.directIO: 对齐写时尝试以O_DIRECT打开文件绕过PageCache(JDK不支持时退化为普通写)
+ *
+ *  4: spark.shuffle.sync.perTask: spark.shuffle.sync开启时, fsync推迟至Task结束执行, 而非每次commit执行
+ *
+ * @author hanhan.zhang
+ * */
+public class DiskWriteOptions {
+
+    public static final DiskWriteOptions DEFAULT = new DiskWriteOptions(false, 1024 * 1024, false, false);
+
+    public final boolean alignedWrite;
+    public final int alignedWriteBufferSize;
+    public final boolean directIO;
+    public final boolean syncPerTask;
+
+    public DiskWriteOptions(boolean alignedWrite, int alignedWriteBufferSize, boolean directIO, boolean syncPerTask) {
+        this.alignedWrite = alignedWrite;
+        this.alignedWriteBufferSize = alignedWriteBufferSize;
+        this.directIO = directIO;
+        this.syncPerTask = syncPerTask;
+    }
+
+    public static DiskWriteOptions fromConf(SparkConf conf) {
+        return new DiskWriteOptions(
+                conf.getBoolean("spark.storage.io.alignedWrite", false),
+                (int) conf.getSizeAsBytes("spark.storage.io.alignedWrite.bufferSize", "1m"),
+                conf.getBoolean("spark.storage.io.directIO", false),
+                conf.getBoolean("spark.shuffle.sync.perTask", false)
+        );
+    }
+}
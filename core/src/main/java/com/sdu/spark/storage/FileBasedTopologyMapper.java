@@ -0,0 +1,64 @@
+package com.sdu.spark.storage;
+
+import com.sdu.spark.SparkException;
+import com.sdu.spark.rpc.SparkConf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * {@link FileBasedTopologyMapper}从本地文件加载Host与机架映射关系, 文件格式(Properties):
+ *
+ *  hostname1=/rack1
+ *
+ *  hostname2=/rack2
+ *
+ * 文件路径由'spark.storage.replication.topologyFile'配置, 文件中不存在的Host无拓扑信息
+ *
+ * @author hanhan.zhang
+ * */
+public class FileBasedTopologyMapper implements TopologyMapper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileBasedTopologyMapper.class);
+
+    private Properties topologyMap;
+
+    public FileBasedTopologyMapper(SparkConf conf) {
+        String topologyFile = conf.get("spark.storage.replication.topologyFile");
+        if (topologyFile == null) {
+            throw new SparkException("Please specify topology file via spark.storage.replication.topologyFile " +
+                                     "for FileBasedTopologyMapper");
+        }
+        this.topologyMap = loadTopologyFile(new File(topologyFile));
+        LOGGER.info("Loaded {} host topology entries from {}", topologyMap.size(), topologyFile);
+    }
+
+    @Override
+    public String getTopologyForHost(String hostname) {
+        String topology = topologyMap.getProperty(hostname);
+        if (topology == null) {
+            LOGGER.debug("{} does not have any topology information", hostname);
+        } else {
+            LOGGER.debug("Got topology information {} for {}", topology, hostname);
+        }
+        return topology;
+    }
+
+    private static Properties loadTopologyFile(File file) {
+        if (!file.isFile()) {
+            throw new SparkException("Topology file " + file.getAbsolutePath() + " does not exist");
+        }
+        Properties properties = new Properties();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            properties.load(inputStream);
+        } catch (IOException e) {
+            throw new SparkException("Failed to load topology file " + file.getAbsolutePath(), e);
+        }
+        return properties;
+    }
+}
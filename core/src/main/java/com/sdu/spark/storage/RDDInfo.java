@@ -4,6 +4,7 @@ import com.sdu.spark.rdd.RDD;
 import com.sdu.spark.rdd.RDDOperationScope;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author hanhan.zhang
@@ -45,7 +46,11 @@ public class RDDInfo implements Comparable<RDDInfo>{
     }
 
     public static RDDInfo fromRDD(RDD<?> rdd) {
-        throw new UnsupportedOperationException("");
+        List<Integer> parentIds = rdd.dependencies().stream()
+                                     .map(dep -> dep.rdd().id)
+                                     .collect(Collectors.toList());
+        return new RDDInfo(rdd.id, rdd.getClass().getSimpleName(), rdd.partitions().length, rdd.storageLevel,
+                           parentIds, rdd.creationSite.shortForm);
     }
 
     @Override
@@ -20,18 +20,18 @@ public class RandomBlockReplicationPolicy implements BlockReplicationPolicy {
     private static final Logger LOGGER = LoggerFactory.getLogger(RandomBlockReplicationPolicy.class);
 
     @Override
-    public List<BlockManagerId> prioritize(BlockInfoManager blockInfoManager,
-                                           Set<BlockManagerId> peers, BlockId blockId, int numReplicas) {
+    public List<BlockManagerId> prioritize(BlockManagerId blockManagerId, Set<BlockManagerId> peers,
+                                           Set<BlockManagerId> peersReplicatedTo, BlockId blockId, int numReplicas) {
         Random random = new Random(blockId.hashCode());
         LOGGER.debug("Input peers : {}", StringUtils.join(peers, ", "));
         return getRandomSample(Lists.newArrayList(peers), numReplicas, random);
     }
 
-    private static <T> List<T> getRandomSample(List<T> elems, int m, Random r) {
+    static <T> List<T> getRandomSample(List<T> elems, int m, Random r) {
         if (elems.size() > m) {
             return getSampleIds(elems.size(), m, r).stream().map(elems::get).collect(Collectors.toList());
         } else {
-            Collections.shuffle(elems);
+            Collections.shuffle(elems, r);
             return elems;
         }
     }
@@ -0,0 +1,22 @@
+package com.sdu.spark.storage;
+
+import java.io.Serializable;
+
+/**
+ * 流水线副本复制时随UploadBlock发送的元数据(替代StorageLevel):
+ *
+ *  接收节点以level存储Block后, 将Block转发给downstream[0], 并携带剩余的downstream
+ *
+ * @author hanhan.zhang
+ * */
+public class ReplicationPipeline implements Serializable {
+
+    public StorageLevel level;
+    // 下游副本节点(按转发顺序)
+    public BlockManagerId[] downstream;
+
+    public ReplicationPipeline(StorageLevel level, BlockManagerId[] downstream) {
+        this.level = level;
+        this.downstream = downstream;
+    }
+}
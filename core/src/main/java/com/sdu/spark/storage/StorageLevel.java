@@ -23,7 +23,10 @@ public enum  StorageLevel implements Externalizable {
     MEMORY_AND_DISK_2(true, true, false, true, 2),
     MEMORY_AND_DISK_SER(true, true, false, false, 1),
     MEMORY_AND_DISK_SER_2(true, true, false, false, 2),
-    OFF_HEAP(true, true, true, false, 1);
+    OFF_HEAP(true, true, true, false, 1),
+    // OFF_HEAP Block仅存在于堆外内存或已逐出到磁盘时的实际存储状态(汇报BlockStatus使用)
+    OFF_HEAP_MEMORY(false, true, true, false, 1),
+    OFF_HEAP_DISK(true, false, true, false, 1);
 
 
     public boolean useDisk;
@@ -43,7 +46,7 @@ public enum  StorageLevel implements Externalizable {
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-
+        out.writeUTF(name());
     }
 
     @Override
@@ -62,12 +65,27 @@ public enum  StorageLevel implements Externalizable {
     }
 
     public static StorageLevel apply(ObjectInput in) {
-        throw new UnsupportedOperationException("");
+        try {
+            return valueOf(in.readUTF());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public static StorageLevel apply(boolean useDisk, boolean useMemory, boolean useOffHeap,
                                      boolean deserialized, int replication) {
-        throw new UnsupportedOperationException("");
+        if (!useDisk && !useMemory) {
+            // Block已不在任何存储中
+            return NONE;
+        }
+        for (StorageLevel level : values()) {
+            if (level.useDisk == useDisk && level.useMemory == useMemory && level.useOffHeap == useOffHeap &&
+                    level.deserialized == deserialized && level.replication == replication) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported storage level: useDisk = %s, useMemory = %s, " +
+                "useOffHeap = %s, deserialized = %s, replication = %d", useDisk, useMemory, useOffHeap, deserialized, replication));
     }
 
 
@@ -15,9 +15,20 @@ public class StorageUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StorageUtils.class);
 
+    /**
+     * 释放DirectByteBuffer/MappedByteBuffer占用的堆外内存(不依赖GC回收)
+     *
+     * Note:
+     *
+     *  duplicate()/slice()生成的ByteBuffer不持有Cleaner, 故只有原始ByteBuffer才会真正释放内存
+     * */
     public static void dispose(ByteBuffer buffer) {
-        if (buffer != null && buffer instanceof MappedByteBuffer) {
-            LOGGER.info("Disposing of {}", buffer);
+        if (buffer != null && buffer.isDirect()) {
+            if (buffer instanceof MappedByteBuffer) {
+                LOGGER.info("Disposing of {}", buffer);
+            } else {
+                LOGGER.trace("Disposing of {}", buffer);
+            }
             cleanDirectBuffer((DirectBuffer) buffer);
         }
     }
@@ -131,12 +131,15 @@ public class MemoryStore {
                                 long size,
                                 MemoryMode memoryMode,
                                 ChunkedByteBufferAllocator allocator) {
-        checkArgument(contains(blockId), String.format("Block %s is already present in the MemoryStore", blockId));
+        checkArgument(!contains(blockId), String.format("Block %s is already present in the MemoryStore", blockId));
 
+        // OFF_HEAP: 内存容量计入offHeapStorageMemoryPool, Block数据必须存储在直接内存中
         if (memoryManager.acquireStorageMemory(blockId, size, memoryMode)) {
             // 存储空间申请成功
             ChunkedByteBuffer buffer = allocator.toChunkedByteBuffer((int) size);
             assert buffer.size() == size;
+            checkArgument(memoryMode == MemoryMode.ON_HEAP || buffer.isDirect(),
+                          String.format("Block %s stored off-heap must be backed by direct buffers", blockId));
             SerializedMemoryEntry memoryEntry = new SerializedMemoryEntry(buffer, memoryMode);
             synchronized (entries) {
                 entries.put(blockId, memoryEntry);
@@ -190,6 +193,7 @@ public class MemoryStore {
             }
             if (entry != null) {
                 if (entry instanceof SerializedMemoryEntry) {
+                    // 立即释放直接内存(OFF_HEAP), 而非等待GC回收DirectByteBuffer
                     ((SerializedMemoryEntry) entry).buffer.dispose();
                 }
 
@@ -204,6 +208,11 @@ public class MemoryStore {
     public void clear() {
         synchronized (memoryManager) {
             synchronized (entries) {
+                for (MemoryEntry<?> entry : entries.values()) {
+                    if (entry instanceof SerializedMemoryEntry) {
+                        ((SerializedMemoryEntry) entry).buffer.dispose();
+                    }
+                }
                 entries.clear();
             }
             onHeapUnrollMemoryMap.clear();
@@ -213,12 +222,16 @@ public class MemoryStore {
     }
 
     private int getRddId(BlockId blockId) {
+        // 非RDD Block(或StorageMemoryPool收缩内存时blockId = null)可逐出任意RDD Block
+        if (blockId == null || !blockId.isRDD()) {
+            return -1;
+        }
         return blockId.asRDDId().rddId;
     }
 
     private boolean blockIsEvictable(BlockId blockId, MemoryEntry<?> entry, int acquireMemoryRddId, MemoryMode needFreeMemoryModel) {
         return needFreeMemoryModel == entry.memoryMode() &&
-                acquireMemoryRddId != getRddId(blockId);
+                (acquireMemoryRddId == -1 || acquireMemoryRddId != getRddId(blockId));
     }
 
     private <T> void dropBlock(BlockId blockId, MemoryEntry<T> entry) {
@@ -45,8 +45,32 @@ public class ChunkedByteBuffer {
         return sum;
     }
 
-    public void writeFully(WritableByteChannel channel) throws IOException {
+    /**
+     * Whether all chunks are backed by direct(off-heap) memory.
+     */
+    public boolean isDirect() {
         for (ByteBuffer buf : chunks) {
+            if (!buf.isDirect()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get duplicates of the ByteBuffers backing this ChunkedByteBuffer, so callers can read
+     * concurrently without touching the positions of the shared chunks.
+     */
+    public ByteBuffer[] getChunks() {
+        ByteBuffer[] duplicates = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; ++i) {
+            duplicates[i] = chunks[i].duplicate();
+        }
+        return duplicates;
+    }
+
+    public void writeFully(WritableByteChannel channel) throws IOException {
+        for (ByteBuffer buf : getChunks()) {
             while (buf.remaining() > 0) {
                 channel.write(buf);
             }
@@ -55,9 +79,14 @@ public class ChunkedByteBuffer {
 
     /**
      * Wrap this buffer to view it as a Netty ByteBuf.
+     *
+     * Note:
+     *
+     *  Direct chunks are wrapped without copying, so an off-heap block is served straight from the
+     *  memory store; the caller must hold the block's read lock until Netty releases the ByteBuf.
      */
     public ByteBuf toNetty() {
-        return Unpooled.wrappedBuffer(chunks.length, chunks);
+        return Unpooled.wrappedBuffer(chunks.length, getChunks());
     }
 
     /**
@@ -113,10 +142,11 @@ public class ChunkedByteBuffer {
      * @param allocator a method for allocating byte buffers
      */
     public ChunkedByteBuffer copy(BlockData.Allocator allocator) {
-        ByteBuffer[] copiedChunks = new ByteBuffer[chunks.length];
-        for (int i = 0; i < chunks.length; ++i) {
-            ByteBuffer newChunk = allocator.allocBuf(chunks[i].limit());
-            newChunk.put(chunks[i]);
+        ByteBuffer[] sourceChunks = getChunks();
+        ByteBuffer[] copiedChunks = new ByteBuffer[sourceChunks.length];
+        for (int i = 0; i < sourceChunks.length; ++i) {
+            ByteBuffer newChunk = allocator.allocBuf(sourceChunks[i].limit());
+            newChunk.put(sourceChunks[i]);
             newChunk.flip();
             copiedChunks[i] = newChunk;
         }
@@ -127,7 +157,7 @@ public class ChunkedByteBuffer {
      * Attempt to clean up any ByteBuffer in this ChunkedByteBuffer which is direct or memory-mapped.
      * See [[StorageUtils.dispose]] for more information.
      */
-    public void dispose(){
+    public synchronized void dispose(){
         if (!disposed) {
             for (ByteBuffer buf : chunks) {
                 // DirectBuffer回收, 防止内存泄漏
@@ -146,7 +176,7 @@ public class ChunkedByteBuffer {
         private ByteBuffer currentChunk;
 
         ChunkedByteBufferInputStream(ChunkedByteBuffer chunkedByteBuffer, boolean dispose) {
-            chunks = Arrays.asList(chunkedByteBuffer.chunks).iterator();
+            chunks = Arrays.asList(chunkedByteBuffer.getChunks()).iterator();
             if (chunks.hasNext()) {
                 currentChunk = chunks.next();
             }
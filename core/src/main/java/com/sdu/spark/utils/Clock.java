@@ -46,4 +46,47 @@ public interface Clock {
         }
 
     }
+
+    /**
+     * 手动推进的时钟
+     * */
+    class ManualClock implements Clock {
+
+        private long time;
+
+        public ManualClock() {
+            this(0L);
+        }
+
+        public ManualClock(long time) {
+            this.time = time;
+        }
+
+        @Override
+        public synchronized long getTimeMillis() {
+            return time;
+        }
+
+        public synchronized void setTime(long timeToSet) {
+            time = timeToSet;
+            notifyAll();
+        }
+
+        public synchronized void advance(long timeToAdd) {
+            time += timeToAdd;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized long waitTillTime(long targetTime) {
+            while (time < targetTime) {
+                try {
+                    wait(10);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            return time;
+        }
+    }
 }
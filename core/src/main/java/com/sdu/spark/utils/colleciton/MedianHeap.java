@@ -0,0 +1,63 @@
+package com.sdu.spark.utils.colleciton;
+
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * {@link MedianHeap}动态维护中位数: 大顶堆保存较小的一半元素, 小顶堆保存较大的一半元素
+ *
+ *  1: 插入O(log n), 两堆元素数相差不超过1
+ *
+ *  2: 查询中位数O(1), 元素数为偶数时取两堆顶的均值
+ *
+ *  3: 非线程安全
+ *
+ * @author hanhan.zhang
+ * */
+public class MedianHeap {
+
+    // 较小的一半元素(大顶堆)
+    private PriorityQueue<Double> smallerHalf = new PriorityQueue<>(Collections.reverseOrder());
+    // 较大的一半元素(小顶堆)
+    private PriorityQueue<Double> largerHalf = new PriorityQueue<>();
+
+    public boolean isEmpty() {
+        return smallerHalf.isEmpty() && largerHalf.isEmpty();
+    }
+
+    public int size() {
+        return smallerHalf.size() + largerHalf.size();
+    }
+
+    public void insert(double x) {
+        if (isEmpty() || x > median()) {
+            largerHalf.offer(x);
+        } else {
+            smallerHalf.offer(x);
+        }
+        rebalance();
+    }
+
+    private void rebalance() {
+        if (largerHalf.size() - smallerHalf.size() > 1) {
+            smallerHalf.offer(largerHalf.poll());
+        }
+        if (smallerHalf.size() - largerHalf.size() > 1) {
+            largerHalf.offer(smallerHalf.poll());
+        }
+    }
+
+    public double median() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("MedianHeap is empty.");
+        }
+        if (largerHalf.size() == smallerHalf.size()) {
+            return (largerHalf.peek() + smallerHalf.peek()) / 2.0;
+        } else if (largerHalf.size() > smallerHalf.size()) {
+            return largerHalf.peek();
+        } else {
+            return smallerHalf.peek();
+        }
+    }
+}
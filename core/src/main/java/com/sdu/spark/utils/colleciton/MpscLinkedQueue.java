@@ -0,0 +1,66 @@
+package com.sdu.spark.utils.colleciton;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link MpscLinkedQueue}多生产者单消费者无锁链表队列(Dmitry Vyukov MPSC算法):
+ *
+ *  1: offer: 生产者以getAndSet原子替换tail, 再链接前驱节点(无CAS重试, wait-free)
+ *
+ *  2: poll: 消费者沿head.next前进, 无原子操作
+ *
+ * Note:
+ *
+ *  1': poll/isEmpty只允许单线程调用(多消费者需外部同步)
+ *
+ *  2': offer返回后元素对poll及isEmpty可见
+ *
+ * @author hanhan.zhang
+ * */
+public class MpscLinkedQueue<E> {
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    // 消费端: head为已消费(或哨兵)节点
+    private volatile Node<E> head;
+    // 生产端
+    private final AtomicReference<Node<E>> tail;
+
+    public MpscLinkedQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    public void offer(E value) {
+        if (value == null) {
+            throw new NullPointerException("MpscLinkedQueue does not support null element");
+        }
+        Node<E> node = new Node<>(value);
+        Node<E> prev = tail.getAndSet(node);
+        prev.next = node;
+    }
+
+    public E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E value = next.value;
+        // help gc
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+}
@@ -0,0 +1,105 @@
+package com.sdu.spark.utils.colleciton;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link MpscRingBuffer}多生产者单消费者有界无锁环形队列(Dmitry Vyukov有界队列算法):
+ *
+ *  1: 每个槽位维护序号sequence, 初始值为槽位下标
+ *
+ *  2: offer: 生产者CAS推进tail占用槽位(sequence == tail), 写入元素后将sequence置为tail + 1发布元素;
+ *
+ *     sequence < tail表示队列已满, 返回false(不阻塞)
+ *
+ *  3: poll: 消费者读取sequence == head + 1的槽位, 取出元素后将sequence置为head + capacity释放槽位
+ *
+ * Note:
+ *
+ *  1': 容量向上取整为2的幂
+ *
+ *  2': poll/isEmpty只允许单线程调用
+ *
+ * @author hanhan.zhang
+ * */
+public class MpscRingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+
+    // 生产端
+    private final AtomicLong tail = new AtomicLong(0);
+    // 消费端
+    private volatile long head = 0;
+
+    public MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid ring buffer capacity: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.buffer = new Object[this.capacity];
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    public boolean offer(E value) {
+        if (value == null) {
+            throw new NullPointerException("MpscRingBuffer does not support null element");
+        }
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = value;
+                    // sequence写入对消费者发布元素
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 槽位未被消费者释放
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head;
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        E value = (E) buffer[index];
+        buffer[index] = null;
+        head = pos + 1;
+        sequences.set(index, pos + capacity);
+        return value;
+    }
+
+    public boolean isEmpty() {
+        long pos = head;
+        return sequences.get((int) (pos & mask)) != pos + 1;
+    }
+
+    /**
+     * 近似元素数(并发写入时仅供监控使用)
+     * */
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,175 @@
+package com.sdu.spark.utils.colleciton;
+
+import java.util.function.LongFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * {@link PrimitiveKeyOpenHashMap}以long为Key的开放寻址(线性探测)哈希表, 避免Key装箱及Entry对象分配
+ *
+ *  1: 扩容阈值: 0.7 * capacity(2 ^ n)
+ *
+ *  2: 删除采用后移回填(backward shift), 无需墓碑标记, 查询性能不随删除退化
+ *
+ *  3: 非线程安全
+ *
+ * @author hanhan.zhang
+ * */
+public class PrimitiveKeyOpenHashMap<V> {
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private long[] keys;
+    private Object[] values;
+    // values[pos] != null标识pos位置被占用, 故不支持null Value
+    private int mask;
+    private int curSize;
+    private int growThreshold;
+
+    public PrimitiveKeyOpenHashMap() {
+        this(64);
+    }
+
+    public PrimitiveKeyOpenHashMap(int initialCapacity) {
+        checkArgument(initialCapacity <= MAXIMUM_CAPACITY, String.format("Can't make capacity bigger than %d elements", MAXIMUM_CAPACITY));
+        checkArgument(initialCapacity >= 1, "Invalid initializer capacity");
+        allocate(nextPowerOf2(initialCapacity));
+    }
+
+    public int size() {
+        return curSize;
+    }
+
+    public boolean isEmpty() {
+        return curSize == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return values[find(key)] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[find(key)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        checkArgument(value != null, "PrimitiveKeyOpenHashMap does not support null values");
+        int pos = find(key);
+        V old = (V) values[pos];
+        keys[pos] = key;
+        values[pos] = value;
+        if (old == null && ++curSize > growThreshold) {
+            growTable();
+        }
+        return old;
+    }
+
+    /**
+     * 若Key不存在则由mappingFunction生成Value并插入
+     * */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<V> mappingFunction) {
+        int pos = find(key);
+        if (values[pos] != null) {
+            return (V) values[pos];
+        }
+        V value = mappingFunction.apply(key);
+        put(key, value);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int pos = find(key);
+        V old = (V) values[pos];
+        if (old == null) {
+            return null;
+        }
+        values[pos] = null;
+        curSize--;
+
+        // 后移回填: 将pos之后同一探测链上的元素前移, 保证查找不因空槽中断
+        int hole = pos;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int ideal = hash(keys[next]) & mask;
+            // ideal不在(hole, next]区间内时, next元素可移动到hole
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                values[next] = null;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        return old;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void foreach(KeyValueConsumer<V> consumer) {
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] != null) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = null;
+        }
+        curSize = 0;
+    }
+
+    private int find(long key) {
+        int pos = hash(key) & mask;
+        while (values[pos] != null && keys[pos] != key) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    private void growTable() {
+        int newCapacity = values.length * 2;
+        checkArgument(newCapacity <= MAXIMUM_CAPACITY, String.format("Can't contain more than %d elements", growThreshold));
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; ++i) {
+            if (oldValues[i] != null) {
+                int pos = find(oldKeys[i]);
+                keys[pos] = oldKeys[i];
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        growThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(long key) {
+        // MurmurHash3 fmix64, 打散连续Key(如rddId)
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static int nextPowerOf2(int n) {
+        int highBit = Integer.highestOneBit(n);
+        return highBit == n ? n : highBit << 1;
+    }
+
+    public interface KeyValueConsumer<V> {
+        void accept(long key, V value);
+    }
+}
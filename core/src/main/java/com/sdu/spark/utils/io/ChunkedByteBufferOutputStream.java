@@ -37,7 +37,7 @@ public class ChunkedByteBufferOutputStream extends OutputStream {
     }
 
     public long size() {
-        return chunkSize;
+        return size;
     }
 
     @Override
@@ -50,7 +50,7 @@ public class ChunkedByteBufferOutputStream extends OutputStream {
 
     @Override
     public void write(int b) throws IOException {
-        assert closed : "cannot write to a closed ChunkedByteBufferOutputStream";
+        assert !closed : "cannot write to a closed ChunkedByteBufferOutputStream";
         allocateNewChunkIfNeeded();
         chunks.get(lastChunkIndex).put((byte) b);
         position += 1;
@@ -59,7 +59,7 @@ public class ChunkedByteBufferOutputStream extends OutputStream {
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        assert closed : "cannot write to a closed ChunkedByteBufferOutputStream";
+        assert !closed : "cannot write to a closed ChunkedByteBufferOutputStream";
         int written = 0;
         while (written < len) {
             allocateNewChunkIfNeeded();
@@ -75,7 +75,7 @@ public class ChunkedByteBufferOutputStream extends OutputStream {
 
     public ChunkedByteBuffer toChunkedByteBuffer() {
         assert closed : "cannot call toChunkedByteBuffer() unless close() has been called";
-        assert toChunkedByteBufferWasCalled : "toChunkedByteBuffer() can only be called once";
+        assert !toChunkedByteBufferWasCalled : "toChunkedByteBuffer() can only be called once";
         toChunkedByteBufferWasCalled = true;
         if (lastChunkIndex == -1) {
             return new ChunkedByteBuffer(chunks.toArray(new ByteBuffer[chunks.size()]));
@@ -86,7 +86,7 @@ public class ChunkedByteBufferOutputStream extends OutputStream {
             // the chunks in block manager), only limiting the view bound of the buffer would still
             // require the block manager to store the whole chunk.
             ByteBuffer[] ret = new ByteBuffer[chunks.size()];
-            for (int i = 0; i < chunks.size(); ++ i) {
+            for (int i = 0; i < lastChunkIndex; ++ i) {
                 ret[i] = chunks.get(i);
                 ret[i].flip();
             }
@@ -94,11 +94,13 @@ public class ChunkedByteBufferOutputStream extends OutputStream {
                 ret[lastChunkIndex] = chunks.get(lastChunkIndex);
                 ret[lastChunkIndex].flip();
             } else {
+                // 最后一个Chunk按实际写入量重新分配, 原Chunk若为直接内存则立即释放
                 ret[lastChunkIndex] = byteBufferAllocator.allocate(position);
-                chunks.get(lastChunkIndex).flip();
-                ret[lastChunkIndex] = chunks.get(lastChunkIndex);
+                ByteBuffer lastChunk = chunks.get(lastChunkIndex);
+                lastChunk.flip();
+                ret[lastChunkIndex].put(lastChunk);
                 ret[lastChunkIndex].flip();
-                StorageUtils.dispose(chunks.get(lastChunkIndex));
+                StorageUtils.dispose(lastChunk);
             }
             return new ChunkedByteBuffer(ret);
         }
@@ -1,9 +1,11 @@
 package com.sdu.spark.utils.scala;
 
+import java.io.Serializable;
+
 /**
  * @author hanhan.zhang
  * */
-public abstract class Product2<T1, T2> implements Product {
+public abstract class Product2<T1, T2> implements Product, Serializable {
 
     private T1 _1;
     private T2 _2;
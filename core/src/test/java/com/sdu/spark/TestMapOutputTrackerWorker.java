@@ -0,0 +1,149 @@
+package com.sdu.spark;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sdu.spark.MapOutputTrackerMessage.GetMapOutputStatuses;
+import com.sdu.spark.rpc.RpcAddress;
+import com.sdu.spark.rpc.RpcCallContext;
+import com.sdu.spark.rpc.RpcEndpointRef;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.scheduler.MapStatus.CompressedMapStatus;
+import com.sdu.spark.storage.BlockManagerId;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestMapOutputTrackerWorker extends SparkTestUnit {
+
+    private static final int SHUFFLE_ID = 0;
+    private static final int NUM_MAPS = 10;
+
+    private BlockManagerId exec1;
+    private BlockManagerId exec2;
+    private MapOutputTrackerMaster masterTracker;
+    private MapOutputTrackerWorker workerTracker;
+    private LocalTrackerEndpointRef trackerEndpoint;
+
+    @Override
+    public void beforeEach() {
+        SparkConf trackerConf = new SparkConf();
+        exec1 = BlockManagerId.apply("exec-1", "host-1", 7001, null);
+        exec2 = BlockManagerId.apply("exec-2", "host-2", 7002, null);
+
+        masterTracker = new MapOutputTrackerMaster(trackerConf, null, true);
+        masterTracker.registerShuffle(SHUFFLE_ID, NUM_MAPS);
+        for (int i = 0; i < NUM_MAPS; ++i) {
+            masterTracker.registerMapOutput(SHUFFLE_ID, i,
+                    new CompressedMapStatus(i % 2 == 0 ? exec1 : exec2, new long[] {i + 1, i + 2}));
+        }
+
+        trackerEndpoint = new LocalTrackerEndpointRef(masterTracker);
+        workerTracker = new MapOutputTrackerWorker(trackerConf);
+        workerTracker.trackerEndpoint = trackerEndpoint;
+    }
+
+    @Test
+    public void testApplyDeltaAfterEpochUpdate() throws Exception {
+        MapSizesByExecutor sizes = workerTracker.getMapSizesByRange(SHUFFLE_ID, 0, 1);
+        assert sizes.numBlocks() == NUM_MAPS * 2;
+        assert trackerEndpoint.knownVersions.equals(Collections.singletonList(-1L));
+
+        // epoch未变化: 使用缓存
+        workerTracker.getMapSizesByRange(SHUFFLE_ID, 0, 1);
+        assert trackerEndpoint.knownVersions.size() == 1;
+
+        // Map输出丢失(epoch增加)后在exec-1重算, Executor更新epoch后携带已知版本号拉取增量
+        masterTracker.unregisterMapOutput(SHUFFLE_ID, 3, exec2);
+        masterTracker.registerMapOutput(SHUFFLE_ID, 3, new CompressedMapStatus(exec1, new long[] {4, 5}));
+        workerTracker.updateEpoch(masterTracker.getEpoch());
+
+        sizes = workerTracker.getMapSizesByRange(SHUFFLE_ID, 0, 1);
+        assert trackerEndpoint.knownVersions.equals(Lists.newArrayList(-1L, (long) NUM_MAPS));
+        assert sizes.numBlocks() == NUM_MAPS * 2;
+        Map<Integer, BlockManagerId> locations = mapLocations(sizes);
+        assert locations.get(3).equals(exec1);
+        assert locations.get(5).equals(exec2);
+    }
+
+    private static Map<Integer, BlockManagerId> mapLocations(MapSizesByExecutor sizes) {
+        Map<Integer, BlockManagerId> locations = Maps.newHashMap();
+        for (int loc = 0; loc < sizes.numLocations(); ++loc) {
+            for (int i = sizes.blockStart(loc); i < sizes.blockEnd(loc); ++i) {
+                locations.put(sizes.mapId(i), sizes.location(loc));
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * 直接交由MapOutputTrackerMaster处理GetMapOutputStatuses, 记录请求携带的已知版本号
+     * */
+    private static class LocalTrackerEndpointRef extends RpcEndpointRef {
+        private final MapOutputTrackerMaster masterTracker;
+        final List<Long> knownVersions = Collections.synchronizedList(Lists.newArrayList());
+
+        LocalTrackerEndpointRef(MapOutputTrackerMaster masterTracker) {
+            this.masterTracker = masterTracker;
+        }
+
+        @Override
+        public String name() {
+            return "MapOutputTracker";
+        }
+
+        @Override
+        public RpcAddress address() {
+            return new RpcAddress("localhost", 0);
+        }
+
+        @Override
+        public void send(Object message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> CompletableFuture<T> ask(Object message) {
+            GetMapOutputStatuses request = (GetMapOutputStatuses) message;
+            knownVersions.add(request.knownVersion);
+            CompletableFuture<T> future = new CompletableFuture<>();
+            masterTracker.post(new GetMapOutputMessage(request.shuffleId, request.knownVersion,
+                    new RpcCallContext(address()) {
+                        @Override
+                        public void reply(Object response) {
+                            future.complete((T) response);
+                        }
+
+                        @Override
+                        public void sendFailure(Throwable cause) {
+                            future.completeExceptionally(cause);
+                        }
+                    }));
+            return future;
+        }
+
+        @Override
+        public Object askSync(Object message) throws TimeoutException, InterruptedException, ExecutionException {
+            return askSync(message, 10_000);
+        }
+
+        @Override
+        public Object askSync(Object message, long timeout) throws TimeoutException, InterruptedException, ExecutionException {
+            return ask(message).get(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void afterEach() {
+        masterTracker.stop();
+    }
+}
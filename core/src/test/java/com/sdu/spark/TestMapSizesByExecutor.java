@@ -0,0 +1,126 @@
+package com.sdu.spark;
+
+import com.sdu.spark.scheduler.MapStatus;
+import com.sdu.spark.scheduler.MapStatus.CompressedMapStatus;
+import com.sdu.spark.shuffle.FetchFailedException.MetadataFetchFailedException;
+import com.sdu.spark.storage.BlockId.ShuffleBlockId;
+import com.sdu.spark.storage.BlockManagerId;
+import org.junit.Test;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestMapSizesByExecutor extends SparkTestUnit {
+
+    private BlockManagerId exec1;
+    private BlockManagerId exec2;
+
+    @Override
+    public void beforeEach() {
+        exec1 = BlockManagerId.apply("exec-1", "host-1", 7001, null);
+        exec2 = BlockManagerId.apply("exec-2", "host-2", 7002, null);
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+
+    @Test
+    public void testGroupByExecutor() {
+        MapStatus[] statuses = new MapStatus[] {
+                new CompressedMapStatus(exec1, new long[] {100, 0, 300, 400}),
+                new CompressedMapStatus(exec2, new long[] {0, 0, 0, 0}),
+                new CompressedMapStatus(exec1, new long[] {0, 200, 0, 400}),
+                new CompressedMapStatus(exec2, new long[] {100, 200, 300, 400})
+        };
+        MapSizesByExecutor sizes = MapSizesByExecutor.create(1, 1, 2, statuses);
+
+        assert sizes.numLocations() == 2;
+        assert sizes.location(0).equals(exec1);
+        assert sizes.location(1).equals(exec2);
+        // 分区1~2共8个数据块, 非空数据块4个
+        assert sizes.totalBlocks() == 8;
+        assert sizes.numBlocks() == 4;
+
+        // exec-1: (map 0, reduce 2), (map 2, reduce 1)
+        assert sizes.blockEnd(0) - sizes.blockStart(0) == 2;
+        int first = sizes.blockStart(0);
+        assert sizes.mapId(first) == 0 && sizes.reduceId(first) == 2;
+        assert sizes.mapId(first + 1) == 2 && sizes.reduceId(first + 1) == 1;
+        assert sizes.size(first) == statuses[0].getSizeForBlock(2);
+
+        // exec-2: (map 3, reduce 1), (map 3, reduce 2)
+        assert sizes.blockEnd(1) - sizes.blockStart(1) == 2;
+        ShuffleBlockId blockId = sizes.blockId(sizes.blockStart(1) + 1);
+        assert blockId.shuffleId == 1 && blockId.mapId == 3 && blockId.reduceId == 2;
+        assert sizes.blockEnd(1) == sizes.numBlocks();
+    }
+
+    @Test
+    public void testMapRange() {
+        MapStatus[] statuses = new MapStatus[] {
+                new CompressedMapStatus(exec1, new long[] {100, 200}),
+                new CompressedMapStatus(exec2, new long[] {0, 0}),
+                new CompressedMapStatus(exec1, new long[] {0, 200}),
+                null
+        };
+        // 只读取MapTask[1, 3), 范围外的MapStatus缺失不影响读取
+        MapSizesByExecutor sizes = MapSizesByExecutor.create(1, 1, 3, 0, 1, statuses);
+        assert sizes.totalBlocks() == 4;
+        assert sizes.numBlocks() == 1;
+        assert sizes.numLocations() == 1 && sizes.location(0).equals(exec1);
+        assert sizes.mapId(0) == 2 && sizes.reduceId(0) == 1;
+    }
+
+    @Test
+    public void testReadBlockSizeOnce() {
+        int numMaps = 10;
+        int numPartitions = 5;
+        int[] sizeReads = new int[1];
+        MapStatus[] statuses = new MapStatus[numMaps];
+        for (int i = 0; i < numMaps; ++i) {
+            BlockManagerId location = i % 2 == 0 ? exec1 : exec2;
+            int mapId = i;
+            statuses[i] = new MapStatus() {
+                @Override
+                public BlockManagerId location() {
+                    return location;
+                }
+
+                @Override
+                public long getSizeForBlock(int reduceId) {
+                    sizeReads[0]++;
+                    return (mapId + reduceId) % 3 == 0 ? 0 : mapId * 100 + reduceId;
+                }
+            };
+        }
+        MapSizesByExecutor sizes = MapSizesByExecutor.create(1, 0, numPartitions - 1, statuses);
+
+        // 每个(mapId, reduceId)只读取一次数据块大小
+        assert sizeReads[0] == numMaps * numPartitions;
+        assert sizes.totalBlocks() == numMaps * numPartitions;
+        int numBlocks = 0;
+        for (int loc = 0; loc < sizes.numLocations(); ++loc) {
+            for (int i = sizes.blockStart(loc); i < sizes.blockEnd(loc); ++i) {
+                assert (sizes.mapId(i) % 2 == 0) == sizes.location(loc).equals(exec1);
+                assert sizes.size(i) == sizes.mapId(i) * 100 + sizes.reduceId(i);
+                numBlocks++;
+            }
+        }
+        assert numBlocks == sizes.numBlocks() && numBlocks > 16;
+    }
+
+    @Test
+    public void testEmpty() {
+        MapSizesByExecutor sizes = MapSizesByExecutor.empty(1);
+        assert sizes.numLocations() == 0;
+        assert sizes.numBlocks() == 0;
+    }
+
+    @Test(expected = MetadataFetchFailedException.class)
+    public void testMissingMapOutput() {
+        MapStatus[] statuses = new MapStatus[] {new CompressedMapStatus(exec1, new long[] {100}), null};
+        MapSizesByExecutor.create(1, 0, 0, statuses);
+    }
+}
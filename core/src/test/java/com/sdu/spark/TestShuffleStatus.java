@@ -0,0 +1,111 @@
+package com.sdu.spark;
+
+import com.sdu.spark.scheduler.MapStatus;
+import com.sdu.spark.scheduler.MapStatus.CompressedMapStatus;
+import com.sdu.spark.scheduler.MapStatusCodec.MapStatusUpdate;
+import com.sdu.spark.scheduler.ShufflePartitionCoalescer.ShufflePartitionSpec;
+import com.sdu.spark.storage.BlockManagerId;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestShuffleStatus extends SparkTestUnit {
+
+    private static final int NUM_MAPS = 10;
+
+    private BlockManagerId exec1;
+    private BlockManagerId exec2;
+    private ShuffleStatus shuffleStatus;
+
+    @Override
+    public void beforeEach() {
+        exec1 = BlockManagerId.apply("exec-1", "host-1", 7001, null);
+        exec2 = BlockManagerId.apply("exec-2", "host-2", 7002, null);
+        shuffleStatus = new ShuffleStatus(NUM_MAPS, 4);
+        for (int i = 0; i < NUM_MAPS; ++i) {
+            shuffleStatus.addMapOutput(i, new CompressedMapStatus(i % 2 == 0 ? exec1 : exec2, new long[] {i, i + 1}));
+        }
+    }
+
+    @Test
+    public void testFullAndDelta() {
+        MapStatusUpdate full = fetch(-1L);
+        assert full.isFull();
+        assert full.version == NUM_MAPS;
+        MapStatus[] statuses = full.statuses;
+
+        // 已是最新版本: 空增量
+        MapStatusUpdate empty = fetch(full.version);
+        assert !empty.isFull();
+        assert empty.mapIds.length == 0;
+
+        // 单个Map输出丢失只返回该mapId
+        shuffleStatus.removeMapOutput(3, exec2);
+        MapStatusUpdate delta = fetch(full.version);
+        assert !delta.isFull();
+        assert delta.version == NUM_MAPS + 1;
+        assert delta.mapIds.length == 1 && delta.mapIds[0] == 3;
+        MapStatus[] updated = delta.applyTo(statuses);
+        assert updated[3] == null;
+        assert statuses[3] != null;
+        assert updated[4].location().equals(exec1);
+    }
+
+    @Test
+    public void testDeltaOutOfChangeLog() {
+        long version = fetch(-1L).version;
+        // 变更日志只保留4条, 超出范围后返回全量
+        shuffleStatus.removeOutputsOnExecutor("exec-2");
+        assert shuffleStatus.version() == version + NUM_MAPS / 2;
+        MapStatusUpdate update = fetch(version);
+        assert update.isFull();
+        assert update.statuses[1] == null;
+        assert update.statuses[0] != null;
+
+        // 日志范围内的版本仍可增量
+        shuffleStatus.addMapOutput(1, new CompressedMapStatus(exec1, new long[] {1, 2}));
+        MapStatusUpdate delta = fetch(update.version);
+        assert !delta.isFull();
+        assert delta.mapIds.length == 1 && delta.mapIds[0] == 1;
+    }
+
+    @Test
+    public void testDeltaCached() {
+        long version = shuffleStatus.version();
+        shuffleStatus.removeMapOutput(3, exec2);
+
+        // 同一已知版本的增量只序列化一次
+        byte[] delta = shuffleStatus.serializedMapStatus(null, true, Integer.MAX_VALUE, version);
+        assert shuffleStatus.serializedMapStatus(null, true, Integer.MAX_VALUE, version) == delta;
+
+        // MapStatus变更后缓存失效, 增量包含新的变更
+        shuffleStatus.removeMapOutput(5, exec2);
+        byte[] newDelta = shuffleStatus.serializedMapStatus(null, true, Integer.MAX_VALUE, version);
+        assert newDelta != delta;
+        MapStatusUpdate update = MapOutputTracker.deserializeMapStatuses(newDelta);
+        assert update.version == version + 2;
+        assert update.mapIds.length == 2 && update.mapIds[0] == 3 && update.mapIds[1] == 5;
+    }
+
+    @Test
+    public void testPartitionSpecsInvalidated() {
+        shuffleStatus.setPartitionSpecs(Collections.singletonList(new ShufflePartitionSpec(0, 1, 0, NUM_MAPS)));
+        assert shuffleStatus.partitionSpecs().size() == 1;
+        // MapStatus变更后读取范围失效
+        shuffleStatus.removeMapOutput(3, exec2);
+        assert shuffleStatus.partitionSpecs() == null;
+    }
+
+    private MapStatusUpdate fetch(long knownVersion) {
+        byte[] bytes = shuffleStatus.serializedMapStatus(null, true, Integer.MAX_VALUE, knownVersion);
+        return MapOutputTracker.deserializeMapStatuses(bytes);
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
@@ -0,0 +1,210 @@
+package com.sdu.spark.broadcast;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.sdu.spark.SparkEnv;
+import com.sdu.spark.SparkException;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.serializer.JavaSerializer;
+import com.sdu.spark.serializer.SerializerInstance;
+import com.sdu.spark.storage.BlockId.BroadcastBlockId;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestTorrentBroadcast extends SparkTestUnit {
+
+    private SerializerInstance serializer;
+    private SparkEnv previousEnv;
+    private InMemoryBlockStore blockStore;
+    private BroadcastManager broadcastManager;
+
+    @Override
+    public void beforeEach() {
+        SparkConf conf = new SparkConf();
+        // 数据块大小1k
+        conf.set("spark.broadcast.blockSize", "1k");
+        serializer = new JavaSerializer(conf).newInstance();
+        blockStore = new InMemoryBlockStore();
+        broadcastManager = new BroadcastManager(true, conf, blockStore);
+        previousEnv = SparkEnv.env;
+        SparkEnv.env = new SparkEnv("driver", null, new JavaSerializer(conf), new JavaSerializer(conf), null, null,
+                                    broadcastManager, null, null, null, null, conf);
+    }
+
+    private static byte[] value(int size) {
+        byte[] value = new byte[size];
+        for (int i = 0; i < value.length; ++i) {
+            value[i] = (byte) i;
+        }
+        return value;
+    }
+
+    /**
+     * 模拟Executor端读取: 序列化后广播变量只包含广播标识、数据块数及校验和
+     * */
+    private <T> Broadcast<T> copyOf(Broadcast<T> broadcast) throws Exception {
+        return serializer.deserialize(serializer.serialize(broadcast));
+    }
+
+    @Test
+    public void testPutBytes() {
+        byte[] value = value(5000);
+        Broadcast<byte[]> broadcast = broadcastManager.newBroadcast(value, false);
+        int numBlocks = blockStore.local.size();
+        assert numBlocks > 1;
+        for (int i = 0; i < numBlocks; ++i) {
+            assert blockStore.local.containsKey(new BroadcastBlockId(broadcast.id, "piece" + i));
+        }
+        // Driver端直接使用广播值
+        assert broadcast.value() == value;
+    }
+
+    @Test
+    public void testReadLocalBlocks() throws Exception {
+        byte[] value = value(5000);
+        Broadcast<byte[]> broadcast = copyOf(broadcastManager.newBroadcast(value, false));
+        assert Arrays.equals(value, broadcast.value());
+        assert blockStore.remoteFetches.get() == 0;
+    }
+
+    @Test
+    public void testReadRemoteBlocks() throws Exception {
+        byte[] value = value(5000);
+        Broadcast<byte[]> broadcast = copyOf(broadcastManager.newBroadcast(value, false));
+        int numBlocks = blockStore.moveToRemote();
+
+        assert Arrays.equals(value, broadcast.value());
+        assert blockStore.remoteFetches.get() == numBlocks;
+        // 远端拉取的数据块存入本地, 供其他Executor拉取
+        assert blockStore.local.size() == numBlocks;
+    }
+
+    @Test(expected = SparkException.class)
+    public void testChecksumMismatch() throws Exception {
+        Broadcast<byte[]> broadcast = copyOf(broadcastManager.newBroadcast(value(5000), false));
+        blockStore.moveToRemote();
+        ByteBuffer block = blockStore.remote.get(new BroadcastBlockId(broadcast.id, "piece0"));
+        block.put(block.position(), (byte) (block.get(block.position()) + 1));
+        broadcast.value();
+    }
+
+    @Test
+    public void testCacheHit() throws Exception {
+        Broadcast<byte[]> driverBroadcast = broadcastManager.newBroadcast(value(5000), false);
+        Broadcast<byte[]> first = copyOf(driverBroadcast);
+        Broadcast<byte[]> second = copyOf(driverBroadcast);
+        int numBlocks = blockStore.moveToRemote();
+
+        byte[] firstValue = first.value();
+        // 同一进程内同一广播变量只拉取一次
+        assert second.value() == firstValue;
+        assert blockStore.remoteFetches.get() == numBlocks;
+    }
+
+    @Test
+    public void testDestroy() throws Exception {
+        Broadcast<byte[]> broadcast = broadcastManager.newBroadcast(value(5000), false);
+        Broadcast<byte[]> copy = copyOf(broadcast);
+        copy.value();
+        assert broadcastManager.cachedValues.containsKey(new BroadcastBlockId(broadcast.id, null));
+
+        broadcast.destroy(false);
+        assert blockStore.removed.contains(broadcast.id);
+        assert blockStore.local.isEmpty();
+        assert !broadcastManager.cachedValues.containsKey(new BroadcastBlockId(broadcast.id, null));
+        try {
+            broadcast.value();
+            assert false;
+        } catch (SparkException e) {
+            // destroy后不可再使用
+        }
+    }
+
+    @Test
+    public void testBlockifyObject() {
+        byte[] value = new byte[1000];
+        for (int i = 0; i < value.length; ++i) {
+            value[i] = (byte) i;
+        }
+        ByteBuffer[] blocks = TorrentBroadcast.blockifyObject(value, 64, serializer);
+        assert blocks.length > 1;
+        for (int i = 0; i < blocks.length - 1; ++i) {
+            assert blocks[i].remaining() == 64;
+        }
+        byte[] result = TorrentBroadcast.unBlockifyObject(blocks, serializer);
+        assert Arrays.equals(value, result);
+    }
+
+    @Test
+    public void testSingleBlock() {
+        String value = "broadcast";
+        ByteBuffer[] blocks = TorrentBroadcast.blockifyObject(value, 4 * 1024 * 1024, serializer);
+        assert blocks.length == 1;
+        String result = TorrentBroadcast.unBlockifyObject(blocks, serializer);
+        assert value.equals(result);
+    }
+
+    @Override
+    public void afterEach() {
+        SparkEnv.env = previousEnv;
+    }
+
+    /**
+     * 内存数据块存储: local为本地数据块, remote为其他节点数据块
+     * */
+    private static class InMemoryBlockStore implements BroadcastBlockStore {
+        final Map<BroadcastBlockId, ByteBuffer> local = Maps.newConcurrentMap();
+        final Map<BroadcastBlockId, ByteBuffer> remote = Maps.newConcurrentMap();
+        final Set<Long> removed = Sets.newConcurrentHashSet();
+        final AtomicInteger remoteFetches = new AtomicInteger(0);
+
+        /**
+         * 本地数据块移至远端, 返回数据块数
+         * */
+        int moveToRemote() {
+            remote.putAll(local);
+            local.clear();
+            return remote.size();
+        }
+
+        @Override
+        public boolean putBytes(BroadcastBlockId pieceId, ByteBuffer block) {
+            ByteBuffer copy = ByteBuffer.allocate(block.remaining());
+            copy.put(block.duplicate());
+            copy.flip();
+            local.put(pieceId, copy);
+            return true;
+        }
+
+        @Override
+        public ByteBuffer getLocalBytes(BroadcastBlockId pieceId) {
+            ByteBuffer block = local.get(pieceId);
+            return block == null ? null : block.duplicate();
+        }
+
+        @Override
+        public ByteBuffer getRemoteBytes(BroadcastBlockId pieceId) {
+            ByteBuffer block = remote.get(pieceId);
+            if (block == null) {
+                return null;
+            }
+            remoteFetches.incrementAndGet();
+            return block.duplicate();
+        }
+
+        @Override
+        public void removeBroadcast(long id, boolean removeFromDriver, boolean blocking) {
+            removed.add(id);
+            local.keySet().removeIf(pieceId -> pieceId.broadcastId == id);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.sdu.spark.executor;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.scheduler.TaskState;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.StatusUpdate;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.StatusUpdates;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestStatusUpdateBatcher extends SparkTestUnit {
+
+    private static final String EXECUTOR_ID = "exec-1";
+
+    private BlockingQueue<CoarseGrainedClusterMessage> sent;
+    private StatusUpdateBatcher batcher;
+
+    @Override
+    public void beforeEach() {
+        sent = new LinkedBlockingQueue<>();
+    }
+
+    @Override
+    public void afterEach() {
+        if (batcher != null) {
+            batcher.stop();
+        }
+    }
+
+    private static StatusUpdate update(long taskId, int dataSize) {
+        return new StatusUpdate(EXECUTOR_ID, taskId, TaskState.FINISHED, ByteBuffer.allocate(dataSize));
+    }
+
+    @Test
+    public void testCoalesceWithinBatchInterval() throws Exception {
+        batcher = new StatusUpdateBatcher(EXECUTOR_ID, 200, 1024, sent::offer);
+        for (int i = 0; i < 3; ++i) {
+            batcher.add(update(i, 10));
+        }
+        assert sent.isEmpty();
+
+        CoarseGrainedClusterMessage msg = sent.poll(10, TimeUnit.SECONDS);
+        assert msg instanceof StatusUpdates;
+        StatusUpdates updates = (StatusUpdates) msg;
+        assert updates.executorId.equals(EXECUTOR_ID);
+        assert updates.updates.size() == 3;
+        assert updates.updates.get(0).taskId == 0 && updates.updates.get(2).taskId == 2;
+        assert sent.poll(300, TimeUnit.MILLISECONDS) == null;
+    }
+
+    @Test
+    public void testSingleUpdateFallback() throws Exception {
+        batcher = new StatusUpdateBatcher(EXECUTOR_ID, 50, 1024, sent::offer);
+        batcher.add(update(7, 10));
+
+        CoarseGrainedClusterMessage msg = sent.poll(10, TimeUnit.SECONDS);
+        assert msg instanceof StatusUpdate;
+        assert ((StatusUpdate) msg).taskId == 7;
+    }
+
+    @Test
+    public void testSplitByMaxMessageSize() {
+        batcher = new StatusUpdateBatcher(EXECUTOR_ID, 60_000, 100, sent::offer);
+        // 累计数据达到100字节时拆分: [0, 1], [2, 3], [4]
+        batcher.add(update(0, 40));
+        batcher.add(update(1, 40));
+        batcher.add(update(2, 40));
+        batcher.add(update(3, 30));
+        batcher.add(update(4, 30));
+        batcher.flush();
+
+        assert sent.size() == 3;
+        StatusUpdates first = (StatusUpdates) sent.poll();
+        assert first.updates.size() == 2 && first.updates.get(1).taskId == 1;
+        StatusUpdates second = (StatusUpdates) sent.poll();
+        assert second.updates.size() == 2 && second.updates.get(0).taskId == 2;
+        StatusUpdate third = (StatusUpdate) sent.poll();
+        assert third.taskId == 4;
+    }
+
+    @Test
+    public void testFlushOnShutdown() {
+        batcher = new StatusUpdateBatcher(EXECUTOR_ID, 60_000, 1024, sent::offer);
+        batcher.add(update(0, 10));
+        batcher.add(update(1, 10));
+        assert sent.isEmpty();
+
+        // Shutdown: 立即发送合并窗口内的状态更新
+        batcher.flush();
+        assert sent.size() == 1;
+        assert ((StatusUpdates) sent.poll()).updates.size() == 2;
+    }
+
+    @Test
+    public void testSendDirectlyAfterStop() {
+        batcher = new StatusUpdateBatcher(EXECUTOR_ID, 60_000, 1024, sent::offer);
+        batcher.add(update(0, 10));
+        batcher.stop();
+        assert sent.size() == 1;
+        assert ((StatusUpdate) sent.poll()).taskId == 0;
+
+        // flusher关闭后不再调度, 直接发送
+        batcher.add(update(1, 10));
+        assert sent.size() == 1;
+        assert ((StatusUpdate) sent.poll()).taskId == 1;
+    }
+
+    @Test
+    public void testSendDirectlyWithoutBatchInterval() {
+        batcher = new StatusUpdateBatcher(EXECUTOR_ID, 0, 1024, sent::offer);
+        batcher.add(update(0, 10));
+        batcher.add(update(1, 10));
+        assert sent.size() == 2;
+        assert sent.poll() instanceof StatusUpdate;
+    }
+}
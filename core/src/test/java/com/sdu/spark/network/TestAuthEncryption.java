@@ -0,0 +1,162 @@
+package com.sdu.spark.network;
+
+import com.sdu.spark.SecurityManager;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.network.crypto.AuthEngine;
+import com.sdu.spark.network.crypto.TransportCipher;
+import com.sdu.spark.network.utils.ByteArrayWritableChannel;
+import com.sdu.spark.network.utils.TransportFrameDecoder;
+import com.sdu.spark.rpc.RpcCallContext;
+import com.sdu.spark.rpc.RpcEndpoint;
+import com.sdu.spark.rpc.RpcEndpointAddress;
+import com.sdu.spark.rpc.RpcEnv;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.rpc.netty.NettyRpcEndpointRef;
+import com.sdu.spark.rpc.netty.NettyRpcEnv;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestAuthEncryption extends SparkTestUnit {
+
+    private RpcEnv serverEnv;
+    private RpcEnv clientEnv;
+    private File file;
+
+    @Override
+    public void beforeEach() {
+        serverEnv = RpcEnv.create("server", "localhost", 0, authConf("secret"), new SecurityManager(authConf("secret")));
+        serverEnv.setRpcEndPointRef("echo", new RpcEndpoint(serverEnv) {
+            @Override
+            public void receiveAndReply(Object msg, RpcCallContext context) {
+                context.reply(msg);
+            }
+        });
+    }
+
+    private static SparkConf authConf(String secret) {
+        SparkConf authConf = new SparkConf();
+        conf.getAll().forEach(authConf::set);
+        authConf.set("spark.authenticate", "true");
+        authConf.set("spark.authenticate.secret", secret);
+        authConf.set("spark.network.crypto.enabled", "true");
+        // 小Record, 单条消息跨越多个Record
+        authConf.set("spark.network.crypto.recordSize", "4k");
+        return authConf;
+    }
+
+    private NettyRpcEndpointRef echoRef(String secret) {
+        SparkConf clientConf = authConf(secret);
+        clientEnv = RpcEnv.create("client", "localhost", 0, clientConf, new SecurityManager(clientConf));
+        return new NettyRpcEndpointRef(new RpcEndpointAddress("echo", serverEnv.address()), (NettyRpcEnv) clientEnv);
+    }
+
+    @Test
+    public void testEncryptedRpc() throws Exception {
+        NettyRpcEndpointRef ref = echoRef("secret");
+        byte[] payload = new byte[100 * 1024];
+        new Random(7).nextBytes(payload);
+        for (int i = 0; i < 3; ++i) {
+            CompletableFuture<byte[]> future = ref.ask(payload);
+            assert Arrays.equals(future.get(10, TimeUnit.SECONDS), payload);
+        }
+    }
+
+    @Test
+    public void testWrongSecret() throws Exception {
+        NettyRpcEndpointRef ref = echoRef("bad-secret");
+        CompletableFuture<byte[]> future = ref.ask(new byte[16]);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            assert false;
+        } catch (ExecutionException e) {
+            // 认证失败, 连接未建立
+        }
+    }
+
+    private static EmbeddedChannel cipherChannel(TransportCipher cipher) throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(TransportFrameDecoder.HANDLER_NAME, new ChannelInboundHandlerAdapter());
+        cipher.addToChannel(channel);
+        return channel;
+    }
+
+    @Test
+    public void testEncryptedFileRegion() throws Exception {
+        byte[] data = new byte[50 * 1024 + 17];
+        new Random(11).nextBytes(data);
+        file = Files.createTempFile(Paths.get("target"), "crypto", ".data").toFile();
+        Files.write(file.toPath(), data);
+
+        byte[] clientNonce = AuthEngine.newNonce();
+        byte[] serverNonce = AuthEngine.newNonce();
+        EmbeddedChannel client = cipherChannel(
+                new AuthEngine("secret", clientNonce, serverNonce, 256).sessionCipher(true, 4096));
+        EmbeddedChannel server = cipherChannel(
+                new AuthEngine("secret", clientNonce, serverNonce, 256).sessionCipher(false, 4096));
+
+        // FileRegion按Record流式加密
+        client.writeOutbound(new DefaultFileRegion(file, 0, data.length));
+        FileRegion encrypted = (FileRegion) client.readOutbound();
+        ByteArrayWritableChannel wire = new ByteArrayWritableChannel((int) encrypted.count());
+        while (encrypted.transfered() < encrypted.count()) {
+            encrypted.transferTo(wire, encrypted.transfered());
+        }
+        encrypted.release();
+        assert wire.length() > data.length;
+
+        // 密文逐段到达, Server端按Record解密
+        byte[] cipherText = wire.getData();
+        for (int i = 0; i < cipherText.length; i += 1000) {
+            server.writeInbound(Unpooled.wrappedBuffer(cipherText, i, Math.min(1000, cipherText.length - i)));
+        }
+        ByteBuf plain = Unpooled.buffer(data.length);
+        ByteBuf record;
+        while ((record = (ByteBuf) server.readInbound()) != null) {
+            plain.writeBytes(record);
+            record.release();
+        }
+        assert Arrays.equals(Arrays.copyOf(plain.array(), plain.readableBytes()), data);
+
+        // 篡改密文, GCM校验失败
+        EmbeddedChannel tampered = cipherChannel(
+                new AuthEngine("secret", clientNonce, serverNonce, 256).sessionCipher(false, 4096));
+        cipherText[10] ^= 1;
+        try {
+            tampered.writeInbound(Unpooled.wrappedBuffer(cipherText));
+            assert false;
+        } catch (DecoderException e) {
+            // expected
+        }
+        client.finish();
+        server.finish();
+    }
+
+    @Override
+    public void afterEach() {
+        if (clientEnv != null) {
+            clientEnv.shutdown();
+        }
+        serverEnv.shutdown();
+        if (file != null) {
+            file.delete();
+        }
+    }
+}
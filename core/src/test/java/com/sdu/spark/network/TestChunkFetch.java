@@ -0,0 +1,185 @@
+package com.sdu.spark.network;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.network.buffer.ManagedBuffer;
+import com.sdu.spark.network.buffer.NioManagerBuffer;
+import com.sdu.spark.network.client.ChunkReceivedCallback;
+import com.sdu.spark.network.client.TransportClient;
+import com.sdu.spark.network.client.TransportClientFactory;
+import com.sdu.spark.network.netty.SparkTransportConf;
+import com.sdu.spark.network.client.TransportResponseHandler;
+import com.sdu.spark.network.protocol.BatchChunkFetchRequest;
+import com.sdu.spark.network.protocol.ChunkFetchSuccess;
+import com.sdu.spark.network.protocol.Message;
+import com.sdu.spark.network.protocol.MessageDecoder;
+import com.sdu.spark.network.protocol.MessageEncoder;
+import com.sdu.spark.network.protocol.StreamChunkId;
+import com.sdu.spark.network.server.NoOpRpcHandler;
+import com.sdu.spark.network.server.OneForOneStreamManager;
+import com.sdu.spark.network.server.StreamManager;
+import com.sdu.spark.network.server.TransportRequestHandler;
+import com.sdu.spark.network.server.TransportServer;
+import com.sdu.spark.network.utils.JavaUtils;
+import com.sdu.spark.network.utils.TransportConf;
+import com.sdu.spark.network.utils.TransportFrameDecoder;
+import com.sdu.spark.rpc.SparkConf;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestChunkFetch extends SparkTestUnit {
+
+    private OneForOneStreamManager streamManager;
+    private TransportServer server;
+    private TransportClientFactory clientFactory;
+
+    @Override
+    public void beforeEach() {
+        streamManager = new OneForOneStreamManager();
+        TransportConf transportConf = SparkTransportConf.fromSparkConf(new SparkConf(), "chunk", 2);
+        TransportContext context = new TransportContext(transportConf, new NoOpRpcHandler() {
+            @Override
+            public StreamManager getStreamManager() {
+                return streamManager;
+            }
+        });
+        server = context.createServer("localhost", 0, Collections.emptyList());
+        clientFactory = context.createClientFactory();
+    }
+
+    private long registerStream(int numChunks) {
+        List<ManagedBuffer> buffers = Lists.newArrayList();
+        for (int i = 0; i < numChunks; ++i) {
+            buffers.add(new NioManagerBuffer(ByteBuffer.wrap(new byte[] {(byte) i, (byte) i})));
+        }
+        return streamManager.registerStream(null, buffers.iterator());
+    }
+
+    @Test
+    public void testBatchChunkFetchRequestCodec() {
+        List<StreamChunkId> streamChunkIds = Lists.newArrayList(new StreamChunkId(1, 0), new StreamChunkId(1, 1));
+        EmbeddedChannel channel = new EmbeddedChannel(MessageEncoder.INSTANCE);
+        channel.writeOutbound(new BatchChunkFetchRequest(streamChunkIds));
+        Object encoded;
+        EmbeddedChannel decoder = new EmbeddedChannel(new TransportFrameDecoder(), MessageDecoder.INSTANCE);
+        while ((encoded = channel.readOutbound()) != null) {
+            decoder.writeInbound(encoded);
+        }
+        Message decoded = (Message) decoder.readInbound();
+        assert decoded.equals(new BatchChunkFetchRequest(streamChunkIds));
+        channel.finish();
+        decoder.finish();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchChunkFetchRequestInvalidChunkNum() {
+        ByteBuf buf = Unpooled.buffer();
+        // 声明的数据块数超过可读字节
+        buf.writeInt(Integer.MAX_VALUE);
+        new StreamChunkId(1, 0).encode(buf);
+        try {
+            BatchChunkFetchRequest.decode(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testBatchCountedAgainstMaxChunksBeingTransferred() throws Exception {
+        long streamId = registerStream(4);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        TransportClient reverseClient = new TransportClient(channel, new TransportResponseHandler(channel));
+        TransportRequestHandler handler = new TransportRequestHandler(channel, reverseClient, new NoOpRpcHandler() {
+            @Override
+            public StreamManager getStreamManager() {
+                return streamManager;
+            }
+        }, 2);
+
+        // 整批3个数据块超过上限, 关闭连接且不响应
+        handler.handle(new BatchChunkFetchRequest(Lists.newArrayList(
+                new StreamChunkId(streamId, 0), new StreamChunkId(streamId, 1), new StreamChunkId(streamId, 2))));
+        assert !channel.isOpen();
+        assert channel.readOutbound() == null;
+
+        channel = new EmbeddedChannel();
+        reverseClient = new TransportClient(channel, new TransportResponseHandler(channel));
+        handler = new TransportRequestHandler(channel, reverseClient, new NoOpRpcHandler() {
+            @Override
+            public StreamManager getStreamManager() {
+                return streamManager;
+            }
+        }, 2);
+        handler.handle(new BatchChunkFetchRequest(Lists.newArrayList(
+                new StreamChunkId(streamId, 0), new StreamChunkId(streamId, 1))));
+        assert channel.isOpen();
+        assert channel.readOutbound() instanceof ChunkFetchSuccess;
+        assert channel.readOutbound() instanceof ChunkFetchSuccess;
+        channel.finish();
+    }
+
+    @Test
+    public void testBatchFetch() throws Exception {
+        int numChunks = 1000;
+        long streamId = registerStream(numChunks);
+        TransportClient client = clientFactory.createClient("localhost", server.getPort());
+
+        Map<Integer, Byte> received = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(numChunks + 1);
+        ChunkReceivedCallback callback = new ChunkReceivedCallback() {
+            @Override
+            public void onSuccess(int chunkIndex, ManagedBuffer buffer) {
+                try {
+                    received.put(chunkIndex, buffer.nioByteBuffer().get());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(int chunkIndex, Throwable e) {
+                // 超出Stream范围的数据块
+                assert chunkIndex == numChunks;
+                latch.countDown();
+            }
+        };
+
+        // 两个批量请求, 最后一个数据块不存在
+        int[] first = new int[numChunks / 2];
+        int[] second = new int[numChunks / 2 + 1];
+        for (int i = 0; i < first.length; ++i) {
+            first[i] = i;
+        }
+        for (int i = 0; i < second.length; ++i) {
+            second[i] = first.length + i;
+        }
+        client.fetchChunks(streamId, first, callback);
+        client.fetchChunks(streamId, second, callback);
+
+        assert latch.await(10, TimeUnit.SECONDS);
+        assert received.size() == numChunks;
+        for (int i = 0; i < numChunks; ++i) {
+            assert received.get(i) == (byte) i;
+        }
+    }
+
+    @Override
+    public void afterEach() {
+        JavaUtils.closeQuietly(clientFactory);
+        JavaUtils.closeQuietly(server);
+    }
+}
@@ -0,0 +1,108 @@
+package com.sdu.spark.network;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.network.client.RpcResponseCallback;
+import com.sdu.spark.network.client.TransportClient;
+import com.sdu.spark.network.client.TransportClientFactory;
+import com.sdu.spark.network.netty.SparkTransportConf;
+import com.sdu.spark.network.server.NoOpRpcHandler;
+import com.sdu.spark.network.server.TransportServer;
+import com.sdu.spark.network.utils.IOModel;
+import com.sdu.spark.network.utils.JavaUtils;
+import com.sdu.spark.network.utils.TransportConf;
+import com.sdu.spark.rpc.SparkConf;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestIOModel extends SparkTestUnit {
+
+    private TransportServer server;
+    private TransportClientFactory clientFactory;
+
+    @Override
+    public void beforeEach() {
+
+    }
+
+    @Test
+    public void testConvert() {
+        assert IOModel.convert(null) == IOModel.AUTO;
+        assert IOModel.convert("nio") == IOModel.NIO;
+        assert IOModel.convert("Epoll") == IOModel.EPOLL;
+        assert IOModel.convert("AUTO").resolve() == (Epoll.isAvailable() ? IOModel.EPOLL : IOModel.NIO);
+        try {
+            IOModel.convert("kqueue");
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // 未知IO模型不再静默退化为NIO
+        }
+    }
+
+    private TransportClient start(SparkConf sparkConf, String module) throws Exception {
+        TransportConf transportConf = SparkTransportConf.fromSparkConf(sparkConf, module, 2);
+        TransportContext context = new TransportContext(transportConf, new NoOpRpcHandler() {
+            @Override
+            public void receive(TransportClient client, ByteBuffer message, RpcResponseCallback callback) {
+                callback.onSuccess(message);
+            }
+        });
+        server = context.createServer("localhost", 0, Collections.emptyList());
+        clientFactory = context.createClientFactory();
+        return clientFactory.createClient("localhost", server.getPort());
+    }
+
+    private static void assertEcho(TransportClient client) {
+        ByteBuffer response = client.sendRpcSync(ByteBuffer.wrap(new byte[] {1, 2, 3}), 10000);
+        assert response.remaining() == 3;
+    }
+
+    @Test
+    public void testNio() throws Exception {
+        SparkConf sparkConf = new SparkConf();
+        sparkConf.set("spark.nio.io.model", "nio");
+        TransportClient client = start(sparkConf, "nio");
+        assert client.getChannel() instanceof NioSocketChannel;
+        assertEcho(client);
+    }
+
+    @Test
+    public void testEpollReusePort() throws Exception {
+        if (!Epoll.isAvailable()) {
+            return;
+        }
+        SparkConf sparkConf = new SparkConf();
+        sparkConf.set("spark.epoll.io.epoll.reusePort", "true");
+        sparkConf.set("spark.epoll.io.epoll.acceptorThreads", "2");
+        sparkConf.set("spark.epoll.io.epoll.quickAck", "true");
+        sparkConf.set("spark.epoll.io.epoll.edgeTriggered", "false");
+        sparkConf.set("spark.epoll.io.epoll.busyPoll", "true");
+        TransportClient client = start(sparkConf, "epoll");
+        assert client.getChannel() instanceof EpollSocketChannel;
+        assert server.numAcceptors() == 2;
+        assertEcho(client);
+        // 多个连接由内核在监听同一端口的Server Channel间分发
+        for (int i = 0; i < 4; ++i) {
+            assertEcho(clientFactory.createUnmanagedClient("localhost", server.getPort()));
+        }
+    }
+
+    @Override
+    public void afterEach() {
+        if (clientFactory != null) {
+            JavaUtils.closeQuietly(clientFactory);
+            clientFactory = null;
+        }
+        if (server != null) {
+            JavaUtils.closeQuietly(server);
+            server = null;
+        }
+    }
+}
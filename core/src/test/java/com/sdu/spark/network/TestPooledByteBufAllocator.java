@@ -0,0 +1,115 @@
+package com.sdu.spark.network;
+
+import com.sdu.spark.SecurityManager;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.network.netty.SparkTransportConf;
+import com.sdu.spark.network.server.NoOpRpcHandler;
+import com.sdu.spark.network.utils.AllocatorMetrics;
+import com.sdu.spark.network.utils.NettyUtils;
+import com.sdu.spark.network.utils.TransportByteBufAllocator;
+import com.sdu.spark.network.utils.TransportConf;
+import com.sdu.spark.rpc.RpcEnv;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.rpc.netty.NettyRpcEnv;
+import io.netty.buffer.ByteBuf;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestPooledByteBufAllocator extends SparkTestUnit {
+
+    @Override
+    public void beforeEach() {
+
+    }
+
+    @Test
+    public void testArenasSizedByModuleThreads() throws Exception {
+        SparkConf sparkConf = new SparkConf();
+        sparkConf.set("spark.alloc1.io.serverThreads", "2");
+        sparkConf.set("spark.alloc1.io.clientThreads", "3");
+        TransportConf transportConf = SparkTransportConf.fromSparkConf(sparkConf, "alloc1");
+        assert transportConf.serverThreads() == 2;
+        assert transportConf.allocatorArenas() == 3;
+
+        TransportContext context = new TransportContext(transportConf, new NoOpRpcHandler());
+        TransportByteBufAllocator allocator = context.getAllocator();
+        assert allocator.pooled().numHeapArenas() <= 3;
+        assert allocator.pooled().numDirectArenas() <= 3;
+
+        // EventLoop线程从Arena分配
+        AllocatorMetrics before = context.allocatorMetrics();
+        AtomicReference<ByteBuf> pooledBuf = new AtomicReference<>();
+        Thread eventLoopThread = NettyUtils.createThreadFactory("alloc1-test").newThread(() ->
+                pooledBuf.set(allocator.buffer(64 * 1024)));
+        eventLoopThread.start();
+        eventLoopThread.join();
+        AllocatorMetrics after = context.allocatorMetrics();
+        assert after.activeAllocations == before.activeAllocations + 1;
+        assert after.usedHeapMemory + after.usedDirectMemory > 0;
+        pooledBuf.get().release();
+        assert context.allocatorMetrics().activeAllocations == before.activeAllocations;
+
+        // 非EventLoop线程不使用池化内存
+        ByteBuf buf = allocator.buffer(64 * 1024);
+        assert context.allocatorMetrics().activeAllocations == before.activeAllocations;
+        assert !allocator.pooled().hasThreadLocalCache();
+        buf.release();
+    }
+
+    @Test
+    public void testHeapOnlyAllocator() {
+        SparkConf sparkConf = new SparkConf();
+        sparkConf.set("spark.alloc2.io.preferDirectBufs", "false");
+        sparkConf.set("spark.alloc2.io.allocator.numArenas", "1");
+        sparkConf.set("spark.alloc2.io.allocator.cacheForAllThreads", "true");
+        TransportConf transportConf = SparkTransportConf.fromSparkConf(sparkConf, "alloc2");
+        TransportContext context = new TransportContext(transportConf, new NoOpRpcHandler());
+        TransportByteBufAllocator allocator = context.getAllocator();
+        assert allocator.pooled().numDirectArenas() == 0;
+        assert allocator.pooled().numHeapArenas() == 1;
+
+        ByteBuf buf = allocator.buffer(1024);
+        assert !buf.isDirect();
+        buf.release();
+        assert context.allocatorMetrics().usedDirectMemory == 0;
+    }
+
+    @Test
+    public void testRpcModuleMetrics() {
+        RpcEnv rpcEnv = RpcEnv.create("alloc", "localhost", 0, conf, new SecurityManager(conf));
+        try {
+            AllocatorMetrics metrics = ((NettyRpcEnv) rpcEnv).allocatorMetrics();
+            assert metrics != null;
+            assert metrics.module.equals("rpc");
+            assert metrics.numHeapArenas > 0;
+        } finally {
+            rpcEnv.shutdown();
+        }
+    }
+
+    @Test
+    public void testAllocatorOwnedByContext() {
+        SparkConf sparkConf = new SparkConf();
+        sparkConf.set("spark.alloc3.io.allocator.numArenas", "1");
+        TransportContext first = new TransportContext(SparkTransportConf.fromSparkConf(sparkConf, "alloc3"),
+                                                      new NoOpRpcHandler());
+        // 同一模块不同配置各自创建分配器, 不沿用首次创建时的配置
+        sparkConf.set("spark.alloc3.io.allocator.numArenas", "2");
+        sparkConf.set("spark.alloc3.io.preferDirectBufs", "false");
+        TransportContext second = new TransportContext(SparkTransportConf.fromSparkConf(sparkConf, "alloc3"),
+                                                       new NoOpRpcHandler());
+        assert first.getAllocator() != second.getAllocator();
+        assert first.getAllocator().pooled().numHeapArenas() == 1;
+        assert second.getAllocator().pooled().numDirectArenas() == 0;
+        assert second.allocatorMetrics().module.equals("alloc3");
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
@@ -0,0 +1,120 @@
+package com.sdu.spark.network;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.network.client.RpcResponseCallback;
+import com.sdu.spark.network.client.TransportClient;
+import com.sdu.spark.network.client.TransportClientFactory;
+import com.sdu.spark.network.netty.SparkTransportConf;
+import com.sdu.spark.network.server.NoOpRpcHandler;
+import com.sdu.spark.network.server.TransportServer;
+import com.sdu.spark.network.utils.JavaUtils;
+import com.sdu.spark.network.utils.TransportConf;
+import com.sdu.spark.rpc.SparkConf;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestTransportClientFactory extends SparkTestUnit {
+
+    private static final RpcResponseCallback NO_OP = new RpcResponseCallback() {
+        @Override
+        public void onSuccess(ByteBuffer response) {
+
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+
+        }
+    };
+
+    private TransportServer server;
+    private TransportClientFactory clientFactory;
+    // 服务端暂不响应的Rpc请求
+    private List<RpcResponseCallback> pendingCallbacks;
+
+    @Override
+    public void beforeEach() {
+        pendingCallbacks = new CopyOnWriteArrayList<>();
+        SparkConf sparkConf = new SparkConf();
+        sparkConf.set("spark.pool.io.numConnectionsPerPeer", "3");
+        sparkConf.set("spark.pool.io.warmUpConnections", "2");
+        sparkConf.set("spark.pool.io.connectionTimeout", "1s");
+        TransportConf transportConf = SparkTransportConf.fromSparkConf(sparkConf, "pool", 2);
+        TransportContext context = new TransportContext(transportConf, new NoOpRpcHandler() {
+            @Override
+            public void receive(TransportClient client, ByteBuffer message, RpcResponseCallback callback) {
+                pendingCallbacks.add(callback);
+            }
+        });
+        server = context.createServer("localhost", 0, Collections.emptyList());
+        clientFactory = context.createClientFactory();
+    }
+
+    @Test
+    public void testWarmUpAndLeastOutstandingSelection() throws Exception {
+        assert clientFactory.warmUp("localhost", server.getPort(), 2) == 2;
+        assert clientFactory.warmUp("localhost", server.getPort(), 1) == 2;
+
+        // 预建连接空闲, 不新建连接
+        TransportClient first = clientFactory.createClient("localhost", server.getPort());
+        first.sendRpc(ByteBuffer.wrap(new byte[1]), NO_OP);
+        TransportClient second = clientFactory.createClient("localhost", server.getPort());
+        assert second != first;
+        second.sendRpc(ByteBuffer.wrap(new byte[1]), NO_OP);
+
+        // 预建连接均有未完成请求, 新建第三个连接
+        TransportClient third = clientFactory.createClient("localhost", server.getPort());
+        assert third != first && third != second;
+        third.sendRpc(ByteBuffer.wrap(new byte[1]), NO_OP);
+        third.sendRpc(ByteBuffer.wrap(new byte[1]), NO_OP);
+
+        // 连接池已满, 选择未完成请求最少的连接
+        TransportClient least = clientFactory.createClient("localhost", server.getPort());
+        assert least == first || least == second;
+    }
+
+    @Test
+    public void testEvictDeadClients() throws Exception {
+        TransportClient client = clientFactory.createClient("localhost", server.getPort());
+        client.getChannel().close().awaitUninterruptibly(10, TimeUnit.SECONDS);
+
+        assert clientFactory.evictDeadClients() == 1;
+        assert clientFactory.evictDeadClients() == 0;
+        TransportClient newClient = clientFactory.createClient("localhost", server.getPort());
+        assert newClient != client && newClient.isActive();
+    }
+
+    @Test
+    public void testEvictUnresponsiveClients() throws Exception {
+        TransportClient idle = clientFactory.createClient("localhost", server.getPort());
+        TransportClient unresponsive = clientFactory.createClient("localhost", server.getPort());
+        assert idle == unresponsive;
+        // 服务端不响应请求
+        unresponsive.sendRpc(ByteBuffer.wrap(new byte[1]), NO_OP);
+        idle = clientFactory.createClient("localhost", server.getPort());
+        assert idle != unresponsive;
+
+        assert clientFactory.evictDeadClients() == 0;
+        Thread.sleep(1500);
+
+        // 超过connectionTimeout未收到响应的连接被关闭, 空闲连接保留
+        assert clientFactory.evictDeadClients() == 1;
+        assert !unresponsive.isActive();
+        assert idle.isActive();
+        assert clientFactory.evictDeadClients() == 0;
+    }
+
+    @Override
+    public void afterEach() {
+        JavaUtils.closeQuietly(clientFactory);
+        JavaUtils.closeQuietly(server);
+    }
+}
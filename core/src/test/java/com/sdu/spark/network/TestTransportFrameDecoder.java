@@ -0,0 +1,152 @@
+package com.sdu.spark.network;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.network.utils.TransportFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestTransportFrameDecoder extends SparkTestUnit {
+
+    private TransportFrameDecoder decoder;
+    private EmbeddedChannel channel;
+
+    @Override
+    public void beforeEach() {
+        decoder = new TransportFrameDecoder();
+        channel = new EmbeddedChannel(decoder);
+    }
+
+    private static ByteBuf frame(int bodySize, int fill) {
+        ByteBuf buf = Unpooled.buffer(8 + bodySize);
+        buf.writeLong(8 + bodySize);
+        for (int i = 0; i < bodySize; ++i) {
+            buf.writeByte(fill);
+        }
+        return buf;
+    }
+
+    private static void assertFrame(ByteBuf frame, int bodySize, int fill) {
+        assert frame.readableBytes() == bodySize;
+        for (int i = 0; i < bodySize; ++i) {
+            assert frame.getByte(frame.readerIndex() + i) == (byte) fill;
+        }
+    }
+
+    @Test
+    public void testFramesInSingleBuffer() {
+        ByteBuf in = Unpooled.buffer();
+        for (int i = 1; i <= 10; ++i) {
+            in.writeBytes(frame(i * 10, i));
+        }
+        channel.writeInbound(in);
+
+        List<ByteBuf> frames = new ArrayList<>();
+        ByteBuf frame;
+        while ((frame = (ByteBuf) channel.readInbound()) != null) {
+            frames.add(frame);
+        }
+        assert frames.size() == 10;
+        for (int i = 0; i < frames.size(); ++i) {
+            assertFrame(frames.get(i), (i + 1) * 10, i + 1);
+            // 零拷贝: 切片共享接收的ByteBuf
+            assert frames.get(i).unwrap() == in;
+        }
+        frames.forEach(ByteBuf::release);
+        assert in.refCnt() == 0;
+    }
+
+    @Test
+    public void testFrameSplitAcrossBuffers() {
+        ByteBuf data = Unpooled.buffer();
+        data.writeBytes(frame(100, 1));
+        data.writeBytes(frame(3, 2));
+        // 逐字节发送, FrameLength及FrameBody均跨越多个ByteBuf
+        List<ByteBuf> inputs = new ArrayList<>();
+        while (data.isReadable()) {
+            ByteBuf in = data.readBytes(1);
+            inputs.add(in);
+            channel.writeInbound(in);
+        }
+
+        ByteBuf first = (ByteBuf) channel.readInbound();
+        ByteBuf second = (ByteBuf) channel.readInbound();
+        assert channel.readInbound() == null;
+        assertFrame(first, 100, 1);
+        assertFrame(second, 3, 2);
+        first.release();
+        second.release();
+        inputs.forEach(in -> {
+            assert in.refCnt() == 0;
+        });
+    }
+
+    @Test
+    public void testInterceptor() {
+        channel.writeInbound(frame(16, 1));
+        ByteBuf header = (ByteBuf) channel.readInbound();
+        assertFrame(header, 16, 1);
+        header.release();
+
+        // 流数据(不属于Frame)之后跟随下一个Frame
+        int streamSize = 1000;
+        CountingInterceptor interceptor = new CountingInterceptor(streamSize);
+        decoder.setInterceptor(interceptor);
+        ByteBuf in = Unpooled.buffer();
+        in.writeBytes(new byte[streamSize - 100]);
+        channel.writeInbound(in);
+        assert channel.readInbound() == null;
+
+        in = Unpooled.buffer();
+        in.writeBytes(new byte[100]);
+        in.writeBytes(frame(20, 3));
+        channel.writeInbound(in);
+
+        assert interceptor.received == streamSize;
+        assert interceptor.handleCalls == 2;
+        ByteBuf next = (ByteBuf) channel.readInbound();
+        assertFrame(next, 20, 3);
+        next.release();
+    }
+
+    private static class CountingInterceptor implements TransportFrameDecoder.Interceptor {
+        private final long expected;
+        long received = 0;
+        int handleCalls = 0;
+
+        CountingInterceptor(long expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public boolean handle(ByteBuf data) {
+            handleCalls++;
+            int toRead = (int) Math.min(data.readableBytes(), expected - received);
+            data.skipBytes(toRead);
+            received += toRead;
+            return received < expected;
+        }
+
+        @Override
+        public void exceptionCaught(Throwable cause) {
+
+        }
+
+        @Override
+        public void channelInactive() {
+
+        }
+    }
+
+    @Override
+    public void afterEach() {
+        channel.finish();
+    }
+}
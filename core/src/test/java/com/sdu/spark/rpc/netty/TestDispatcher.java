@@ -0,0 +1,278 @@
+package com.sdu.spark.rpc.netty;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.SecurityManager;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.RpcCallContext;
+import com.sdu.spark.rpc.RpcEndpoint;
+import com.sdu.spark.rpc.RpcEndpointRef;
+import com.sdu.spark.rpc.RpcEnv;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.rpc.ThreadSafeRpcEndpoint;
+import com.sdu.spark.rpc.netty.IndexMessage.RpcMessage;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestDispatcher extends SparkTestUnit {
+
+    private RpcEnv rpcEnv;
+
+    @Override
+    public void beforeEach() {
+        rpcEnv = RpcEnv.create("test", "localhost", 0, conf, new SecurityManager(conf));
+    }
+
+    @Test
+    public void testThreadSafeEndpointOrdering() throws Exception {
+        checkThreadSafeEndpointOrdering(rpcEnv);
+    }
+
+    @Test
+    public void testForkJoinDispatcher() throws Exception {
+        checkDispatcherMode("forkjoin");
+    }
+
+    @Test
+    public void testVirtualThreadDispatcher() throws Exception {
+        // JDK 21以下退化为forkjoin
+        checkDispatcherMode("virtual");
+    }
+
+    private void checkDispatcherMode(String mode) throws Exception {
+        SparkConf modeConf = new SparkConf();
+        conf.getAll().forEach(modeConf::set);
+        modeConf.set("spark.rpc.netty.dispatcher.mode", mode);
+        RpcEnv modeRpcEnv = RpcEnv.create("test-" + mode, "localhost", 0, modeConf, new SecurityManager(modeConf));
+        try {
+            checkThreadSafeEndpointOrdering(modeRpcEnv);
+        } finally {
+            modeRpcEnv.shutdown();
+        }
+    }
+
+    private void checkThreadSafeEndpointOrdering(RpcEnv rpcEnv) throws Exception {
+        CounterEndpoint endpoint = new CounterEndpoint(rpcEnv);
+        RpcEndpointRef ref = rpcEnv.setRpcEndPointRef("counter", endpoint);
+
+        // 多线程并发投递, ThreadSafeRpcEndpoint同一时刻只有一个线程处理
+        List<CompletableFuture<Integer>> futures = IntStream.range(0, 2000).parallel()
+                .mapToObj(i -> ref.<Integer>ask(i))
+                .collect(Collectors.toList());
+        for (CompletableFuture<Integer> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assert endpoint.received.get() == 2000;
+        assert endpoint.maxConcurrency.get() == 1;
+        // Outbox背压依赖分发线程标识
+        assert endpoint.outsideDispatcherThread.get() == 0;
+    }
+
+    @Test
+    public void testVirtualThreadExecutorMarksDispatcherThread() throws Exception {
+        Dispatcher dispatcher = new Dispatcher((NettyRpcEnv) rpcEnv, 1);
+        // 以普通线程代替虚拟线程, 与JDK版本无关
+        DispatcherExecutor executor = new DispatcherExecutor.VirtualThreadExecutor(dispatcher,
+                                                                                  Executors.newSingleThreadExecutor());
+        try {
+            RpcEndpoint endpoint = new ThreadSafeRpcEndpoint(rpcEnv) {
+                @Override
+                public void receiveAndReply(Object msg, RpcCallContext context) {
+                    context.reply(DispatcherExecutor.inDispatcherThread());
+                }
+            };
+            // 每次process只处理一条消息: OnStart之后的消息由同一线程循环处理
+            Index index = new Index(endpoint, null, 1);
+            List<CompletableFuture<Object>> asks = Lists.newArrayList();
+            for (int i = 0; i < 3; ++i) {
+                CompletableFuture<Object> p = new CompletableFuture<>();
+                asks.add(p);
+                index.post(new RpcMessage(null, i, new LocalNettyRpcCallContext(null, p)));
+            }
+            executor.schedule(index);
+
+            for (CompletableFuture<Object> ask : asks) {
+                assert (Boolean) ask.get(10, TimeUnit.SECONDS);
+            }
+            assert !DispatcherExecutor.inDispatcherThread();
+        } finally {
+            executor.stop();
+            executor.awaitTermination();
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void testConcurrentEndpoint() throws Exception {
+        AtomicInteger received = new AtomicInteger(0);
+        RpcEndpointRef ref = rpcEnv.setRpcEndPointRef("concurrent", new RpcEndpoint(rpcEnv) {
+            @Override
+            public void receiveAndReply(Object msg, RpcCallContext context) {
+                received.incrementAndGet();
+                context.reply(msg);
+            }
+        });
+
+        List<CompletableFuture<Integer>> futures = IntStream.range(0, 2000).parallel()
+                .mapToObj(i -> ref.<Integer>ask(i))
+                .collect(Collectors.toList());
+        for (int i = 0; i < futures.size(); ++i) {
+            assert futures.get(i).get(10, TimeUnit.SECONDS) == i;
+        }
+        assert received.get() == 2000;
+    }
+
+    @Test
+    public void testConcurrentPostAndStop() throws Exception {
+        for (int round = 0; round < 20; ++round) {
+            AtomicBoolean stopped = new AtomicBoolean(false);
+            AtomicInteger receivedAfterStop = new AtomicInteger(0);
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            RpcEndpointRef ref = rpcEnv.setRpcEndPointRef("stopping-" + round, new RpcEndpoint(rpcEnv) {
+                @Override
+                public void receiveAndReply(Object msg, RpcCallContext context) {
+                    if (stopped.get()) {
+                        receivedAfterStop.incrementAndGet();
+                    }
+                    context.reply(msg);
+                }
+
+                @Override
+                public void onStop() {
+                    stopped.set(true);
+                }
+
+                @Override
+                public void onError(Throwable cause) {
+                    error.set(cause);
+                }
+            });
+
+            // 投递与注销并发: 每个请求都应被应答或以失败结束, 注销后不再处理消息
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<List<CompletableFuture<Integer>>> asks = CompletableFuture.supplyAsync(() -> {
+                started.countDown();
+                return IntStream.range(0, 2000).parallel()
+                                .mapToObj(i -> ref.<Integer>ask(i))
+                                .collect(Collectors.toList());
+            });
+            started.await();
+            rpcEnv.stop(ref);
+
+            for (CompletableFuture<Integer> future : asks.get(10, TimeUnit.SECONDS)) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    // 注销后投递的请求以失败应答
+                }
+            }
+            assert receivedAfterStop.get() == 0;
+            assert error.get() == null;
+        }
+    }
+
+    @Test
+    public void testIndexPostRacingStop() throws Exception {
+        Dispatcher dispatcher = new Dispatcher((NettyRpcEnv) rpcEnv, 1);
+        try {
+            for (int round = 0; round < 20; ++round) {
+                AtomicBoolean stopped = new AtomicBoolean(false);
+                AtomicInteger receivedAfterStop = new AtomicInteger(0);
+                RpcEndpoint endpoint = new RpcEndpoint(rpcEnv) {
+                    @Override
+                    public void receiveAndReply(Object msg, RpcCallContext context) {
+                        if (stopped.get()) {
+                            receivedAfterStop.incrementAndGet();
+                        }
+                        context.reply(msg);
+                    }
+
+                    @Override
+                    public void onStop() {
+                        stopped.set(true);
+                    }
+                };
+                Index index = new Index(endpoint, null, 16);
+                index.process(dispatcher);
+
+                // 投递线程与stop()并发, 部分消息排在OnStop之后
+                List<CompletableFuture<Object>> asks = new CopyOnWriteArrayList<>();
+                CountDownLatch started = new CountDownLatch(4);
+                List<Thread> posters = IntStream.range(0, 4).mapToObj(i -> new Thread(() -> {
+                    started.countDown();
+                    for (int k = 0; k < 500; ++k) {
+                        CompletableFuture<Object> p = new CompletableFuture<>();
+                        asks.add(p);
+                        index.post(new RpcMessage(null, k, new LocalNettyRpcCallContext(null, p)));
+                    }
+                })).collect(Collectors.toList());
+                posters.forEach(Thread::start);
+                started.await();
+                index.stop();
+                while (posters.stream().anyMatch(Thread::isAlive)) {
+                    index.process(dispatcher);
+                }
+                for (Thread poster : posters) {
+                    poster.join();
+                }
+                while (index.process(dispatcher)) {
+                    // 处理剩余消息
+                }
+
+                for (CompletableFuture<Object> ask : asks) {
+                    try {
+                        ask.get(10, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        // 注销后投递的请求以失败应答
+                    }
+                }
+                assert stopped.get();
+                assert receivedAfterStop.get() == 0;
+            }
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    private static class CounterEndpoint extends ThreadSafeRpcEndpoint {
+        AtomicInteger received = new AtomicInteger(0);
+        AtomicInteger active = new AtomicInteger(0);
+        AtomicInteger maxConcurrency = new AtomicInteger(0);
+        AtomicInteger outsideDispatcherThread = new AtomicInteger(0);
+
+        CounterEndpoint(RpcEnv rpcEnv) {
+            super(rpcEnv);
+        }
+
+        @Override
+        public void receiveAndReply(Object msg, RpcCallContext context) {
+            int concurrency = active.incrementAndGet();
+            maxConcurrency.accumulateAndGet(concurrency, Math::max);
+            if (!DispatcherExecutor.inDispatcherThread()) {
+                outsideDispatcherThread.incrementAndGet();
+            }
+            received.incrementAndGet();
+            active.decrementAndGet();
+            context.reply(msg);
+        }
+    }
+
+    @Override
+    public void afterEach() {
+        rpcEnv.shutdown();
+    }
+}
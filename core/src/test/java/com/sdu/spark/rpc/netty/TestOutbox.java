@@ -0,0 +1,184 @@
+package com.sdu.spark.rpc.netty;
+
+import com.sdu.spark.SecurityManager;
+import com.sdu.spark.SparkException;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.RpcAddress;
+import com.sdu.spark.rpc.RpcEndpoint;
+import com.sdu.spark.rpc.RpcEndpointAddress;
+import com.sdu.spark.rpc.RpcEnv;
+import com.sdu.spark.rpc.SparkConf;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestOutbox extends SparkTestUnit {
+
+    private RpcEnv serverEnv;
+    private NettyRpcEnv clientEnv;
+
+    @Override
+    public void beforeEach() {
+        serverEnv = RpcEnv.create("server", "localhost", 0, conf, new SecurityManager(conf));
+    }
+
+    private NettyRpcEnv createClientEnv(SparkConf clientConf) {
+        clientEnv = (NettyRpcEnv) RpcEnv.create("client", "localhost", 0, clientConf, new SecurityManager(clientConf));
+        return clientEnv;
+    }
+
+    private NettyRpcEndpointRef remoteRef(String name) {
+        // 不经过Endpoint查找, 首条消息发送时才建立连接
+        return new NettyRpcEndpointRef(new RpcEndpointAddress(name, serverEnv.address()), clientEnv);
+    }
+
+    @Test
+    public void testCoalescedFlush() throws Exception {
+        int numMessages = 200;
+        CountDownLatch latch = new CountDownLatch(numMessages);
+        serverEnv.setRpcEndPointRef("counter", new RpcEndpoint(serverEnv) {
+            @Override
+            public void receive(Object msg) {
+                latch.countDown();
+            }
+        });
+
+        createClientEnv(conf);
+        NettyRpcEndpointRef ref = remoteRef("counter");
+        for (int i = 0; i < numMessages; ++i) {
+            ref.send(i);
+        }
+        assert latch.await(10, TimeUnit.SECONDS);
+
+        OutboxMetrics metrics = clientEnv.outboxMetrics().get(serverEnv.address());
+        assert metrics.sentMessages == numMessages;
+        assert metrics.pendingMessages == 0;
+        assert metrics.pendingBytes == 0;
+        // 建立连接期间积压的消息合并flush
+        assert metrics.flushes < metrics.sentMessages;
+    }
+
+    @Test
+    public void testRejectWhenPendingBytesExceeded() throws Exception {
+        serverEnv.setRpcEndPointRef("echo", new RpcEndpoint(serverEnv) {
+            @Override
+            public void receiveAndReply(Object msg, com.sdu.spark.rpc.RpcCallContext context) {
+                context.reply(msg);
+            }
+        });
+
+        SparkConf clientConf = new SparkConf();
+        conf.getAll().forEach(clientConf::set);
+        clientConf.set("spark.rpc.netty.outbox.maxPendingBytes", "1k");
+        clientConf.set("spark.rpc.connect.threads", "1");
+        createClientEnv(clientConf);
+        NettyRpcEndpointRef ref = remoteRef("echo");
+
+        // 占用唯一的建立连接线程, 保证两条消息均在建立连接期间入队
+        CountDownLatch connecting = new CountDownLatch(1);
+        clientEnv.clientConnectionExecutor.submit(() -> {
+            connecting.await();
+            return null;
+        });
+
+        // 信箱为空时总是接受, 建立连接期间后续消息超过上限被拒绝
+        CompletableFuture<byte[]> first = ref.ask(new byte[2048]);
+        CompletableFuture<byte[]> second = ref.ask(new byte[2048]);
+        connecting.countDown();
+        assert first.get(10, TimeUnit.SECONDS).length == 2048;
+        try {
+            second.get(10, TimeUnit.SECONDS);
+            assert false;
+        } catch (ExecutionException e) {
+            assert e.getCause() instanceof SparkException;
+        }
+
+        RpcAddress address = serverEnv.address();
+        assert clientEnv.outboxMetrics().get(address).rejectedMessages == 1;
+        assert clientEnv.outboxMetrics().get(address).peakPendingBytes > 2048;
+    }
+
+    @Test
+    public void testPauseWhileChannelUnwritable() throws Exception {
+        int numMessages = 100;
+        CountDownLatch latch = new CountDownLatch(numMessages);
+        serverEnv.setRpcEndPointRef("counter", new RpcEndpoint(serverEnv) {
+            @Override
+            public void receive(Object msg) {
+                latch.countDown();
+            }
+        });
+
+        SparkConf clientConf = new SparkConf();
+        conf.getAll().forEach(clientConf::set);
+        clientConf.set("spark.rpc.netty.outbox.maxPendingBytes", "4k");
+        clientConf.set("spark.rpc.netty.outbox.blockOnFull", "true");
+        createClientEnv(clientConf);
+        NettyRpcEndpointRef ref = remoteRef("counter");
+
+        // 整批消息写入后Channel发送缓冲区超过高水位(4k), 信箱暂停发送直至Channel恢复可写
+        for (int i = 0; i < numMessages; ++i) {
+            ref.send(new byte[8192]);
+        }
+        assert latch.await(10, TimeUnit.SECONDS);
+
+        OutboxMetrics metrics = clientEnv.outboxMetrics().get(serverEnv.address());
+        assert metrics.sentMessages == numMessages;
+        assert metrics.rejectedMessages == 0;
+        assert metrics.unwritablePauses > 0;
+    }
+
+    @Test
+    public void testDispatcherThreadNeverBlocks() throws Exception {
+        serverEnv.setRpcEndPointRef("echo", new RpcEndpoint(serverEnv) {
+            @Override
+            public void receiveAndReply(Object msg, com.sdu.spark.rpc.RpcCallContext context) {
+                context.reply(msg);
+            }
+        });
+
+        SparkConf clientConf = new SparkConf();
+        conf.getAll().forEach(clientConf::set);
+        clientConf.set("spark.rpc.netty.outbox.maxPendingBytes", "1k");
+        clientConf.set("spark.rpc.netty.outbox.blockOnFull", "true");
+        clientConf.set("spark.rpc.netty.outbox.blockTimeout", "30s");
+        createClientEnv(clientConf);
+        NettyRpcEndpointRef ref = remoteRef("echo");
+
+        CompletableFuture<Long> elapsed = new CompletableFuture<>();
+        CompletableFuture<CompletableFuture<byte[]>> second = new CompletableFuture<>();
+        clientEnv.setRpcEndPointRef("sender", new RpcEndpoint(clientEnv) {
+            @Override
+            public void receive(Object msg) {
+                long start = System.currentTimeMillis();
+                ref.ask(new byte[2048]);
+                // 分发线程中信箱超过上限时直接拒绝, 不等待blockTimeout
+                second.complete(ref.ask(new byte[2048]));
+                elapsed.complete(System.currentTimeMillis() - start);
+            }
+        }).send("go");
+
+        assert elapsed.get(10, TimeUnit.SECONDS) < 10000;
+        try {
+            second.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+            assert false;
+        } catch (ExecutionException e) {
+            assert e.getCause() instanceof SparkException;
+        }
+        assert clientEnv.outboxMetrics().get(serverEnv.address()).rejectedMessages == 1;
+    }
+
+    @Override
+    public void afterEach() {
+        if (clientEnv != null) {
+            clientEnv.shutdown();
+        }
+        serverEnv.shutdown();
+    }
+}
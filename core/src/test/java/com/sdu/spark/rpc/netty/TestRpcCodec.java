@@ -0,0 +1,249 @@
+package com.sdu.spark.rpc.netty;
+
+import com.google.common.collect.Maps;
+import com.sdu.spark.SecurityManager;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.deploy.DeployMessage.Heartbeat;
+import com.sdu.spark.executor.HeartbeatResponse;
+import com.sdu.spark.rpc.RpcAddress;
+import com.sdu.spark.rpc.RpcEndpointAddress;
+import com.sdu.spark.rpc.RpcEnv;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.scheduler.TaskState;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.LaunchTasks;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.ReviveOffers;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.StatusUpdate;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.StatusUpdates;
+import com.sdu.spark.serializer.JavaSerializerInstance;
+import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockManagerId;
+import com.sdu.spark.storage.BlockManagerMessages.UpdateBlockInfo;
+import com.sdu.spark.storage.BlockManagerMessages.UpdateBlockInfos;
+import com.sdu.spark.storage.StorageLevel;
+import com.sdu.spark.utils.SerializableBuffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestRpcCodec extends SparkTestUnit {
+
+    private NettyRpcEnv rpcEnv;
+    private JavaSerializerInstance javaSerializer;
+    private RpcCodec codec;
+
+    @Override
+    public void beforeEach() {
+        rpcEnv = (NettyRpcEnv) RpcEnv.create("test", "localhost", 0, conf, new SecurityManager(conf));
+        javaSerializer = new JavaSerializerInstance(100, Thread.currentThread().getContextClassLoader());
+        codec = new RpcCodec(conf, javaSerializer);
+    }
+
+    @Test
+    public void testStatusUpdateRoundTrip() throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        StatusUpdate update = new StatusUpdate("exec-1", 1024L, TaskState.FINISHED, data);
+        ByteBuffer encoded = codec.serialize(update);
+        assert encoded.remaining() < javaSerializer.serialize(update).remaining();
+
+        StatusUpdate decoded = codec.deserialize(encoded, rpcEnv, null);
+        assert decoded.executorId.equals("exec-1");
+        assert decoded.taskId == 1024L;
+        assert decoded.state == TaskState.FINISHED;
+        assert decoded.data.buffer.equals(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        // 编码不消费原消息数据
+        assert data.remaining() == 3;
+    }
+
+    @Test
+    public void testStatusUpdatesRoundTrip() throws IOException {
+        StatusUpdates updates = new StatusUpdates("exec-1", Arrays.asList(
+                new StatusUpdate("exec-1", 1L, TaskState.RUNNING, null),
+                new StatusUpdate("exec-1", 2L, TaskState.FINISHED, ByteBuffer.wrap(new byte[] {4, 5}))));
+        ByteBuffer encoded = codec.serialize(updates);
+        // Executor标识只编码一次
+        assert encoded.remaining() < codec.serialize(updates.updates.get(0)).remaining() +
+                                     codec.serialize(updates.updates.get(1)).remaining();
+
+        StatusUpdates decoded = codec.deserialize(encoded, rpcEnv, null);
+        assert decoded.executorId.equals("exec-1");
+        assert decoded.updates.size() == 2;
+        assert decoded.updates.get(0).executorId.equals("exec-1");
+        assert decoded.updates.get(0).taskId == 1L;
+        assert decoded.updates.get(0).state == TaskState.RUNNING;
+        assert decoded.updates.get(0).data.buffer == null;
+        assert decoded.updates.get(1).taskId == 2L;
+        assert decoded.updates.get(1).state == TaskState.FINISHED;
+        assert decoded.updates.get(1).data.buffer.equals(ByteBuffer.wrap(new byte[] {4, 5}));
+    }
+
+    @Test
+    public void testLaunchTasksRoundTrip() throws IOException {
+        LaunchTasks tasks = new LaunchTasks(Arrays.asList(new SerializableBuffer(ByteBuffer.wrap(new byte[] {1})),
+                                                          new SerializableBuffer(ByteBuffer.wrap(new byte[] {2, 3}))));
+        LaunchTasks decoded = codec.deserialize(codec.serialize(tasks), rpcEnv, null);
+        assert decoded.taskData.size() == 2;
+        assert decoded.taskData.get(0).buffer.equals(ByteBuffer.wrap(new byte[] {1}));
+        assert decoded.taskData.get(1).buffer.equals(ByteBuffer.wrap(new byte[] {2, 3}));
+    }
+
+    @Test
+    public void testUpdateBlockInfoRoundTrip() throws IOException {
+        BlockManagerId blockManagerId = BlockManagerId.apply("exec-1", "host-1", 7000, null);
+        UpdateBlockInfo info = new UpdateBlockInfo(blockManagerId, new BlockId.RDDBlockId(1, 2),
+                                                   StorageLevel.MEMORY_AND_DISK, 100L, 200L);
+        UpdateBlockInfo decoded = codec.deserialize(codec.serialize(info), rpcEnv, null);
+        assert decoded.blockManagerId.equals(blockManagerId);
+        assert decoded.blockId.equals(new BlockId.RDDBlockId(1, 2));
+        assert decoded.storageLevel == StorageLevel.MEMORY_AND_DISK;
+        assert decoded.memSize == 100L;
+        assert decoded.diskSize == 200L;
+    }
+
+    @Test
+    public void testStorageLevelRoundTrip() throws IOException {
+        BlockManagerId blockManagerId = BlockManagerId.apply("exec-1", "host-1", 7000, null);
+        // StorageLevel按存储标识位编码, 不依赖枚举声明顺序
+        for (StorageLevel level : StorageLevel.values()) {
+            UpdateBlockInfo info = new UpdateBlockInfo(blockManagerId, new BlockId.RDDBlockId(1, 2), level, 0L, 0L);
+            UpdateBlockInfo decoded = codec.deserialize(codec.serialize(info), rpcEnv, null);
+            assert decoded.storageLevel == level;
+        }
+    }
+
+    @Test
+    public void testExecutorHeartbeatRoundTrip() throws IOException {
+        BlockManagerId blockManagerId = BlockManagerId.apply("exec-1", "host-1", 7000, "/rack-1");
+        com.sdu.spark.executor.Heartbeat heartbeat = new com.sdu.spark.executor.Heartbeat("exec-1", blockManagerId);
+        assert codec.isRegistered(com.sdu.spark.executor.Heartbeat.class);
+        ByteBuffer encoded = codec.serialize(heartbeat);
+        assert encoded.remaining() < javaSerializer.serialize(heartbeat).remaining();
+        com.sdu.spark.executor.Heartbeat decoded = codec.deserialize(encoded, rpcEnv, null);
+        assert decoded.executorId.equals("exec-1");
+        assert decoded.blockManagerId.equals(blockManagerId);
+
+        HeartbeatResponse response = codec.deserialize(codec.serialize(new HeartbeatResponse(true)), rpcEnv, null);
+        assert response.registerBlockManager;
+    }
+
+    @Test
+    public void testUpdateBlockInfosRoundTrip() throws IOException {
+        BlockManagerId blockManagerId = BlockManagerId.apply("exec-1", "host-1", 7000, null);
+        UpdateBlockInfos infos = new UpdateBlockInfos(blockManagerId,
+                                                      new BlockId[] {new BlockId.RDDBlockId(1, 2), new BlockId.RDDBlockId(1, 3)},
+                                                      new StorageLevel[] {StorageLevel.MEMORY_ONLY, StorageLevel.NONE},
+                                                      new long[] {100L, 0L},
+                                                      new long[] {0L, 0L});
+        UpdateBlockInfos decoded = codec.deserialize(codec.serialize(infos), rpcEnv, null);
+        assert decoded.blockManagerId.equals(blockManagerId);
+        assert decoded.size() == 2;
+        assert decoded.blockIds[0].equals(new BlockId.RDDBlockId(1, 2));
+        assert decoded.blockIds[1].equals(new BlockId.RDDBlockId(1, 3));
+        assert decoded.storageLevels[0] == StorageLevel.MEMORY_ONLY;
+        assert decoded.storageLevels[1] == StorageLevel.NONE;
+        assert decoded.memSizes[0] == 100L && decoded.memSizes[1] == 0L;
+        assert decoded.diskSizes[0] == 0L && decoded.diskSizes[1] == 0L;
+    }
+
+    @Test
+    public void testEndpointRefRoundTrip() throws IOException {
+        RpcEndpointAddress address = new RpcEndpointAddress("Worker", new RpcAddress("host-1", 7077));
+        Heartbeat heartbeat = new Heartbeat("worker-1", new NettyRpcEndpointRef(address, rpcEnv));
+        Heartbeat decoded = codec.deserialize(codec.serialize(heartbeat), rpcEnv, null);
+        assert decoded.workerId.equals("worker-1");
+        assert decoded.worker.name().equals("Worker");
+        assert decoded.worker.address().equals(new RpcAddress("host-1", 7077));
+        assert ((NettyRpcEndpointRef) decoded.worker).nettyEnv == rpcEnv;
+    }
+
+    @Test
+    public void testEmptyMessageAndReply() throws IOException {
+        ByteBuffer encoded = codec.serialize(new ReviveOffers());
+        assert encoded.remaining() == 1;
+        assert codec.deserialize(encoded, rpcEnv, null) instanceof ReviveOffers;
+
+        encoded = codec.serialize(Boolean.TRUE);
+        assert encoded.remaining() == 2;
+        assert codec.<Boolean>deserialize(encoded, rpcEnv, null);
+    }
+
+    @Test
+    public void testJavaSerializationFallback() throws IOException {
+        Map<String, Integer> message = Maps.newHashMap();
+        message.put("a", 1);
+        ByteBuffer encoded = codec.serialize(message);
+        assert encoded.get(0) == RpcCodec.JAVA_SERIALIZATION_ID;
+        Map<String, Integer> decoded = codec.deserialize(encoded, rpcEnv, null);
+        assert decoded.equals(message);
+
+        assert codec.<Object>deserialize(codec.serialize(null), rpcEnv, null) == null;
+    }
+
+    @Test
+    public void testCompactDisabled() throws IOException {
+        SparkConf javaConf = new SparkConf();
+        javaConf.set("spark.rpc.codec.compact", "false");
+        RpcCodec javaCodec = new RpcCodec(javaConf, javaSerializer);
+        ByteBuffer encoded = javaCodec.serialize(new ReviveOffers());
+        assert encoded.get(0) == RpcCodec.JAVA_SERIALIZATION_ID;
+        assert javaCodec.deserialize(encoded, rpcEnv, null) instanceof ReviveOffers;
+    }
+
+    @Test
+    public void testCustomRegistrator() throws IOException {
+        SparkConf registratorConf = new SparkConf();
+        registratorConf.set("spark.rpc.codec.registrators", PingRegistrator.class.getName());
+        RpcCodec customCodec = new RpcCodec(registratorConf, javaSerializer);
+        assert customCodec.isRegistered(Ping.class);
+        Ping decoded = customCodec.deserialize(customCodec.serialize(new Ping(42)), rpcEnv, null);
+        assert decoded.seq == 42;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateRegistration() {
+        codec.register(128, ReviveOffers.class, RpcMessageCodec.empty(ReviveOffers::new));
+    }
+
+    @Test
+    public void testUserCodecIdRange() {
+        // 内置消息ID[1, 127]保留
+        for (int id : new int[] {0, 1, 30, 127, 256}) {
+            try {
+                codec.register(id, Ping.class, RpcMessageCodec.of((msg, out) -> out.writeInt(msg.seq),
+                                                                  in -> new Ping(in.readInt())));
+                assert false : "Rpc codec id " + id + " should be rejected";
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        codec.register(255, Ping.class, RpcMessageCodec.of((msg, out) -> out.writeInt(msg.seq),
+                                                           in -> new Ping(in.readInt())));
+        assert codec.isRegistered(Ping.class);
+    }
+
+    public static class Ping {
+        int seq;
+
+        Ping(int seq) {
+            this.seq = seq;
+        }
+    }
+
+    public static class PingRegistrator implements RpcCodecRegistrator {
+        @Override
+        public void registerCodecs(RpcCodec codec) {
+            codec.register(128, Ping.class, RpcMessageCodec.of((msg, out) -> out.writeInt(msg.seq),
+                                                               in -> new Ping(in.readInt())));
+        }
+    }
+
+    @Override
+    public void afterEach() {
+        rpcEnv.shutdown();
+    }
+}
@@ -0,0 +1,93 @@
+package com.sdu.spark.scheduler;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.SparkEnv;
+import com.sdu.spark.TaskContext;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.serializer.JavaSerializer;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * TaskScheduler测试公共组件: 创建{@link TaskSchedulerImpl}(4 CPU/Task), {@link FakeTask}及{@link FakeSchedulerBackend}
+ *
+ * @author hanhan.zhang
+ * */
+public class SchedulerTestUtils {
+
+    private SchedulerTestUtils() {
+
+    }
+
+    public static TaskSchedulerImpl createScheduler(SparkConf schedulerConf) {
+        return createScheduler(schedulerConf, new FakeSchedulerBackend());
+    }
+
+    public static TaskSchedulerImpl createScheduler(SparkConf schedulerConf, SchedulerBackend backend) {
+        SparkEnv env = new SparkEnv("driver", null, null, new JavaSerializer(schedulerConf), null, null,
+                                    null, null, null, null, null, schedulerConf);
+        TaskSchedulerImpl scheduler = new TaskSchedulerImpl(schedulerConf, env, 4, true);
+        scheduler.initialize(backend);
+        return scheduler;
+    }
+
+    public static class FakeTask extends Task<Integer> implements Serializable {
+
+        private TaskLocation[] preferredLocations;
+
+        public FakeTask(int stageId, int partitionId) {
+            this(stageId, partitionId, new TaskLocation[0]);
+        }
+
+        public FakeTask(int stageId, int partitionId, TaskLocation[] preferredLocations) {
+            super(stageId, 0, partitionId, new Properties(), 0, "app", null);
+            this.preferredLocations = preferredLocations;
+        }
+
+        @Override
+        public TaskLocation[] preferredLocations() {
+            return preferredLocations;
+        }
+
+        @Override
+        public Integer runTask(TaskContext context) {
+            return 0;
+        }
+    }
+
+    /**
+     * 记录终止的Task及reviveOffers调用次数
+     * */
+    public static class FakeSchedulerBackend implements SchedulerBackend {
+
+        public final List<Long> killedTasks = Lists.newArrayList();
+        public int reviveCount = 0;
+
+        @Override
+        public void start() {
+
+        }
+
+        @Override
+        public void stop() {
+
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void reviveOffers() {
+            reviveCount++;
+        }
+
+        @Override
+        public void killTask(long taskId, String executorId, boolean interruptThread, String reason) {
+            killedTasks.add(taskId);
+        }
+    }
+}
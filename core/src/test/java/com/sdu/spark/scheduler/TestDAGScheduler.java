@@ -0,0 +1,523 @@
+package com.sdu.spark.scheduler;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sdu.spark.*;
+import com.sdu.spark.Partitioner.HashPartitioner;
+import com.sdu.spark.broadcast.Broadcast;
+import com.sdu.spark.executor.ExecutorExitCode.ExecutorLossReason;
+import com.sdu.spark.rdd.CoalescedShuffledRDD;
+import com.sdu.spark.rdd.RDD;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.scheduler.MapStatus.CompressedMapStatus;
+import com.sdu.spark.scheduler.ShufflePartitionCoalescer.ShufflePartitionSpec;
+import com.sdu.spark.scheduler.TaskEndReason.Success;
+import com.sdu.spark.scheduler.action.JobAction;
+import com.sdu.spark.serializer.JavaSerializer;
+import com.sdu.spark.shuffle.*;
+import com.sdu.spark.storage.BlockManagerId;
+import com.sdu.spark.utils.CallSite;
+import com.sdu.spark.utils.Clock.SystemClock;
+import com.sdu.spark.utils.scala.Product2;
+import com.sdu.spark.utils.scala.Tuple2;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAGScheduler EventLoop测试: Stage闭包在Task序列化线程池中序列化/广播、父Stage完成后提交子Stage及Map Stage作业
+ *
+ * @author hanhan.zhang
+ * */
+public class TestDAGScheduler extends SparkTestUnit {
+
+    private SparkConf conf;
+    private SparkEnv env;
+    private MapOutputTrackerMaster mapOutputTracker;
+    private TestSparkContext sc;
+    private FakeTaskScheduler taskScheduler;
+    private DAGScheduler dagScheduler;
+    private BlockManagerId exec1;
+
+    @Override
+    public void beforeEach() {
+        conf = new SparkConf();
+        mapOutputTracker = new MapOutputTrackerMaster(conf, null, true);
+        env = new SparkEnv("driver", null, new JavaSerializer(conf), new JavaSerializer(conf), mapOutputTracker,
+                           null, null, null, null, null, new OutputCommitCoordinator(conf, true), conf);
+        sc = new TestSparkContext(conf, env);
+        taskScheduler = new FakeTaskScheduler();
+        dagScheduler = newDAGScheduler();
+        exec1 = BlockManagerId.apply("exec-1", "host-1", 7001, null);
+    }
+
+    @Override
+    public void afterEach() {
+        dagScheduler.stop();
+        mapOutputTracker.stop();
+    }
+
+    private DAGScheduler newDAGScheduler() {
+        return new DAGScheduler(sc, taskScheduler, new LiveListenerBus(conf), mapOutputTracker, null,
+                                env, new SystemClock());
+    }
+
+    private ShuffleDependency<Integer, Integer, Integer> shuffleDep(int numMaps, int numReduces) {
+        RDD<Product2<Integer, Integer>> mapRDD = new TestRDD<>(sc, numMaps, Collections.emptyList());
+        return new ShuffleDependency<>(mapRDD, new HashPartitioner(numReduces), new JavaSerializer(conf),
+                                       null, null, false);
+    }
+
+    private void completeMapTask(Task<?> task, int numReduces) {
+        long[] sizes = new long[numReduces];
+        Arrays.fill(sizes, 100L);
+        completeMapTask(task, sizes);
+    }
+
+    private void completeMapTask(Task<?> task, long[] sizes) {
+        dagScheduler.taskEnded(task, new Success(), new CompressedMapStatus(exec1, sizes), null);
+    }
+
+    private Tuple2<RDD<?>, Object> deserializeTaskBinary(byte[] taskBinary) throws Exception {
+        return env.closureSerializer.newInstance().deserialize(ByteBuffer.wrap(taskBinary));
+    }
+
+    @Test
+    public void testTaskBinaryBroadcastPerStage() throws Exception {
+        ShuffleDependency<Integer, Integer, Integer> dep = shuffleDep(3, 2);
+        RDD<Integer> resultRDD = new TestRDD<>(sc, 2, Collections.singletonList(dep));
+
+        Map<Integer, Integer> results = Maps.newConcurrentMap();
+        JobWaiter<Integer> waiter = dagScheduler.submitJob(resultRDD, new CountAction<>(), Arrays.asList(0, 1),
+                                                           CallSite.empty, results::put, new Properties());
+
+        // ShuffleMapStage: 闭包(RDD, ShuffleDependency)序列化并广播一次
+        TaskSet mapTaskSet = taskScheduler.taskSets.poll(10, TimeUnit.SECONDS);
+        assert mapTaskSet != null;
+        assert mapTaskSet.tasks.length == 3;
+        assert Arrays.stream(mapTaskSet.tasks).allMatch(task -> task instanceof ShuffleMapTask);
+        assert sc.broadcasts.size() == 1;
+        Tuple2<RDD<?>, Object> mapClosure = deserializeTaskBinary(sc.broadcasts.get(0));
+        assert mapClosure._1().id == dep.rdd().id;
+        assert ((ShuffleDependency<?, ?, ?>) mapClosure._2()).shuffleId() == dep.shuffleId();
+
+        for (Task<?> task : mapTaskSet.tasks) {
+            completeMapTask(task, 2);
+        }
+
+        // ResultStage: 闭包(RDD, JobAction)
+        TaskSet resultTaskSet = taskScheduler.taskSets.poll(10, TimeUnit.SECONDS);
+        assert resultTaskSet != null;
+        assert resultTaskSet.stageId != mapTaskSet.stageId;
+        assert resultTaskSet.tasks.length == 2;
+        assert sc.broadcasts.size() == 2;
+        Tuple2<RDD<?>, Object> resultClosure = deserializeTaskBinary(sc.broadcasts.get(1));
+        assert resultClosure._1().id == resultRDD.id;
+        assert resultClosure._2() instanceof CountAction;
+        // ShuffleMapStage结束时销毁其闭包广播
+        assert sc.destroyed.equals(Collections.singletonList(0L));
+
+        for (Task<?> task : resultTaskSet.tasks) {
+            ResultTask<?, ?> resultTask = (ResultTask<?, ?>) task;
+            dagScheduler.taskEnded(task, new Success(), resultTask.outputId + 10, null);
+        }
+        assert waiter.completionFuture().get(10, TimeUnit.SECONDS);
+        assert results.get(0) == 10 && results.get(1) == 11;
+        assert sc.destroyed.equals(Arrays.asList(0L, 1L));
+        assert mapOutputTracker.getNumAvailableOutputs(dep.shuffleId()) == 3;
+    }
+
+    @Test
+    public void testChildStageWaitsForAllParents() throws Exception {
+        ShuffleDependency<Integer, Integer, Integer> left = shuffleDep(2, 1);
+        ShuffleDependency<Integer, Integer, Integer> right = shuffleDep(1, 1);
+        List<Dependency<?>> deps = Lists.newArrayList(left, right);
+        RDD<Integer> resultRDD = new TestRDD<>(sc, 1, deps);
+
+        JobWaiter<Integer> waiter = dagScheduler.submitJob(resultRDD, new CountAction<>(), Collections.singletonList(0),
+                                                           CallSite.empty, (index, result) -> {}, new Properties());
+
+        // 两个父Stage同时提交
+        Map<Integer, TaskSet> mapTaskSets = Maps.newHashMap();
+        for (int i = 0; i < 2; ++i) {
+            TaskSet taskSet = taskScheduler.taskSets.poll(10, TimeUnit.SECONDS);
+            assert taskSet != null;
+            mapTaskSets.put(taskSet.tasks.length, taskSet);
+        }
+        TaskSet leftTaskSet = mapTaskSets.get(2);
+        TaskSet rightTaskSet = mapTaskSets.get(1);
+        assert leftTaskSet != null && rightTaskSet != null;
+
+        // 父Stage部分完成: 子Stage不提交
+        completeMapTask(leftTaskSet.tasks[0], 1);
+        completeMapTask(rightTaskSet.tasks[0], 1);
+        assert taskScheduler.taskSets.poll(200, TimeUnit.MILLISECONDS) == null;
+
+        // 最后一个父Stage完成: 子Stage提交
+        completeMapTask(leftTaskSet.tasks[1], 1);
+        TaskSet resultTaskSet = taskScheduler.taskSets.poll(10, TimeUnit.SECONDS);
+        assert resultTaskSet != null;
+        assert resultTaskSet.tasks.length == 1 && resultTaskSet.tasks[0] instanceof ResultTask;
+        assert taskScheduler.taskSets.isEmpty();
+
+        dagScheduler.taskEnded(resultTaskSet.tasks[0], new Success(), 1, null);
+        assert waiter.completionFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testStaleTaskBinaryDestroyed() throws Exception {
+        RDD<Integer> resultRDD = new TestRDD<>(sc, 2, Collections.emptyList());
+        CountDownLatch serializing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        sc.blockBroadcast(serializing, release);
+
+        JobWaiter<Integer> waiter = dagScheduler.submitJob(resultRDD, new CountAction<>(), Arrays.asList(0, 1),
+                                                           CallSite.empty, (index, result) -> {}, new Properties());
+        // 闭包在Task序列化线程中广播, 不阻塞EventLoop: 广播阻塞期间仍可取消作业
+        assert serializing.await(10, TimeUnit.SECONDS);
+        dagScheduler.cancelJob(waiter.jobId, "test");
+        try {
+            waiter.completionFuture().get(10, TimeUnit.SECONDS);
+            assert false;
+        } catch (ExecutionException e) {
+            assert e.getCause() instanceof SparkException;
+        }
+
+        // Stage Attempt已结束: 丢弃序列化结果并销毁广播
+        release.countDown();
+        assert sc.awaitDestroyed(0L, 10, TimeUnit.SECONDS);
+        assert taskScheduler.taskSets.poll(200, TimeUnit.MILLISECONDS) == null;
+    }
+
+    @Test
+    public void testNoPlanWithoutMapStageJob() throws Exception {
+        dagScheduler.stop();
+        conf.set("spark.shuffle.adaptive.enabled", "true");
+        conf.set("spark.shuffle.adaptive.targetPostShuffleInputSize", "100b");
+        dagScheduler = newDAGScheduler();
+
+        ShuffleDependency<Integer, Integer, Integer> dep = shuffleDep(2, 4);
+        CoalescedShuffledRDD<Integer, Integer> reduceRDD = new CoalescedShuffledRDD<>(
+                dep, Collections.singletonList(new ShufflePartitionSpec(0, 3, 0, 2)));
+        dagScheduler.submitJob(reduceRDD, new CountAction<>(), Collections.singletonList(0),
+                               CallSite.empty, (index, result) -> {}, new Properties());
+
+        TaskSet mapTaskSet = taskScheduler.taskSets.poll(10, TimeUnit.SECONDS);
+        assert mapTaskSet != null && mapTaskSet.tasks.length == 2;
+        for (Task<?> task : mapTaskSet.tasks) {
+            completeMapTask(task, new long[] {10, 10, 10, 1000});
+        }
+        TaskSet resultTaskSet = taskScheduler.taskSets.poll(10, TimeUnit.SECONDS);
+        assert resultTaskSet != null && resultTaskSet.tasks.length == 1;
+        // 无Map Stage作业: 不计算统计也不规划读取范围
+        assert mapOutputTracker.getPartitionSpecs(dep.shuffleId()) == null;
+    }
+
+    @Test
+    public void testSubmitMapStageAndReadPartitionSpecs() throws Exception {
+        // 开启自适应执行: 合并相邻小分区, 拆分倾斜分区
+        dagScheduler.stop();
+        conf.set("spark.shuffle.adaptive.enabled", "true");
+        conf.set("spark.shuffle.adaptive.targetPostShuffleInputSize", "100b");
+        conf.set("spark.shuffle.adaptive.skewedPartitionThreshold", "100b");
+        dagScheduler = newDAGScheduler();
+
+        ShuffleDependency<Integer, Integer, Integer> dep = shuffleDep(2, 4);
+        List<MapOutputStatistics> stats = Collections.synchronizedList(Lists.newArrayList());
+        JobWaiter<MapOutputStatistics> mapStageWaiter = dagScheduler.submitMapStage(dep, (index, result) -> stats.add(result),
+                                                                                    CallSite.empty, new Properties());
+
+        TaskSet mapTaskSet = taskScheduler.taskSets.poll(10, TimeUnit.SECONDS);
+        assert mapTaskSet != null && mapTaskSet.tasks.length == 2;
+        // Reduce分区大小: [20, 20, 20, 2000]
+        for (Task<?> task : mapTaskSet.tasks) {
+            completeMapTask(task, new long[] {10, 10, 10, 1000});
+        }
+        assert mapStageWaiter.completionFuture().get(10, TimeUnit.SECONDS);
+        assert stats.size() == 1 && stats.get(0).shuffleId == dep.shuffleId();
+        // Map Stage作业不提交下游Stage
+        assert taskScheduler.taskSets.poll(200, TimeUnit.MILLISECONDS) == null;
+
+        // 分区[0, 2]合并, 倾斜分区3按MapTask拆分
+        List<ShufflePartitionSpec> specs = mapOutputTracker.getPartitionSpecs(dep.shuffleId());
+        assert specs.equals(Arrays.asList(new ShufflePartitionSpec(0, 2, 0, 2),
+                                          new ShufflePartitionSpec(3, 3, 0, 1),
+                                          new ShufflePartitionSpec(3, 3, 1, 2)));
+
+        // Reduce端按规划的读取范围提交作业, Map输出可用时直接提交ResultStage
+        CoalescedShuffledRDD<Integer, Integer> reduceRDD = new CoalescedShuffledRDD<>(dep, specs);
+        JobWaiter<Integer> waiter = dagScheduler.submitJob(reduceRDD, new CountAction<>(), Arrays.asList(0, 1, 2),
+                                                           CallSite.empty, (index, result) -> {}, new Properties());
+        TaskSet resultTaskSet = taskScheduler.taskSets.poll(10, TimeUnit.SECONDS);
+        assert resultTaskSet != null;
+        assert resultTaskSet.tasks.length == specs.size();
+
+        // 读取范围经ShuffleManager.getReader(handle, startMapIndex, endMapIndex, startPartition, endPartition)读取
+        FakeShuffleManager shuffleManager = new FakeShuffleManager();
+        SparkEnv original = SparkEnv.env;
+        SparkEnv.env = new SparkEnv("exec-1", null, new JavaSerializer(conf), new JavaSerializer(conf), null,
+                                    shuffleManager, null, null, null, null, null, conf);
+        try {
+            for (Task<?> task : resultTaskSet.tasks) {
+                reduceRDD.compute(reduceRDD.partitions()[task.partitionId], null);
+            }
+        } finally {
+            SparkEnv.env = original;
+        }
+        List<ShufflePartitionSpec> reads = Lists.newArrayList(shuffleManager.reads);
+        reads.sort(Comparator.comparingInt((ShufflePartitionSpec spec) -> spec.startPartition)
+                             .thenComparingInt(spec -> spec.startMapIndex));
+        assert reads.equals(specs);
+
+        for (Task<?> task : resultTaskSet.tasks) {
+            dagScheduler.taskEnded(task, new Success(), 0, null);
+        }
+        assert waiter.completionFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private static class CountAction<T> implements JobAction<T, Integer> {
+        @Override
+        public Integer func(TaskContext context, Iterator<T> dataIterator) {
+            int count = 0;
+            while (dataIterator.hasNext()) {
+                dataIterator.next();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static class TestPartition extends Partition {
+        private final int index;
+
+        TestPartition(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+    }
+
+    private static class TestRDD<T> extends RDD<T> {
+        private final int numPartitions;
+
+        TestRDD(SparkContext sc, int numPartitions, List<Dependency<?>> deps) {
+            super(sc, deps);
+            this.numPartitions = numPartitions;
+        }
+
+        @Override
+        protected Partition[] getPartitions() {
+            Partition[] partitions = new Partition[numPartitions];
+            for (int i = 0; i < numPartitions; ++i) {
+                partitions[i] = new TestPartition(i);
+            }
+            return partitions;
+        }
+
+        @Override
+        public Iterator<T> compute(Partition split, TaskContext context) {
+            return Collections.emptyIterator();
+        }
+    }
+
+    /**
+     * 广播值保存在内存, 记录广播的Stage闭包及销毁的广播
+     * */
+    private static class TestSparkContext extends SparkContext {
+        final List<byte[]> broadcasts = Collections.synchronizedList(Lists.newArrayList());
+        final List<Long> destroyed = Collections.synchronizedList(Lists.newArrayList());
+        private long nextBroadcastId = 0;
+        private volatile CountDownLatch broadcastStarted;
+        private volatile CountDownLatch broadcastRelease;
+
+        TestSparkContext(SparkConf conf, SparkEnv env) {
+            super(conf, env);
+        }
+
+        /**
+         * 下一次广播通知started后等待release
+         * */
+        void blockBroadcast(CountDownLatch started, CountDownLatch release) {
+            this.broadcastStarted = started;
+            this.broadcastRelease = release;
+        }
+
+        boolean awaitDestroyed(long broadcastId, long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!destroyed.contains(broadcastId)) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            return true;
+        }
+
+        @Override
+        public <T> Broadcast<T> broadcast(T value) {
+            CountDownLatch started = broadcastStarted;
+            CountDownLatch release = broadcastRelease;
+            if (started != null) {
+                broadcastStarted = null;
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return newBroadcast(value);
+        }
+
+        private synchronized <T> Broadcast<T> newBroadcast(T value) {
+            broadcasts.add((byte[]) value);
+            return new Broadcast<T>(nextBroadcastId++) {
+                @Override
+                protected T getValue() {
+                    return value;
+                }
+
+                @Override
+                protected void doUnpersist(boolean blocking) {
+
+                }
+
+                @Override
+                protected void doDestroy(boolean blocking) {
+                    destroyed.add(id);
+                }
+            };
+        }
+    }
+
+    /**
+     * 记录Reduce端读取范围
+     * */
+    private static class FakeShuffleManager implements ShuffleManager {
+        final List<ShufflePartitionSpec> reads = Lists.newArrayList();
+
+        @Override
+        public <K, V, C> ShuffleHandle registerShuffle(int shuffleId, int numMaps, ShuffleDependency<K, V, C> dependency) {
+            return new ShuffleHandle(shuffleId) {};
+        }
+
+        @Override
+        public <K, V> ShuffleWriter<K, V> getWriter(ShuffleHandle handle, int mapId, TaskContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <K, V> ShuffleReader<K, V> getReader(ShuffleHandle handle, int startPartition, int endPartition,
+                                                    TaskContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <K, V> ShuffleReader<K, V> getReader(ShuffleHandle handle, int startMapIndex, int endMapIndex,
+                                                    int startPartition, int endPartition, TaskContext context) {
+            reads.add(new ShufflePartitionSpec(startPartition, endPartition, startMapIndex, endMapIndex));
+            return Collections::emptyIterator;
+        }
+
+        @Override
+        public boolean unregisterShuffle(int shuffleId) {
+            return true;
+        }
+
+        @Override
+        public ShuffleBlockResolver shuffleBlockResolver() {
+            return null;
+        }
+
+        @Override
+        public void stop() {
+
+        }
+    }
+
+    /**
+     * 记录DAGScheduler提交的TaskSet
+     * */
+    private static class FakeTaskScheduler implements TaskScheduler {
+        final BlockingQueue<TaskSet> taskSets = new LinkedBlockingQueue<>();
+
+        @Override
+        public Pool rootPool() {
+            return null;
+        }
+
+        @Override
+        public SchedulingMode schedulingMode() {
+            return SchedulingMode.FIFO;
+        }
+
+        @Override
+        public void start() {
+
+        }
+
+        @Override
+        public void postStartHook() {
+
+        }
+
+        @Override
+        public void stop() {
+
+        }
+
+        @Override
+        public void submitTasks(TaskSet taskSet) {
+            taskSets.offer(taskSet);
+        }
+
+        @Override
+        public void cancelTasks(int stageId, boolean interruptThread) {
+
+        }
+
+        @Override
+        public boolean killTaskAttempt(int taskId, boolean interruptThread, String reason) {
+            return false;
+        }
+
+        @Override
+        public void setDAGScheduler(DAGScheduler dagScheduler) {
+
+        }
+
+        @Override
+        public void defaultParallelism() {
+
+        }
+
+        @Override
+        public boolean executorHeartbeatReceived(String execId, BlockManagerId blockManagerId) {
+            return true;
+        }
+
+        @Override
+        public void executorLost(String executorId, ExecutorLossReason reason) {
+
+        }
+
+        @Override
+        public void workerRemoved(String workerId, String host, String message) {
+
+        }
+
+        @Override
+        public String applicationAttemptId() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.sdu.spark.scheduler;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.scheduler.SparkListenerEvent.SparkListenerTaskEnd;
+import com.sdu.spark.scheduler.SparkListenerEvent.SparkListenerTaskStart;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestLiveListenerBus extends SparkTestUnit {
+
+    private LiveListenerBus bus;
+
+    @Override
+    public void beforeEach() {
+        SparkConf busConf = new SparkConf();
+        busConf.set("spark.scheduler.listenerbus.eventqueue.capacity", "16");
+        bus = new LiveListenerBus(busConf);
+    }
+
+    @Test
+    public void testEventsBeforeStart() throws InterruptedException {
+        CountingListener listener = new CountingListener();
+        bus.addToSharedQueue(listener);
+        for (int i = 0; i < 10; ++i) {
+            bus.post(new SparkListenerTaskStart(0, 0, null));
+        }
+        bus.start();
+        bus.stop();
+        assert listener.taskStarts.get() == 10;
+        assert listener.otherEvents.get() == 0;
+    }
+
+    @Test
+    public void testSlowQueueIsolated() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        SparkListener slowListener = new SparkListener() {
+            @Override
+            public void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        CountingListener managementListener = new CountingListener();
+        bus.addToEventLogQueue(slowListener);
+        bus.addToManagementQueue(managementListener);
+        bus.start();
+        assert bus.activeQueues().size() == 2;
+
+        int numEvents = 1000;
+        for (int i = 0; i < numEvents; ++i) {
+            bus.post(new SparkListenerTaskEnd(0, 0, null, null, null));
+            if (i % 10 == 0) {
+                // 管理队列容量较小, 等待其分发线程跟上
+                waitUntilProcessed(bus.getQueue(LiveListenerBus.EXECUTOR_MANAGEMENT_QUEUE), i + 1);
+            }
+        }
+        waitUntilProcessed(bus.getQueue(LiveListenerBus.EXECUTOR_MANAGEMENT_QUEUE), numEvents);
+
+        // 慢监听器只导致所在队列丢弃事件
+        assert bus.droppedEvents(LiveListenerBus.EVENT_LOG_QUEUE) > 0;
+        assert bus.droppedEvents(LiveListenerBus.EXECUTOR_MANAGEMENT_QUEUE) == 0;
+        assert managementListener.taskEnds.get() == numEvents;
+        assert bus.getQueue(LiveListenerBus.EXECUTOR_MANAGEMENT_QUEUE).processedEvents() == numEvents;
+
+        blocked.countDown();
+        bus.stop();
+    }
+
+    @Test
+    public void testListenerException() throws InterruptedException {
+        SparkListener failingListener = new SparkListener() {
+            @Override
+            public void onTaskStart(SparkListenerTaskStart taskStart) {
+                throw new RuntimeException("listener failure");
+            }
+        };
+        CountingListener listener = new CountingListener();
+        bus.addToSharedQueue(failingListener);
+        bus.addToSharedQueue(listener);
+        bus.start();
+        bus.post(new SparkListenerTaskStart(0, 0, null));
+        bus.stop();
+        assert listener.taskStarts.get() == 1;
+    }
+
+    @Test
+    public void testListenerRemovesItself() throws InterruptedException {
+        CountDownLatch removed = new CountDownLatch(1);
+        CountingListener listener = new CountingListener() {
+            @Override
+            public void onTaskStart(SparkListenerTaskStart taskStart) {
+                super.onTaskStart(taskStart);
+                // 分发线程中移除监听器, 所在队列停止
+                bus.removeListener(this);
+                removed.countDown();
+            }
+        };
+        bus.addToSharedQueue(listener);
+        bus.start();
+        bus.post(new SparkListenerTaskStart(0, 0, null));
+
+        assert removed.await(10, TimeUnit.SECONDS);
+        assert bus.activeQueues().isEmpty();
+        bus.post(new SparkListenerTaskStart(0, 0, null));
+        bus.stop();
+        assert listener.taskStarts.get() == 1;
+    }
+
+    /**
+     * 等待分发线程处理完事件(队列为空时最后一个事件可能仍在处理)
+     * */
+    private static void waitUntilProcessed(AsyncEventQueue queue, long numEvents) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (queue.processedEvents() < numEvents && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static class CountingListener extends SparkListener {
+        AtomicInteger taskStarts = new AtomicInteger(0);
+        AtomicInteger taskEnds = new AtomicInteger(0);
+        AtomicInteger otherEvents = new AtomicInteger(0);
+
+        @Override
+        public void onTaskStart(SparkListenerTaskStart taskStart) {
+            taskStarts.incrementAndGet();
+        }
+
+        @Override
+        public void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+            taskEnds.incrementAndGet();
+        }
+
+        @Override
+        public void onOtherEvent(SparkListenerEvent event) {
+            otherEvents.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
@@ -0,0 +1,128 @@
+package com.sdu.spark.scheduler;
+
+import com.google.common.collect.Maps;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.scheduler.MapStatus.CompressedMapStatus;
+import com.sdu.spark.scheduler.MapStatus.HighlyCompressedMapStatus;
+import com.sdu.spark.scheduler.MapStatusCodec.MapStatusUpdate;
+import com.sdu.spark.storage.BlockManagerId;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.*;
+import java.util.Map;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestMapStatusCodec extends SparkTestUnit {
+
+    private static final int NUM_REDUCERS = 50;
+
+    private BlockManagerId[] locations;
+
+    @Override
+    public void beforeEach() {
+        locations = new BlockManagerId[] {
+                BlockManagerId.apply("exec-1", "host-1", 7001, null),
+                BlockManagerId.apply("exec-2", "host-2", 7002, "/rack-1")
+        };
+    }
+
+    @Test
+    public void testFullRoundTrip() throws IOException {
+        MapStatus[] statuses = createStatuses(6);
+        statuses[3] = null;
+
+        MapStatusUpdate update = roundTrip(statuses, null, 7L);
+        assert update.isFull();
+        assert update.version == 7L;
+        assert update.numMaps == statuses.length;
+        assertSameStatuses(statuses, update.statuses);
+        // 相同空分区集合解码后共享
+        assert ((HighlyCompressedMapStatus) update.statuses[1]).emptyBlocks ==
+               ((HighlyCompressedMapStatus) update.statuses[5]).emptyBlocks;
+    }
+
+    @Test
+    public void testDeltaRoundTrip() throws IOException {
+        MapStatus[] statuses = createStatuses(8);
+        MapStatus[] updated = statuses.clone();
+        updated[2] = null;
+        updated[6] = new CompressedMapStatus(locations[0], sizes(6));
+
+        MapStatusUpdate update = roundTrip(updated, new int[] {2, 6}, 3L);
+        assert !update.isFull();
+        assert update.version == 3L;
+        assertSameStatuses(updated, update.applyTo(statuses));
+    }
+
+    @Test
+    public void testCompactEncoding() throws IOException {
+        MapStatus[] statuses = createStatuses(100);
+        ByteArrayOutputStream columnar = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(columnar)) {
+            MapStatusCodec.encode(statuses, null, 0L, out);
+        }
+        ByteArrayOutputStream java = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(java)) {
+            out.writeObject(statuses);
+        }
+        assert columnar.size() < java.size() / 2;
+    }
+
+    private MapStatus[] createStatuses(int numMaps) {
+        MapStatus[] statuses = new MapStatus[numMaps];
+        for (int i = 0; i < numMaps; ++i) {
+            BlockManagerId location = locations[i % locations.length];
+            if (i % 2 == 0) {
+                statuses[i] = new CompressedMapStatus(location, sizes(i));
+            } else {
+                RoaringBitmap emptyBlocks = RoaringBitmap.bitmapOf(0, 1, 2, 40);
+                Map<Integer, Byte> hugeBlockSizes = Maps.newLinkedHashMap();
+                hugeBlockSizes.put(10, MapStatus.compressSize(1L << 30));
+                statuses[i] = new HighlyCompressedMapStatus(location, NUM_REDUCERS - 4, emptyBlocks,
+                                                            1024 + i, hugeBlockSizes);
+            }
+        }
+        return statuses;
+    }
+
+    private static long[] sizes(int seed) {
+        long[] sizes = new long[NUM_REDUCERS];
+        for (int r = 0; r < NUM_REDUCERS; ++r) {
+            sizes[r] = r % 7 == 0 ? 0 : (long) (r + 1) * (seed + 1) * 1000;
+        }
+        return sizes;
+    }
+
+    private static MapStatusUpdate roundTrip(MapStatus[] statuses, int[] mapIds, long version) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            MapStatusCodec.encode(statuses, mapIds, version, out);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return MapStatusCodec.decode(in);
+        }
+    }
+
+    private static void assertSameStatuses(MapStatus[] expected, MapStatus[] actual) {
+        assert expected.length == actual.length;
+        for (int i = 0; i < expected.length; ++i) {
+            if (expected[i] == null) {
+                assert actual[i] == null;
+                continue;
+            }
+            assert expected[i].getClass() == actual[i].getClass();
+            assert expected[i].location().equals(actual[i].location());
+            for (int r = 0; r < NUM_REDUCERS; ++r) {
+                assert expected[i].getSizeForBlock(r) == actual[i].getSizeForBlock(r);
+            }
+        }
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
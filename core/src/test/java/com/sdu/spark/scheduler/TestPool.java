@@ -0,0 +1,137 @@
+package com.sdu.spark.scheduler;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.scheduler.SchedulableBuilder.FairSchedulableBuilder;
+import com.sdu.spark.scheduler.SchedulerTestUtils.FakeTask;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+
+import static com.sdu.spark.scheduler.SchedulerTestUtils.createScheduler;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestPool extends SparkTestUnit {
+
+    private File allocationFile;
+
+    @Override
+    public void beforeEach() {
+
+    }
+
+    private File writeAllocationFile(String suffix, String content) throws Exception {
+        allocationFile = Files.createTempFile(Paths.get("target"), "fairscheduler", suffix).toFile();
+        Files.write(allocationFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return allocationFile;
+    }
+
+    private static TaskSet taskSet(int stageId, int priority, int numTasks, String pool) {
+        Task<?>[] tasks = new Task<?>[numTasks];
+        for (int i = 0; i < numTasks; ++i) {
+            tasks[i] = new FakeTask(stageId, i);
+        }
+        Properties properties = new Properties();
+        if (pool != null) {
+            properties.setProperty(FairSchedulableBuilder.FAIR_SCHEDULER_PROPERTIES, pool);
+        }
+        return new TaskSet(tasks, stageId, 0, priority, properties);
+    }
+
+    /**
+     * 单CPU资源分配, 返回分配Task所属的StageId
+     * */
+    private static int offerOneCore(TaskSchedulerImpl scheduler) {
+        List<TaskDescription> tasks = scheduler.resourceOffers(
+                Lists.newArrayList(new WorkerOffer("exec0", "host0", 1)));
+        assert tasks.size() == 1;
+        return scheduler.taskIdToTaskSetManager.get(tasks.get(0).taskId).stageId();
+    }
+
+    @Test
+    public void testFIFOScheduling() {
+        SparkConf schedulerConf = new SparkConf();
+        schedulerConf.set(TaskSchedulerImpl.SCHEDULER_MODE_PROPERTY, "FIFO");
+        TaskSchedulerImpl scheduler = createScheduler(schedulerConf);
+        scheduler.submitTasks(taskSet(2, 1, 2, null));
+        scheduler.submitTasks(taskSet(3, 0, 2, null));
+        scheduler.submitTasks(taskSet(1, 0, 2, null));
+
+        int[] expected = {1, 1, 3, 3, 2, 2};
+        for (int stageId : expected) {
+            assert offerOneCore(scheduler) == stageId;
+        }
+    }
+
+    @Test
+    public void testFairSchedulingWithMinShareAndWeight() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>\n" +
+                     "<allocations>\n" +
+                     "  <pool name=\"A\"><schedulingMode>FAIR</schedulingMode><minShare>2</minShare><weight>1</weight></pool>\n" +
+                     "  <pool name=\"B\"><schedulingMode>FIFO</schedulingMode><minShare>0</minShare><weight>3</weight></pool>\n" +
+                     "</allocations>";
+        SparkConf schedulerConf = new SparkConf();
+        schedulerConf.set(TaskSchedulerImpl.SCHEDULER_MODE_PROPERTY, "FAIR");
+        schedulerConf.set(FairSchedulableBuilder.SCHEDULER_ALLOCATION_FILE_PROPERTY,
+                          writeAllocationFile(".xml", xml).getAbsolutePath());
+        TaskSchedulerImpl scheduler = createScheduler(schedulerConf);
+
+        Pool poolA = (Pool) scheduler.rootPool().getSchedulableByName("A");
+        Pool poolB = (Pool) scheduler.rootPool().getSchedulableByName("B");
+        assert poolA.schedulingMode() == SchedulingMode.FAIR && poolA.minShare() == 2 && poolA.weight() == 1;
+        assert poolB.schedulingMode() == SchedulingMode.FIFO && poolB.weight() == 3;
+        assert scheduler.rootPool().getSchedulableByName(FairSchedulableBuilder.DEFAULT_POOL_NAME) != null;
+
+        scheduler.submitTasks(taskSet(1, 0, 10, "B"));
+        scheduler.submitTasks(taskSet(2, 1, 10, "A"));
+
+        // A未满足minShare优先; 之后按运行Task数/weight分配, B(weight=3)获得3倍于A的资源
+        int[] expected = {2, 2, 1, 1, 1, 1, 1, 1, 2, 1, 1, 1};
+        for (int stageId : expected) {
+            assert offerOneCore(scheduler) == stageId;
+        }
+        assert poolA.runningTasks() == 3;
+        assert poolB.runningTasks() == 9;
+        assert scheduler.rootPool().runningTasks() == 12;
+    }
+
+    @Test
+    public void testPropertiesAllocationFileAndUnknownPool() throws Exception {
+        String properties = "batch.schedulingMode=FAIR\n" +
+                            "batch.weight=2\n" +
+                            "batch.minShare=1\n" +
+                            "adhoc.schedulingMode=UNKNOWN\n";
+        SparkConf schedulerConf = new SparkConf();
+        schedulerConf.set(TaskSchedulerImpl.SCHEDULER_MODE_PROPERTY, "FAIR");
+        schedulerConf.set(FairSchedulableBuilder.SCHEDULER_ALLOCATION_FILE_PROPERTY,
+                          writeAllocationFile(".properties", properties).getAbsolutePath());
+        TaskSchedulerImpl scheduler = createScheduler(schedulerConf);
+
+        Schedulable batch = scheduler.rootPool().getSchedulableByName("batch");
+        assert batch.schedulingMode() == SchedulingMode.FAIR && batch.weight() == 2 && batch.minShare() == 1;
+        Schedulable adhoc = scheduler.rootPool().getSchedulableByName("adhoc");
+        assert adhoc.schedulingMode() == SchedulingMode.FIFO && adhoc.weight() == 1;
+
+        // 未配置的调度池按默认参数创建
+        scheduler.submitTasks(taskSet(1, 0, 1, "interactive"));
+        Schedulable interactive = scheduler.rootPool().getSchedulableByName("interactive");
+        assert interactive != null && interactive.schedulingMode() == SchedulingMode.FIFO;
+        assert scheduler.rootPool().getSchedulableByName("TaskSet_1.0").parent() == interactive;
+        assert offerOneCore(scheduler) == 1;
+    }
+
+    @Override
+    public void afterEach() {
+        if (allocationFile != null) {
+            allocationFile.delete();
+        }
+    }
+}
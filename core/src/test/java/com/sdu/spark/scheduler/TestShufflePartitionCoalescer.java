@@ -0,0 +1,74 @@
+package com.sdu.spark.scheduler;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.scheduler.ShufflePartitionCoalescer.ShufflePartitionSpec;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestShufflePartitionCoalescer extends SparkTestUnit {
+
+    private static final int NUM_MAPS = 5;
+
+    private ShufflePartitionCoalescer coalescer;
+
+    @Override
+    public void beforeEach() {
+        coalescer = new ShufflePartitionCoalescer(100L, 5.0, 0L);
+    }
+
+    @Test
+    public void testCoalesceAndSplitSkewedPartition() {
+        // 分区大小中位数40, 超过200为倾斜分区
+        long[] bytesByPartitionId = new long[] {10, 20, 30, 50, 5, 1000, 40, 40, 40};
+        long[] skewedMapSizes = new long[] {60, 30, 50, 40, 20};
+        List<ShufflePartitionSpec> specs = coalescer.coalesce(bytesByPartitionId, NUM_MAPS, reduceId -> {
+            assert reduceId == 5;
+            return skewedMapSizes;
+        });
+
+        List<ShufflePartitionSpec> expected = Arrays.asList(
+                new ShufflePartitionSpec(0, 2, 0, NUM_MAPS),
+                new ShufflePartitionSpec(3, 4, 0, NUM_MAPS),
+                new ShufflePartitionSpec(5, 5, 0, 2),
+                new ShufflePartitionSpec(5, 5, 2, 4),
+                new ShufflePartitionSpec(5, 5, 4, NUM_MAPS),
+                new ShufflePartitionSpec(6, 7, 0, NUM_MAPS),
+                new ShufflePartitionSpec(8, 8, 0, NUM_MAPS)
+        );
+        assert specs.equals(expected);
+        assert specs.get(2).isPartialMapRange(NUM_MAPS);
+        assert !specs.get(0).isPartialMapRange(NUM_MAPS);
+    }
+
+    @Test
+    public void testCoalesceSmallPartitions() {
+        List<ShufflePartitionSpec> specs = coalescer.coalesce(new long[] {0, 0, 0, 0}, NUM_MAPS, reduceId -> {
+            throw new IllegalStateException("No skewed partition");
+        });
+        assert specs.size() == 1;
+        assert specs.get(0).equals(new ShufflePartitionSpec(0, 3, 0, NUM_MAPS));
+
+        assert coalescer.coalesce(new long[0], NUM_MAPS, reduceId -> new long[0]).isEmpty();
+    }
+
+    @Test
+    public void testLargePartitionNotCoalesced() {
+        // 单个分区超过目标大小但未倾斜时单独读取
+        List<ShufflePartitionSpec> specs = coalescer.coalesce(new long[] {150, 150, 10}, NUM_MAPS, reduceId -> {
+            throw new IllegalStateException("No skewed partition");
+        });
+        assert specs.equals(Arrays.asList(new ShufflePartitionSpec(0, 0, 0, NUM_MAPS),
+                                          new ShufflePartitionSpec(1, 1, 0, NUM_MAPS),
+                                          new ShufflePartitionSpec(2, 2, 0, NUM_MAPS)));
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
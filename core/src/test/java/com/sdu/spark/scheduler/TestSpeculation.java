@@ -0,0 +1,123 @@
+package com.sdu.spark.scheduler;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.scheduler.SchedulerTestUtils.FakeSchedulerBackend;
+import com.sdu.spark.scheduler.SchedulerTestUtils.FakeTask;
+import com.sdu.spark.utils.Clock.ManualClock;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static com.sdu.spark.scheduler.SchedulerTestUtils.createScheduler;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestSpeculation extends SparkTestUnit {
+
+    private TaskSchedulerImpl scheduler;
+    private FakeSchedulerBackend backend;
+
+    @Override
+    public void beforeEach() {
+        SparkConf schedulerConf = new SparkConf();
+        schedulerConf.set("spark.speculation.quantile", "0.75");
+        schedulerConf.set("spark.speculation.multiplier", "1.5");
+        backend = new FakeSchedulerBackend();
+        scheduler = createScheduler(schedulerConf, backend);
+        // 注册Executor
+        scheduler.resourceOffers(Lists.newArrayList(new WorkerOffer("exec1", "host1", 1),
+                                                    new WorkerOffer("exec2", "host2", 1)));
+    }
+
+    private static TaskSet taskSet(int stageId, int numTasks) {
+        Task<?>[] tasks = new Task<?>[numTasks];
+        for (int i = 0; i < numTasks; ++i) {
+            tasks[i] = new FakeTask(stageId, i);
+        }
+        return new TaskSet(tasks, stageId, 0, 0, new Properties());
+    }
+
+    @Test
+    public void testSpeculativeAttemptOnOtherHost() {
+        ManualClock clock = new ManualClock(1000);
+        TaskSetManager manager = new TaskSetManager(scheduler, taskSet(0, 4), 4, null, clock);
+        List<TaskDescription> launched = Lists.newArrayList();
+        for (int i = 0; i < 4; ++i) {
+            launched.add(manager.resourceOffer("exec1", "host1", TaskLocality.ANY));
+        }
+
+        clock.advance(1000);
+        for (int i = 0; i < 3; ++i) {
+            manager.handleSuccessfulTask(launched.get(i).taskId, null);
+        }
+        // 运行时长中位数1000ms, 阈值1500ms
+        assert !manager.checkSpeculatableTasks(100);
+        clock.advance(1000);
+        assert manager.checkSpeculatableTasks(100);
+        // 已标记的Task不重复标记
+        assert !manager.checkSpeculatableTasks(100);
+
+        // 推测执行不在原执行尝试所在Host上启动
+        assert manager.resourceOffer("exec1", "host1", TaskLocality.ANY) == null;
+        TaskDescription speculative = manager.resourceOffer("exec2", "host2", TaskLocality.ANY);
+        assert speculative != null && speculative.index == 3 && speculative.attemptNumber == 1;
+        assert manager.resourceOffer("exec2", "host2", TaskLocality.ANY) == null;
+
+        // 推测执行成功后终止原执行尝试
+        clock.advance(100);
+        manager.handleSuccessfulTask(speculative.taskId, null);
+        assert backend.killedTasks.size() == 1 && backend.killedTasks.get(0) == launched.get(3).taskId;
+        assert manager.tasksSuccessful() == 4 && manager.isZombie;
+    }
+
+    @Test
+    public void testQuantileAndMinTime() {
+        ManualClock clock = new ManualClock(1000);
+        TaskSetManager manager = new TaskSetManager(scheduler, taskSet(0, 4), 4, null, clock);
+        List<TaskDescription> launched = Lists.newArrayList();
+        for (int i = 0; i < 4; ++i) {
+            launched.add(manager.resourceOffer("exec1", "host1", TaskLocality.ANY));
+        }
+
+        clock.advance(10);
+        manager.handleSuccessfulTask(launched.get(0).taskId, null);
+        manager.handleSuccessfulTask(launched.get(1).taskId, null);
+        // 成功Task数未达到quantile
+        clock.advance(10000);
+        assert !manager.checkSpeculatableTasks(100);
+
+        manager.handleSuccessfulTask(launched.get(2).taskId, null);
+        // 阈值不低于minTimeToSpeculation
+        assert !manager.checkSpeculatableTasks(20000);
+        assert manager.checkSpeculatableTasks(100);
+    }
+
+    @Test
+    public void testSchedulerRevivesOffers() {
+        ManualClock clock = new ManualClock(1000);
+        TaskSetManager manager = new TaskSetManager(scheduler, taskSet(0, 2), 4, null, clock);
+        scheduler.rootPool().addSchedulable(manager);
+        TaskDescription first = manager.resourceOffer("exec1", "host1", TaskLocality.ANY);
+        manager.resourceOffer("exec1", "host1", TaskLocality.ANY);
+
+        clock.advance(1000);
+        manager.handleSuccessfulTask(first.taskId, null);
+        scheduler.checkSpeculatableTasks();
+        assert backend.reviveCount == 0;
+        clock.advance(1000);
+        scheduler.checkSpeculatableTasks();
+        assert backend.reviveCount == 1;
+
+        List<TaskDescription> tasks = scheduler.resourceOffers(Lists.newArrayList(new WorkerOffer("exec2", "host2", 1)));
+        assert tasks.size() == 1 && tasks.get(0).index == 1 && tasks.get(0).attemptNumber == 1;
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
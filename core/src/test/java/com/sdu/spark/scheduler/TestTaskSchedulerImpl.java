@@ -0,0 +1,143 @@
+package com.sdu.spark.scheduler;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.scheduler.SchedulerTestUtils.FakeTask;
+import com.sdu.spark.utils.Clock.ManualClock;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static com.sdu.spark.scheduler.SchedulerTestUtils.createScheduler;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestTaskSchedulerImpl extends SparkTestUnit {
+
+    private SparkConf schedulerConf;
+    private TaskSchedulerImpl scheduler;
+
+    @Override
+    public void beforeEach() {
+        schedulerConf = new SparkConf();
+        schedulerConf.set("spark.locality.wait", "3s");
+        scheduler = createScheduler(schedulerConf);
+    }
+
+    private static TaskSet taskSet(int stageId, TaskLocation[]... preferredLocations) {
+        Task<?>[] tasks = new Task<?>[preferredLocations.length];
+        for (int i = 0; i < tasks.length; ++i) {
+            tasks[i] = new FakeTask(stageId, i, preferredLocations[i]);
+        }
+        return new TaskSet(tasks, stageId, 0, 0, new Properties());
+    }
+
+    private static TaskSet noPrefTaskSet(int stageId, int numTasks) {
+        return taskSet(stageId, new TaskLocation[numTasks][0]);
+    }
+
+    private static TaskLocation[] hosts(String... hosts) {
+        TaskLocation[] locations = new TaskLocation[hosts.length];
+        for (int i = 0; i < hosts.length; ++i) {
+            locations[i] = TaskLocation.apply(hosts[i]);
+        }
+        return locations;
+    }
+
+    @Test
+    public void testRoundRobinOffers() {
+        scheduler.submitTasks(noPrefTaskSet(0, 4));
+        List<WorkerOffer> offers = Lists.newArrayList(new WorkerOffer("exec0", "host0", 2),
+                                                      new WorkerOffer("exec1", "host1", 2),
+                                                      new WorkerOffer("exec2", "host2", 2));
+        List<TaskDescription> tasks = scheduler.resourceOffers(offers);
+        assert tasks.size() == 4;
+
+        // 每轮每个WorkerOffer至多分配一个Task
+        Map<String, Integer> tasksPerExecutor = Maps.newHashMap();
+        tasks.forEach(task -> tasksPerExecutor.merge(task.executorId, 1, Integer::sum));
+        assert tasksPerExecutor.size() == 3;
+        assert tasksPerExecutor.values().stream().allMatch(n -> n <= 2);
+        assert scheduler.resourceOffers(offers).isEmpty();
+    }
+
+    @Test
+    public void testCpusLimitLaunchedTasks() {
+        scheduler.submitTasks(noPrefTaskSet(0, 20000));
+        List<WorkerOffer> offers = Lists.newArrayList();
+        for (int i = 0; i < 100; ++i) {
+            offers.add(new WorkerOffer("exec" + i, "host" + (i % 10), 4));
+        }
+
+        Set<Integer> launched = Sets.newHashSet();
+        for (int round = 0; round < 50; ++round) {
+            List<TaskDescription> tasks = scheduler.resourceOffers(offers);
+            assert tasks.size() == 400;
+            tasks.forEach(task -> launched.add(task.index));
+        }
+        assert launched.size() == 20000;
+        assert scheduler.resourceOffers(offers).isEmpty();
+    }
+
+    @Test
+    public void testDelayScheduling() {
+        // 注册Executor
+        scheduler.resourceOffers(Lists.newArrayList(new WorkerOffer("exec1", "host1", 1),
+                                                    new WorkerOffer("exec2", "host2", 1)));
+
+        ManualClock clock = new ManualClock(1000);
+        TaskSetManager manager = new TaskSetManager(scheduler, taskSet(0, hosts("host1"), hosts("host1")),
+                                                    4, null, clock);
+        assert manager.myLocalityLevels[0] == TaskLocality.NODE_LOCAL;
+
+        // 等待时间内不降级
+        assert manager.resourceOffer("exec2", "host2", TaskLocality.ANY) == null;
+        TaskDescription nodeLocal = manager.resourceOffer("exec1", "host1", TaskLocality.ANY);
+        assert nodeLocal != null && nodeLocal.index == 0;
+
+        clock.advance(2000);
+        assert manager.resourceOffer("exec2", "host2", TaskLocality.ANY) == null;
+        // 距上次调度超过spark.locality.wait, 降级为ANY
+        clock.advance(1000);
+        TaskDescription any = manager.resourceOffer("exec2", "host2", TaskLocality.ANY);
+        assert any != null && any.index == 1;
+        assert manager.resourceOffer("exec2", "host2", TaskLocality.ANY) == null;
+
+        // 失败Task重新加入待调度列表
+        manager.handleFailedTask(any.taskId, TaskState.FAILED, null);
+        TaskDescription retry = manager.resourceOffer("exec1", "host1", TaskLocality.ANY);
+        assert retry != null && retry.index == 1 && retry.attemptNumber == 1;
+    }
+
+    @Test
+    public void testProcessLocal() {
+        scheduler.resourceOffers(Lists.newArrayList(new WorkerOffer("exec1", "host1", 1),
+                                                    new WorkerOffer("exec2", "host1", 1)));
+
+        ManualClock clock = new ManualClock(1000);
+        TaskSetManager manager = new TaskSetManager(
+                scheduler,
+                taskSet(0, new TaskLocation[] {TaskLocation.apply("host1", "exec2")}, hosts("host1")),
+                4, null, clock);
+        assert manager.myLocalityLevels[0] == TaskLocality.PROCESS_LOCAL;
+
+        // exec1上无PROCESS_LOCAL Task, 不超出允许的本地性级别
+        assert manager.resourceOffer("exec1", "host1", TaskLocality.PROCESS_LOCAL) == null;
+        TaskDescription processLocal = manager.resourceOffer("exec2", "host1", TaskLocality.PROCESS_LOCAL);
+        assert processLocal != null && processLocal.index == 0;
+        TaskDescription nodeLocal = manager.resourceOffer("exec1", "host1", TaskLocality.NODE_LOCAL);
+        assert nodeLocal != null && nodeLocal.index == 1;
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
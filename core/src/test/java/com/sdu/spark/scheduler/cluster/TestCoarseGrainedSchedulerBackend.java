@@ -0,0 +1,82 @@
+package com.sdu.spark.scheduler.cluster;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.scheduler.TaskState;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.LaunchTask;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.LaunchTasks;
+import com.sdu.spark.scheduler.cluster.CoarseGrainedClusterMessage.StatusUpdate;
+import com.sdu.spark.utils.SerializableBuffer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestCoarseGrainedSchedulerBackend extends SparkTestUnit {
+
+    private static final int CPUS_PER_TASK = 2;
+
+    @Override
+    public void beforeEach() {
+
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+
+    private static SerializableBuffer taskData(int size) {
+        return new SerializableBuffer(ByteBuffer.allocate(size));
+    }
+
+    @Test
+    public void testLaunchTasksCoalesced() {
+        List<SerializableBuffer> taskData = Arrays.asList(taskData(10), taskData(10), taskData(10));
+        List<CoarseGrainedClusterMessage> messages = CoarseGrainedSchedulerBackend.launchTaskMessages(taskData, 1024);
+        assert messages.size() == 1;
+        assert messages.get(0) instanceof LaunchTasks;
+        assert ((LaunchTasks) messages.get(0)).taskData.equals(taskData);
+    }
+
+    @Test
+    public void testLaunchTasksSplitByMaxMessageSize() {
+        // 累计大小达到100字节时拆分: [0, 1], [2, 3], [4]
+        List<SerializableBuffer> taskData = Arrays.asList(taskData(40), taskData(40), taskData(40),
+                                                          taskData(30), taskData(30));
+        List<CoarseGrainedClusterMessage> messages = CoarseGrainedSchedulerBackend.launchTaskMessages(taskData, 100);
+        assert messages.size() == 3;
+        assert ((LaunchTasks) messages.get(0)).taskData.equals(taskData.subList(0, 2));
+        assert ((LaunchTasks) messages.get(1)).taskData.equals(taskData.subList(2, 4));
+        assert ((LaunchTask) messages.get(2)).taskData == taskData.get(4);
+    }
+
+    @Test
+    public void testSingleLaunchTaskFallback() {
+        SerializableBuffer data = taskData(10);
+        List<CoarseGrainedClusterMessage> messages =
+                CoarseGrainedSchedulerBackend.launchTaskMessages(Collections.singletonList(data), 1024);
+        assert messages.size() == 1;
+        assert ((LaunchTask) messages.get(0)).taskData == data;
+
+        assert CoarseGrainedSchedulerBackend.launchTaskMessages(Collections.emptyList(), 1024).isEmpty();
+    }
+
+    @Test
+    public void testReleaseFinishedTaskCoresForBatch() {
+        ExecutorData executorData = new ExecutorData("host-1", 8, null, null, 0);
+        List<StatusUpdate> updates = Arrays.asList(
+                new StatusUpdate("exec-1", 0, TaskState.RUNNING, ByteBuffer.allocate(0)),
+                new StatusUpdate("exec-1", 1, TaskState.FINISHED, ByteBuffer.allocate(0)),
+                new StatusUpdate("exec-1", 2, TaskState.FAILED, ByteBuffer.allocate(0)),
+                new StatusUpdate("exec-1", 3, TaskState.KILLED, ByteBuffer.allocate(0))
+        );
+        CoarseGrainedSchedulerBackend.releaseFinishedTaskCores(executorData, updates, CPUS_PER_TASK);
+        // RUNNING不释放CPU
+        assert executorData.freeCores == 3 * CPUS_PER_TASK;
+    }
+}
@@ -0,0 +1,120 @@
+package com.sdu.spark.shuffle;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.MapSizesByExecutor;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.scheduler.MapStatus;
+import com.sdu.spark.scheduler.MapStatus.CompressedMapStatus;
+import com.sdu.spark.shuffle.ShuffleBlockFetcherIterator.FetchRequest;
+import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockId.ShuffleBlockId;
+import com.sdu.spark.storage.BlockManagerId;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestShuffleBlockFetcherIterator extends SparkTestUnit {
+
+    private static final int SHUFFLE_ID = 0;
+
+    private BlockManagerId exec1;
+    private BlockManagerId exec2;
+    private BlockManagerId exec3;
+    private MapSizesByExecutor blockSizes;
+
+    @Override
+    public void beforeEach() {
+        exec1 = BlockManagerId.apply("exec-1", "host-1", 7001, null);
+        exec2 = BlockManagerId.apply("exec-2", "host-2", 7002, null);
+        exec3 = BlockManagerId.apply("exec-3", "host-3", 7003, null);
+        MapStatus[] statuses = new MapStatus[] {
+                new CompressedMapStatus(exec1, new long[] {100, 0, 100}),
+                new CompressedMapStatus(exec2, new long[] {100, 100, 0}),
+                new CompressedMapStatus(exec1, new long[] {0, 0, 0}),
+                new CompressedMapStatus(exec2, new long[] {100, 100, 100}),
+                new CompressedMapStatus(exec3, new long[] {0, 100, 0})
+        };
+        // 分区[0, 1]非空数据块: exec-1 = {0_0}, exec-2 = {1_0, 1_1, 3_0, 3_1}, exec-3 = {4_1}
+        blockSizes = MapSizesByExecutor.create(SHUFFLE_ID, 0, 1, statuses);
+    }
+
+    private static List<BlockId> remoteBlocks(List<FetchRequest> requests) {
+        List<BlockId> remoteBlocks = Lists.newArrayList();
+        for (FetchRequest request : requests) {
+            for (int i = 0; i < request.numBlocks(); ++i) {
+                remoteBlocks.add(request.blockId(i));
+            }
+        }
+        return remoteBlocks;
+    }
+
+    @Test
+    public void testSplitLocalRemoteBlockSizes() {
+        List<BlockId> localBlocks = Lists.newArrayList();
+        List<FetchRequest> requests = ShuffleBlockFetcherIterator.splitLocalRemoteBlockSizes(
+                blockSizes, exec1.executorId, Long.MAX_VALUE, 3, localBlocks);
+        List<BlockId> remoteBlocks = remoteBlocks(requests);
+
+        // 本进程数据块不生成拉取请求
+        assert localBlocks.equals(Collections.singletonList(new ShuffleBlockId(SHUFFLE_ID, 0, 0)));
+        assert remoteBlocks.equals(Arrays.asList(
+                new ShuffleBlockId(SHUFFLE_ID, 1, 0), new ShuffleBlockId(SHUFFLE_ID, 1, 1),
+                new ShuffleBlockId(SHUFFLE_ID, 3, 0), new ShuffleBlockId(SHUFFLE_ID, 3, 1),
+                new ShuffleBlockId(SHUFFLE_ID, 4, 1)));
+        // numBlocksToFetch = localBlocks.size + remoteBlocks.size
+        assert localBlocks.size() + remoteBlocks.size() == blockSizes.numBlocks();
+        assert blockSizes.totalBlocks() == 10;
+
+        // exec-2单个请求至多3个数据块
+        assert requests.size() == 3;
+        assert requests.get(0).address.equals(exec2) && requests.get(0).numBlocks() == 3;
+        assert requests.get(1).address.equals(exec2) && requests.get(1).numBlocks() == 1;
+        assert requests.get(2).address.equals(exec3) && requests.get(2).numBlocks() == 1;
+        for (FetchRequest request : requests) {
+            // 请求只记录数据块下标区间
+            assert request.blocks == null && request.blockSizes == blockSizes;
+            long size = 0;
+            for (int i = 0; i < request.numBlocks(); ++i) {
+                size += request.blockSize(i);
+            }
+            assert request.size == size && size > 0;
+        }
+    }
+
+    @Test
+    public void testSplitByTargetRequestSize() {
+        List<BlockId> localBlocks = Lists.newArrayList();
+        // 单个数据块大小即超过targetRequestSize: 每个数据块一个请求
+        List<FetchRequest> requests = ShuffleBlockFetcherIterator.splitLocalRemoteBlockSizes(
+                blockSizes, exec1.executorId, 1L, Integer.MAX_VALUE, localBlocks);
+        assert requests.size() == 5;
+        for (int i = 0; i < requests.size(); ++i) {
+            assert requests.get(i).numBlocks() == 1;
+            assert requests.get(i).blockSize(0) == requests.get(i).size;
+        }
+        assert remoteBlocks(requests).equals(Arrays.asList(
+                new ShuffleBlockId(SHUFFLE_ID, 1, 0), new ShuffleBlockId(SHUFFLE_ID, 1, 1),
+                new ShuffleBlockId(SHUFFLE_ID, 3, 0), new ShuffleBlockId(SHUFFLE_ID, 3, 1),
+                new ShuffleBlockId(SHUFFLE_ID, 4, 1)));
+
+        // 所有数据块位于本进程
+        localBlocks.clear();
+        MapSizesByExecutor allLocal = MapSizesByExecutor.create(SHUFFLE_ID, 0, 1, new MapStatus[] {
+                new CompressedMapStatus(exec1, new long[] {100, 100})
+        });
+        requests = ShuffleBlockFetcherIterator.splitLocalRemoteBlockSizes(
+                allLocal, exec1.executorId, 1L, Integer.MAX_VALUE, localBlocks);
+        assert requests.isEmpty();
+        assert localBlocks.size() == 2;
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
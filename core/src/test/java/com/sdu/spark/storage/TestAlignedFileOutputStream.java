@@ -0,0 +1,70 @@
+package com.sdu.spark.storage;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.utils.Utils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestAlignedFileOutputStream extends SparkTestUnit {
+
+    private File tempDir;
+
+    @Override
+    public void beforeEach() {
+        try {
+            tempDir = Utils.createTempDir();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void afterEach() {
+        try {
+            Utils.deleteRecursively(tempDir);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Test
+    public void testFlushAndAppend() throws IOException {
+        // JDK不支持O_DIRECT时只验证普通写
+        boolean[] directIOs = new boolean[] {false, AlignedFileOutputStream.isDirectIOSupported()};
+        for (int k = 0; k < directIOs.length; ++k) {
+            boolean directIO = directIOs[k];
+            File file = new File(tempDir, "aligned-" + k);
+            byte[] expected = new byte[3 * 4096 + 100];
+            for (int i = 0; i < expected.length; ++i) {
+                expected[i] = (byte) i;
+            }
+
+            try (AlignedFileOutputStream out = new AlignedFileOutputStream(file, 4096, directIO)) {
+                out.write(expected, 0, 5000);
+                // 尾部未对齐数据flush后对外可见, 文件可能包含补零部分
+                out.flush();
+                assert out.position() == 5000;
+                assert file.length() >= 5000;
+                out.write(ByteBuffer.wrap(expected, 5000, 3000));
+                out.flush();
+            }
+            assert file.length() == 8000;
+
+            // 追加写: 已有尾部数据不被覆盖
+            try (AlignedFileOutputStream out = new AlignedFileOutputStream(file, 4096, directIO)) {
+                assert out.position() == 8000;
+                out.write(expected, 8000, expected.length - 8000);
+                out.sync();
+            }
+            assert Arrays.equals(Files.readAllBytes(file.toPath()), expected);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.sdu.spark.storage;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.sdu.spark.SparkContext;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.RpcAddress;
+import com.sdu.spark.rpc.RpcCallContext;
+import com.sdu.spark.rpc.RpcEndpointRef;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.scheduler.LiveListenerBus;
+import com.sdu.spark.storage.BlockId.BroadcastBlockId;
+import com.sdu.spark.storage.BlockId.RDDBlockId;
+import com.sdu.spark.storage.BlockManagerMessages.*;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestBlockManagerMasterEndpoint extends SparkTestUnit {
+
+    private static final long MAX_MEM = 1024 * 1024L;
+
+    private BlockManagerMasterEndpoint master;
+    private BlockManagerId driver;
+    private BlockManagerId exec1;
+    private BlockManagerId exec2;
+    private BlockManagerId exec3;
+    private RecordingSlaveEndpointRef driverSlave;
+    private RecordingSlaveEndpointRef slave1;
+    private RecordingSlaveEndpointRef slave2;
+    private RecordingSlaveEndpointRef slave3;
+
+    @Override
+    public void beforeEach() {
+        SparkConf masterConf = new SparkConf();
+        master = new BlockManagerMasterEndpoint(null, false, masterConf, new LiveListenerBus(masterConf));
+
+        driver = BlockManagerId.apply(SparkContext.DRIVER_IDENTIFIER, "host-0", 7000, null);
+        exec1 = BlockManagerId.apply("exec-1", "host-1", 7001, null);
+        exec2 = BlockManagerId.apply("exec-2", "host-2", 7002, null);
+        exec3 = BlockManagerId.apply("exec-3", "host-3", 7003, null);
+        driverSlave = register(driver);
+        slave1 = register(exec1);
+        slave2 = register(exec2);
+        slave3 = register(exec3);
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+
+    private RecordingSlaveEndpointRef register(BlockManagerId id) {
+        RecordingSlaveEndpointRef slave = new RecordingSlaveEndpointRef();
+        BlockManagerId registered = ask(new RegisterBlockManager(id, MAX_MEM, 0L, slave));
+        assert registered.equals(id);
+        return slave;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T ask(Object message) {
+        Object[] response = new Object[1];
+        master.receiveAndReply(message, new RpcCallContext(new RpcAddress("localhost", 0)) {
+            @Override
+            public void reply(Object result) {
+                response[0] = result;
+            }
+
+            @Override
+            public void sendFailure(Throwable cause) {
+                throw new AssertionError(cause);
+            }
+        });
+        return (T) response[0];
+    }
+
+    private void update(BlockManagerId id, BlockId blockId, StorageLevel level) {
+        boolean updated = ask(new UpdateBlockInfo(id, blockId, level, level.isValid() ? 10L : 0L, 0L));
+        assert updated;
+    }
+
+    private Set<BlockManagerId> locations(BlockId blockId) {
+        BlockManagerId[] locations = ask(new GetLocations(blockId));
+        return Sets.newHashSet(locations);
+    }
+
+    @Test
+    public void testBlockUpdatesMaintainIndex() {
+        RDDBlockId rdd0 = new RDDBlockId(1, 0);
+        RDDBlockId rdd1 = new RDDBlockId(1, 1);
+        update(exec1, rdd0, StorageLevel.MEMORY_ONLY);
+        update(exec2, rdd0, StorageLevel.MEMORY_ONLY);
+        boolean updated = ask(new UpdateBlockInfos(exec2, new BlockId[] {rdd1}, new StorageLevel[] {StorageLevel.MEMORY_ONLY},
+                                                   new long[] {10L}, new long[] {0L}));
+        assert updated;
+        assert master.rddBlockIds(1).equals(Sets.newHashSet(rdd0, rdd1));
+        assert locations(rdd0).equals(Sets.newHashSet(exec1, exec2));
+
+        // 副本失效: 仍有其他副本时索引保留
+        update(exec1, rdd0, StorageLevel.NONE);
+        assert locations(rdd0).equals(Collections.singleton(exec2));
+        assert master.rddBlockIds(1).equals(Sets.newHashSet(rdd0, rdd1));
+
+        // 全部副本失效: 移出索引
+        update(exec2, rdd0, StorageLevel.NONE);
+        assert locations(rdd0).isEmpty();
+        assert master.rddBlockIds(1).equals(Collections.singleton(rdd1));
+        update(exec2, rdd1, StorageLevel.NONE);
+        assert master.rddBlockIds(1).isEmpty();
+
+        // RDD无缓存Block时批量查询直接返回空地址
+        BlockManagerId[][] multiple = ask(new GetLocationsMultipleBlockIds(new BlockId[] {rdd0, rdd1}));
+        assert multiple.length == 2 && multiple[0].length == 0 && multiple[1].length == 0;
+    }
+
+    @Test
+    public void testRemoveRddOnlyAsksHolders() {
+        RDDBlockId rdd0 = new RDDBlockId(1, 0);
+        RDDBlockId rdd1 = new RDDBlockId(1, 1);
+        RDDBlockId other = new RDDBlockId(2, 0);
+        update(exec1, rdd0, StorageLevel.MEMORY_ONLY);
+        update(exec2, rdd1, StorageLevel.MEMORY_ONLY);
+        update(exec3, other, StorageLevel.MEMORY_ONLY);
+
+        CompletableFuture<Integer> removed = ask(new RemoveRdd(1));
+        assert removed.join() == 2;
+        assert slave1.messages.size() == 1 && slave1.messages.get(0) instanceof RemoveRdd;
+        assert slave2.messages.size() == 1 && slave2.messages.get(0) instanceof RemoveRdd;
+        assert slave3.messages.isEmpty() && driverSlave.messages.isEmpty();
+        assert master.rddBlockIds(1).isEmpty();
+        assert locations(rdd0).isEmpty() && locations(rdd1).isEmpty();
+        assert master.rddBlockIds(2).equals(Collections.singleton(other));
+
+        // 未缓存的RDD: 不通知任何BlockManager
+        removed = ask(new RemoveRdd(3));
+        assert removed.join() == 0;
+        assert slave3.messages.isEmpty();
+    }
+
+    @Test
+    public void testLateReportForRemovedRdd() {
+        RDDBlockId rdd0 = new RDDBlockId(1, 0);
+        CompletableFuture<Integer> removed = ask(new RemoveRdd(1));
+        assert removed.join() == 0;
+
+        // RDD删除后才汇报的Block: 通知汇报者删除且不进入索引
+        update(exec1, rdd0, StorageLevel.MEMORY_ONLY);
+        assert slave1.messages.size() == 1;
+        assert ((RemoveBlock) slave1.messages.get(0)).blockId.equals(rdd0);
+        assert master.rddBlockIds(1).isEmpty();
+        assert locations(rdd0).isEmpty();
+    }
+
+    @Test
+    public void testRemoveBroadcastKeepsDriverCopy() {
+        BroadcastBlockId piece0 = new BroadcastBlockId(5L, "piece0");
+        BroadcastBlockId driverOnly = new BroadcastBlockId(5L, "piece1");
+        update(driver, piece0, StorageLevel.MEMORY_ONLY);
+        update(exec1, piece0, StorageLevel.MEMORY_ONLY);
+        update(driver, driverOnly, StorageLevel.MEMORY_ONLY);
+        assert master.broadcastBlockIds(5L).equals(Sets.newHashSet(piece0, driverOnly));
+
+        CompletableFuture<Integer> removed = ask(new RemoveBroadcast(5L, false));
+        assert removed.join() == 1;
+        assert slave1.messages.size() == 1 && slave1.messages.get(0) instanceof RemoveBroadcast;
+        assert driverSlave.messages.isEmpty() && slave2.messages.isEmpty() && slave3.messages.isEmpty();
+        assert locations(piece0).equals(Collections.singleton(driver));
+        assert locations(driverOnly).equals(Collections.singleton(driver));
+        assert master.broadcastBlockIds(5L).equals(Sets.newHashSet(piece0, driverOnly));
+
+        // 同时删除Driver上的Broadcast Block
+        removed = ask(new RemoveBroadcast(5L, true));
+        assert removed.join() == 1;
+        assert driverSlave.messages.size() == 1 && driverSlave.messages.get(0) instanceof RemoveBroadcast;
+        assert slave1.messages.size() == 1;
+        assert locations(piece0).isEmpty() && locations(driverOnly).isEmpty();
+        assert master.broadcastBlockIds(5L).isEmpty();
+    }
+
+    @Test
+    public void testRemoveBlockManagerUpdatesIndex() {
+        RDDBlockId replicated = new RDDBlockId(1, 0);
+        RDDBlockId single = new RDDBlockId(1, 1);
+        BroadcastBlockId piece0 = new BroadcastBlockId(5L, "piece0");
+        update(exec1, replicated, StorageLevel.MEMORY_ONLY);
+        update(exec2, replicated, StorageLevel.MEMORY_ONLY);
+        update(exec1, single, StorageLevel.MEMORY_ONLY);
+        update(exec1, piece0, StorageLevel.MEMORY_ONLY);
+
+        // 同一Executor使用新BlockManagerId注册: 原BlockManager视为失效并被移除
+        BlockManagerId restarted = BlockManagerId.apply("exec-1", "host-1", 7101, null);
+        RecordingSlaveEndpointRef restartedSlave = register(restarted);
+        assert locations(replicated).equals(Collections.singleton(exec2));
+        assert locations(single).isEmpty();
+        assert master.rddBlockIds(1).equals(Collections.singleton(replicated));
+        assert master.broadcastBlockIds(5L).isEmpty();
+        // 原BlockManager上报被拒绝(需重新注册)
+        boolean updated = ask(new UpdateBlockInfo(exec1, single, StorageLevel.MEMORY_ONLY, 10L, 0L));
+        assert !updated;
+
+        // 删除RDD只通知仍存储该RDD Block的BlockManager
+        CompletableFuture<Integer> removed = ask(new RemoveRdd(1));
+        assert removed.join() == 1;
+        assert slave1.messages.isEmpty() && restartedSlave.messages.isEmpty();
+        assert slave2.messages.size() == 1;
+    }
+
+    /**
+     * 记录Master发往BlockManagerSlaveEndpoint的消息, 应答删除一个Block
+     * */
+    private static class RecordingSlaveEndpointRef extends RpcEndpointRef {
+        final List<Object> messages = Collections.synchronizedList(Lists.newArrayList());
+
+        @Override
+        public String name() {
+            return "BlockManagerEndpoint";
+        }
+
+        @Override
+        public RpcAddress address() {
+            return new RpcAddress("localhost", 0);
+        }
+
+        @Override
+        public void send(Object message) {
+            messages.add(message);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> CompletableFuture<T> ask(Object message) {
+            messages.add(message);
+            return CompletableFuture.completedFuture((T) Integer.valueOf(1));
+        }
+
+        @Override
+        public Object askSync(Object message) {
+            return ask(message).join();
+        }
+
+        @Override
+        public Object askSync(Object message, long timeout) {
+            return askSync(message);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.sdu.spark.storage;
+
+import com.google.common.collect.Sets;
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.SparkConf;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestBlockReplicationPolicy extends SparkTestUnit {
+
+    private BlockManagerId source;
+    private Set<BlockManagerId> peers;
+
+    @Override
+    public void beforeEach() {
+        source = new BlockManagerId("0", "host-0", 7000, "/rack-1");
+        peers = Sets.newHashSet();
+        for (int i = 1; i <= 8; ++i) {
+            // 奇数Host在rack-1, 偶数Host在rack-2
+            peers.add(new BlockManagerId(String.valueOf(i), "host-" + i, 7000, i % 2 == 1 ? "/rack-1" : "/rack-2"));
+        }
+    }
+
+    @Test
+    public void testRackAwarePrioritize() {
+        BlockReplicationPolicy policy = new BasicBlockReplicationPolicy();
+        for (int rddId = 0; rddId < 20; ++rddId) {
+            BlockId blockId = new BlockId.RDDBlockId(rddId, 0);
+            List<BlockManagerId> prioritized = policy.prioritize(source, peers, Collections.emptySet(), blockId, 3);
+            assert prioritized.size() == 3;
+            assert Sets.newHashSet(prioritized).size() == 3;
+            // 第一个副本同机架, 第二个副本跨机架
+            assert prioritized.get(0).topologyInfo.equals("/rack-1");
+            assert prioritized.get(1).topologyInfo.equals("/rack-2");
+        }
+    }
+
+    @Test
+    public void testRackAwarePrioritizeWithExistingReplicas() {
+        BlockReplicationPolicy policy = new BasicBlockReplicationPolicy();
+        BlockId blockId = new BlockId.RDDBlockId(0, 0);
+        Set<BlockManagerId> replicated = Sets.newHashSet(new BlockManagerId("1", "host-1", 7000, "/rack-1"));
+        Set<BlockManagerId> candidates = Sets.newHashSet(peers);
+        candidates.removeAll(replicated);
+
+        List<BlockManagerId> prioritized = policy.prioritize(source, candidates, replicated, blockId, 1);
+        assert prioritized.size() == 1;
+        // 已有同机架副本, 优先跨机架
+        assert prioritized.get(0).topologyInfo.equals("/rack-2");
+    }
+
+    @Test
+    public void testReplicasOnDistinctHosts() {
+        // 每个Host两个Executor
+        Set<BlockManagerId> executors = Sets.newHashSet();
+        for (int i = 1; i <= 8; ++i) {
+            String host = "host-" + i;
+            String rack = i % 2 == 1 ? "/rack-1" : "/rack-2";
+            executors.add(new BlockManagerId(i + "-a", host, 7000, rack));
+            executors.add(new BlockManagerId(i + "-b", host, 7001, rack));
+        }
+        executors.add(new BlockManagerId("0-b", "host-0", 7001, "/rack-1"));
+        Set<BlockManagerId> replicated = Sets.newHashSet(new BlockManagerId("1-a", "host-1", 7000, "/rack-1"));
+        executors.removeAll(replicated);
+
+        BlockReplicationPolicy policy = new BasicBlockReplicationPolicy();
+        for (int rddId = 0; rddId < 20; ++rddId) {
+            BlockId blockId = new BlockId.RDDBlockId(rddId, 0);
+            List<BlockManagerId> prioritized = policy.prioritize(source, executors, replicated, blockId, 5);
+            assert prioritized.size() == 5;
+            Set<String> hosts = Sets.newHashSet();
+            prioritized.forEach(p -> hosts.add(p.host));
+            assert hosts.size() == 5;
+            assert !hosts.contains("host-0") && !hosts.contains("host-1");
+        }
+
+        // 可用Host不足时允许同Host副本
+        Set<BlockManagerId> twoHosts = Sets.newHashSet(new BlockManagerId("2-a", "host-2", 7000, "/rack-2"),
+                                                       new BlockManagerId("2-b", "host-2", 7001, "/rack-2"),
+                                                       new BlockManagerId("3-a", "host-3", 7000, "/rack-1"));
+        List<BlockManagerId> prioritized = policy.prioritize(source, twoHosts, Collections.emptySet(),
+                                                             new BlockId.RDDBlockId(0, 0), 3);
+        assert prioritized.size() == 3;
+        assert prioritized.get(0).host.equals("host-3");
+        assert prioritized.get(1).host.equals("host-2");
+    }
+
+    @Test
+    public void testFileBasedTopologyMapper() throws IOException {
+        File topologyFile = Files.createTempFile(Paths.get("target"), "topology", ".properties").toFile();
+        topologyFile.deleteOnExit();
+        try (FileWriter writer = new FileWriter(topologyFile)) {
+            writer.write("host-1=/rack-1\n");
+            writer.write("host-2=/rack-2\n");
+        }
+
+        SparkConf topologyConf = new SparkConf();
+        topologyConf.set("spark.storage.replication.topologyFile", topologyFile.getAbsolutePath());
+        TopologyMapper mapper = new FileBasedTopologyMapper(topologyConf);
+        assert mapper.getTopologyForHost("host-1").equals("/rack-1");
+        assert mapper.getTopologyForHost("host-2").equals("/rack-2");
+        assert mapper.getTopologyForHost("host-3") == null;
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
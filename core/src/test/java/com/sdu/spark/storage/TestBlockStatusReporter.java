@@ -0,0 +1,134 @@
+package com.sdu.spark.storage;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.rpc.SparkConf;
+import com.sdu.spark.storage.BlockId.RDDBlockId;
+import com.sdu.spark.storage.BlockManagerMessages.UpdateBlockInfos;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestBlockStatusReporter extends SparkTestUnit {
+
+    private BlockManagerId blockManagerId;
+    private RecordingMaster master;
+    private AtomicInteger reregistered;
+    private BlockStatusReporter reporter;
+
+    @Override
+    public void beforeEach() {
+        blockManagerId = BlockManagerId.apply("exec-1", "host-1", 7001, null);
+        master = new RecordingMaster();
+        reregistered = new AtomicInteger(0);
+    }
+
+    private BlockStatusReporter createReporter(String interval, int maxBatchSize) {
+        SparkConf reporterConf = new SparkConf();
+        reporterConf.set("spark.storage.blockStatusReport.interval", interval);
+        reporterConf.set("spark.storage.blockStatusReport.maxBatchSize", String.valueOf(maxBatchSize));
+        reporter = new BlockStatusReporter(master, blockManagerId, reporterConf, reregistered::incrementAndGet);
+        return reporter;
+    }
+
+    @Test
+    public void testLatestStatusWins() {
+        BlockStatusReporter reporter = createReporter("1h", 100);
+        reporter.report(new RDDBlockId(1, 0), StorageLevel.MEMORY_ONLY, 10L, 0L);
+        reporter.report(new RDDBlockId(1, 1), StorageLevel.MEMORY_ONLY, 20L, 0L);
+        reporter.report(new RDDBlockId(1, 0), StorageLevel.DISK_ONLY, 0L, 30L);
+        assert reporter.numPendingBlocks() == 2;
+        assert master.reports.isEmpty();
+
+        // stop()发送剩余Block状态
+        reporter.stop();
+        assert master.reports.size() == 1;
+        UpdateBlockInfos infos = master.reports.get(0);
+        assert infos.blockManagerId.equals(blockManagerId);
+        assert infos.size() == 2;
+        // 同一Block只汇报最新状态, 位置为最近一次汇报
+        assert infos.blockIds[0].equals(new RDDBlockId(1, 1));
+        assert infos.blockIds[1].equals(new RDDBlockId(1, 0));
+        assert infos.storageLevels[1] == StorageLevel.DISK_ONLY;
+        assert infos.memSizes[1] == 0L && infos.diskSizes[1] == 30L;
+        assert reporter.numPendingBlocks() == 0;
+    }
+
+    @Test
+    public void testFlushOnMaxBatchSize() throws InterruptedException {
+        BlockStatusReporter reporter = createReporter("1h", 3);
+        for (int i = 0; i < 3; ++i) {
+            reporter.report(new RDDBlockId(1, i), StorageLevel.MEMORY_ONLY, i, 0L);
+        }
+        waitForReports(1);
+        assert master.reports.get(0).size() == 3;
+        reporter.stop();
+        // 无剩余Block状态时不再发送
+        assert master.reports.size() == 1;
+    }
+
+    @Test
+    public void testPeriodicFlush() throws InterruptedException {
+        BlockStatusReporter reporter = createReporter("10ms", 100);
+        reporter.report(new RDDBlockId(1, 0), StorageLevel.MEMORY_ONLY, 10L, 0L);
+        waitForReports(1);
+        assert master.reports.get(0).size() == 1;
+        reporter.stop();
+    }
+
+    @Test
+    public void testRetryAndReregister() {
+        BlockStatusReporter reporter = createReporter("1h", 1);
+        master.fail = true;
+        reporter.report(new RDDBlockId(1, 0), StorageLevel.MEMORY_ONLY, 10L, 0L);
+        reporter.stop();
+        // 发送失败的Block状态重新入队
+        assert reporter.numPendingBlocks() == 1;
+
+        master.fail = false;
+        master.registered = false;
+        BlockStatusReporter retryReporter = createReporter("1h", 100);
+        retryReporter.report(new RDDBlockId(1, 0), StorageLevel.MEMORY_ONLY, 10L, 0L);
+        retryReporter.stop();
+        assert master.reports.size() == 1;
+        assert reregistered.get() == 1;
+    }
+
+    private void waitForReports(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (master.reports.size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assert master.reports.size() == expected;
+    }
+
+    private static class RecordingMaster extends BlockManagerMaster {
+        final List<UpdateBlockInfos> reports = new CopyOnWriteArrayList<>();
+        volatile boolean fail = false;
+        volatile boolean registered = true;
+
+        RecordingMaster() {
+            super(null, new SparkConf(), false);
+        }
+
+        @Override
+        public boolean updateBlockInfos(UpdateBlockInfos updateBlockInfos) {
+            if (fail) {
+                throw new IllegalStateException("master unavailable");
+            }
+            reports.add(updateBlockInfos);
+            return registered;
+        }
+    }
+
+    @Override
+    public void afterEach() {
+        if (reporter != null) {
+            reporter.stop();
+        }
+    }
+}
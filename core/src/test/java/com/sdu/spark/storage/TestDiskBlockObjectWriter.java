@@ -1,6 +1,8 @@
 package com.sdu.spark.storage;
 
 import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.TaskContext;
+import com.sdu.spark.TaskContextImpl;
 import com.sdu.spark.serializer.JavaSerializer;
 import com.sdu.spark.serializer.JavaSerializerInstance;
 import com.sdu.spark.serializer.Serializer;
@@ -14,6 +16,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
 
 /**
  * @author hanhan.zhang
@@ -77,6 +82,80 @@ public class TestDiskBlockObjectWriter extends SparkTestUnit {
         assert segment2.offset == segment1.length;
     }
 
+    @Test
+    public void testAlignedWriteAndCommit() throws IOException {
+        // 对齐写缓冲区4KB, 写入数据远大于缓冲区
+        DiskWriteOptions options = new DiskWriteOptions(true, 4096, true, true);
+        File alignedFile = new File(tempDir, "alignedfile");
+        DiskBlockObjectWriter aligned = new DiskBlockObjectWriter(alignedFile, serializerManager,
+                new JavaSerializer(conf).newInstance(), 1024, true, null, options);
+        DiskBlockObjectWriter writer = createWriter();
+
+        FileSegment[] alignedSegments = new FileSegment[3];
+        FileSegment[] segments = new FileSegment[3];
+        for (int k = 0; k < 3; ++k) {
+            for (int i = 0; i < 1000 * (k + 1); ++i) {
+                aligned.write(i, "value-" + i);
+                writer.write(i, "value-" + i);
+            }
+            alignedSegments[k] = aligned.commitAndGet();
+            segments[k] = writer.commitAndGet();
+        }
+        aligned.close();
+        writer.close();
+
+        for (int k = 0; k < 3; ++k) {
+            assert alignedSegments[k].offset == segments[k].offset;
+            assert alignedSegments[k].length == segments[k].length;
+        }
+        assert alignedFile.length() == new File(tempDir, "testfile").length();
+        assert Arrays.equals(Files.readAllBytes(alignedFile.toPath()),
+                             Files.readAllBytes(new File(tempDir, "testfile").toPath()));
+    }
+
+    @Test
+    public void testAlignedWriteRevert() throws IOException {
+        DiskWriteOptions options = new DiskWriteOptions(true, 4096, false, false);
+        File alignedFile = new File(tempDir, "alignedfile");
+        DiskBlockObjectWriter aligned = new DiskBlockObjectWriter(alignedFile, serializerManager,
+                new JavaSerializer(conf).newInstance(), 1024, false, null, options);
+        for (int i = 0; i < 1000; ++i) {
+            aligned.write(i, i);
+        }
+        FileSegment segment = aligned.commitAndGet();
+        for (int i = 0; i < 5000; ++i) {
+            aligned.write(i, i);
+        }
+        aligned.revertPartialWritesAndClose();
+        assert alignedFile.length() == segment.length;
+    }
+
+    @Test
+    public void testSyncPerTask() throws IOException {
+        DiskWriteOptions options = new DiskWriteOptions(true, 4096, false, true);
+        File alignedFile = new File(tempDir, "alignedfile");
+        TaskContextImpl context = new TaskContextImpl(0, 0, 0, 0, null, new Properties());
+        TaskContext.setTaskContext(context);
+        try {
+            DiskBlockObjectWriter aligned = new DiskBlockObjectWriter(alignedFile, serializerManager,
+                    new JavaSerializer(conf).newInstance(), 1024, true, null, options);
+            for (int i = 0; i < 1000; ++i) {
+                aligned.write(i, i);
+            }
+            FileSegment segment1 = aligned.commitAndGet();
+            // Task结束时Writer未关闭, 经已打开的文件fsync
+            context.markTaskCompleted();
+            for (int i = 0; i < 1000; ++i) {
+                aligned.write(i, i);
+            }
+            FileSegment segment2 = aligned.commitAndGet();
+            aligned.close();
+            assert alignedFile.length() == segment1.length + segment2.length;
+        } finally {
+            TaskContext.unset();
+        }
+    }
+
     @Override
     public void afterEach() {
         try {
@@ -0,0 +1,90 @@
+package com.sdu.spark.storage;
+
+import com.google.common.collect.Lists;
+import com.sdu.spark.SparkTestUnit;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestReplicationPipeline extends SparkTestUnit {
+
+    private static final String FORWARD_THREAD = "pipeline-forward";
+
+    private BlockId blockId;
+    private BlockManagerId[] downstream;
+    private ExecutorService executor;
+
+    @Override
+    public void beforeEach() {
+        blockId = new BlockId.RDDBlockId(0, 0);
+        downstream = new BlockManagerId[3];
+        for (int i = 0; i < downstream.length; ++i) {
+            downstream[i] = new BlockManagerId(String.valueOf(i + 1), "host-" + (i + 1), 7000, null);
+        }
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, FORWARD_THREAD));
+    }
+
+    @Override
+    public void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testForwardToHead() throws Exception {
+        List<BlockManagerId> uploaded = Lists.newArrayList();
+        CompletableFuture<BlockManagerId[]> forwarded = BlockManager.forwardInPipeline(blockId, downstream, 0, (next, rest) -> {
+            uploaded.add(next);
+            // 下一节点继续转发给剩余节点
+            assert Arrays.equals(rest, Arrays.copyOfRange(downstream, 1, downstream.length));
+            return CompletableFuture.completedFuture(downstream);
+        }, executor);
+        assert uploaded.size() == 1 && uploaded.get(0).equals(downstream[0]);
+        assert Arrays.equals(forwarded.get(), downstream);
+    }
+
+    @Test
+    public void testSkipFailedNode() throws Exception {
+        BlockingQueue<CompletableFuture<BlockManagerId[]>> uploads = new LinkedBlockingQueue<>();
+        List<String> uploadThreads = Collections.synchronizedList(Lists.newArrayList());
+        CompletableFuture<BlockManagerId[]> forwarded = BlockManager.forwardInPipeline(blockId, downstream, 0, (next, rest) -> {
+            uploadThreads.add(Thread.currentThread().getName());
+            CompletableFuture<BlockManagerId[]> upload = new CompletableFuture<>();
+            uploads.add(upload);
+            return upload;
+        }, executor);
+        // 下游未响应时不阻塞调用线程
+        assert uploads.size() == 1 && !forwarded.isDone();
+
+        // 上传失败回调线程(如Netty EventLoop)不转发给后续节点
+        uploads.poll().completeExceptionally(new IOException("connection refused"));
+        CompletableFuture<BlockManagerId[]> retry = uploads.poll(10, TimeUnit.SECONDS);
+        assert retry != null && !forwarded.isDone();
+        assert uploadThreads.get(1).equals(FORWARD_THREAD);
+
+        retry.complete(new BlockManagerId[] {downstream[1], downstream[2]});
+        assert Arrays.equals(forwarded.get(10, TimeUnit.SECONDS), new BlockManagerId[] {downstream[1], downstream[2]});
+    }
+
+    @Test
+    public void testAllNodesFailed() throws Exception {
+        List<BlockManagerId> uploaded = Collections.synchronizedList(Lists.newArrayList());
+        CompletableFuture<BlockManagerId[]> forwarded = BlockManager.forwardInPipeline(blockId, downstream, 0, (next, rest) -> {
+            uploaded.add(next);
+            throw new IllegalStateException("failed to create client");
+        }, executor);
+        assert forwarded.get(10, TimeUnit.SECONDS).length == 0;
+        assert uploaded.equals(Arrays.asList(downstream));
+    }
+}
@@ -0,0 +1,68 @@
+package com.sdu.spark.storage.memory;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.memory.MemoryManager;
+import com.sdu.spark.memory.MemoryMode;
+import com.sdu.spark.memory.UnifiedMemoryManager;
+import com.sdu.spark.storage.BlockId;
+import com.sdu.spark.storage.BlockInfoManager;
+import com.sdu.spark.unfase.Platform;
+import com.sdu.spark.utils.ChunkedByteBuffer;
+import io.netty.buffer.ByteBuf;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestMemoryStore extends SparkTestUnit {
+
+    private MemoryManager memoryManager;
+    private MemoryStore memoryStore;
+
+    @Override
+    public void beforeEach() {
+        // 堆外内存: spark.memory.offHeap.size = 10240, Storage占比0.5
+        memoryManager = new UnifiedMemoryManager(conf, 1, 1000L, 1000L);
+        memoryStore = new MemoryStore(conf, new BlockInfoManager(), null, memoryManager, null);
+        memoryManager.setMemoryStore(memoryStore);
+    }
+
+    @Test
+    public void testPutBytesOffHeap() {
+        BlockId blockId = new BlockId.RDDBlockId(0, 0);
+        ByteBuffer heapBuffer = ByteBuffer.wrap(new byte[1024]);
+        ChunkedByteBuffer bytes = new ChunkedByteBuffer(heapBuffer);
+
+        boolean putSucceeded = memoryStore.putBytes(blockId, bytes.size(), MemoryMode.OFF_HEAP,
+                                                    size -> bytes.copy(Platform::allocateDirectBuffer));
+        assert putSucceeded;
+        assert memoryStore.getBytes(blockId).isDirect();
+        assert memoryManager.storageMemoryUsed() == 1024L;
+
+        // Netty读取不改变MemoryStore中Chunk的position
+        ByteBuf buf = memoryStore.getBytes(blockId).toNetty();
+        assert buf.readableBytes() == 1024;
+        buf.skipBytes(1024);
+        assert memoryStore.getBytes(blockId).toNetty().readableBytes() == 1024;
+
+        assert memoryStore.remove(blockId);
+        assert memoryManager.storageMemoryUsed() == 0L;
+    }
+
+    @Test
+    public void testPutBytesOffHeapExceedsPool() {
+        BlockId blockId = new BlockId.RDDBlockId(0, 1);
+        // 堆外Storage最大可用内存为10240
+        boolean putSucceeded = memoryStore.putBytes(blockId, 20480L, MemoryMode.OFF_HEAP,
+                                                    size -> new ChunkedByteBuffer(Platform.allocateDirectBuffer(size)));
+        assert !putSucceeded;
+        assert !memoryStore.contains(blockId);
+    }
+
+    @Override
+    public void afterEach() {
+        memoryStore.clear();
+    }
+}
@@ -0,0 +1,42 @@
+package com.sdu.spark.utils.collection;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.utils.colleciton.MedianHeap;
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestMedianHeap extends SparkTestUnit {
+
+    @Override
+    public void beforeEach() {
+
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testEmpty() {
+        MedianHeap medianHeap = new MedianHeap();
+        assert medianHeap.isEmpty();
+        medianHeap.median();
+    }
+
+    @Test
+    public void testMedian() {
+        MedianHeap medianHeap = new MedianHeap();
+        double[] values = {5, 1, 9, 3, 7, 3, 8};
+        double[] medians = {5, 3, 5, 4, 5, 4, 5};
+        for (int i = 0; i < values.length; ++i) {
+            medianHeap.insert(values[i]);
+            assert medianHeap.median() == medians[i];
+        }
+        assert medianHeap.size() == values.length;
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
@@ -0,0 +1,71 @@
+package com.sdu.spark.utils.collection;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.utils.colleciton.MpscLinkedQueue;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestMpscLinkedQueue extends SparkTestUnit {
+
+    @Override
+    public void beforeEach() {
+
+    }
+
+    @Test
+    public void testOfferAndPoll() {
+        MpscLinkedQueue<Integer> queue = new MpscLinkedQueue<>();
+        assert queue.isEmpty();
+        assert queue.poll() == null;
+        for (int i = 0; i < 10; ++i) {
+            queue.offer(i);
+        }
+        assert !queue.isEmpty();
+        for (int i = 0; i < 10; ++i) {
+            assert queue.poll() == i;
+        }
+        assert queue.isEmpty();
+    }
+
+    @Test
+    public void testMultiProducer() throws InterruptedException {
+        int numProducers = 4;
+        int numPerProducer = 100000;
+        MpscLinkedQueue<long[]> queue = new MpscLinkedQueue<>();
+        CountDownLatch latch = new CountDownLatch(numProducers);
+        for (int p = 0; p < numProducers; ++p) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < numPerProducer; ++i) {
+                    queue.offer(new long[]{producer, i});
+                }
+                latch.countDown();
+            });
+            thread.start();
+        }
+
+        // 同一生产者的元素保持FIFO
+        long[] expected = new long[numProducers];
+        int consumed = 0;
+        while (consumed < numProducers * numPerProducer) {
+            long[] element = queue.poll();
+            if (element == null) {
+                continue;
+            }
+            assert element[1] == expected[(int) element[0]];
+            expected[(int) element[0]]++;
+            consumed++;
+        }
+        latch.await();
+        assert queue.isEmpty();
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
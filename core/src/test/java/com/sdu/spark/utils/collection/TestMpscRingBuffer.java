@@ -0,0 +1,81 @@
+package com.sdu.spark.utils.collection;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.utils.colleciton.MpscRingBuffer;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestMpscRingBuffer extends SparkTestUnit {
+
+    @Override
+    public void beforeEach() {
+
+    }
+
+    @Test
+    public void testBounded() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(6);
+        assert buffer.capacity() == 8;
+        assert buffer.isEmpty();
+        assert buffer.poll() == null;
+        for (int i = 0; i < 8; ++i) {
+            assert buffer.offer(i);
+        }
+        assert !buffer.offer(8);
+        assert buffer.size() == 8;
+
+        // 消费后槽位可复用
+        assert buffer.poll() == 0;
+        assert buffer.offer(8);
+        for (int i = 1; i <= 8; ++i) {
+            assert buffer.poll() == i;
+        }
+        assert buffer.isEmpty();
+        assert buffer.size() == 0;
+    }
+
+    @Test
+    public void testMultiProducer() throws InterruptedException {
+        int numProducers = 4;
+        int numPerProducer = 100000;
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(1024);
+        CountDownLatch latch = new CountDownLatch(numProducers);
+        for (int p = 0; p < numProducers; ++p) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < numPerProducer; ++i) {
+                    long[] element = new long[]{producer, i};
+                    while (!buffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+                latch.countDown();
+            });
+            thread.start();
+        }
+
+        // 同一生产者的元素保持FIFO
+        long[] expected = new long[numProducers];
+        int consumed = 0;
+        while (consumed < numProducers * numPerProducer) {
+            long[] element = buffer.poll();
+            if (element == null) {
+                continue;
+            }
+            assert element[1] == expected[(int) element[0]];
+            expected[(int) element[0]]++;
+            consumed++;
+        }
+        latch.await();
+        assert buffer.isEmpty();
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}
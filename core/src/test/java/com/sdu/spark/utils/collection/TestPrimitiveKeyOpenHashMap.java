@@ -0,0 +1,75 @@
+package com.sdu.spark.utils.collection;
+
+import com.sdu.spark.SparkTestUnit;
+import com.sdu.spark.utils.colleciton.PrimitiveKeyOpenHashMap;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author hanhan.zhang
+ * */
+public class TestPrimitiveKeyOpenHashMap extends SparkTestUnit {
+
+    @Override
+    public void beforeEach() {
+
+    }
+
+    @Test
+    public void testPutAndGrow() {
+        PrimitiveKeyOpenHashMap<String> map = new PrimitiveKeyOpenHashMap<>(4);
+        for (long i = 0; i < 100; ++i) {
+            assert map.put(i, "v" + i) == null;
+        }
+        assert map.size() == 100;
+        for (long i = 0; i < 100; ++i) {
+            assert map.get(i).equals("v" + i);
+        }
+        assert map.put(1L, "new").equals("v1");
+        assert map.size() == 100;
+        assert map.get(100L) == null;
+    }
+
+    @Test
+    public void testRemove() {
+        // 与HashMap对比随机插入/删除结果, 校验后移回填
+        PrimitiveKeyOpenHashMap<Long> map = new PrimitiveKeyOpenHashMap<>(8);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            long key = random.nextInt(256);
+            if (random.nextBoolean()) {
+                map.put(key, key);
+                expected.put(key, key);
+            } else {
+                assert equals(map.remove(key), expected.remove(key));
+            }
+        }
+        assert map.size() == expected.size();
+        for (long key = 0; key < 256; ++key) {
+            assert map.containsKey(key) == expected.containsKey(key);
+            assert equals(map.get(key), expected.get(key));
+        }
+    }
+
+    @Test
+    public void testComputeIfAbsent() {
+        PrimitiveKeyOpenHashMap<StringBuilder> map = new PrimitiveKeyOpenHashMap<>();
+        map.computeIfAbsent(7L, key -> new StringBuilder()).append("a");
+        map.computeIfAbsent(7L, key -> new StringBuilder()).append("b");
+        assert map.size() == 1;
+        assert map.get(7L).toString().equals("ab");
+    }
+
+    private static boolean equals(Long a, Long b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public void afterEach() {
+
+    }
+}